@@ -36,9 +36,27 @@ public class FileCopyOutputFormat extends OutputFormat {
     public static final String NAME_GCS_DESTPATH = "gcs.bucket.path";
     public static final String NAME_GCS_DESTPATH_SUFFIX = "gcs.bucket.path.suffix";
     public static final String NAME_PGP_PUBKEY = "file.pgp.pub.key";
+    public static final String NAME_PGP_CIPHER = "file.pgp.cipher";
+    public static final String NAME_PGP_SIGNING_KEY = "file.pgp.signing.key";
+    public static final String NAME_PGP_SIGNING_PASSPHRASE = "file.pgp.signing.passphrase";
     public static final String NAME_BUFFER_SIZE = "buffer.size";
     public static final String NAME_PROXY = "proxy";
     public static final String NAME_PROXY_TYPE = "proxytype";
+    public static final String NAME_DESTINATION_TYPE = "destination.type";
+    public static final String NAME_DESTINATION_URI = "destination.uri";
+    public static final String NAME_BUNDLE_THRESHOLD = "bundle.threshold";
+    public static final String NAME_BUNDLE_SIZE = "bundle.size";
+    public static final String NAME_DICTIONARY_PATH = "compression.dictionary.path";
+    public static final String NAME_LEDGER_FORMAT = "ledger.format";
+    public static final String NAME_MANIFEST = "manifest.digest";
+    public static final String NAME_LOOKAHEAD = "lookahead.files";
+    public static final String NAME_UPLOAD_SINGLE_REQUEST_SIZE = "upload.single.request.size";
+    public static final String NAME_UPLOAD_CHUNK_SIZE = "upload.chunk.size";
+    public static final String NAME_HTTP_MAX_CONNECTIONS = "http.max.connections";
+    public static final String NAME_HTTP_WARM_UP_CONNECTIONS = "http.warm.up.connections";
+    public static final String NAME_OBJECT_NAMING = "object.naming";
+    public static final String NAME_EXISTING_OBJECTS = "existing.objects";
+    public static final String NAME_STAGE_NAME = "stage.name";
 
 
     public static final String FS_SCHEME = "filesystem.scheme";
@@ -77,6 +95,18 @@ public class FileCopyOutputFormat extends OutputFormat {
         conf.put(NAME_PGP_PUBKEY, value == null ? "" : value);
     }
 
+    public static void setPGPCipher(Map<String, String> conf, String value) {
+        conf.put(NAME_PGP_CIPHER, value == null ? "" : value);
+    }
+
+    public static void setPGPSigningKey(Map<String, String> conf, String value) {
+        conf.put(NAME_PGP_SIGNING_KEY, value == null ? "" : value);
+    }
+
+    public static void setPGPSigningPassphrase(Map<String, String> conf, String value) {
+        conf.put(NAME_PGP_SIGNING_PASSPHRASE, value == null ? "" : value);
+    }
+
     public static void setBufferSize(Map<String, String> conf, String value) {
         conf.put(NAME_BUFFER_SIZE, value == null ? "" : value);
     }
@@ -90,6 +120,65 @@ public class FileCopyOutputFormat extends OutputFormat {
         conf.put(NAME_PROXY_TYPE, value == null ? "" : value);
     }
 
+    public static void setDestinationType(Map<String, String> conf, String value) {
+        conf.put(NAME_DESTINATION_TYPE, value == null ? "" : value);
+    }
+
+    public static void setDestinationURI(Map<String, String> conf, String value) {
+        conf.put(NAME_DESTINATION_URI, value == null ? "" : value);
+    }
+
+    public static void setBundleThreshold(Map<String, String> conf, String value) {
+        conf.put(NAME_BUNDLE_THRESHOLD, value == null ? "" : value);
+    }
+
+    public static void setBundleSize(Map<String, String> conf, String value) {
+        conf.put(NAME_BUNDLE_SIZE, value == null ? "" : value);
+    }
+
+    public static void setDictionaryPath(Map<String, String> conf, String value) {
+        conf.put(NAME_DICTIONARY_PATH, value == null ? "" : value);
+    }
+
+    public static void setLedgerFormat(Map<String, String> conf, String value) {
+        conf.put(NAME_LEDGER_FORMAT, value == null ? "" : value);
+    }
+
+    public static void setManifest(Map<String, String> conf, String value) {
+        conf.put(NAME_MANIFEST, value == null ? "" : value);
+    }
+
+    public static void setLookahead(Map<String, String> conf, String value) {
+        conf.put(NAME_LOOKAHEAD, value == null ? "" : value);
+    }
+
+    public static void setUploadSingleRequestSize(Map<String, String> conf, String value) {
+        conf.put(NAME_UPLOAD_SINGLE_REQUEST_SIZE, value == null ? "" : value);
+    }
+
+    public static void setUploadChunkSize(Map<String, String> conf, String value) {
+        conf.put(NAME_UPLOAD_CHUNK_SIZE, value == null ? "" : value);
+    }
+
+    public static void setHttpMaxConnections(Map<String, String> conf, String value) {
+        conf.put(NAME_HTTP_MAX_CONNECTIONS, value == null ? "" : value);
+    }
+
+    public static void setHttpWarmUpConnections(Map<String, String> conf, String value) {
+        conf.put(NAME_HTTP_WARM_UP_CONNECTIONS, value == null ? "" : value);
+    }
+
+    public static void setObjectNaming(Map<String, String> conf, String value) {
+        conf.put(NAME_OBJECT_NAMING, value == null ? "" : value);
+    }
+
+    public static void setExistingObjects(Map<String, String> conf, String value) {
+        conf.put(NAME_EXISTING_OBJECTS, value == null ? "" : value);
+    }
+
+    public static void setStageName(Map<String, String> conf, String value) {
+        conf.put(NAME_STAGE_NAME, value == null ? "" : value);
+    }
 
 
     @Override
@@ -106,7 +195,11 @@ public class FileCopyOutputFormat extends OutputFormat {
         return new OutputCommitter() {
             @Override
             public void setupJob(JobContext jobContext) throws IOException {
-                // no op
+                // the inventory is listed once per run, before any task starts copying
+                Configuration conf = jobContext.getConfiguration();
+                if ("SKIP".equals(conf.get(NAME_EXISTING_OBJECTS, ""))) {
+                    FileCopyRecordWriter.writeInventory(conf);
+                }
             }
 
             @Override
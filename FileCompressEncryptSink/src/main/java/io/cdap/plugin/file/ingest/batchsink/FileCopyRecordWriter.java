@@ -16,45 +16,102 @@
 
 package io.cdap.plugin.file.ingest.batchsink;
 
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.auth.Credentials;
 import com.google.auth.http.HttpTransportFactory;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.TransportOptions;
-import com.google.cloud.WriteChannel;
 import com.google.cloud.http.HttpTransportOptions;
-import com.google.cloud.storage.*;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import io.cdap.plugin.file.ingest.bundle.BundleWriter;
 import io.cdap.plugin.file.ingest.common.FileListData;
+import io.cdap.plugin.file.ingest.compression.DictionaryTrainer;
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.destination.FileSystemDestination;
+import io.cdap.plugin.file.ingest.destination.GCSDestination;
+import io.cdap.plugin.file.ingest.destination.ObjectStat;
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
 import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
 import io.cdap.plugin.file.ingest.encryption.PGPCertUtil;
+import io.cdap.plugin.file.ingest.events.CopyEvents;
+import io.cdap.plugin.file.ingest.http.HttpCounters;
+import io.cdap.plugin.file.ingest.http.PooledHttpTransportFactory;
+import io.cdap.plugin.file.ingest.inventory.DestinationInventory;
+import io.cdap.plugin.file.ingest.manifest.DigestManifest;
+import io.cdap.plugin.file.ingest.manifest.DigestingChannel;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.ingest.prefetch.FilePrefetcher;
+import io.cdap.plugin.file.ingest.prefetch.PrefetchedFile;
 import io.cdap.plugin.file.ingest.utils.FileMetaData;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
 
 /**
  * The record writer that takes file metadata and streams data from source database
  * to destination database
  */
 public class FileCopyRecordWriter extends RecordWriter<NullWritable, FileListData> {
+    // the id of the dictionary that a file was compressed with, stored in the metadata of the file
+    public static final String METADATA_DICTIONARY_ID = "compression.dictionary.id";
     private static final Logger LOG = LoggerFactory.getLogger(FileCopyRecordWriter.class);
+    // plain copies don't need the small buffers that suit the compressors, so they read at least this much
+    private static final int MIN_DIRECT_BUFFER_SIZE = 1 << 20;
+    private static final long DEFAULT_BUNDLE_SIZE = 256L << 20;
+    private static final String BUNDLE_DIRECTORY = "bundles/";
+    private static final String DICTIONARY_DIRECTORY = "dictionaries/";
+    private static final String INVENTORY_NAME = "inventory/inventory.bin";
+    private static final String BUNDLED_INVENTORY_NAME = "inventory/bundled.bin";
+    // the inventory of the files in a bundle is written next to it, under its name with this suffix
+    private static final String BUNDLE_INVENTORY_SUFFIX = ".inventory";
+    private static final int DICTIONARY_SAMPLE_FILES = 100;
+    private static final int DICTIONARY_SAMPLE_SIZE = 16 << 10;
+    // files up to this size are read whole when they are fetched ahead
+    private static final int PREFETCH_CONTENT_SIZE = 1 << 20;
+    private static final int DEFAULT_HTTP_MAX_CONNECTIONS = 32;
+    private static final int DEFAULT_HTTP_WARM_UP_CONNECTIONS = 4;
 
     static Configuration conf = null;
 
@@ -74,13 +131,41 @@ public class FileCopyRecordWriter extends RecordWriter<NullWritable, FileListDat
     private final String gcsserviceaccountjson;
     private final String proxy;
     private Integer bufferSize;
-    private PGPPublicKey encKey = null;
-    private Storage storage = null;
-    private Bucket bucket = null;
-    private String proxyHost;
-    private int proxyPort;
+    private List<PGPPublicKey> encKeys = Collections.emptyList();
+    private final Destination destination;
+    private final CompressEncryptOptions options;
     private String proxytype;
     private final boolean useProxy;
+    private final CopyMetrics metrics;
+    // the connections are shared by the tasks of the executor, the transport of the task counts its own requests
+    private final HttpCounters httpCounters = new HttpCounters();
+    private ByteBuffer directBuffer;
+    private final long bundleThreshold;
+    private final long bundleSize;
+    // the archives and the records of a task are told apart by this id, archives also by a sequence number
+    private final String taskId = UUID.randomUUID().toString();
+    private int bundleSequence;
+    private BundleWriter bundle;
+    private final StageTimer bundleTimer = new StageTimer();
+    private byte[] bundleBuffer = new byte[0];
+    private final boolean dictionaryCompression;
+    private String dictionaryId;
+    private final List<byte[]> samples = new ArrayList<>();
+    private final List<FileListData> pendingFiles = new ArrayList<>();
+    private final TaskRecords records;
+    private final boolean hashedNames;
+    private final boolean skipExisting;
+    private DestinationInventory inventory;
+    private DestinationInventory bundledInventory;
+    private DestinationInventory.Builder bundleMembers;
+    // the inventories of the committed bundles, written once the records that name the bundles are committed
+    private final List<Map.Entry<String, DestinationInventory>> bundleInventories = new ArrayList<>();
+    // the files of a listing share a few hosts, so their filesystems are only looked up once
+    private final Map<String, FileSystem> sourceFileSystems = new HashMap<>();
+    private final int lookahead;
+    private FilePrefetcher prefetcher;
+    // the files that are fetched ahead, in the order they are copied
+    private final Deque<Map.Entry<FileListData, PrefetchedFile>> prefetched = new ArrayDeque<>();
 
     /**
      * Construct a RecordWriter given user configurations.
@@ -89,8 +174,21 @@ public class FileCopyRecordWriter extends RecordWriter<NullWritable, FileListDat
      * @throws IOException
      */
     public FileCopyRecordWriter(Configuration conf) throws IOException {
+        this(conf, null);
+    }
+
+    /**
+     * Construct a RecordWriter that writes to the given destination instead of the one in the configuration.
+     *
+     * @param conf        The configuration that contains required information to intialize the recordWriter.
+     * @param destination The destination to write to, or null to create it from the configuration.
+     * @throws IOException
+     */
+    public FileCopyRecordWriter(Configuration conf, @Nullable Destination destination) throws IOException {
         LOG.info("Initializing of RecordWriter");
 
+        metrics = new CopyMetrics(conf.get(FileCopyOutputFormat.NAME_STAGE_NAME));
+        dictionaryCompression = conf.get(FileCopyOutputFormat.NAME_FILECOMPRESSION).equals("DEFLATE_DICTIONARY");
         if (conf.get(FileCopyOutputFormat.NAME_FILECOMPRESSION).equals("NONE")) {
             compression = false;
             LOG.info("Compression is set to false");
@@ -152,26 +250,203 @@ public class FileCopyRecordWriter extends RecordWriter<NullWritable, FileListDat
         if (encryption) {
             //Read the Public Key to Encrypt Data
             try {
-                encKey = PGPCertUtil.readPublicKey(publicKeyPath);
-                LOG.info("Retrieved PublicKey");
+                encKeys = PGPCertUtil.readPublicKeys(publicKeyPath);
+                LOG.info("Retrieved {} PublicKeys", encKeys.size());
             } catch (PGPException ex) {
                 LOG.error(ex.getMessage());
                 throw new IOException(ex.getMessage());
             }
         }
 
+        String threshold = conf.get(FileCopyOutputFormat.NAME_BUNDLE_THRESHOLD, "");
+        bundleThreshold = StringUtils.isNumeric(threshold) ? Long.parseLong(threshold) : 0;
+        LOG.info("Bundle threshold - " + bundleThreshold);
+
+        String targetSize = conf.get(FileCopyOutputFormat.NAME_BUNDLE_SIZE, "");
+        bundleSize = StringUtils.isNumeric(targetSize) ? Long.parseLong(targetSize) : DEFAULT_BUNDLE_SIZE;
+        LOG.info("Bundle size - " + bundleSize);
+
+        String cipher = conf.get(FileCopyOutputFormat.NAME_PGP_CIPHER, "");
+        LOG.info("Cipher - " + cipher);
+        // without encryption the key only signs the manifest
+        PGPPrivateKey signingKey = readSigningKey(conf);
+        options = new CompressEncryptOptions(compression, encryption, encKeys, bufferSize)
+                .setCipher(CompressEncryptOptions.getCipher(cipher.isEmpty() ? "CAST5" : cipher))
+                .setSigningKey(encryption ? signingKey : null);
+
+        if (destination != null) {
+            this.destination = destination;
+            LOG.info("Using the given destination");
+        } else {
+            this.destination = createDestination(conf, httpCounters);
+        }
+
+        String dictionaryPath = conf.get(FileCopyOutputFormat.NAME_DICTIONARY_PATH, "");
+        if (dictionaryCompression && !dictionaryPath.isEmpty()) {
+            LOG.info("Dictionary Path - " + dictionaryPath);
+            setDictionary(readDictionary(dictionaryPath, conf));
+        }
+
+        hashedNames = "HASHED".equals(conf.get(FileCopyOutputFormat.NAME_OBJECT_NAMING, ""));
+        LOG.info("Hashed names - " + hashedNames);
+        records = new TaskRecords(conf, this.destination, destpath, taskId, options, signingKey, hashedNames);
+
+        skipExisting = "SKIP".equals(conf.get(FileCopyOutputFormat.NAME_EXISTING_OBJECTS, ""));
+        LOG.info("Skip existing objects - " + skipExisting);
+        if (skipExisting) {
+            inventory = readInventory(destpath + INVENTORY_NAME);
+            bundledInventory = readInventory(destpath + BUNDLED_INVENTORY_NAME);
+        }
+
+        String files = conf.get(FileCopyOutputFormat.NAME_LOOKAHEAD, "");
+        lookahead = StringUtils.isNumeric(files) ? Integer.parseInt(files) : 0;
+        LOG.info("Lookahead - " + lookahead);
+        if (lookahead > 0) {
+            prefetcher = new FilePrefetcher(lookahead, PREFETCH_CONTENT_SIZE);
+        }
+    }
+
+    /**
+     * @return The source file, with the status the listing had for it so that it isn't fetched again.
+     */
+    private FileMetaData getFileMetaData(FileListData fileListData) throws IOException {
+        String hostURI = fileListData.getHostURI();
+        Path path = new Path(hostURI + '/' + fileListData.getFullPath());
+        FileSystem fileSystem = sourceFileSystems.get(hostURI);
+        if (fileSystem == null) {
+            fileSystem = path.getFileSystem(conf);
+            sourceFileSystems.put(hostURI, fileSystem);
+        }
+        return new FileMetaData(path, fileSystem, fileListData.getFileSize(), fileListData.getModificationTime());
+    }
+
+    /**
+     * @return The key to sign the objects with, or null if they are not signed.
+     */
+    @Nullable
+    static PGPPrivateKey readSigningKey(Configuration conf) throws IOException {
+        String path = conf.get(FileCopyOutputFormat.NAME_PGP_SIGNING_KEY, "");
+        if (path.isEmpty()) {
+            return null;
+        }
+        try {
+            PGPPrivateKey key = PGPCertUtil.readSigningKey(
+                    path, conf.get(FileCopyOutputFormat.NAME_PGP_SIGNING_PASSPHRASE, "").toCharArray());
+            LOG.info("Signing with key {}", Long.toHexString(key.getKeyID()));
+            return key;
+        } catch (PGPException e) {
+            throw new IOException("Failed to read the signing key " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The destination that the configuration of the output format names.
+     */
+    static Destination createDestination(Configuration conf) throws IOException {
+        return createDestination(conf, null);
+    }
+
+    /**
+     * @param httpCounters The counters of the task that writes to the destination, or null to not count its
+     *                     requests.
+     * @return The destination that the configuration of the output format names.
+     */
+    static Destination createDestination(Configuration conf, @Nullable HttpCounters httpCounters)
+            throws IOException {
+        String destinationType = conf.get(FileCopyOutputFormat.NAME_DESTINATION_TYPE, "GCS");
+        LOG.info("Destination Type - " + destinationType);
+        if ("FILESYSTEM".equals(destinationType)) {
+            String uri = conf.get(FileCopyOutputFormat.NAME_DESTINATION_URI, "");
+            FileSystem fileSystem = uri.isEmpty() ? FileSystem.get(conf) : new Path(uri).getFileSystem(conf);
+            LOG.info("Writing to filesystem " + fileSystem.getUri());
+            return new FileSystemDestination(fileSystem);
+        }
         // Create GCS Storage using the credentials
-        storage = getGoogleStorage(gcsserviceaccountjson, project, proxy,proxytype,useProxy);
+        String proxytype = conf.get(FileCopyOutputFormat.NAME_PROXY_TYPE, "NONE");
+        String maxConnections = conf.get(FileCopyOutputFormat.NAME_HTTP_MAX_CONNECTIONS, "");
+        String warmUpConnections = conf.get(FileCopyOutputFormat.NAME_HTTP_WARM_UP_CONNECTIONS, "");
+        LOG.info("HTTP connections - " + maxConnections);
+        LOG.info("HTTP warm up connections - " + warmUpConnections);
+        Storage storage = getGoogleStorage(conf.get(FileCopyOutputFormat.NAME_GCS_SERVICEACCOUNTJSON, null),
+                                           conf.get(FileCopyOutputFormat.NAME_GCS_PROJECTID, null),
+                                           conf.get(FileCopyOutputFormat.NAME_PROXY, null), proxytype,
+                                           !"NONE".equals(proxytype),
+                                           NumberUtils.toInt(maxConnections, DEFAULT_HTTP_MAX_CONNECTIONS),
+                                           NumberUtils.toInt(warmUpConnections, DEFAULT_HTTP_WARM_UP_CONNECTIONS),
+                                           httpCounters);
         LOG.info("Created GCS Storage");
-        bucket = getBucket(storage, bucketname);
+        String singleRequestSize = conf.get(FileCopyOutputFormat.NAME_UPLOAD_SINGLE_REQUEST_SIZE, "");
+        String chunkSize = conf.get(FileCopyOutputFormat.NAME_UPLOAD_CHUNK_SIZE, "");
+        LOG.info("Single request upload size - " + singleRequestSize);
+        LOG.info("Upload chunk size - " + chunkSize);
+        Destination destination = new GCSDestination(
+                storage, conf.get(FileCopyOutputFormat.NAME_GCS_BUCKET, null),
+                StringUtils.isNumeric(singleRequestSize) ? Long.parseLong(singleRequestSize)
+                        : GCSDestination.DEFAULT_SINGLE_REQUEST_SIZE,
+                StringUtils.isNumeric(chunkSize) ? Integer.parseInt(chunkSize) : GCSDestination.DEFAULT_CHUNK_SIZE);
         LOG.info("Created GCS Bucket");
+        return destination;
+    }
+
+    /**
+     * Lists the objects under the destination path and writes their {@link DestinationInventory}, along with the
+     * one of the bundled files, merged from the inventories next to the bundles. The tasks of the run read both
+     * when they start. Called once per run, by the job's output committer.
+     */
+    static void writeInventory(Configuration conf) throws IOException {
+        String destpath = conf.get(FileCopyOutputFormat.NAME_GCS_DESTPATH, "");
+        long startTime = System.currentTimeMillis();
+        try (Destination destination = createDestination(conf)) {
+            DestinationInventory.Builder objects = new DestinationInventory.Builder();
+            DestinationInventory.Builder bundled = new DestinationInventory.Builder();
+            int bundles = 0;
+            try {
+                Iterator<ObjectStat> listing = destination.list(destpath);
+                while (listing.hasNext()) {
+                    ObjectStat object = listing.next();
+                    String objectName = object.getName();
+                    if (objectName.startsWith(destpath + BUNDLE_DIRECTORY)
+                            && objectName.endsWith(BUNDLE_INVENTORY_SUFFIX)) {
+                        bundled.addAll(readBundleInventory(destination, objectName));
+                        bundles++;
+                    } else {
+                        objects.add(object);
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writeInventory(destination, destpath + INVENTORY_NAME, objects.build());
+            writeInventory(destination, destpath + BUNDLED_INVENTORY_NAME, bundled.build());
+            LOG.info("Inventories of " + bundles + " bundles merged, listed in "
+                             + (System.currentTimeMillis() - startTime) + " ms");
+        }
+    }
+
+    private static DestinationInventory readBundleInventory(Destination destination, String name)
+            throws IOException {
+        try (InputStream in = destination.read(name)) {
+            if (in == null) {
+                // removed since it was listed, and so was its bundle, most likely
+                return new DestinationInventory.Builder().build();
+            }
+            return DestinationInventory.read(new BufferedInputStream(in));
+        }
     }
 
-    private static FileMetaData getFileMetaData(String filePath, String uri) throws IOException {
-        return new FileMetaData(uri + '/' + filePath, conf);
+    private static void writeInventory(Destination destination, String name, DestinationInventory inventory)
+            throws IOException {
+        try (DestinationWriter writer = destination.open(name, DestinationInventory.CONTENT_TYPE,
+                                                          Collections.emptyMap())) {
+            inventory.write(new BufferedOutputStream(writer.asOutputStream()));
+            writer.commit();
+        }
+        LOG.info("Inventory " + name + " - " + inventory.size() + " objects");
     }
 
-    private void extractHostAndPortFromProxy() {
+    private static InetSocketAddress extractHostAndPortFromProxy(String proxy) {
+        String proxyHost = null;
+        int proxyPort = 0;
         if (StringUtils.isNotEmpty(proxy)) {
             String[] proxyComponents = StringUtils.splitByWholeSeparatorPreserveAllTokens(proxy, ":");
             if (proxyComponents.length > 0) {
@@ -182,55 +457,41 @@ public class FileCopyRecordWriter extends RecordWriter<NullWritable, FileListDat
                 proxyPort = NumberUtils.toInt(proxyComponents[1], 0);
             }
         }
+        return new InetSocketAddress(proxyHost, proxyPort);
     }
 
-    private Storage getGoogleStorage(String serviceAccountJSON, String project, String proxy, String proxytype, Boolean useProxy) {
+    private static Storage getGoogleStorage(String serviceAccountJSON, String project, String proxy, String proxytype,
+                                            Boolean useProxy, int maxConnections, int warmUpConnections,
+                                            @Nullable HttpCounters httpCounters) {
+        Proxy transportProxy = null;
+        if (useProxy) {
+            InetSocketAddress proxyAddress = extractHostAndPortFromProxy(proxy);
+
+            LOG.info("Proxy Host - " + proxyAddress.getHostString());
+            LOG.info("Proxy Port - " + proxyAddress.getPort());
+
+            transportProxy = new Proxy("SOCKS".equals(proxytype) ? Proxy.Type.SOCKS : Proxy.Type.HTTP, proxyAddress);
+        }
+        // the pool is shared by the tasks of the executor, so that they reuse each other's connections
+        PooledHttpTransportFactory pool = PooledHttpTransportFactory.get(transportProxy, maxConnections);
+        HttpTransportFactory transportFactory = httpCounters == null ? pool : pool.forTask(httpCounters);
+
         Credentials credentials = null;
         try {
-            credentials = GoogleCredentials.fromStream(new FileInputStream(serviceAccountJSON));
+            credentials = GoogleCredentials.fromStream(new FileInputStream(serviceAccountJSON), transportFactory);
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
         }
 
-        StorageOptions.Builder builder = StorageOptions.newBuilder()
+        TransportOptions transportOptions = HttpTransportOptions.newBuilder()
+                .setHttpTransportFactory(transportFactory).build();
+        Storage storage = StorageOptions.newBuilder()
                 .setCredentials(credentials)
-                .setProjectId(project);
-
-        if (useProxy) {
-            extractHostAndPortFromProxy();
-
-            LOG.info("Proxy Host - " + proxyHost);
-            LOG.info("Proxy Port - " + proxyPort);
-
-
-
-            HttpTransportFactory transportFactory = new HttpTransportFactory() {
-
-                @Override
-                public HttpTransport create() {
-
-                    if ("SOCKS".equals(proxytype)) {
-                        return new NetHttpTransport.Builder().setProxy(new Proxy(Proxy.Type.SOCKS, new InetSocketAddress(proxyHost, proxyPort))).build();
-                    } else {
-                        return new NetHttpTransport.Builder().setProxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort))).build();
-                    }
-                }
-            };
-
-            TransportOptions transportOptions = HttpTransportOptions.newBuilder().setHttpTransportFactory(transportFactory).build();
-            builder.setTransportOptions(transportOptions);
-        }
-
-        return builder.build().getService();
-    }
-
-    private Bucket getBucket(Storage storage, String bucketname) {
-        Bucket bucket = storage.get(bucketname);
-        if (bucket == null) {
-            LOG.info("Creating new bucket '{}'.", bucketname);
-            bucket = storage.create(BucketInfo.of(bucketname));
-        }
-        return bucket;
+                .setProjectId(project)
+                .setTransportOptions(transportOptions)
+                .build().getService();
+        pool.warmUp(storage.getOptions().getHost(), warmUpConnections);
+        return storage;
     }
 
     /**
@@ -244,84 +505,570 @@ public class FileCopyRecordWriter extends RecordWriter<NullWritable, FileListDat
      */
     @Override
     public void write(NullWritable key, FileListData fileListData) throws IOException, InterruptedException {
-        if (fileListData.getRelativePath().isEmpty()) {
+        if (fileListData.getRelativePath().isEmpty() || fileListData.isDir()) {
             return;
         }
 
-        // construct file paths for source and destination
-        String outFileName = destpath + fileListData.getRelativePath();
-        String contentType = "application/octet-stream";
-        if (compression) {
-            outFileName += ".zip";
-            contentType = "application/zip";
-        }
-
-        if (encryption) {
-            outFileName += ".pgp";
-            contentType = "application/pgp-encrypted";
+        if (skipExisting && fileListData.getFileSize() >= 0) {
+            String outFileName = getOutputName(fileListData);
+            long size = fileListData.getFileSize();
+            long modificationTime = fileListData.getModificationTime();
+            if (inventory != null && inventory.contains(outFileName, size, modificationTime)) {
+                // the object of the file was written by an earlier run, from the same version of the file
+                records.recordName(fileListData.getRelativePath(), outFileName);
+                metrics.recordSkipped();
+                return;
+            }
+            if (bundledInventory != null && bundledInventory.contains(outFileName, size, modificationTime)) {
+                // the file is in a bundle of an earlier run, whose name mapping and manifest were committed before
+                // the inventory of the bundle was written
+                metrics.recordSkipped();
+                return;
+            }
         }
 
         FileMetaData fileMetaData = null;
         String fullPath = fileListData.getFullPath();
         if (fullPath != null) {
             try {
-                fileMetaData = getFileMetaData(fullPath, fileListData.getHostURI());
+                fileMetaData = getFileMetaData(fileListData);
             } catch (IOException e) {
                 LOG.error(e.getMessage(), e);
             }
         }
 
-        LOG.info("Output File Name " + outFileName);
+        if (bundleThreshold > 0 && fileMetaData != null) {
+            // only listings without the size of the file need a status call here
+            long length = -1;
+            try {
+                length = fileMetaData.getLength();
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+            }
+            if (length >= 0 && length < bundleThreshold) {
+                addToBundle(fileListData, fileMetaData);
+                return;
+            }
+        }
+
+        if (dictionaryCompression && options.getDictionary() == null) {
+            // files are held back until the dictionary has been trained on them
+            if (fileMetaData != null) {
+                sample(fileMetaData);
+            }
+            pendingFiles.add(fileListData);
+            if (pendingFiles.size() >= DICTIONARY_SAMPLE_FILES) {
+                trainDictionary();
+            }
+            return;
+        }
+
+        if (prefetcher == null || fileMetaData == null) {
+            copyFile(fileListData, fileMetaData, null);
+            return;
+        }
+        // the file is copied once the next files are on their way, the object is opened on the prefetch thread
+        String outFileName = getOutputName(fileListData);
+        String contentType = getContentType();
+        Map<String, String> metadata = getObjectMetadata(fileListData);
+        long expectedSize = getExpectedSize(fileMetaData);
+        prefetched.add(new AbstractMap.SimpleImmutableEntry<>(fileListData, prefetcher.prefetch(
+                fileMetaData, () -> destination.open(outFileName, contentType, metadata, expectedSize))));
+        while (prefetched.size() > lookahead) {
+            copyNext();
+        }
+    }
+
+    /**
+     * Copies the oldest of the files that are fetched ahead.
+     */
+    private void copyNext() {
+        Map.Entry<FileListData, PrefetchedFile> next = prefetched.remove();
+        copyFile(next.getKey(), next.getValue().getFileMetaData(), next.getValue());
+    }
+
+    private String getOutputName(FileListData fileListData) {
+        String relativePath = fileListData.getRelativePath();
+        String outFileName = destpath + (hashedNames ? getHashPrefix(relativePath) : "") + relativePath;
+        if (dictionaryCompression) {
+            outFileName += ".zlib";
+        } else if (compression) {
+            outFileName += ".zip";
+        }
+        return encryption ? outFileName + ".pgp" : outFileName;
+    }
+
+    /**
+     * @return The directory that a file goes into with hashed names: the first 4 hex digits of the MD5 of its
+     * relative path in UTF-8, which spreads the objects of a run evenly over 65536 key ranges of the bucket.
+     */
+    public static String getHashPrefix(String relativePath) {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform implements MD5
+            throw new IllegalStateException(e);
+        }
+        byte[] digest = md5.digest(relativePath.getBytes(StandardCharsets.UTF_8));
+        return String.format("%02x%02x/", digest[0] & 0xff, digest[1] & 0xff);
+    }
+
+    private String getContentType() {
+        if (encryption) {
+            return "application/pgp-encrypted";
+        }
+        if (dictionaryCompression) {
+            return "application/zlib";
+        }
+        return compression ? "application/zip" : "application/octet-stream";
+    }
+
+    /**
+     * @return The expected size of the object of a file, or -1 if unknown. This is the size of the file, compression
+     * usually makes the object smaller and encryption only adds its headers, either way the destination copes with
+     * objects that don't have the expected size.
+     */
+    private static long getExpectedSize(@Nullable FileMetaData fileMetaData) {
+        return fileMetaData == null ? -1 : fileMetaData.getKnownLength();
+    }
+
+    /**
+     * @return The metadata of the object of a file. When existing objects are skipped, the object is tagged with the
+     * size and modification time of the file, which tell the inventory of a later run whether it is still current.
+     */
+    private Map<String, String> getObjectMetadata(FileListData fileListData) {
+        Map<String, String> metadata = new HashMap<>();
+        if (dictionaryCompression) {
+            metadata.put(METADATA_DICTIONARY_ID, dictionaryId);
+        }
+        if (skipExisting && fileListData.getFileSize() >= 0) {
+            metadata.put(DestinationInventory.METADATA_SOURCE_SIZE, Long.toString(fileListData.getFileSize()));
+            metadata.put(DestinationInventory.METADATA_SOURCE_MODIFICATION_TIME,
+                         Long.toString(fileListData.getModificationTime()));
+        }
+        return metadata;
+    }
+
+    /**
+     * Reads the inventory that the sink built for the run. Without it every file is copied, as if none existed.
+     */
+    @Nullable
+    private DestinationInventory readInventory(String name) {
+        try (InputStream in = destination.read(name)) {
+            if (in == null) {
+                LOG.warn("Inventory " + name + " does not exist, copying every file");
+                return null;
+            }
+            DestinationInventory inventory = DestinationInventory.read(new BufferedInputStream(in));
+            LOG.info("Inventory " + name + " - " + inventory.size() + " objects");
+            return inventory;
+        } catch (IOException e) {
+            LOG.warn("Failed to read inventory " + name + ", copying every file", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param prefetchedFile The file if it was fetched ahead, whose object is written if it could be opened.
+     */
+    private void copyFile(FileListData fileListData, @Nullable FileMetaData fileMetaData,
+                          @Nullable PrefetchedFile prefetchedFile) {
+        // construct file paths for source and destination
+        String outFileName = getOutputName(fileListData);
+        String contentType = getContentType();
+        Map<String, String> metadata = getObjectMetadata(fileListData);
 
-        BlobId blobId = BlobId.of(bucket.getName(), outFileName);
-        BlobInfo blobInfo = BlobInfo.newBuilder(blobId).setContentType(contentType).build();
+        LOG.info("Output File Name " + outFileName);
 
         InputStream inputStream = null;
+        String source = fileMetaData == null ? fileListData.getFullPath() : fileMetaData.getPath().toString();
+        StageTimer producerTimer = new StageTimer();
+        StageTimer uploadTimer = new StageTimer();
+        producerTimer.setFile(source);
+        uploadTimer.setFile(source);
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        String error = null;
+        // a plain copy writes the file as it is, so the digest of the object is the one of the file
+        MessageDigest sourceDigest = records.hasManifest() ? DigestManifest.newDigest() : null;
+        MessageDigest objectDigest = records.hasManifest() && (compression || encryption)
+                ? DigestManifest.newDigest() : sourceDigest;
+        DigestingChannel digesting = null;
+        DestinationWriter opened = null;
+        if (prefetchedFile != null) {
+            opened = prefetchedFile.await();
+            producerTimer.add(prefetchedFile.getTimer());
+        }
 
         try {
-            inputStream = FileCompressEncrypt.gcsWriter(fileMetaData, compression, encryption, encKey, bufferSize);
-            byte[] buffer = new byte[bufferSize];
-            try (WriteChannel writer =
-                         storage.writer(blobInfo)) {
-                int limit;
-                while ((limit = inputStream.read(buffer)) >= 0) {
-                    LOG.debug("upload file " + limit);
-                    writer.write(ByteBuffer.wrap(buffer, 0, limit));
+            // a writer that is closed without being committed is aborted
+            try (DestinationWriter writer = opened != null ? opened
+                    : destination.open(outFileName, contentType, metadata, getExpectedSize(fileMetaData))) {
+                WritableByteChannel out = writer;
+                if (objectDigest != null) {
+                    digesting = new DigestingChannel(writer, objectDigest, uploadTimer);
+                    out = digesting;
+                }
+                if (compression || encryption) {
+                    inputStream = FileCompressEncrypt.gcsWriter(fileMetaData, options, producerTimer,
+                                                                objectDigest == sourceDigest ? null : sourceDigest);
+                    byte[] buffer = new byte[bufferSize];
+                    int limit;
+                    while ((limit = inputStream.read(buffer)) >= 0) {
+                        LOG.debug("upload file " + limit);
+                        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, limit);
+                        uploadTimer.start(Stage.UPLOAD);
+                        try {
+                            while (byteBuffer.hasRemaining()) {
+                                out.write(byteBuffer);
+                            }
+                        } finally {
+                            uploadTimer.stop();
+                        }
+                        uploadTimer.addBytes(Stage.UPLOAD, limit);
+                    }
+                } else {
+                    // plain copies go straight from the source to the destination on this thread
+                    FileCompressEncrypt.copyFile(out, fileMetaData, getDirectBuffer(), producerTimer, uploadTimer);
                 }
+                Object committed = CopyEvents.beginCommit();
+                uploadTimer.start(Stage.UPLOAD);
+                try {
+                    writer.commit();
+                } finally {
+                    uploadTimer.stop();
+                }
+                CopyEvents.commitFile(committed, source, outFileName, uploadTimer.getBytes(Stage.UPLOAD));
             }
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
+            error = String.valueOf(e);
         }
-        try {
-            inputStream.close();
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+        if (prefetchedFile != null) {
+            // the buffer is only free once the writer thread of the stream is done with it
+            prefetchedFile.release();
+        }
+        if (error == null && digesting != null) {
+            // the source digest is complete once the stream has been closed, which waits for the writer thread
+            boolean plain = objectDigest == sourceDigest;
+            byte[] plaintextDigest = sourceDigest.digest();
+            records.recordDigests(source, outFileName,
+                                  plain ? digesting.getCount() : producerTimer.getBytes(Stage.DIGEST),
+                                  plaintextDigest, digesting.getCount(),
+                                  plain ? plaintextDigest : objectDigest.digest());
+        }
+        if (error == null) {
+            records.recordName(fileListData.getRelativePath(), outFileName);
+        }
+        recordFile(source, outFileName, producerTimer, uploadTimer, startTime, System.nanoTime() - startNanos, error);
+    }
+
+    /**
+     * Adds a file to the metrics and the ledger.
+     *
+     * @param consumer The timer of the upload thread, or null if the file was copied on a single thread.
+     * @param error    The reason the file failed, or null if it was copied.
+     */
+    private void recordFile(String source, String output, StageTimer producer, @Nullable StageTimer consumer,
+                            long startTime, long totalNanos, @Nullable String error) {
+        if (consumer == null) {
+            metrics.recordFile(producer, totalNanos, error == null);
+        } else {
+            metrics.recordFile(producer, consumer, totalNanos, error == null);
+        }
+        records.recordTransfer(source, output, producer, consumer, startTime, totalNanos, error);
+    }
+
+    private void sample(FileMetaData fileMetaData) {
+        byte[] sample = new byte[DICTIONARY_SAMPLE_SIZE];
+        int length = 0;
+        try (InputStream in = fileMetaData.getFileSystem().open(fileMetaData.getPath())) {
+            int read;
+            while (length < sample.length && (read = in.read(sample, length, sample.length - length)) > 0) {
+                length += read;
+            }
         } catch (IOException e) {
-            LOG.error(e.getMessage(), e);
+            // the file is reported when it is copied
+            LOG.debug("Failed to sample {}: {}", fileMetaData.getPath(), e.getMessage());
+            return;
         }
+        samples.add(Arrays.copyOf(sample, length));
     }
 
-    @Override
-    public void close(TaskAttemptContext taskAttemptContext) throws IOException, InterruptedException {
-        // attempts to close the other even if one fails
-        // try {
-        //   destFileSystem.close();
-        // } finally {
-        //  safelyCloseSourceFilesystems(sourceFilesystemMap.values().iterator());
-        // }
+    /**
+     * Trains the dictionary on the samples and copies the files that were held back for it. The dictionary is
+     * stored next to the files, encrypted if they are, since the files can't be decompressed without it.
+     */
+    private void trainDictionary() throws IOException, InterruptedException {
+        byte[] dictionary = DictionaryTrainer.train(samples, DictionaryTrainer.MAX_DICTIONARY_SIZE);
+        samples.clear();
+        LOG.info("Trained a dictionary of {} bytes on {} files", dictionary.length, pendingFiles.size());
+        setDictionary(dictionary);
+        List<FileListData> pending = new ArrayList<>(pendingFiles);
+        pendingFiles.clear();
+        for (FileListData fileListData : pending) {
+            write(null, fileListData);
+        }
+    }
+
+    private void setDictionary(byte[] dictionary) throws IOException {
+        options.setDictionary(dictionary);
+        dictionaryId = CompressEncryptOptions.getDictionaryId(dictionary);
+
+        String name = destpath + DICTIONARY_DIRECTORY + dictionaryId + ".dict";
+        String contentType = "application/octet-stream";
+        if (encryption) {
+            name += ".pgp";
+            contentType = "application/pgp-encrypted";
+        }
+        LOG.info("Output Dictionary Name " + name);
+        try (DestinationWriter writer = destination.open(name, contentType, Collections.emptyMap(),
+                                                         dictionary.length)) {
+            // closing the stream would close the writer before it is committed
+            OutputStream out = writer.asOutputStream();
+            if (encryption) {
+                OutputStream encrypted = FileCompressEncrypt.openEncrypted(out, dictionaryId + ".dict", new Date(),
+                                                                           options, new StageTimer());
+                encrypted.write(dictionary);
+                encrypted.close();
+            } else {
+                out.write(dictionary);
+            }
+            writer.commit();
+        }
     }
 
     /**
-     * this method attempts to close every Filesystem object in the list, logs a warning
-     * for each object that fails to close
-     *
-     * @param fs The iterator over all the Filesystems we wish to close.
+     * @return The end of the dictionary at the given path that DEFLATE can refer to.
+     */
+    public static byte[] readDictionary(String path, Configuration conf) throws IOException {
+        Path dictionaryPath = new Path(path);
+        FileSystem fileSystem = dictionaryPath.getFileSystem(conf);
+        long length = fileSystem.getFileStatus(dictionaryPath).getLen();
+        // only the end of a larger dictionary is within reach of DEFLATE
+        int size = (int) Math.min(length, DictionaryTrainer.MAX_DICTIONARY_SIZE);
+        byte[] dictionary = new byte[size];
+        try (FSDataInputStream in = fileSystem.open(dictionaryPath)) {
+            in.readFully(length - size, dictionary);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Appends a small file to the current archive, starting a new one if needed, and commits the archive once it
+     * reaches the target size. A file that can't be read is skipped, a failure to write the archive fails the
+     * task since the members added before are lost with it.
      */
-    private void safelyCloseSourceFilesystems(Iterator<FileSystem> fs) {
-        while (fs.hasNext()) {
+    private void addToBundle(FileListData fileListData, FileMetaData fileMetaData) throws IOException {
+        String memberName = fileListData.getRelativePath();
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        String output = "";
+        String error = "Failed to write the bundle";
+        bundleTimer.setFile(fileMetaData.getPath().toString());
+        try {
+            // the content is read up front so that a file that fails to read doesn't leave a partial member behind
+            int length;
             try {
-                fs.next().close();
+                length = readFully(fileMetaData, (int) fileMetaData.getLength());
             } catch (IOException e) {
-                LOG.warn(e.getMessage());
+                LOG.error(e.getMessage(), e);
+                error = String.valueOf(e);
+                return;
+            }
+            try {
+                if (bundle == null) {
+                    bundle = openBundle();
+                }
+                output = bundle.getName();
+                bundle.add(memberName, bundleBuffer, length, fileMetaData.getLastModifiedTime());
+                if (records.hasManifest()) {
+                    records.recordDigests(fileMetaData.getPath().toString(), output, length, digest(length), -1, null);
+                }
+                records.recordName(memberName, output);
+                if (bundleMembers != null && fileListData.getFileSize() >= 0) {
+                    bundleMembers.add(getOutputName(fileListData), fileListData.getFileSize(),
+                                      fileListData.getModificationTime());
+                }
+                if (bundle.getSize() >= bundleSize) {
+                    commitBundle();
+                }
+            } catch (IOException e) {
+                abortBundle();
+                error = String.valueOf(e);
+                throw e;
+            }
+            error = null;
+        } finally {
+            recordFile(fileMetaData.getPath().toString(), output, bundleTimer, null, startTime,
+                       System.nanoTime() - startNanos, error);
+            bundleTimer.reset();
+        }
+    }
+
+    private int readFully(FileMetaData fileMetaData, int length) throws IOException {
+        if (bundleBuffer.length < length) {
+            bundleBuffer = new byte[length];
+        }
+        bundleTimer.start(Stage.SOURCE_OPEN);
+        FSDataInputStream in;
+        try {
+            in = fileMetaData.getFileSystem().open(fileMetaData.getPath());
+        } finally {
+            bundleTimer.stop();
+        }
+        bundleTimer.addBytes(Stage.SOURCE_OPEN, length);
+        try {
+            bundleTimer.start(Stage.READ);
+            try {
+                // fails if the file was truncated since it was listed
+                in.readFully(0, bundleBuffer, 0, length);
+            } finally {
+                bundleTimer.stop();
+            }
+        } finally {
+            in.close();
+        }
+        bundleTimer.addBytes(Stage.READ, length);
+        return length;
+    }
+
+    private BundleWriter openBundle() throws IOException {
+        String name = String.format("%s%s%s-%05d.tar", destpath, BUNDLE_DIRECTORY, taskId, bundleSequence++);
+        String contentType = "application/x-tar";
+        if (compression) {
+            name += ".gz";
+            contentType = "application/gzip";
+        }
+        if (encryption) {
+            name += ".pgp";
+            contentType = "application/pgp-encrypted";
+        }
+        LOG.info("Output Bundle Name " + name);
+        // the files of a bundle have no objects to tag, so a later run skips them through the bundle's inventory
+        bundleMembers = skipExisting ? new DestinationInventory.Builder() : null;
+        return new BundleWriter(destination, name, contentType, options, bundleTimer,
+                                records.hasManifest() ? DigestManifest.newDigest() : null);
+    }
+
+    private void commitBundle() throws IOException {
+        BundleWriter committing = bundle;
+        bundle = null;
+        // the archive has many sources, its events are for the archive itself
+        bundleTimer.setFile(committing.getName());
+        Object committed = CopyEvents.beginCommit();
+        try {
+            committing.commit();
+        } finally {
+            committing.abort();
+        }
+        CopyEvents.commitFile(committed, committing.getName(), committing.getName(), committing.getSize());
+        LOG.info("Committed bundle {} of {} files", committing.getName(), committing.getMembers());
+        if (records.hasManifest()) {
+            records.recordDigests(null, committing.getName(), -1, null, committing.getObjectSize(),
+                                  committing.getObjectDigest());
+        }
+        if (bundleMembers != null) {
+            bundleInventories.add(new AbstractMap.SimpleImmutableEntry<>(
+                    committing.getName() + BUNDLE_INVENTORY_SUFFIX, bundleMembers.build()));
+            bundleMembers = null;
+        }
+    }
+
+    /**
+     * Writes the inventory of a committed bundle. It is written after the records of the task are committed, since
+     * a later run skips the files it lists without recording them again, and without it the files are copied again
+     * by a later run, which is only slower.
+     */
+    private void writeBundleInventory(String name, DestinationInventory members) {
+        try (DestinationWriter writer = destination.open(name, DestinationInventory.CONTENT_TYPE,
+                                                          Collections.emptyMap())) {
+            members.write(new BufferedOutputStream(writer.asOutputStream()));
+            writer.commit();
+        } catch (IOException e) {
+            LOG.warn("Failed to write the inventory " + name + ", its files will be copied again", e);
+        }
+    }
+
+    /**
+     * @return The digest of the content of a bundled file, which is in the bundle buffer.
+     */
+    private byte[] digest(int length) {
+        MessageDigest digest = DigestManifest.newDigest();
+        bundleTimer.start(Stage.DIGEST);
+        try {
+            digest.update(bundleBuffer, 0, length);
+        } finally {
+            bundleTimer.stop();
+        }
+        bundleTimer.addBytes(Stage.DIGEST, length);
+        return digest.digest();
+    }
+
+    private void abortBundle() {
+        if (bundle != null) {
+            LOG.error("Discarding bundle {} of {} files", bundle.getName(), bundle.getMembers());
+            bundle.abort();
+            bundle = null;
+            bundleMembers = null;
+        }
+    }
+
+    private ByteBuffer getDirectBuffer() {
+        if (directBuffer == null) {
+            directBuffer = ByteBuffer.allocateDirect(Math.max(bufferSize, MIN_DIRECT_BUFFER_SIZE));
+        }
+        return directBuffer;
+    }
+
+    /**
+     * @return The copy statistics of the files written so far.
+     */
+    public CopyMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close(TaskAttemptContext taskAttemptContext) throws IOException, InterruptedException {
+        try {
+            if (!pendingFiles.isEmpty()) {
+                trainDictionary();
+            }
+            while (!prefetched.isEmpty()) {
+                copyNext();
+            }
+            if (bundle != null) {
+                commitBundle();
+                bundleTimer.reset();
+            }
+            // the records are committed last, a task that fails to write its archives leaves none of them
+            // claiming the archives
+            records.commit();
+            for (Map.Entry<String, DestinationInventory> bundleInventory : bundleInventories) {
+                writeBundleInventory(bundleInventory.getKey(), bundleInventory.getValue());
+            }
+        } finally {
+            // files that weren't copied because the task failed
+            for (Map.Entry<FileListData, PrefetchedFile> file : prefetched) {
+                file.getValue().release();
+            }
+            prefetched.clear();
+            if (prefetcher != null) {
+                prefetcher.close();
             }
+            records.abort();
         }
+        metrics.recordConnections(httpCounters.getRequests(), httpCounters.getConnections());
+        metrics.publish();
+        metrics.logSummary(LOG);
+        destination.close();
     }
 }
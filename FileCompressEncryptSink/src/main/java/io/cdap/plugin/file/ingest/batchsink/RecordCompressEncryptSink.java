@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.batchsink;
+
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Plugin;
+import io.cdap.cdap.api.data.batch.Output;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.dataset.lib.KeyValue;
+import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
+import io.cdap.cdap.etl.api.batch.BatchSink;
+import io.cdap.cdap.etl.api.batch.BatchSinkContext;
+import io.cdap.plugin.file.ingest.format.RecordFormats;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.io.NullWritable;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import javax.annotation.Nullable;
+
+/**
+ * Writes records as compressed and encrypted CSV, JSON or Avro objects, through the same codecs and ciphers as the
+ * file sink, so that records from e.g. Wrangler don't have to be staged in local files first. Every task writes
+ * its records into one open object at a time, which rolls at the roll size, see {@link RecordOutputFormat}.
+ */
+@Plugin(type = BatchSink.PLUGIN_TYPE)
+@Name(RecordCompressEncryptSink.NAME)
+@Description("Compress / Encrypt records into rolling CSV, JSON or Avro objects and persist them to GCS.")
+public class RecordCompressEncryptSink extends BatchSink<StructuredRecord, NullWritable, StructuredRecord> {
+    public static final String NAME = "recordCompressEncryptGCSSink";
+
+    private final RecordCompressEncryptSinkConfig config;
+
+    public RecordCompressEncryptSink(RecordCompressEncryptSinkConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+        super.configurePipeline(pipelineConfigurer);
+        Schema inputSchema = pipelineConfigurer.getStageConfigurer().getInputSchema();
+        if (inputSchema != null && !config.containsMacro(RecordCompressEncryptSinkConfig.NAME_FORMAT)) {
+            validateSchema(config.getFormat(), inputSchema);
+        }
+    }
+
+    @Override
+    public void prepareRun(BatchSinkContext context) throws Exception {
+        fileCompressEncryptGCSBatchSink.validate(config, NAME);
+        if (config.compressWithDictionary()) {
+            throw new IllegalArgumentException(String.format("DEFLATE_DICTIONARY compression is trained on whole files and is not supported by %s plugin. Please correct the same.", NAME));
+        }
+        if (StringUtils.isNotEmpty(config.getRollSize()) && !StringUtils.isNumeric(config.getRollSize())) {
+            throw new IllegalArgumentException(String.format("Roll size must be a number of bytes for %s plugin. Please correct the same.", NAME));
+        }
+        Schema inputSchema = context.getInputSchema();
+        if (inputSchema != null) {
+            validateSchema(config.getFormat(), inputSchema);
+        } else if (!RecordFormats.JSON.equals(config.getFormat())) {
+            throw new IllegalArgumentException(String.format("The %s format needs the input schema, only json can be written without it for %s plugin. Please correct the same.", config.getFormat(), NAME));
+        }
+
+        // a rerun of the same logical time is written to the same path and replaces the markers, objects of the
+        // earlier run that the new markers don't list are left behind
+        String path = config.getDestPath(LocalDateTime.ofInstant(Instant.ofEpochMilli(context.getLogicalStartTime()),
+                                                                 ZoneId.systemDefault()));
+        if (!path.isEmpty() && !path.endsWith("/")) {
+            path += "/";
+        }
+        context.addOutput(Output.of("RecordOutputFormatProvider",
+                                    new RecordOutputFormatProvider(config, context.getStageName(), path,
+                                                                   inputSchema)));
+    }
+
+    @Override
+    public void initialize(BatchRuntimeContext context) throws Exception {
+        super.initialize(context);
+        CopyMetrics.setStageMetrics(context.getStageName(), context.getMetrics());
+    }
+
+    @Override
+    public void transform(StructuredRecord input, Emitter<KeyValue<NullWritable, StructuredRecord>> emitter) {
+        emitter.emit(new KeyValue<>(NullWritable.get(), input));
+    }
+
+    private static void validateSchema(String format, Schema schema) {
+        try {
+            RecordFormats.validate(format, schema);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("%s for %s plugin. Please correct the same.", e.getMessage(), NAME), e);
+        }
+    }
+
+    /**
+     * Adds the output path, the format and the roll size to the configuration of the file sink.
+     */
+    public static class RecordOutputFormatProvider extends fileCompressEncryptGCSBatchSink.FileCopyOutputFormatProvider {
+
+        public RecordOutputFormatProvider(RecordCompressEncryptSinkConfig config, String stageName, String path,
+                                          @Nullable Schema schema) {
+            super(config, stageName);
+            StreamOutputFormat.setBatchPath(conf, path);
+            StreamOutputFormat.setRollSize(conf, StringUtils.isEmpty(config.getRollSize())
+                    ? RecordCompressEncryptSinkConfig.DEFAULT_ROLL_SIZE : Long.parseLong(config.getRollSize()));
+            RecordOutputFormat.setRecordFormat(conf, config.getFormat());
+            RecordOutputFormat.setRecordSchema(conf, schema == null ? null : schema.toString());
+        }
+
+        @Override
+        public String getOutputFormatClassName() {
+            return RecordOutputFormat.class.getName();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.batchsink;
+
+import com.google.common.base.Strings;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.plugin.file.ingest.format.RecordFormats;
+
+import javax.annotation.Nullable;
+
+/**
+ * Config of the {@link RecordCompressEncryptSink}. The compression, encryption and destination properties are the
+ * ones of the file sink, the bundle, dictionary, ledger, manifest, lookahead, object naming and existing objects
+ * properties don't apply to records.
+ */
+public class RecordCompressEncryptSinkConfig extends fileCompressEncryptGCSBatchSinkConfig {
+    public static final String NAME_FORMAT = "format";
+    public static final String NAME_ROLL_SIZE = "rollSize";
+    public static final long DEFAULT_ROLL_SIZE = 128L << 20;
+
+    @Name(NAME_FORMAT)
+    @Description("The format the records are written in: csv, json or avro. The default is csv.")
+    @Nullable
+    @Macro
+    protected String format;
+
+    @Name(NAME_ROLL_SIZE)
+    @Description("The size in bytes at which an object is closed and a new one started. The default is " +
+            "134217728 (128 MB).")
+    @Nullable
+    @Macro
+    protected String rollSize;
+
+    public String getFormat() {
+        return Strings.isNullOrEmpty(format) ? RecordFormats.CSV : format.toLowerCase();
+    }
+
+    @Nullable
+    public String getRollSize() {
+        return rollSize;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.batchsink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.file.ingest.format.RecordFormat;
+import io.cdap.plugin.file.ingest.format.RecordFormats;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The OutputFormat of the {@link RecordCompressEncryptSink}. The records are written in rolling objects with the
+ * same names, markers and {@link #SUCCESS_NAME} as the messages of a stream, see {@link StreamOutputFormat}, in
+ * the format of {@link RecordFormats}.
+ */
+public class RecordOutputFormat extends StreamOutputFormat {
+    public static final String NAME_RECORD_FORMAT = "record.format";
+    public static final String NAME_RECORD_SCHEMA = "record.schema";
+
+    public static void setRecordFormat(Map<String, String> conf, String value) {
+        conf.put(NAME_RECORD_FORMAT, value);
+    }
+
+    /**
+     * @param value The schema of the records in JSON, or null if only the records know their schema.
+     */
+    public static void setRecordSchema(Map<String, String> conf, String value) {
+        if (value != null) {
+            conf.put(NAME_RECORD_SCHEMA, value);
+        }
+    }
+
+    @Override
+    public RecordWriter getRecordWriter(TaskAttemptContext taskAttemptContext) throws IOException {
+        Configuration conf = taskAttemptContext.getConfiguration();
+        String schema = conf.get(NAME_RECORD_SCHEMA);
+        RecordFormat<StructuredRecord> format = RecordFormats.create(
+                conf.get(NAME_RECORD_FORMAT), schema == null ? null : Schema.parseJson(schema));
+        return new StreamRecordWriter<>(conf, taskAttemptContext.getTaskAttemptID().getTaskID().getId(), format);
+    }
+}
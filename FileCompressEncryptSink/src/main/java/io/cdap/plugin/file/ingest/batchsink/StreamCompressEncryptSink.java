@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.batchsink;
+
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Plugin;
+import io.cdap.cdap.api.data.batch.Output;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.dataset.lib.KeyValue;
+import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
+import io.cdap.cdap.etl.api.batch.BatchSink;
+import io.cdap.cdap.etl.api.batch.BatchSinkContext;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.io.NullWritable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lands the messages of a stream, e.g. from Kafka, as compressed and encrypted objects, through the same codecs and
+ * ciphers as the file sink. In a streaming pipeline the sink runs once per batch, and every batch is written under
+ * a path of its own that is only complete once it has a {@link StreamOutputFormat#SUCCESS_NAME} object, see
+ * {@link StreamOutputFormat}.
+ */
+@Plugin(type = BatchSink.PLUGIN_TYPE)
+@Name(StreamCompressEncryptSink.NAME)
+@Description("Compress / Encrypt the messages of a stream into rolling objects and persist them to GCS.")
+public class StreamCompressEncryptSink extends BatchSink<StructuredRecord, NullWritable, byte[]> {
+    public static final String NAME = "streamCompressEncryptGCSSink";
+
+    private final StreamCompressEncryptSinkConfig config;
+    private String messageField;
+
+    public StreamCompressEncryptSink(StreamCompressEncryptSinkConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+        super.configurePipeline(pipelineConfigurer);
+        Schema inputSchema = pipelineConfigurer.getStageConfigurer().getInputSchema();
+        if (inputSchema == null || config.containsMacro(StreamCompressEncryptSinkConfig.NAME_MESSAGE_FIELD)) {
+            return;
+        }
+        Schema.Field field = inputSchema.getField(config.getMessageField());
+        if (field == null) {
+            throw new IllegalArgumentException(String.format("Message field %s is not in the input schema of %s plugin. Please correct the same.", config.getMessageField(), NAME));
+        }
+        Schema schema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+        if (schema.getType() != Schema.Type.STRING && schema.getType() != Schema.Type.BYTES) {
+            throw new IllegalArgumentException(String.format("Message field %s must be a string or bytes for %s plugin. Please correct the same.", config.getMessageField(), NAME));
+        }
+    }
+
+    // in a streaming pipeline prepareRun is called before every batch, with the time of the batch as the logical
+    // start time
+    @Override
+    public void prepareRun(BatchSinkContext context) throws Exception {
+        fileCompressEncryptGCSBatchSink.validate(config, NAME);
+        if (config.compressWithDictionary()) {
+            throw new IllegalArgumentException(String.format("DEFLATE_DICTIONARY compression is trained on whole files and is not supported by %s plugin. Please correct the same.", NAME));
+        }
+        if (StringUtils.isNotEmpty(config.getRollSize()) && !StringUtils.isNumeric(config.getRollSize())) {
+            throw new IllegalArgumentException(String.format("Roll size must be a number of bytes for %s plugin. Please correct the same.", NAME));
+        }
+        if (StringUtils.isNotEmpty(config.getRollAge()) && !StringUtils.isNumeric(config.getRollAge())) {
+            throw new IllegalArgumentException(String.format("Roll age must be a number of seconds for %s plugin. Please correct the same.", NAME));
+        }
+
+        // a replayed batch has the same time, so it is written to the same path
+        long batchTime = context.getLogicalStartTime();
+        String batchPath = config.getDestPath(
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(batchTime), ZoneId.systemDefault()));
+        if (!batchPath.isEmpty() && !batchPath.endsWith("/")) {
+            batchPath += "/";
+        }
+        batchPath += batchTime + "/";
+        context.addOutput(Output.of("StreamOutputFormatProvider",
+                                    new StreamOutputFormatProvider(config, context.getStageName(), batchPath)));
+    }
+
+    @Override
+    public void initialize(BatchRuntimeContext context) throws Exception {
+        super.initialize(context);
+        CopyMetrics.setStageMetrics(context.getStageName(), context.getMetrics());
+        messageField = config.getMessageField();
+    }
+
+    @Override
+    public void transform(StructuredRecord input, Emitter<KeyValue<NullWritable, byte[]>> emitter) {
+        Object message = input.get(messageField);
+        if (message == null) {
+            return;
+        }
+        byte[] bytes;
+        if (message instanceof String) {
+            bytes = ((String) message).getBytes(StandardCharsets.UTF_8);
+        } else if (message instanceof ByteBuffer) {
+            ByteBuffer buffer = (ByteBuffer) message;
+            bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+        } else {
+            bytes = (byte[]) message;
+        }
+        emitter.emit(new KeyValue<>(null, bytes));
+    }
+
+    /**
+     * Adds the batch path and the roll limits to the configuration of the file sink.
+     */
+    public static class StreamOutputFormatProvider extends fileCompressEncryptGCSBatchSink.FileCopyOutputFormatProvider {
+
+        public StreamOutputFormatProvider(StreamCompressEncryptSinkConfig config, String stageName,
+                                          String batchPath) {
+            super(config, stageName);
+            StreamOutputFormat.setBatchPath(conf, batchPath);
+            StreamOutputFormat.setRollSize(conf, StringUtils.isEmpty(config.getRollSize())
+                    ? StreamCompressEncryptSinkConfig.DEFAULT_ROLL_SIZE : Long.parseLong(config.getRollSize()));
+            StreamOutputFormat.setRollAge(conf, StringUtils.isEmpty(config.getRollAge())
+                    ? 0 : TimeUnit.SECONDS.toMillis(Long.parseLong(config.getRollAge())));
+        }
+
+        @Override
+        public String getOutputFormatClassName() {
+            return StreamOutputFormat.class.getName();
+        }
+    }
+}
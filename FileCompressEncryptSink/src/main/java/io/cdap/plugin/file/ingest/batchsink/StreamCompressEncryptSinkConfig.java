@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.batchsink;
+
+import com.google.common.base.Strings;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+import io.cdap.cdap.api.annotation.Name;
+
+import javax.annotation.Nullable;
+
+/**
+ * Config of the {@link StreamCompressEncryptSink}. The compression, encryption and destination properties are the
+ * ones of the file sink, the bundle, dictionary, ledger, manifest, lookahead, object naming and existing objects
+ * properties don't apply to a stream.
+ */
+public class StreamCompressEncryptSinkConfig extends fileCompressEncryptGCSBatchSinkConfig {
+    public static final String NAME_MESSAGE_FIELD = "messageField";
+    public static final String NAME_ROLL_SIZE = "rollSize";
+    public static final String NAME_ROLL_AGE = "rollAge";
+    public static final String DEFAULT_MESSAGE_FIELD = "message";
+    public static final long DEFAULT_ROLL_SIZE = 128L << 20;
+
+    @Name(NAME_MESSAGE_FIELD)
+    @Description("The field of the input records that holds the message, a string or bytes. Messages are " +
+            "written one per line. The default is 'message', the field of the Kafka source.")
+    @Nullable
+    @Macro
+    protected String messageField;
+
+    @Name(NAME_ROLL_SIZE)
+    @Description("The size in bytes at which an object is closed and a new one started. The default is " +
+            "134217728 (128 MB).")
+    @Nullable
+    @Macro
+    protected String rollSize;
+
+    @Name(NAME_ROLL_AGE)
+    @Description("The number of seconds after which an object is closed and a new one started, for batch " +
+            "intervals longer than the data should wait. Objects never stay open past the end of a batch. " +
+            "If not specified, objects are only closed by size and at the end of the batch.")
+    @Nullable
+    @Macro
+    protected String rollAge;
+
+    public String getMessageField() {
+        return Strings.isNullOrEmpty(messageField) ? DEFAULT_MESSAGE_FIELD : messageField;
+    }
+
+    @Nullable
+    public String getRollSize() {
+        return rollSize;
+    }
+
+    @Nullable
+    public String getRollAge() {
+        return rollAge;
+    }
+}
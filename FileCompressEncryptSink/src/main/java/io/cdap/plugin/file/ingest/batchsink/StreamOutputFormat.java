@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.batchsink;
+
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.format.LineRecordFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The OutputFormat of the {@link StreamCompressEncryptSink}, which writes one batch of a stream.
+ *
+ * Every task writes the messages of its partition into rolling objects named
+ * {@code <batch path>part-<partition>-<sequence>}, and once they are all committed, a marker object
+ * {@code <batch path>_part-<partition>} that lists them one per line. Once every task is done, the job writes
+ * {@link #SUCCESS_NAME} into the batch path. A batch is complete when it has {@link #SUCCESS_NAME}, and its data
+ * is the objects that the markers list. A batch that is replayed rewrites the same names and replaces the
+ * markers, but the objects of an earlier attempt beyond the ones it writes again are left in place, so only
+ * readers that follow the markers never see a message twice.
+ */
+public class StreamOutputFormat extends FileCopyOutputFormat {
+    public static final String NAME_BATCH_PATH = "stream.batch.path";
+    public static final String NAME_ROLL_SIZE = "roll.size";
+    public static final String NAME_ROLL_AGE = "roll.age";
+    public static final String SUCCESS_NAME = "_SUCCESS";
+    public static final String PART_PREFIX = "part-";
+    public static final String MARKER_PREFIX = "_part-";
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamOutputFormat.class);
+
+    public static void setBatchPath(Map<String, String> conf, String value) {
+        conf.put(NAME_BATCH_PATH, value);
+    }
+
+    public static void setRollSize(Map<String, String> conf, long value) {
+        conf.put(NAME_ROLL_SIZE, String.valueOf(value));
+    }
+
+    /**
+     * @param value The age in milliseconds, or 0 for no limit.
+     */
+    public static void setRollAge(Map<String, String> conf, long value) {
+        conf.put(NAME_ROLL_AGE, String.valueOf(value));
+    }
+
+    @Override
+    public OutputCommitter getOutputCommitter(TaskAttemptContext taskAttemptContext) {
+        return new OutputCommitter() {
+            @Override
+            public void setupJob(JobContext jobContext) throws IOException {
+                // no op
+            }
+
+            @Override
+            public void commitJob(JobContext jobContext) throws IOException {
+                // the tasks have committed their objects and markers when the job commits
+                Configuration conf = jobContext.getConfiguration();
+                String name = conf.get(NAME_BATCH_PATH) + SUCCESS_NAME;
+                try (Destination destination = FileCopyRecordWriter.createDestination(conf);
+                     DestinationWriter writer = destination.open(name, "text/plain", Collections.emptyMap())) {
+                    writer.commit();
+                }
+                LOG.info("Committed batch {}", conf.get(NAME_BATCH_PATH));
+            }
+
+            @Override
+            public void setupTask(TaskAttemptContext taskAttemptContext) throws IOException {
+                // no op
+            }
+
+            @Override
+            public boolean needsTaskCommit(TaskAttemptContext taskAttemptContext) throws IOException {
+                // the record writer commits its objects when it is closed
+                return false;
+            }
+
+            @Override
+            public void commitTask(TaskAttemptContext taskAttemptContext) throws IOException {
+                // no op
+            }
+
+            @Override
+            public void abortTask(TaskAttemptContext taskAttemptContext) throws IOException {
+                // no op
+            }
+        };
+    }
+
+    @Override
+    public RecordWriter getRecordWriter(TaskAttemptContext taskAttemptContext) throws IOException {
+        return new StreamRecordWriter<>(taskAttemptContext.getConfiguration(),
+                                        taskAttemptContext.getTaskAttemptID().getTaskID().getId(),
+                                        new LineRecordFormat());
+    }
+}
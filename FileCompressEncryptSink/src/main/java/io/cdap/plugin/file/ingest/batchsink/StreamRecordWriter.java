@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.batchsink;
+
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.encryption.PGPCertUtil;
+import io.cdap.plugin.file.ingest.format.RecordFormat;
+import io.cdap.plugin.file.ingest.http.HttpCounters;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
+import io.cdap.plugin.file.ingest.rolling.RollingObjectWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes the messages or records of one partition of a batch into rolling compressed and encrypted objects, see
+ * {@link StreamOutputFormat}. The partition has exactly one open object at a time.
+ *
+ * @param <T> The type of the records, as written by the format.
+ */
+public class StreamRecordWriter<T> extends RecordWriter<NullWritable, T> {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamRecordWriter.class);
+
+    private final Destination destination;
+    private final RollingObjectWriter<T> writer;
+    private final String markerName;
+    private final CopyMetrics metrics;
+    // the connections are shared by the tasks of the executor, the transport of the task counts its own requests
+    private final HttpCounters httpCounters = new HttpCounters();
+
+    /**
+     * @param partition The partition of the batch that this task writes.
+     * @param format    The format that the records are written in.
+     */
+    public StreamRecordWriter(Configuration conf, int partition, RecordFormat<T> format) throws IOException {
+        this(conf, partition, format, null);
+    }
+
+    /**
+     * @param destination The destination to write to, or null to create it from the configuration.
+     */
+    public StreamRecordWriter(Configuration conf, int partition, RecordFormat<T> format,
+                              Destination destination) throws IOException {
+        this.metrics = new CopyMetrics(conf.get(FileCopyOutputFormat.NAME_STAGE_NAME));
+        boolean compression = !"NONE".equals(conf.get(FileCopyOutputFormat.NAME_FILECOMPRESSION));
+        boolean encryption = !"NONE".equals(conf.get(FileCopyOutputFormat.NAME_FILEENCRYPTION));
+        List<PGPPublicKey> encKeys = Collections.emptyList();
+        if (encryption) {
+            try {
+                encKeys = PGPCertUtil.readPublicKeys(conf.get(FileCopyOutputFormat.NAME_PGP_PUBKEY));
+            } catch (PGPException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        String size = conf.get(FileCopyOutputFormat.NAME_BUFFER_SIZE, "");
+        int bufferSize = StringUtils.isNumeric(size) && Integer.parseInt(size) > 0 ? Integer.parseInt(size) : 1024;
+        String cipher = conf.get(FileCopyOutputFormat.NAME_PGP_CIPHER, "");
+        CompressEncryptOptions options = new CompressEncryptOptions(compression, encryption, encKeys, bufferSize)
+                .setCipher(CompressEncryptOptions.getCipher(cipher.isEmpty() ? "CAST5" : cipher))
+                .setSigningKey(encryption ? FileCopyRecordWriter.readSigningKey(conf) : null);
+
+        String batchPath = conf.get(StreamOutputFormat.NAME_BATCH_PATH);
+        String partitionName = String.format("%05d", partition);
+        this.destination = destination == null ? FileCopyRecordWriter.createDestination(conf, httpCounters)
+                : destination;
+        this.markerName = batchPath + StreamOutputFormat.MARKER_PREFIX + partitionName;
+        this.writer = new RollingObjectWriter<>(
+                this.destination, batchPath + StreamOutputFormat.PART_PREFIX + partitionName + "-", format,
+                options, conf.getLong(StreamOutputFormat.NAME_ROLL_SIZE, 0),
+                conf.getLong(StreamOutputFormat.NAME_ROLL_AGE, 0), metrics);
+        LOG.info("Writing partition {} of batch {}", partition, batchPath);
+    }
+
+    @Override
+    public void write(NullWritable key, T record) throws IOException {
+        writer.write(record);
+    }
+
+    /**
+     * @return The statistics of the objects committed so far.
+     */
+    public CopyMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close(TaskAttemptContext taskAttemptContext) throws IOException {
+        try {
+            List<String> names = writer.commit();
+            // the marker is committed last, a partition that fails leaves no marker claiming its objects. It
+            // replaces the marker of an earlier attempt, whose objects it doesn't list are leftovers
+            if (!names.isEmpty()) {
+                try (DestinationWriter markerWriter = destination.open(markerName, "text/plain",
+                                                                       Collections.emptyMap())) {
+                    markerWriter.asOutputStream().write(
+                            (String.join("\n", names) + "\n").getBytes(StandardCharsets.UTF_8));
+                    markerWriter.commit();
+                }
+                LOG.info("Committed marker {} of {} objects", markerName, names.size());
+            }
+        } finally {
+            writer.abort();
+        }
+        metrics.recordConnections(httpCounters.getRequests(), httpCounters.getConnections());
+        metrics.publish();
+        metrics.logSummary(LOG);
+        destination.close();
+    }
+}
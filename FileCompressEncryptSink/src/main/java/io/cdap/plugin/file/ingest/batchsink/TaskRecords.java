@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.batchsink;
+
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.ledger.TransferLedger;
+import io.cdap.plugin.file.ingest.manifest.DigestManifest;
+import io.cdap.plugin.file.ingest.manifest.NameMapping;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import org.apache.hadoop.conf.Configuration;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import javax.annotation.Nullable;
+
+/**
+ * The records a copy task keeps next to its objects: the {@link TransferLedger}, the {@link DigestManifest} and
+ * the {@link NameMapping}, each one only if it is enabled, named after the task.
+ *
+ * The records describe the copy and don't fail the files, so a record that can't be written is discarded and the
+ * others go on. They are committed after the objects they describe, so a task that fails leaves none of them
+ * claiming its objects.
+ */
+public class TaskRecords {
+    private static final Logger LOG = LoggerFactory.getLogger(TaskRecords.class);
+    private static final String LEDGER_DIRECTORY = "ledger/";
+    private static final String MANIFEST_DIRECTORY = "manifests/";
+    private static final String NAMES_DIRECTORY = "names/";
+
+    private final String codecName;
+    private final String cipherName;
+    private TransferLedger ledger;
+    private DigestManifest manifest;
+    private NameMapping nameMapping;
+
+    /**
+     * @param prefix      The path the records are written under, each kind into a directory of its own.
+     * @param taskId      The id of the task, which names its records.
+     * @param signingKey  The key the manifest is signed with, or null to leave it unsigned.
+     * @param hashedNames Whether the objects have hashed names, which are mapped back to the files.
+     * @throws IOException if a record can't be opened.
+     */
+    public TaskRecords(Configuration conf, Destination destination, String prefix, String taskId,
+                       CompressEncryptOptions options, @Nullable PGPPrivateKey signingKey, boolean hashedNames)
+            throws IOException {
+        String cipher = conf.get(FileCopyOutputFormat.NAME_PGP_CIPHER, "");
+        codecName = conf.get(FileCopyOutputFormat.NAME_FILECOMPRESSION);
+        cipherName = options.isEncrypt() ? (cipher.isEmpty() ? "CAST5" : cipher) : "NONE";
+
+        if ("AVRO".equals(conf.get(FileCopyOutputFormat.NAME_LEDGER_FORMAT, ""))) {
+            ledger = new TransferLedger(destination, prefix + LEDGER_DIRECTORY + taskId + ".avro");
+            LOG.info("Ledger Name - " + ledger.getName());
+        }
+        if ("SHA256".equals(conf.get(FileCopyOutputFormat.NAME_MANIFEST, ""))) {
+            manifest = new DigestManifest(destination, prefix + MANIFEST_DIRECTORY + taskId + ".json", signingKey,
+                                          options.getHashAlgorithm());
+            LOG.info("Manifest Name - " + manifest.getName());
+        }
+        if (hashedNames) {
+            nameMapping = new NameMapping(destination, prefix + NAMES_DIRECTORY + taskId + ".json");
+            LOG.info("Name Mapping - " + nameMapping.getName());
+        }
+    }
+
+    /**
+     * @return Whether files and archives need digests for the manifest.
+     */
+    public boolean hasManifest() {
+        return manifest != null;
+    }
+
+    /**
+     * Adds a file to the name mapping, if objects have hashed names.
+     */
+    public void recordName(String relativePath, String output) {
+        if (nameMapping == null) {
+            return;
+        }
+        try {
+            nameMapping.record(relativePath, output);
+        } catch (IOException e) {
+            LOG.error("Discarding name mapping " + nameMapping.getName(), e);
+            nameMapping.abort();
+            nameMapping = null;
+        }
+    }
+
+    /**
+     * Adds a file or an archive to the manifest, see {@link DigestManifest#record}.
+     */
+    public void recordDigests(@Nullable String source, String output, long plaintextSize,
+                              @Nullable byte[] plaintextDigest, long objectSize, @Nullable byte[] objectDigest) {
+        if (manifest == null) {
+            return;
+        }
+        try {
+            manifest.record(source, output, plaintextSize, plaintextDigest, objectSize, objectDigest);
+        } catch (IOException e) {
+            LOG.error("Discarding manifest " + manifest.getName(), e);
+            manifest.abort();
+            manifest = null;
+        }
+    }
+
+    /**
+     * Adds a file to the ledger, see {@link TransferLedger#record}.
+     */
+    public void recordTransfer(String source, String output, StageTimer producer, @Nullable StageTimer consumer,
+                               long startTime, long totalNanos, @Nullable String error) {
+        if (ledger == null) {
+            return;
+        }
+        try {
+            ledger.record(source, output, codecName, cipherName, producer, consumer, startTime, totalNanos, error);
+        } catch (IOException e) {
+            LOG.error("Discarding ledger " + ledger.getName(), e);
+            ledger.abort();
+            ledger = null;
+        }
+    }
+
+    /**
+     * Commits the records once every object of the task is committed.
+     */
+    public void commit() throws IOException {
+        if (ledger != null) {
+            ledger.commit();
+            LOG.info("Committed ledger {} of {} files", ledger.getName(), ledger.getRecords());
+        }
+        if (manifest != null) {
+            manifest.commit();
+            LOG.info("Committed manifest {} of {} lines", manifest.getName(), manifest.getRecords());
+        }
+        if (nameMapping != null) {
+            nameMapping.commit();
+            LOG.info("Committed name mapping {} of {} files", nameMapping.getName(), nameMapping.getRecords());
+        }
+    }
+
+    /**
+     * Discards the records that were not committed.
+     */
+    public void abort() {
+        if (ledger != null) {
+            ledger.abort();
+        }
+        if (manifest != null) {
+            manifest.abort();
+        }
+        if (nameMapping != null) {
+            nameMapping.abort();
+        }
+    }
+}
@@ -13,6 +13,8 @@ import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
 import io.cdap.cdap.etl.api.batch.BatchSink;
 import io.cdap.cdap.etl.api.batch.BatchSinkContext;
 import io.cdap.plugin.file.ingest.common.FileListData;
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.hadoop.io.NullWritable;
@@ -30,6 +32,14 @@ public class fileCompressEncryptGCSBatchSink extends BatchSink<StructuredRecord,
     public static final String NAME = "fileCompressEncryptGCSBatchSink";
 
     private static final Logger LOG = LoggerFactory.getLogger(fileCompressEncryptGCSBatchSink.class);
+    // bundled files are held in memory while they are added to an archive
+    private static final long MAX_BUNDLE_THRESHOLD = 64L << 20;
+    // every file that is ahead holds a thread, a buffer and an upload session
+    private static final int MAX_LOOKAHEAD = 64;
+    // single request uploads are held in memory whole
+    private static final long MAX_SINGLE_REQUEST_UPLOAD_SIZE = 64L << 20;
+    private static final long MAX_UPLOAD_CHUNK_SIZE = 256L << 20;
+    private static final long MAX_HTTP_CONNECTIONS = 1024;
 
     private final fileCompressEncryptGCSBatchSinkConfig config;
 
@@ -48,35 +58,106 @@ public class fileCompressEncryptGCSBatchSink extends BatchSink<StructuredRecord,
     // as well as any arguments the input should use. It is called by the client that is submitting the batch job.
     @Override
     public void prepareRun(BatchSinkContext context) throws Exception {
-        context.addOutput(Output.of("FileCopyOutputFormatProvider", new FileCopyOutputFormatProvider(config)));
+        context.addOutput(Output.of("FileCopyOutputFormatProvider", new FileCopyOutputFormatProvider(config, context.getStageName())));
 
+        validate(config, NAME);
+
+        if (StringUtils.isNotEmpty(config.getDictionaryPath()) && !config.compressWithDictionary()) {
+            throw new IllegalArgumentException(String.format("Dictionary path is only used with DEFLATE_DICTIONARY compression for %s plugin. Please correct the same.", NAME));
+        }
+        if (config.bundleFiles()) {
+            if (!StringUtils.isNumeric(config.getBundleThreshold())
+                    || NumberUtils.toLong(config.getBundleThreshold(), 0) > MAX_BUNDLE_THRESHOLD) {
+                throw new IllegalArgumentException(String.format("Bundle threshold must be a number of bytes up to %d for %s plugin. Please correct the same.", MAX_BUNDLE_THRESHOLD, NAME));
+            }
+            if (StringUtils.isNotEmpty(config.getBundleSize()) && !StringUtils.isNumeric(config.getBundleSize())) {
+                throw new IllegalArgumentException(String.format("Bundle size must be a number of bytes for %s plugin. Please correct the same.", NAME));
+            }
+        }
+        if (StringUtils.isNotEmpty(config.getLookahead())
+                && (!StringUtils.isNumeric(config.getLookahead())
+                    || NumberUtils.toLong(config.getLookahead(), Long.MAX_VALUE) > MAX_LOOKAHEAD)) {
+            throw new IllegalArgumentException(String.format("Lookahead must be a number of files up to %d for %s plugin. Please correct the same.", MAX_LOOKAHEAD, NAME));
+        }
+        if (!config.isValidObjectNaming()) {
+            throw new IllegalArgumentException(String.format("Invalid object naming %s for %s plugin. Please correct the same.", config.getObjectNaming(), NAME));
+        }
+        if (!config.isValidExistingObjects()) {
+            throw new IllegalArgumentException(String.format("Invalid existing objects %s for %s plugin. Please correct the same.", config.getExistingObjects(), NAME));
+        }
+    }
+
+    /**
+     * Checks the properties that every sink writing through {@link FileCopyOutputFormat} shares: encryption, the
+     * path, the buffer size and the proxy.
+     *
+     * @param name The name of the plugin, for the error messages.
+     */
+    static void validate(fileCompressEncryptGCSBatchSinkConfig config, String name) {
         if (config.encryptFile() && StringUtils.isEmpty(config.getPublicKeyPath())) {
-            throw new IllegalArgumentException(String.format("Encryption enabled and PGP Public Key path is missing for %s plugin. Please provide the same.", NAME));
+            throw new IllegalArgumentException(String.format("Encryption enabled and PGP Public Key path is missing for %s plugin. Please provide the same.", name));
+        }
+        if (!config.encryptFile() && !config.writesManifest() && StringUtils.isNotEmpty(config.getSigningKeyPath())) {
+            throw new IllegalArgumentException(String.format("Objects are signed as part of PGP encryption, a signing key needs PGP encryption or a manifest for %s plugin. Please correct the same.", name));
+        }
+        if (config.encryptFile()) {
+            try {
+                CompressEncryptOptions.getCipher(config.getCipher());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Invalid cipher %s for %s plugin. Please correct the same.", config.getCipher(), name));
+            }
         }
         if (StringUtils.isNotEmpty(config.getSuffix())) {
             try {
                 DateTimeFormatter.ofPattern(config.getSuffix());
             } catch (Exception e) {
-                throw new IllegalArgumentException(String.format("Suffix has a invalid date format for %s plugin. Please correct the same.", NAME));
+                throw new IllegalArgumentException(String.format("Suffix has a invalid date format for %s plugin. Please correct the same.", name));
             }
         }
+        if (!config.isValidDestinationType()) {
+            throw new IllegalArgumentException(String.format("Invalid destination type %s for %s plugin. Please correct the same.", config.getDestinationType(), name));
+        }
+        if (!config.writesToGCS() && StringUtils.startsWith(config.getPath(), fileCompressEncryptGCSBatchSinkConfig.SCHEME)) {
+            throw new IllegalArgumentException(String.format("Path must be a filesystem path when the destination type is %s for %s plugin. Please correct the same.", config.getDestinationType(), name));
+        }
         if (!NumberUtils.isCreatable(config.getBufferSize())) {
-            throw new IllegalArgumentException(String.format("Buffer size must be a numeric value for %s plugin. Please provide the same.", NAME));
+            throw new IllegalArgumentException(String.format("Buffer size must be a numeric value for %s plugin. Please provide the same.", name));
+        }
+        if (StringUtils.isNotEmpty(config.getSingleRequestUploadSize())
+                && (!StringUtils.isNumeric(config.getSingleRequestUploadSize())
+                    || NumberUtils.toLong(config.getSingleRequestUploadSize(), Long.MAX_VALUE) > MAX_SINGLE_REQUEST_UPLOAD_SIZE)) {
+            throw new IllegalArgumentException(String.format("Single request upload size must be a number of bytes up to %d for %s plugin. Please correct the same.", MAX_SINGLE_REQUEST_UPLOAD_SIZE, name));
+        }
+        if (StringUtils.isNotEmpty(config.getUploadChunkSize())
+                && (!StringUtils.isNumeric(config.getUploadChunkSize())
+                    || NumberUtils.toLong(config.getUploadChunkSize(), Long.MAX_VALUE) > MAX_UPLOAD_CHUNK_SIZE)) {
+            throw new IllegalArgumentException(String.format("Upload chunk size must be a number of bytes up to %d for %s plugin. Please correct the same.", MAX_UPLOAD_CHUNK_SIZE, name));
+        }
+        if (StringUtils.isNotEmpty(config.getHttpConnections())
+                && (!StringUtils.isNumeric(config.getHttpConnections())
+                    || NumberUtils.toLong(config.getHttpConnections(), Long.MAX_VALUE) > MAX_HTTP_CONNECTIONS
+                    || NumberUtils.toLong(config.getHttpConnections(), 0) == 0)) {
+            throw new IllegalArgumentException(String.format("HTTP connections must be a number from 1 to %d for %s plugin. Please correct the same.", MAX_HTTP_CONNECTIONS, name));
+        }
+        if (StringUtils.isNotEmpty(config.getWarmUpConnections())
+                && (!StringUtils.isNumeric(config.getWarmUpConnections())
+                    || NumberUtils.toLong(config.getWarmUpConnections(), Long.MAX_VALUE) > MAX_HTTP_CONNECTIONS)) {
+            throw new IllegalArgumentException(String.format("Warm up connections must be a number up to %d for %s plugin. Please correct the same.", MAX_HTTP_CONNECTIONS, name));
         }
 
         if (config.useProxy() && StringUtils.isEmpty(config.getProxy())) {
-            throw new IllegalArgumentException(String.format("Proxy host and port is required.", NAME));
+            throw new IllegalArgumentException(String.format("Proxy host and port is required.", name));
         }
 
 
         if (StringUtils.isNotEmpty(config.getProxy())) {
             String[] proxyComponents = StringUtils.splitByWholeSeparatorPreserveAllTokens(config.getProxy(), ":");
             if (proxyComponents.length != 2) {
-                throw new IllegalArgumentException(String.format("Invalid proxy value for %s plugin. It must be in \"host:port\" format. Please provide the same.", NAME));
+                throw new IllegalArgumentException(String.format("Invalid proxy value for %s plugin. It must be in \"host:port\" format. Please provide the same.", name));
             }
             int port = NumberUtils.toInt(proxyComponents[1], 0);
             if (port == 0) {
-                throw new IllegalArgumentException(String.format("Invalid proxy port value for %s plugin. Please correct the same.", NAME));
+                throw new IllegalArgumentException(String.format("Invalid proxy port value for %s plugin. Please correct the same.", name));
             }
         }
     }
@@ -93,6 +174,8 @@ public class fileCompressEncryptGCSBatchSink extends BatchSink<StructuredRecord,
     @Override
     public void initialize(BatchRuntimeContext context) throws Exception {
         super.initialize(context);
+        // the record writer publishes its per-stage copy metrics through this stage's metrics
+        CopyMetrics.setStageMetrics(context.getStageName(), context.getMetrics());
     }
 
     // destroy is called by each job executor at the end of its life.
@@ -111,20 +194,44 @@ public class fileCompressEncryptGCSBatchSink extends BatchSink<StructuredRecord,
     /**
      * Adds necessary configuration resources and provides OutputFormat Class
      */
-    public class FileCopyOutputFormatProvider implements OutputFormatProvider {
+    public static class FileCopyOutputFormatProvider implements OutputFormatProvider {
         protected final Map<String, String> conf;
 
-        public FileCopyOutputFormatProvider(fileCompressEncryptGCSBatchSinkConfig config) {
+        /**
+         * @param stageName The name of the sink's stage, which its RecordWriters publish their metrics to.
+         */
+        public FileCopyOutputFormatProvider(fileCompressEncryptGCSBatchSinkConfig config, String stageName) {
             this.conf = new HashMap<>();
+            FileCopyOutputFormat.setStageName(conf, stageName);
             FileCopyOutputFormat.setCompression(conf, config.getCompressor());
             FileCopyOutputFormat.setEncryption(conf, config.getEncryption());
-            FileCopyOutputFormat.setGCSBucket(conf, config.getBucket());
+            FileCopyOutputFormat.setDestinationType(conf, config.getDestinationType());
+            if (config.writesToGCS()) {
+                FileCopyOutputFormat.setGCSBucket(conf, config.getBucket());
+            } else {
+                FileCopyOutputFormat.setDestinationURI(conf, config.getFileSystemURI());
+            }
             FileCopyOutputFormat.setGCSDestPath(conf, config.getDestPath());
             FileCopyOutputFormat.setGCSDestPathSuffix(conf, config.getSuffix());
+            FileCopyOutputFormat.setObjectNaming(conf, config.getObjectNaming());
+            FileCopyOutputFormat.setExistingObjects(conf, config.getExistingObjects());
             FileCopyOutputFormat.setPGPPubKey(conf, config.getPublicKeyPath());
+            FileCopyOutputFormat.setPGPCipher(conf, config.getCipher());
+            FileCopyOutputFormat.setPGPSigningKey(conf, config.getSigningKeyPath());
+            FileCopyOutputFormat.setPGPSigningPassphrase(conf, config.getSigningKeyPassword());
             FileCopyOutputFormat.setGCSProjectID(conf, config.getProject());
             FileCopyOutputFormat.setGCSServiceAccount(conf, config.getServiceAccountFilePath());
             FileCopyOutputFormat.setBufferSize(conf, config.getBufferSize());
+            FileCopyOutputFormat.setBundleThreshold(conf, config.getBundleThreshold());
+            FileCopyOutputFormat.setBundleSize(conf, config.getBundleSize());
+            FileCopyOutputFormat.setDictionaryPath(conf, config.getDictionaryPath());
+            FileCopyOutputFormat.setLedgerFormat(conf, config.getLedgerFormat());
+            FileCopyOutputFormat.setManifest(conf, config.getManifest());
+            FileCopyOutputFormat.setLookahead(conf, config.getLookahead());
+            FileCopyOutputFormat.setUploadSingleRequestSize(conf, config.getSingleRequestUploadSize());
+            FileCopyOutputFormat.setUploadChunkSize(conf, config.getUploadChunkSize());
+            FileCopyOutputFormat.setHttpMaxConnections(conf, config.getHttpConnections());
+            FileCopyOutputFormat.setHttpWarmUpConnections(conf, config.getWarmUpConnections());
             FileCopyOutputFormat.setProxy(conf, config.getProxy());
             FileCopyOutputFormat.setProxyType(conf, config.getProxyType());
         }
@@ -9,11 +9,13 @@ import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.api.plugin.PluginConfig;
 import io.cdap.plugin.file.ingest.utils.GCSPath;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -26,23 +28,54 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
     public static final String NAME_SERVICE_ACCOUNT_FILE_PATH = "serviceFilePath";
     public static final String AUTO_DETECT = "auto-detect";
     public static final String NAME_ENCRYPTION_PUBLIC_KEY_FILE_PATH = "publicKeyPath";
+    public static final String NAME_SIGNING_KEY_FILE_PATH = "signingKeyPath";
+    public static final String NAME_SIGNING_KEY_PASSWORD = "signingKeyPassword";
+    public static final String NAME_CIPHER = "cipher";
     public static final String NAME_BUFFER_SIZE = "bufferSize";
     public static final String NAME_PROXY = "proxy";
     public static final String NAME_PROXY_TYPE = "proxytype";
+    public static final String NAME_DESTINATION_TYPE = "destinationType";
+    public static final String NAME_BUNDLE_THRESHOLD = "bundleThreshold";
+    public static final String NAME_BUNDLE_SIZE = "bundleSize";
+    public static final String NAME_DICTIONARY_PATH = "dictionaryPath";
+    public static final String NAME_LEDGER_FORMAT = "ledgerFormat";
+    public static final String NAME_MANIFEST = "manifest";
+    public static final String NAME_LOOKAHEAD = "lookahead";
+    public static final String NAME_SINGLE_REQUEST_UPLOAD_SIZE = "singleRequestUploadSize";
+    public static final String NAME_UPLOAD_CHUNK_SIZE = "uploadChunkSize";
+    public static final String NAME_HTTP_CONNECTIONS = "httpConnections";
+    public static final String NAME_WARM_UP_CONNECTIONS = "warmUpConnections";
+    public static final String NAME_OBJECT_NAMING = "objectNaming";
+    public static final String NAME_EXISTING_OBJECTS = "existingObjects";
     public static final String SCHEME = "gs://";
 
     private static final Logger LOG = LoggerFactory.getLogger(fileCompressEncryptGCSBatchSinkConfig.class);
 
     @Name(NAME_COMPRESSION)
-    @Description("Specify the compression algorithm. If None is selected then data is not compressed.")
+    @Description("Specify the compression algorithm. If None is selected then data is not compressed. " +
+            "DEFLATE_DICTIONARY compresses every file with a shared dictionary, which suits many small files that " +
+            "look alike, such as JSON events or CSV extracts.")
     protected String compression = CompressorType.ZIP.getType();
 
+    @Name(NAME_DICTIONARY_PATH)
+    @Description("Path of a pre-trained dictionary for DEFLATE_DICTIONARY compression. If not specified, a " +
+            "dictionary is trained on the first files of each task and written next to the files.")
+    @Nullable
+    @Macro
+    protected String dictionaryPath;
+
     @Name(NAME_ENCRYPTION)
     @Description("Specify the encryption algorithm. If None is selected then data is not encrypted.")
     protected String encryption = EncryptionType.PGP.getType();
 
+    @Name(NAME_DESTINATION_TYPE)
+    @Description("Where the files are written. GCS - a Google Cloud Storage bucket, FILESYSTEM - a Hadoop " +
+            "filesystem such as HDFS or the local disk.")
+    @Nullable
+    protected String destinationType = DestinationType.GCS.getType();
+
     @Name(NAME_PATH)
-    @Description("The path to write to. For example, gs://<bucket>")
+    @Description("The path to write to. For example, gs://<bucket> or hdfs://<namenode>/path")
     @Macro
     protected String path;
 
@@ -54,6 +87,27 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
     @Macro
     protected String suffix;
 
+    @Name(NAME_OBJECT_NAMING)
+    @Description("How the objects of the files are named under the path. PATH - the relative path of the file. " +
+            "HASHED - the relative path under a directory of the first 4 hex digits of the MD5 of the relative " +
+            "path, e.g. 'c4ca/dir/file.txt.zip.pgp'. This spreads the objects that a run creates over many key " +
+            "ranges of the bucket instead of writing them in order, which GCS throttles as a hotspot. With HASHED " +
+            "each task writes a mapping under names/ in the path, with one line per file: its relative path and " +
+            "object.")
+    @Nullable
+    protected String objectNaming = ObjectNaming.PATH.getType();
+
+    @Name(NAME_EXISTING_OBJECTS)
+    @Description("What happens to the files whose object already exists under the path. OVERWRITE - every file is " +
+            "copied again. SKIP - files whose object was written from the same size and modification time of the " +
+            "file are skipped, e.g. when a failed run is run again. The objects are listed once when the run " +
+            "starts, into an inventory under inventory/ in the path, and the tasks look files up in it without " +
+            "a request to the destination. Files in bundles are skipped through the inventory written next to " +
+            "each bundle, which lists the files in it. With a suffix every run writes to a new directory, so " +
+            "nothing is skipped.")
+    @Nullable
+    protected String existingObjects = ExistingObjects.OVERWRITE.getType();
+
     @Name(NAME_PROJECT)
     @Description("Google Cloud Project ID, which uniquely identifies a project. "
             + "It can be found on the Dashboard in the Google Cloud Platform Console.")
@@ -70,16 +124,107 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
     protected String serviceFilePath;
 
     @Name(NAME_ENCRYPTION_PUBLIC_KEY_FILE_PATH)
-    @Description("Path on the local file system of the public key used for encryption.")
+    @Description("Paths on the local file system of the public keys used for encryption, separated by commas. " +
+            "Every object is encrypted once and each of the keys can decrypt it.")
     @Macro
     @Nullable
     protected String publicKeyPath;
 
+    @Name(NAME_SIGNING_KEY_FILE_PATH)
+    @Description("Path on the local file system of the secret key ring used to sign encrypted objects. If " +
+            "specified, every object carries a one-pass signature made while it is written, and the manifests " +
+            "are signed as well.")
+    @Macro
+    @Nullable
+    protected String signingKeyPath;
+
+    @Name(NAME_SIGNING_KEY_PASSWORD)
+    @Description("The passphrase of the signing key.")
+    @Macro
+    @Nullable
+    protected String signingKeyPassword;
+
+    @Name(NAME_CIPHER)
+    @Description("The symmetric cipher used to encrypt the data. CAST5 is the default, AES_128 and AES_256 " +
+            "are usually faster on CPUs with AES instructions.")
+    @Nullable
+    protected String cipher = CipherType.CAST5.getType();
+
     @Name(NAME_BUFFER_SIZE)
     @Description("Buffer size to read the contents. The default is 1024")
     @Macro
     protected String bufferSize;
 
+    @Name(NAME_BUNDLE_THRESHOLD)
+    @Description("Files smaller than this many bytes are bundled into tar archives instead of being written as " +
+            "objects of their own, and an index object next to each archive records where each file is, so " +
+            "that it can be fetched with a single ranged read. With PGP encryption an archive is one PGP " +
+            "message and its index is encrypted as well: the ranges are offsets into the decrypted archive, " +
+            "so a single file can only be read by decrypting the archive up to it, not with a ranged read. " +
+            "If not specified, files are not bundled.")
+    @Nullable
+    @Macro
+    protected String bundleThreshold;
+
+    @Name(NAME_BUNDLE_SIZE)
+    @Description("The size in bytes at which a tar archive of bundled files is closed and a new one started. " +
+            "The default is 268435456 (256 MB).")
+    @Nullable
+    @Macro
+    protected String bundleSize;
+
+    @Name(NAME_LEDGER_FORMAT)
+    @Description("The format of the ledger that each task writes under ledger/ in the path, with one record per " +
+            "file: its source, output, bytes in and out, codec, cipher, time per stage and status. " +
+            "NONE - no ledger, AVRO - an Avro data file per task.")
+    @Nullable
+    protected String ledgerFormat = LedgerFormat.NONE.getType();
+
+    @Name(NAME_MANIFEST)
+    @Description("The digests that each task writes to a manifest under manifests/ in the path, with one line per " +
+            "file: its source, output, and the size and digest of the file and of the object. The digests are " +
+            "computed while the data is written. The manifest is signed with the signing key if one is given. " +
+            "NONE - no manifest, SHA256 - SHA-256 digests.")
+    @Nullable
+    protected String manifest = ManifestType.NONE.getType();
+
+    @Name(NAME_LOOKAHEAD)
+    @Description("The number of files that each task fetches ahead while it copies a file: their objects are " +
+            "opened and their sources opened, and files up to 1 MB are read whole. This hides the round trips " +
+            "of opening files and uploads behind the copies. If not specified, files are fetched one at a time.")
+    @Nullable
+    @Macro
+    protected String lookahead;
+
+    @Name(NAME_SINGLE_REQUEST_UPLOAD_SIZE)
+    @Description("Objects of GCS expected to be up to this many bytes are uploaded with a single request instead " +
+            "of a resumable upload, which takes fewer round trips. The object is held in memory until it is " +
+            "uploaded. 0 uploads every object with a resumable upload. The default is 8388608 (8 MB).")
+    @Nullable
+    @Macro
+    protected String singleRequestUploadSize;
+
+    @Name(NAME_UPLOAD_CHUNK_SIZE)
+    @Description("The bytes sent per request of a resumable upload to GCS, rounded up to a multiple of 256 KB. " +
+            "Larger chunks take fewer requests and more memory per upload. The default is 16777216 (16 MB).")
+    @Nullable
+    @Macro
+    protected String uploadChunkSize;
+
+    @Name(NAME_HTTP_CONNECTIONS)
+    @Description("The number of connections to GCS that each executor keeps open at most. Connections are kept " +
+            "alive and reused by the uploads of every task of the executor. The default is 32.")
+    @Nullable
+    @Macro
+    protected String httpConnections;
+
+    @Name(NAME_WARM_UP_CONNECTIONS)
+    @Description("The number of connections to GCS that each executor opens in the background when a task " +
+            "starts, so that the first uploads don't wait for connections to be established. The default is 4.")
+    @Nullable
+    @Macro
+    protected String warmUpConnections;
+
     @Name(NAME_PROXY)
     @Description("The proxy to be used. If none specified it will make a direct connection or through " +
             "the proxy set at the environment level.")
@@ -110,17 +255,29 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
         this.proxytype=proxytype;
     }
 
+    /**
+     * Configs of sinks that extend this one are created by the framework from the plugin properties.
+     */
+    protected fileCompressEncryptGCSBatchSinkConfig() {
+    }
+
     public String getDestPath() {
-        String destinationPath = GCSPath.from(path).getName();
+        return getDestPath(LocalDateTime.now());
+    }
+
+    /**
+     * @param time The time that the suffix is formatted with.
+     */
+    public String getDestPath(LocalDateTime time) {
+        String destinationPath = writesToGCS() ? GCSPath.from(path).getName() : new Path(path).toUri().getPath();
         if (StringUtils.isNotEmpty(suffix)) {
             try {
                 //This will throw an exception if format is invalid
                 DateTimeFormatter formatter = DateTimeFormatter.ofPattern(suffix);
-                LocalDateTime now = LocalDateTime.now();
                 if (!destinationPath.endsWith("/")) {
                     destinationPath += "/";
                 }
-                destinationPath += now.format(formatter) + "/";
+                destinationPath += time.format(formatter) + "/";
             } catch (Exception e) {
                 LOG.error("Error while processing suffix - ", e);
                 throw new IllegalArgumentException(
@@ -135,6 +292,14 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
         return GCSPath.from(path).getBucket();
     }
 
+    /**
+     * @return The URI of the filesystem that the path points to, e.g. hdfs://namenode:8020/
+     */
+    public String getFileSystemURI() {
+        URI uri = new Path(path).toUri();
+        return uri.getScheme() == null ? "" : uri.getScheme() + "://" + Strings.nullToEmpty(uri.getAuthority()) + "/";
+    }
+
     public String getProject() {
         String projectId = tryGetProject();
         if (projectId == null) {
@@ -158,6 +323,10 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
         return true;
     }
 
+    public boolean writesToGCS() {
+        return Strings.isNullOrEmpty(destinationType) || destinationType.equals(DestinationType.GCS.getType());
+    }
+
     public boolean useProxy() {
         if (Strings.isNullOrEmpty(proxytype) || proxytype.equals(ProxyType.NONE.getType()))
             return false;
@@ -212,6 +381,15 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
         return encryption;
     }
 
+    @Nullable
+    public String getDictionaryPath() {
+        return dictionaryPath;
+    }
+
+    public boolean compressWithDictionary() {
+        return CompressorType.DEFLATE_DICTIONARY.getType().equals(compression);
+    }
+
 
 
     public String getPath() {
@@ -227,10 +405,38 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
         return publicKeyPath;
     }
 
+    @Nullable
+    public String getSigningKeyPath() {
+        return signingKeyPath;
+    }
+
+    @Nullable
+    public String getSigningKeyPassword() {
+        return signingKeyPassword;
+    }
+
+    public String getCipher() {
+        return Strings.isNullOrEmpty(cipher) ? CipherType.CAST5.getType() : cipher;
+    }
+
     public String getBufferSize() {
         return bufferSize;
     }
 
+    @Nullable
+    public String getBundleThreshold() {
+        return bundleThreshold;
+    }
+
+    @Nullable
+    public String getBundleSize() {
+        return bundleSize;
+    }
+
+    public boolean bundleFiles() {
+        return !Strings.isNullOrEmpty(bundleThreshold);
+    }
+
     @Nullable
     public String getProxy() {
         return proxy;
@@ -241,9 +447,95 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
         return proxytype;
     }
 
+    public String getLedgerFormat() {
+        return Strings.isNullOrEmpty(ledgerFormat) ? LedgerFormat.NONE.getType() : ledgerFormat;
+    }
+
+    public String getManifest() {
+        return Strings.isNullOrEmpty(manifest) ? ManifestType.NONE.getType() : manifest;
+    }
+
+    public boolean writesManifest() {
+        return !ManifestType.NONE.getType().equals(getManifest());
+    }
+
+    @Nullable
+    public String getLookahead() {
+        return lookahead;
+    }
+
+    @Nullable
+    public String getSingleRequestUploadSize() {
+        return singleRequestUploadSize;
+    }
+
+    @Nullable
+    public String getUploadChunkSize() {
+        return uploadChunkSize;
+    }
+
+    @Nullable
+    public String getHttpConnections() {
+        return httpConnections;
+    }
+
+    @Nullable
+    public String getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    public String getObjectNaming() {
+        return Strings.isNullOrEmpty(objectNaming) ? ObjectNaming.PATH.getType() : objectNaming;
+    }
+
+    /**
+     * @return Whether the object naming is one of the supported layouts.
+     */
+    public boolean isValidObjectNaming() {
+        for (ObjectNaming naming : ObjectNaming.values()) {
+            if (naming.getType().equals(getObjectNaming())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getExistingObjects() {
+        return Strings.isNullOrEmpty(existingObjects) ? ExistingObjects.OVERWRITE.getType() : existingObjects;
+    }
+
+    /**
+     * @return Whether the handling of existing objects is one of the supported ones.
+     */
+    public boolean isValidExistingObjects() {
+        for (ExistingObjects handling : ExistingObjects.values()) {
+            if (handling.getType().equals(getExistingObjects())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getDestinationType() {
+        return Strings.isNullOrEmpty(destinationType) ? DestinationType.GCS.getType() : destinationType;
+    }
+
+    /**
+     * @return Whether the destination type is one of the supported destinations.
+     */
+    public boolean isValidDestinationType() {
+        for (DestinationType type : DestinationType.values()) {
+            if (type.getType().equals(getDestinationType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 
     private enum CompressorType {
         ZIP("ZIP"),
+        DEFLATE_DICTIONARY("DEFLATE_DICTIONARY"),
         NONE("NONE");
         private String type;
 
@@ -270,6 +562,92 @@ public class fileCompressEncryptGCSBatchSinkConfig extends PluginConfig {
         }
     }
 
+    private enum CipherType {
+        CAST5("CAST5"),
+        AES_128("AES_128"),
+        AES_192("AES_192"),
+        AES_256("AES_256");
+        private String type;
+
+        CipherType(String type) {
+            this.type = type;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+
+    private enum DestinationType {
+        GCS("GCS"),
+        FILESYSTEM("FILESYSTEM");
+        private String type;
+
+        DestinationType(String type) {
+            this.type = type;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+
+    private enum LedgerFormat {
+        AVRO("AVRO"),
+        NONE("NONE");
+        private String type;
+
+        LedgerFormat(String type) {
+            this.type = type;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+
+    private enum ManifestType {
+        SHA256("SHA256"),
+        NONE("NONE");
+        private String type;
+
+        ManifestType(String type) {
+            this.type = type;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+
+    private enum ObjectNaming {
+        PATH("PATH"),
+        HASHED("HASHED");
+        private String type;
+
+        ObjectNaming(String type) {
+            this.type = type;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+
+    private enum ExistingObjects {
+        OVERWRITE("OVERWRITE"),
+        SKIP("SKIP");
+        private String type;
+
+        ExistingObjects(String type) {
+            this.type = type;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+
     private enum ProxyType {
         HTTP("HTTP"),
         SOCKS("SOCKS"),
@@ -0,0 +1,432 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.bundle;
+
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import io.cdap.plugin.file.ingest.manifest.DigestingOutputStream;
+import io.cdap.plugin.file.ingest.metrics.MeteredOutputStream;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Streams many small files into a single tar archive object, so that they share one upload, one object and,
+ * when encrypted, one PGP session key instead of paying for each of them.
+ *
+ * Every member is stored as one contiguous range of the archive: its tar headers, its content and the padding
+ * up to the next 512 byte block. When the archive is compressed each member is a gzip member of its own, which
+ * concatenated are still a valid tar.gz. A sidecar index object, named after the archive with
+ * {@link #INDEX_SUFFIX}, lists the range of every member, so that one member can be fetched with a single ranged
+ * read and read as a tar, after gunzipping it if the archive is compressed. An encrypted archive is one PGP
+ * message, so its ranges refer to the decrypted archive and its index is encrypted as well.
+ *
+ * The index is a text file with one line per member: the offset and length of its range, the size of its
+ * content and its URL encoded name, separated by tabs.
+ */
+public class BundleWriter {
+    public static final String INDEX_SUFFIX = ".index";
+    public static final String INDEX_HEADER = "# offset\tlength\tsize\tname\n";
+    // the number of members, stored in the metadata of the index
+    public static final String METADATA_MEMBERS = "bundle.members";
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+    private static final byte TYPE_FILE = '0';
+    private static final byte TYPE_PAX_HEADER = 'x';
+    private static final int MIN_BUFFER_SIZE = 64 << 10;
+
+    private final Destination destination;
+    private final String name;
+    private final CompressEncryptOptions options;
+    private final StageTimer timer;
+    private final DestinationWriter writer;
+    private final OutputStream encrypted;
+    private final CountingOutputStream archive;
+    private final DigestingOutputStream digesting;
+    private final MessageDigest objectDigest;
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private int members;
+    private boolean open = true;
+
+    /**
+     * Starts a new archive. Nothing is visible in the destination until it is committed.
+     *
+     * @param name  The name of the archive object.
+     * @param timer The timer that is charged for writing the archive. It is shared by the members, so it is
+     *              usually reset after each one is added.
+     */
+    public BundleWriter(Destination destination, String name, String contentType, CompressEncryptOptions options,
+                        StageTimer timer) throws IOException {
+        this(destination, name, contentType, options, timer, null);
+    }
+
+    /**
+     * @param objectDigest A digest to update with the bytes of the archive object as they are uploaded, or null.
+     */
+    public BundleWriter(Destination destination, String name, String contentType, CompressEncryptOptions options,
+                        StageTimer timer, @Nullable MessageDigest objectDigest) throws IOException {
+        this.destination = destination;
+        this.name = name;
+        this.objectDigest = objectDigest;
+        this.options = options;
+        this.timer = timer;
+        // the number of members is only known at the end, GCS can't change metadata once the upload started
+        this.writer = destination.open(name, contentType, Collections.emptyMap());
+        OutputStream out = new MeteredOutputStream(writer.asOutputStream(), Stage.UPLOAD, timer);
+        if (objectDigest != null) {
+            this.digesting = new DigestingOutputStream(out, objectDigest, timer);
+            out = digesting;
+        } else {
+            this.digesting = null;
+        }
+        if (options.isEncrypt()) {
+            this.encrypted = FileCompressEncrypt.openEncrypted(out, stripPath(name), new Date(), options, timer);
+            out = encrypted;
+        } else {
+            this.encrypted = null;
+        }
+        // tar headers and padding are written in small pieces
+        this.archive = new CountingOutputStream(
+                new BufferedOutputStream(out, Math.max(options.getBufferSize(), MIN_BUFFER_SIZE)));
+        index.write(INDEX_HEADER.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends a file to the archive.
+     *
+     * @param memberName       The path of the file within the archive.
+     * @param content          The content of the file.
+     * @param length           The number of bytes of content.
+     * @param modificationTime The modification time of the file in milliseconds.
+     */
+    public void add(String memberName, byte[] content, int length, long modificationTime) throws IOException {
+        long offset = archive.getCount();
+        OutputStream out = archive;
+        GZIPOutputStream gzip = null;
+        if (options.isCompress()) {
+            gzip = new LeveledGZIPOutputStream(new NonClosingOutputStream(archive), options.getBufferSize(),
+                                               options.getCompressionLevel());
+            out = new MeteredOutputStream(gzip, Stage.COMPRESS, timer);
+        }
+
+        writeHeaders(out, memberName, length, modificationTime);
+        out.write(content, 0, length);
+        writePadding(out, length);
+        if (gzip != null) {
+            timer.start(Stage.COMPRESS);
+            try {
+                gzip.finish();
+            } finally {
+                timer.stop();
+            }
+        }
+
+        members++;
+        String line = String.format("%d\t%d\t%d\t%s\n", offset, archive.getCount() - offset, length,
+                                    URLEncoder.encode(memberName, StandardCharsets.UTF_8.name()));
+        index.write(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The number of bytes of the archive written so far, before encryption.
+     */
+    public long getSize() {
+        return archive.getCount();
+    }
+
+    /**
+     * @return The number of bytes of the archive object, after encryption, or -1 if it isn't digested.
+     */
+    public long getObjectSize() {
+        return digesting == null ? -1 : digesting.getCount();
+    }
+
+    /**
+     * @return The digest of the archive object once it is committed, or null if it isn't digested.
+     */
+    @Nullable
+    public byte[] getObjectDigest() {
+        return objectDigest == null || open ? null : objectDigest.digest();
+    }
+
+    public int getMembers() {
+        return members;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Ends the archive, makes it visible and then writes its index.
+     */
+    public void commit() throws IOException {
+        OutputStream out = archive;
+        GZIPOutputStream gzip = null;
+        if (options.isCompress()) {
+            gzip = new LeveledGZIPOutputStream(new NonClosingOutputStream(archive), BLOCK_SIZE,
+                                               options.getCompressionLevel());
+            out = gzip;
+        }
+        // the end of a tar archive is marked by two empty blocks
+        out.write(new byte[2 * BLOCK_SIZE]);
+        if (gzip != null) {
+            gzip.finish();
+        }
+        archive.flush();
+        if (encrypted != null) {
+            encrypted.close();
+        }
+        timer.start(Stage.UPLOAD);
+        try {
+            writer.commit();
+        } finally {
+            timer.stop();
+        }
+        open = false;
+        writeIndex();
+    }
+
+    /**
+     * Discards the archive and all its members, unless it has been committed.
+     */
+    public void abort() {
+        if (open) {
+            open = false;
+            writer.abort();
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        String indexName = name + INDEX_SUFFIX + (options.isEncrypt() ? ".pgp" : "");
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(METADATA_MEMBERS, String.valueOf(members));
+        try (DestinationWriter indexWriter = destination.open(
+                indexName, options.isEncrypt() ? "application/pgp-encrypted" : "text/plain", metadata)) {
+            OutputStream out = new NonClosingOutputStream(indexWriter.asOutputStream());
+            if (options.isEncrypt()) {
+                out = FileCompressEncrypt.openEncrypted(out, stripPath(indexName), new Date(), options,
+                                                        new StageTimer());
+            }
+            index.writeTo(out);
+            out.close();
+            indexWriter.commit();
+        }
+    }
+
+    private static void writeHeaders(OutputStream out, String memberName, long size,
+                                     long modificationTime) throws IOException {
+        byte[] nameBytes = memberName.getBytes(StandardCharsets.UTF_8);
+        int split = findPrefixSplit(nameBytes);
+        if (split < 0) {
+            // names that don't fit the ustar header are carried by a pax extended header in front of it
+            byte[] record = paxRecord("path", memberName);
+            out.write(header(paxName(nameBytes), new byte[0], record.length, modificationTime, TYPE_PAX_HEADER));
+            out.write(record);
+            writePadding(out, record.length);
+            out.write(header(truncate(nameBytes, NAME_LENGTH), new byte[0], size, modificationTime, TYPE_FILE));
+        } else if (split == 0) {
+            out.write(header(nameBytes, new byte[0], size, modificationTime, TYPE_FILE));
+        } else {
+            byte[] prefix = new byte[split];
+            byte[] suffix = new byte[nameBytes.length - split - 1];
+            System.arraycopy(nameBytes, 0, prefix, 0, prefix.length);
+            System.arraycopy(nameBytes, split + 1, suffix, 0, suffix.length);
+            out.write(header(suffix, prefix, size, modificationTime, TYPE_FILE));
+        }
+    }
+
+    /**
+     * @return 0 if the name fits the name field, the index of the slash that splits it into the prefix and name
+     * fields, or -1 if it fits neither way.
+     */
+    private static int findPrefixSplit(byte[] name) {
+        if (name.length <= NAME_LENGTH) {
+            return 0;
+        }
+        for (int i = Math.min(name.length - 2, PREFIX_LENGTH); i > 0; i--) {
+            if (name[i] == '/' && name.length - i - 1 <= NAME_LENGTH) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] paxName(byte[] name) {
+        byte[] prefix = "PaxHeaders/".getBytes(StandardCharsets.UTF_8);
+        byte[] paxName = new byte[Math.min(prefix.length + name.length, NAME_LENGTH)];
+        System.arraycopy(prefix, 0, paxName, 0, prefix.length);
+        System.arraycopy(name, 0, paxName, prefix.length, paxName.length - prefix.length);
+        return paxName;
+    }
+
+    /**
+     * A pax record is "length key=value\n", where the length counts the whole record including its own digits.
+     */
+    private static byte[] paxRecord(String key, String value) {
+        int length = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int total = length + String.valueOf(length).length();
+        if (String.valueOf(total).length() > String.valueOf(length).length()) {
+            total++;
+        }
+        return (total + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] header(byte[] name, byte[] prefix, long size, long modificationTime, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(name, 0, header, 0, name.length);
+        writeOctal(header, 100, 8, 0644);
+        writeOctal(header, 108, 8, 0);
+        writeOctal(header, 116, 8, 0);
+        writeOctal(header, 124, 12, size);
+        writeOctal(header, 136, 12, TimeUnit.MILLISECONDS.toSeconds(Math.max(modificationTime, 0)));
+        header[156] = type;
+        byte[] magic = "ustar\u000000".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(magic, 0, header, 257, magic.length);
+        System.arraycopy(prefix, 0, header, 345, prefix.length);
+
+        // the checksum is computed with its own field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        writeOctal(header, 148, 7, checksum);
+        header[155] = ' ';
+        return header;
+    }
+
+    /**
+     * Writes the value as zero padded octal digits followed by a NUL.
+     */
+    private static void writeOctal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > length - 1) {
+            throw new IllegalArgumentException(String.format("%d does not fit a tar header field", value));
+        }
+        int start = offset + length - 1 - digits.length();
+        for (int i = offset; i < start; i++) {
+            header[i] = '0';
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            header[start + i] = (byte) digits.charAt(i);
+        }
+        header[offset + length - 1] = 0;
+    }
+
+    private static void writePadding(OutputStream out, long length) throws IOException {
+        int padding = (int) ((BLOCK_SIZE - length % BLOCK_SIZE) % BLOCK_SIZE);
+        if (padding > 0) {
+            out.write(new byte[padding]);
+        }
+    }
+
+    private static byte[] truncate(byte[] bytes, int length) {
+        if (bytes.length <= length) {
+            return bytes;
+        }
+        byte[] truncated = new byte[length];
+        System.arraycopy(bytes, 0, truncated, 0, length);
+        return truncated;
+    }
+
+    private static String stripPath(String name) {
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * A gzip stream that compresses at the given level instead of the default.
+     */
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(OutputStream out, int bufferSize, int level) throws IOException {
+            super(out, bufferSize);
+            def.setLevel(level);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            super.finish();
+            // a finished stream is not closed, so its native memory is released here
+            def.end();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Lets a stream that is layered on top of another one, e.g. a gzip member, be finished without closing the
+     * stream underneath.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -2,6 +2,8 @@ package io.cdap.plugin.file.ingest.common;
 
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.file.ingest.codec.FileListEntry;
+import io.cdap.plugin.file.ingest.codec.FileListRecordCodec;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 
@@ -17,21 +19,25 @@ import java.util.List;
  * Abstract class that contains file metadata fields. Extend from this class to add credentials
  * specific to different filesystems.
  */
-public class FileListData implements Comparable<FileListData> {
+public class FileListData implements FileListEntry, Comparable<FileListData> {
 
-    public static final String FILE_NAME = "fileName";
-    public static final String FULL_PATH = "fullPath";
-    public static final String RELATIVE_PATH = "relativePath";
-    public static final String HOST_URI = "hostURI";
+    public static final String FILE_NAME = FileListRecordCodec.FILE_NAME;
+    public static final String FULL_PATH = FileListRecordCodec.FULL_PATH;
+    public static final String RELATIVE_PATH = FileListRecordCodec.RELATIVE_PATH;
+    public static final String HOST_URI = FileListRecordCodec.HOST_URI;
+    public static final String FILE_SIZE = FileListRecordCodec.FILE_SIZE;
+    public static final String IS_DIR = FileListRecordCodec.IS_DIR;
+    public static final String MODIFICATION_TIME = FileListRecordCodec.MODIFICATION_TIME;
+    public static final String BLOCK_SIZE = FileListRecordCodec.BLOCK_SIZE;
+    public static final String PERMISSION = FileListRecordCodec.PERMISSION;
+
+    /**
+     * The value of the status fields when the listing didn't provide them.
+     */
+    public static final long UNKNOWN = FileListRecordCodec.UNKNOWN;
 
     // The default schema that will be used to convert this object to a StructuredRecord.
-    public static final Schema DEFAULT_SCHEMA = Schema.recordOf(
-            "metadata",
-            Schema.Field.of(FILE_NAME, Schema.of(Schema.Type.STRING)),
-            Schema.Field.of(FULL_PATH, Schema.of(Schema.Type.STRING)),
-            Schema.Field.of(RELATIVE_PATH, Schema.of(Schema.Type.STRING)),
-            Schema.Field.of(HOST_URI, Schema.of(Schema.Type.STRING))
-    );
+    public static final Schema DEFAULT_SCHEMA = FileListRecordCodec.SCHEMA;
 
     // contains only the name of the file
     private final String fileName;
@@ -57,6 +63,21 @@ public class FileListData implements Comparable<FileListData> {
      */
     private final String hostURI;
 
+    // file size, or UNKNOWN
+    private final long fileSize;
+
+    // whether or not the file is a directory
+    private final boolean isDir;
+
+    // last modification time in milliseconds since the epoch, or UNKNOWN
+    private final long modificationTime;
+
+    // block size of the file in the source filesystem, or UNKNOWN
+    private final long blockSize;
+
+    // permission of the file in symbolic notation, or null
+    private final String permission;
+
     /**
      * Constructs a FileMetadata instance given a FileStatus and source path. Override this method to add additional
      * credential fields to the instance.
@@ -68,6 +89,11 @@ public class FileListData implements Comparable<FileListData> {
     public FileListData(FileStatus fileStatus, String sourcePath) throws IOException {
         fileName = fileStatus.getPath().getName();
         fullPath = fileStatus.getPath().toUri().getPath();
+        fileSize = fileStatus.getLen();
+        isDir = fileStatus.isDirectory();
+        modificationTime = fileStatus.getModificationTime();
+        blockSize = fileStatus.getBlockSize();
+        permission = fileStatus.getPermission().toString();
 
         // check if sourcePath is a valid prefix of fullPath
         if (fullPath.startsWith(sourcePath)) {
@@ -92,10 +118,7 @@ public class FileListData implements Comparable<FileListData> {
      * @param record The StructuredRecord instance to convert from.
      */
     public FileListData(StructuredRecord record) {
-        this.fileName = record.get(FILE_NAME);
-        this.fullPath = record.get(FULL_PATH);
-        this.relativePath = record.get(RELATIVE_PATH);
-        this.hostURI = record.get(HOST_URI);
+        this(FileListRecordCodec.fromRecord(record));
     }
 
     /**
@@ -104,51 +127,104 @@ public class FileListData implements Comparable<FileListData> {
      * @param dataInput The input stream to deserialize from.
      */
     public FileListData(DataInput dataInput) throws IOException {
-        this.fileName = dataInput.readUTF();
-        this.fullPath = dataInput.readUTF();
-        this.relativePath = dataInput.readUTF();
-        this.hostURI = dataInput.readUTF();
+        this(FileListRecordCodec.read(dataInput));
+    }
+
+    /**
+     * Copies the values of a file read by {@link FileListRecordCodec}.
+     *
+     * @param entry The file to copy.
+     */
+    protected FileListData(FileListEntry entry) {
+        this.fileName = entry.getFileName();
+        this.fullPath = entry.getFullPath();
+        this.relativePath = entry.getRelativePath();
+        this.hostURI = entry.getHostURI();
+        this.fileSize = entry.getFileSize();
+        this.isDir = entry.isDir();
+        this.modificationTime = entry.getModificationTime();
+        this.blockSize = entry.getBlockSize();
+        this.permission = entry.getPermission();
     }
 
+    @Override
     public String getFullPath() {
         return fullPath;
     }
 
+    @Override
     public String getFileName() {
         return fileName;
     }
 
+    @Override
     public String getRelativePath() {
         return relativePath;
     }
 
+    @Override
     public String getHostURI() {
         return hostURI;
     }
 
+    /**
+     * @return The size of the file when it was listed, or {@link #UNKNOWN}.
+     */
+    @Override
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public boolean isDir() {
+        return isDir;
+    }
+
+    /**
+     * @return The modification time of the file when it was listed, or {@link #UNKNOWN}.
+     */
+    @Override
+    public long getModificationTime() {
+        return modificationTime;
+    }
+
+    /**
+     * @return The block size of the file in the source filesystem, or {@link #UNKNOWN}.
+     */
+    @Override
+    public long getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public String getPermission() {
+        return permission;
+    }
+
     /**
      * Converts to a StructuredRecord
      */
     public StructuredRecord toRecord() {
-        // initialize credential schema
-        List<Schema.Field> credentialSchemaList;
+        // without credentials the record has the shared schema, which is only built once
         if (getCredentialSchema() == null) {
-            credentialSchemaList = new ArrayList<>();
-        } else {
-            credentialSchemaList = getCredentialSchema().getFields();
+            return FileListRecordCodec.toRecord(this);
         }
 
         // merge default schema and credential schema to create output schema
-        Schema outputSchema;
         List<Schema.Field> fieldList = new ArrayList<>(DEFAULT_SCHEMA.getFields());
-        fieldList.addAll(credentialSchemaList);
-        outputSchema = Schema.recordOf("metadata", fieldList);
+        fieldList.addAll(getCredentialSchema().getFields());
+        Schema outputSchema = Schema.recordOf("metadata", fieldList);
 
         StructuredRecord.Builder outputBuilder = StructuredRecord.builder(outputSchema)
                 .set(FILE_NAME, fileName)
                 .set(FULL_PATH, fullPath)
                 .set(RELATIVE_PATH, relativePath)
-                .set(HOST_URI, hostURI);
+                .set(HOST_URI, hostURI)
+                .set(FILE_SIZE, fileSize == UNKNOWN ? null : fileSize)
+                .set(IS_DIR, isDir)
+                .set(MODIFICATION_TIME, modificationTime == UNKNOWN ? null : modificationTime)
+                .set(BLOCK_SIZE, blockSize == UNKNOWN ? null : blockSize)
+                .set(PERMISSION, permission);
         addCredentialsToRecordBuilder(outputBuilder);
 
         return outputBuilder.build();
@@ -168,10 +244,7 @@ public class FileListData implements Comparable<FileListData> {
     }
 
     public void write(DataOutput dataOutput) throws IOException {
-        dataOutput.writeUTF(getFileName());
-        dataOutput.writeUTF(getFullPath());
-        dataOutput.writeUTF(getRelativePath());
-        dataOutput.writeUTF(getHostURI());
+        FileListRecordCodec.write(this, dataOutput);
     }
 
     /**
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a preset dictionary for DEFLATE out of sample files, for files that are too small to compress well on
+ * their own but look alike, e.g. JSON events or CSV extracts.
+ *
+ * This follows the cover algorithm of zstd in a simpler form: the samples are split into one epoch per segment of
+ * the dictionary, and from each epoch the segment whose short substrings appear in the most samples is picked.
+ * Substrings that were picked once no longer count, so later segments cover new content. DEFLATE reaches the end
+ * of the dictionary with the shortest distances, so the best segments are placed last.
+ */
+public class DictionaryTrainer {
+    /**
+     * DEFLATE can only refer back 32 KB, a larger dictionary is never used.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32 << 10;
+
+    private static final int SEGMENT_SIZE = 256;
+    // substrings shorter than this are cheaper to encode as literals than as matches
+    private static final int DMER_SIZE = 8;
+    private static final int TABLE_BITS = 20;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * @param samples        The content of sample files, usually their first few kilobytes.
+     * @param dictionarySize The size of the dictionary, at most {@link #MAX_DICTIONARY_SIZE}.
+     * @return The dictionary, which is shorter than requested if the samples are smaller or don't share enough
+     * content.
+     */
+    public static byte[] train(List<byte[]> samples, int dictionarySize) {
+        dictionarySize = Math.min(dictionarySize, MAX_DICTIONARY_SIZE);
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        for (byte[] sample : samples) {
+            concatenated.write(sample, 0, sample.length);
+        }
+        byte[] data = concatenated.toByteArray();
+        if (data.length <= dictionarySize) {
+            return data;
+        }
+
+        // the number of samples that contain each substring, by hash
+        int[] frequencies = new int[1 << TABLE_BITS];
+        int[] lastSample = new int[1 << TABLE_BITS];
+        Arrays.fill(lastSample, -1);
+        int sampleIndex = 0;
+        for (byte[] sample : samples) {
+            for (int i = 0; i + DMER_SIZE <= sample.length; i++) {
+                int hash = hash(sample, i);
+                if (lastSample[hash] != sampleIndex) {
+                    lastSample[hash] = sampleIndex;
+                    frequencies[hash]++;
+                }
+            }
+            sampleIndex++;
+        }
+        // content of a single sample doesn't help compress the others
+        for (int i = 0; i < frequencies.length; i++) {
+            if (frequencies[i] < 2) {
+                frequencies[i] = 0;
+            }
+        }
+
+        int epochs = Math.max(1, dictionarySize / SEGMENT_SIZE);
+        int epochSize = data.length / epochs;
+        List<Segment> segments = new ArrayList<>();
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            int start = epoch * epochSize;
+            int end = Math.min(data.length, start + epochSize);
+            Segment segment = findBestSegment(data, start, end, frequencies);
+            if (segment != null) {
+                segments.add(segment);
+                // picked substrings don't count again
+                for (int i = segment.offset; i + DMER_SIZE <= segment.offset + segment.length; i++) {
+                    frequencies[hash(data, i)] = 0;
+                }
+            }
+        }
+
+        segments.sort((a, b) -> Long.compare(a.score, b.score));
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+        // when segments don't fill the dictionary, the least valuable ones are left out first
+        int skipped = 0;
+        int total = 0;
+        for (Segment segment : segments) {
+            total += segment.length;
+        }
+        for (Segment segment : segments) {
+            if (total - skipped > dictionarySize) {
+                skipped += segment.length;
+                continue;
+            }
+            dictionary.write(data, segment.offset, segment.length);
+        }
+        return dictionary.toByteArray();
+    }
+
+    /**
+     * @return The segment of the range with the highest total frequency of its substrings, or null if none of
+     * them appears in more than one sample.
+     */
+    private static Segment findBestSegment(byte[] data, int start, int end, int[] frequencies) {
+        int length = Math.min(SEGMENT_SIZE, end - start);
+        if (length < DMER_SIZE) {
+            return null;
+        }
+        // a window over the substrings that start in the segment
+        int dmers = length - DMER_SIZE + 1;
+        long score = 0;
+        for (int i = start; i < start + dmers; i++) {
+            score += frequencies[hash(data, i)];
+        }
+        long bestScore = score;
+        int bestOffset = start;
+        for (int i = start + 1; i + length <= end; i++) {
+            score -= frequencies[hash(data, i - 1)];
+            score += frequencies[hash(data, i + dmers - 1)];
+            if (score > bestScore) {
+                bestScore = score;
+                bestOffset = i;
+            }
+        }
+        return bestScore == 0 ? null : new Segment(bestOffset, length, bestScore);
+    }
+
+    private static int hash(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < DMER_SIZE; i++) {
+            value = (value << 8) | (data[offset + i] & 0xff);
+        }
+        // Fibonacci hashing spreads the bits of the substring over the table
+        return (int) ((value * 0x9E3779B97F4A7C15L) >>> (64 - TABLE_BITS));
+    }
+
+    private static class Segment {
+        private final int offset;
+        private final int length;
+        private final long score;
+
+        Segment(int offset, int length, long score) {
+            this.offset = offset;
+            this.length = length;
+            this.score = score;
+        }
+    }
+}
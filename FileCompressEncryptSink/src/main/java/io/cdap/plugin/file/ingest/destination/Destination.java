@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.destination;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A store that the copy pipeline writes its output objects to. Objects are written through a
+ * {@link DestinationWriter} and only become visible under their name once the writer is committed.
+ */
+public interface Destination extends Closeable {
+
+    /**
+     * Opens a new object for writing.
+     *
+     * @param name        The name of the object, relative to the root of the destination.
+     * @param contentType The MIME type of the object.
+     * @param metadata    Custom metadata to store with the object, may be empty.
+     * @return A writer that must be either committed or aborted.
+     * @throws IOException
+     */
+    DestinationWriter open(String name, String contentType, Map<String, String> metadata) throws IOException;
+
+    /**
+     * Opens a new object for writing, whose size is known or estimated up front. Destinations may upload the object
+     * differently depending on its size, the object is written correctly whatever its actual size is.
+     *
+     * @param expectedSize The expected size of the object in bytes, or -1 if unknown.
+     */
+    default DestinationWriter open(String name, String contentType, Map<String, String> metadata,
+                                   long expectedSize) throws IOException {
+        return open(name, contentType, metadata);
+    }
+
+    /**
+     * @param name The name of the object.
+     * @return The status of the committed object, or null if there is no such object.
+     * @throws IOException
+     */
+    @Nullable
+    ObjectStat stat(String name) throws IOException;
+
+    /**
+     * Lists the committed objects whose names start with the prefix, with their metadata. Stores that can list in
+     * pages fetch the next page as the iterator reaches it, a failure to do so is thrown by the iterator as an
+     * {@link java.io.UncheckedIOException}.
+     *
+     * @param prefix The start of the names, e.g. a directory ending with a slash.
+     * @return The objects, in no particular order.
+     * @throws IOException
+     */
+    Iterator<ObjectStat> list(String prefix) throws IOException;
+
+    /**
+     * Opens a committed object for reading.
+     *
+     * @param name The name of the object.
+     * @return The content of the object, or null if there is no such object.
+     * @throws IOException
+     */
+    @Nullable
+    InputStream read(String name) throws IOException;
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.destination;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A channel to an object that is being written to a {@link Destination}. Closing a writer that has not
+ * been committed aborts it.
+ */
+public interface DestinationWriter extends WritableByteChannel {
+
+    /**
+     * Makes the object visible under its name, replacing any previous object with the same name.
+     *
+     * @throws IOException
+     */
+    void commit() throws IOException;
+
+    /**
+     * Discards everything written so far. The destination is left as it was before the object was opened.
+     */
+    void abort();
+
+    /**
+     * @return An OutputStream view of this writer. Closing the stream does not commit the object.
+     */
+    default OutputStream asOutputStream() {
+        return Channels.newOutputStream(this);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.destination;
+
+import org.apache.hadoop.fs.ChecksumFileSystem;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileContext;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Destination} backed by a Hadoop {@link FileSystem}, e.g. HDFS or the local disk. Objects are
+ * written to a hidden temporary file next to the target and renamed into place on commit, replacing an existing
+ * object in the same rename, so that a failed commit leaves either the old or the new object. Metadata is
+ * stored as user extended attributes where the filesystem supports them.
+ */
+public class FileSystemDestination implements Destination {
+    private static final Logger LOG = LoggerFactory.getLogger(FileSystemDestination.class);
+    private static final String XATTR_PREFIX = "user.";
+    private static final String TEMP_SUFFIX = ".inprogress";
+
+    private final FileSystem fileSystem;
+    // FileSystem can only rename onto a file that doesn't exist, FileContext can replace it
+    private final FileContext fileContext;
+
+    public FileSystemDestination(FileSystem fileSystem) throws IOException {
+        // FileContext renames files without their checksum files, which the local filesystem writes next to them
+        this.fileSystem = fileSystem instanceof ChecksumFileSystem
+                ? ((ChecksumFileSystem) fileSystem).getRawFileSystem() : fileSystem;
+        this.fileContext = FileContext.getFileContext(fileSystem.getUri(), fileSystem.getConf());
+    }
+
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    @Override
+    public DestinationWriter open(String name, String contentType, Map<String, String> metadata) throws IOException {
+        Path target = new Path(name);
+        Path temp = new Path(target.getParent(), "." + target.getName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        return new FileSystemWriter(target, temp, fileSystem.create(temp, true), metadata);
+    }
+
+    @Nullable
+    @Override
+    public ObjectStat stat(String name) throws IOException {
+        Path path = new Path(name);
+        FileStatus status;
+        try {
+            status = fileSystem.getFileStatus(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        return new ObjectStat(name, status.getLen(), status.getModificationTime(), getMetadata(path));
+    }
+
+    /**
+     * Lists the files under the directory of the prefix recursively. The metadata of each file takes a call of its
+     * own, on HDFS a round trip to the namenode.
+     */
+    @Override
+    public Iterator<ObjectStat> list(String prefix) throws IOException {
+        // names are the prefix up to its last slash, followed by the path of the file under that directory
+        String directory = prefix.substring(0, prefix.lastIndexOf('/') + 1);
+        RemoteIterator<LocatedFileStatus> files;
+        String root;
+        try {
+            Path path = fileSystem.makeQualified(new Path(directory.isEmpty() ? "." : directory));
+            files = fileSystem.listFiles(path, true);
+            root = path.toString();
+        } catch (FileNotFoundException e) {
+            return Collections.emptyIterator();
+        }
+        return new Iterator<ObjectStat>() {
+            private ObjectStat next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (next == null && files.hasNext()) {
+                        LocatedFileStatus file = files.next();
+                        String relative = file.getPath().toString().substring(root.length());
+                        String name = directory + (relative.startsWith("/") ? relative.substring(1) : relative);
+                        boolean temporary = file.getPath().getName().startsWith(".")
+                                && file.getPath().getName().endsWith(TEMP_SUFFIX);
+                        if (!temporary && name.startsWith(prefix)) {
+                            next = new ObjectStat(name, file.getLen(), file.getModificationTime(),
+                                                  getMetadata(file.getPath()));
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return next != null;
+            }
+
+            @Override
+            public ObjectStat next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ObjectStat stat = next;
+                next = null;
+                return stat;
+            }
+        };
+    }
+
+    @Nullable
+    @Override
+    public InputStream read(String name) throws IOException {
+        try {
+            return fileSystem.open(new Path(name));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private Map<String, String> getMetadata(Path path) throws IOException {
+        Map<String, String> metadata = new HashMap<>();
+        try {
+            for (Map.Entry<String, byte[]> xattr : fileSystem.getXAttrs(path).entrySet()) {
+                if (xattr.getKey().startsWith(XATTR_PREFIX)) {
+                    metadata.put(xattr.getKey().substring(XATTR_PREFIX.length()),
+                                 new String(xattr.getValue(), StandardCharsets.UTF_8));
+                }
+            }
+        } catch (UnsupportedOperationException e) {
+            // this filesystem doesn't store metadata
+        }
+        return metadata;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the FileSystem instance is cached and shared, so it is left open
+    }
+
+    /**
+     * Writes to a temporary file that is renamed to the target on commit.
+     */
+    private class FileSystemWriter implements DestinationWriter {
+        private final Path target;
+        private final Path temp;
+        private final FSDataOutputStream out;
+        private final WritableByteChannel channel;
+        private final Map<String, String> metadata;
+        private boolean open = true;
+
+        FileSystemWriter(Path target, Path temp, FSDataOutputStream out, Map<String, String> metadata) {
+            this.target = target;
+            this.temp = temp;
+            this.out = out;
+            this.channel = Channels.newChannel(out);
+            this.metadata = metadata;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            open = false;
+            out.close();
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                try {
+                    fileSystem.setXAttr(temp, XATTR_PREFIX + entry.getKey(),
+                                        entry.getValue().getBytes(StandardCharsets.UTF_8));
+                } catch (UnsupportedOperationException e) {
+                    LOG.debug("Metadata is not supported by {}, dropping it for {}", fileSystem.getUri(), target);
+                    break;
+                }
+            }
+            try {
+                fileContext.rename(temp, target, Options.Rename.OVERWRITE);
+            } catch (IOException e) {
+                fileSystem.delete(temp, false);
+                throw new IOException(String.format("Failed to rename %s to %s", temp, target), e);
+            }
+        }
+
+        @Override
+        public void abort() {
+            open = false;
+            try {
+                out.close();
+                fileSystem.delete(temp, false);
+            } catch (IOException e) {
+                LOG.warn("Failed to clean up {}: {}", temp, e.getMessage());
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (open) {
+                abort();
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.destination;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Bucket;
+import com.google.cloud.storage.BucketInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Destination} that writes objects to a Google Cloud Storage bucket. Objects that are expected to be small
+ * are buffered and uploaded with a single request on commit, which saves the round trips of starting and
+ * finalizing a resumable upload. Other objects use resumable uploads, sent in chunks of a configurable size. An
+ * upload that is never closed is never finalized, so aborting simply abandons the upload session.
+ */
+public class GCSDestination implements Destination {
+    public static final long DEFAULT_SINGLE_REQUEST_SIZE = 8L << 20;
+    // a multiple of the 256 KB that resumable uploads are sent in, and of the buffers that plain copies write
+    public static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+    private static final Logger LOG = LoggerFactory.getLogger(GCSDestination.class);
+
+    private final Storage storage;
+    private final String bucketName;
+    private final long singleRequestSize;
+    private final int chunkSize;
+
+    /**
+     * Creates the destination with the default upload sizes, creating the bucket if it doesn't exist yet.
+     *
+     * @param storage    The storage service to use.
+     * @param bucketName The bucket to write objects to.
+     */
+    public GCSDestination(Storage storage, String bucketName) {
+        this(storage, bucketName, DEFAULT_SINGLE_REQUEST_SIZE, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates the destination, creating the bucket if it doesn't exist yet.
+     *
+     * @param storage           The storage service to use.
+     * @param bucketName        The bucket to write objects to.
+     * @param singleRequestSize Objects expected to be up to this many bytes are uploaded with a single request, 0 to
+     *                          upload every object with a resumable upload.
+     * @param chunkSize         The bytes sent per request of a resumable upload, rounded up to a multiple of 256 KB.
+     */
+    public GCSDestination(Storage storage, String bucketName, long singleRequestSize, int chunkSize) {
+        this.storage = storage;
+        this.bucketName = getBucket(storage, bucketName).getName();
+        this.singleRequestSize = singleRequestSize;
+        this.chunkSize = chunkSize;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    @Override
+    public DestinationWriter open(String name, String contentType, Map<String, String> metadata) throws IOException {
+        return open(name, contentType, metadata, -1);
+    }
+
+    @Override
+    public DestinationWriter open(String name, String contentType, Map<String, String> metadata,
+                                  long expectedSize) throws IOException {
+        BlobInfo.Builder builder = BlobInfo.newBuilder(BlobId.of(bucketName, name)).setContentType(contentType);
+        if (!metadata.isEmpty()) {
+            builder.setMetadata(metadata);
+        }
+        BlobInfo blobInfo = builder.build();
+        if (expectedSize >= 0 && expectedSize <= singleRequestSize) {
+            return new SingleRequestWriter(blobInfo, (int) expectedSize);
+        }
+        return new GCSWriter(openChannel(blobInfo));
+    }
+
+    private WriteChannel openChannel(BlobInfo blobInfo) throws IOException {
+        try {
+            WriteChannel channel = storage.writer(blobInfo);
+            channel.setChunkSize(chunkSize);
+            return channel;
+        } catch (StorageException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Nullable
+    @Override
+    public ObjectStat stat(String name) throws IOException {
+        Blob blob;
+        try {
+            blob = storage.get(BlobId.of(bucketName, name));
+        } catch (StorageException e) {
+            throw new IOException(e);
+        }
+        return blob == null ? null : toStat(blob);
+    }
+
+    /**
+     * Lists the objects with one request per page of up to 1000 objects, which only return the fields of
+     * {@link ObjectStat}. A failure to fetch a later page is thrown by the iterator as an
+     * {@link UncheckedIOException}.
+     */
+    @Override
+    public Iterator<ObjectStat> list(String prefix) throws IOException {
+        Iterator<Blob> blobs;
+        try {
+            Page<Blob> page = storage.list(bucketName, Storage.BlobListOption.prefix(prefix),
+                                           Storage.BlobListOption.fields(Storage.BlobField.NAME, Storage.BlobField.SIZE,
+                                                                         Storage.BlobField.UPDATED,
+                                                                         Storage.BlobField.METADATA));
+            blobs = page.iterateAll().iterator();
+        } catch (StorageException e) {
+            throw new IOException(e);
+        }
+        return new Iterator<ObjectStat>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return blobs.hasNext();
+                } catch (StorageException e) {
+                    throw new UncheckedIOException(new IOException(e));
+                }
+            }
+
+            @Override
+            public ObjectStat next() {
+                return toStat(blobs.next());
+            }
+        };
+    }
+
+    @Nullable
+    @Override
+    public InputStream read(String name) throws IOException {
+        try {
+            Blob blob = storage.get(BlobId.of(bucketName, name));
+            return blob == null ? null : Channels.newInputStream(blob.reader());
+        } catch (StorageException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static ObjectStat toStat(Blob blob) {
+        return new ObjectStat(blob.getName(), blob.getSize() == null ? 0 : blob.getSize(),
+                              blob.getUpdateTime() == null ? 0 : blob.getUpdateTime(),
+                              blob.getMetadata() == null ? Collections.emptyMap() : blob.getMetadata());
+    }
+
+    @Override
+    public void close() {
+        // the storage service has nothing to release
+    }
+
+    private static Bucket getBucket(Storage storage, String bucketname) {
+        Bucket bucket = storage.get(bucketname);
+        if (bucket == null) {
+            LOG.info("Creating new bucket '{}'.", bucketname);
+            bucket = storage.create(BucketInfo.of(bucketname));
+        }
+        return bucket;
+    }
+
+    /**
+     * Buffers the object and uploads it with a single request on commit. An object that outgrows the size it was
+     * expected to have continues as a resumable upload, so that large objects are never buffered whole.
+     */
+    private class SingleRequestWriter implements DestinationWriter {
+        private final BlobInfo blobInfo;
+        private byte[] buffer;
+        private int count;
+        private WriteChannel channel;
+        private boolean open = true;
+
+        SingleRequestWriter(BlobInfo blobInfo, int expectedSize) {
+            this.blobInfo = blobInfo;
+            this.buffer = new byte[expectedSize];
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (channel == null && count + src.remaining() > singleRequestSize) {
+                LOG.debug("Uploading {} with a resumable upload, it is larger than {} bytes", blobInfo.getName(),
+                          singleRequestSize);
+                channel = openChannel(blobInfo);
+                write(channel, ByteBuffer.wrap(buffer, 0, count));
+                buffer = null;
+            }
+            if (channel != null) {
+                return write(channel, src);
+            }
+            int length = src.remaining();
+            if (count + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(singleRequestSize,
+                                                              Math.max(count + length, 2L * buffer.length)));
+            }
+            src.get(buffer, count, length);
+            count += length;
+            return length;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            open = false;
+            try {
+                if (channel != null) {
+                    channel.close();
+                } else {
+                    // the client sends the checksums of the content, so a corrupted upload is rejected
+                    storage.create(blobInfo, buffer, 0, count);
+                }
+            } catch (StorageException e) {
+                throw new IOException(e);
+            } finally {
+                buffer = null;
+            }
+        }
+
+        @Override
+        public void abort() {
+            // nothing was sent yet, or the resumable upload is abandoned like the one of GCSWriter
+            open = false;
+            buffer = null;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (open) {
+                abort();
+            }
+        }
+
+        private int write(WriteChannel channel, ByteBuffer src) throws IOException {
+            try {
+                int length = src.remaining();
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+                return length;
+            } catch (StorageException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes through a resumable upload session, which is finalized on commit.
+     */
+    private static class GCSWriter implements DestinationWriter {
+        private final WriteChannel channel;
+        private boolean open = true;
+
+        GCSWriter(WriteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            try {
+                return channel.write(src);
+            } catch (StorageException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            open = false;
+            try {
+                channel.close();
+            } catch (StorageException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void abort() {
+            // closing the channel would finalize the object, so the session is just abandoned
+            open = false;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (open) {
+                abort();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.destination;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * An in-process stand-in for a GCS bucket. Like GCS, an object only becomes visible once its upload is
+ * finalized and a new upload replaces the previous object atomically. It is used to measure the copy
+ * pipeline without a network or a real bucket.
+ *
+ * When content is not retained only the size and metadata of each object are kept, so that arbitrarily
+ * large runs can be measured within a bounded amount of memory.
+ */
+public class InMemoryDestination implements Destination {
+    private final ConcurrentMap<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final boolean retainContent;
+
+    /**
+     * @param retainContent Whether to keep the bytes of committed objects so they can be read back.
+     */
+    public InMemoryDestination(boolean retainContent) {
+        this.retainContent = retainContent;
+    }
+
+    @Override
+    public DestinationWriter open(String name, String contentType, Map<String, String> metadata) {
+        return new InMemoryWriter(name, contentType, new HashMap<>(metadata));
+    }
+
+    @Nullable
+    @Override
+    public ObjectStat stat(String name) {
+        StoredObject object = objects.get(name);
+        return object == null ? null : object.stat;
+    }
+
+    @Override
+    public Iterator<ObjectStat> list(String prefix) {
+        List<ObjectStat> stats = new ArrayList<>();
+        for (StoredObject object : objects.values()) {
+            if (object.stat.getName().startsWith(prefix)) {
+                stats.add(object.stat);
+            }
+        }
+        return stats.iterator();
+    }
+
+    @Nullable
+    @Override
+    public InputStream read(String name) throws IOException {
+        StoredObject object = objects.get(name);
+        if (object == null) {
+            return null;
+        }
+        if (object.content == null) {
+            throw new IOException("The content of " + name + " is not retained");
+        }
+        return new ByteArrayInputStream(object.content);
+    }
+
+    /**
+     * @return The content of a committed object, or null if there is no such object or content is not retained.
+     */
+    @Nullable
+    public byte[] getContent(String name) {
+        StoredObject object = objects.get(name);
+        return object == null ? null : object.content;
+    }
+
+    @Nullable
+    public String getContentType(String name) {
+        StoredObject object = objects.get(name);
+        return object == null ? null : object.contentType;
+    }
+
+    public Map<String, ObjectStat> getObjects() {
+        Map<String, ObjectStat> stats = new HashMap<>();
+        for (Map.Entry<String, StoredObject> entry : objects.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().stat);
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    @Override
+    public void close() {
+        objects.clear();
+    }
+
+    private static class StoredObject {
+        private final ObjectStat stat;
+        private final String contentType;
+        private final byte[] content;
+
+        StoredObject(ObjectStat stat, String contentType, @Nullable byte[] content) {
+            this.stat = stat;
+            this.contentType = contentType;
+            this.content = content;
+        }
+    }
+
+    private class InMemoryWriter implements DestinationWriter {
+        private final String name;
+        private final String contentType;
+        private final Map<String, String> metadata;
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private long size;
+        private boolean open = true;
+
+        InMemoryWriter(String name, String contentType, Map<String, String> metadata) {
+            this.name = name;
+            this.contentType = contentType;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            int count = src.remaining();
+            if (retainContent) {
+                if (src.hasArray()) {
+                    content.write(src.array(), src.arrayOffset() + src.position(), count);
+                } else {
+                    byte[] bytes = new byte[count];
+                    src.duplicate().get(bytes);
+                    content.write(bytes);
+                }
+            }
+            src.position(src.limit());
+            size += count;
+            return count;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            open = false;
+            ObjectStat stat = new ObjectStat(name, size, System.currentTimeMillis(), metadata);
+            objects.put(name, new StoredObject(stat, contentType, retainContent ? content.toByteArray() : null));
+        }
+
+        @Override
+        public void abort() {
+            open = false;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.destination;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The status of an object committed to a {@link Destination}.
+ */
+public class ObjectStat {
+    private final String name;
+    private final long size;
+    private final long updateTime;
+    private final Map<String, String> metadata;
+
+    public ObjectStat(String name, long size, long updateTime, Map<String, String> metadata) {
+        this.name = name;
+        this.size = size;
+        this.updateTime = updateTime;
+        this.metadata = Collections.unmodifiableMap(metadata);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return The time the object was last written, in milliseconds since the epoch.
+     */
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+}
@@ -0,0 +1,197 @@
+package io.cdap.plugin.file.ingest.encryption;
+
+import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * The settings {@link FileCompressEncrypt} applies to a file. The defaults match the original behaviour of the
+ * sink: ZIP compression at level 5 for compressed-only files, and CAST5 with an integrity packet for encrypted
+ * files.
+ */
+public class CompressEncryptOptions {
+    private final boolean compress;
+    private final boolean encrypt;
+    private final List<PGPPublicKey> encKeys;
+    private final int bufferSize;
+    private int cipher = SymmetricKeyAlgorithmTags.CAST5;
+    private int compressionAlgorithm = CompressionAlgorithmTags.ZIP;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private boolean armor = false;
+    private boolean withIntegrityCheck = true;
+    private byte[] dictionary;
+    private PGPPrivateKey signingKey;
+    private int hashAlgorithm = HashAlgorithmTags.SHA256;
+
+    public CompressEncryptOptions(boolean compress, boolean encrypt, PGPPublicKey encKey, int bufferSize) {
+        this(compress, encrypt, encKey == null ? Collections.emptyList() : Collections.singletonList(encKey),
+             bufferSize);
+    }
+
+    /**
+     * @param encKeys The keys of the recipients. Encrypted files are written once, and each of the recipients can
+     *                decrypt them with their own private key.
+     */
+    public CompressEncryptOptions(boolean compress, boolean encrypt, List<PGPPublicKey> encKeys, int bufferSize) {
+        this.compress = compress;
+        this.encrypt = encrypt;
+        this.encKeys = encKeys;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @param cipher One of the {@link SymmetricKeyAlgorithmTags}, used for encrypted files.
+     */
+    public CompressEncryptOptions setCipher(int cipher) {
+        this.cipher = cipher;
+        return this;
+    }
+
+    /**
+     * @param compressionAlgorithm One of the {@link CompressionAlgorithmTags}, used for files that are both
+     *                             compressed and encrypted.
+     */
+    public CompressEncryptOptions setCompressionAlgorithm(int compressionAlgorithm) {
+        this.compressionAlgorithm = compressionAlgorithm;
+        return this;
+    }
+
+    /**
+     * @param compressionLevel The deflate level from 0 to 9, or -1 for the default of the codec.
+     */
+    public CompressEncryptOptions setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public CompressEncryptOptions setArmor(boolean armor) {
+        this.armor = armor;
+        return this;
+    }
+
+    public CompressEncryptOptions setWithIntegrityCheck(boolean withIntegrityCheck) {
+        this.withIntegrityCheck = withIntegrityCheck;
+        return this;
+    }
+
+    /**
+     * @param dictionary A preset dictionary. When set, compressed files are written as zlib streams that are
+     *                   compressed with the dictionary instead of ZIP archives.
+     */
+    public CompressEncryptOptions setDictionary(byte[] dictionary) {
+        this.dictionary = dictionary;
+        return this;
+    }
+
+    /**
+     * @param signingKey A private key to sign encrypted files with, in the same pass. Files that are not encrypted
+     *                   are not signed.
+     */
+    public CompressEncryptOptions setSigningKey(PGPPrivateKey signingKey) {
+        this.signingKey = signingKey;
+        return this;
+    }
+
+    /**
+     * @param hashAlgorithm One of the {@link HashAlgorithmTags}, the digest of signatures.
+     */
+    public CompressEncryptOptions setHashAlgorithm(int hashAlgorithm) {
+        this.hashAlgorithm = hashAlgorithm;
+        return this;
+    }
+
+    /**
+     * @param name The name of a cipher, one of CAST5, AES_128, AES_192 or AES_256.
+     * @return The matching {@link SymmetricKeyAlgorithmTags} value.
+     */
+    public static int getCipher(String name) {
+        switch (name) {
+            case "CAST5":
+                return SymmetricKeyAlgorithmTags.CAST5;
+            case "AES_128":
+                return SymmetricKeyAlgorithmTags.AES_128;
+            case "AES_192":
+                return SymmetricKeyAlgorithmTags.AES_192;
+            case "AES_256":
+                return SymmetricKeyAlgorithmTags.AES_256;
+            default:
+                throw new IllegalArgumentException("Unsupported cipher " + name);
+        }
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public boolean isEncrypt() {
+        return encrypt;
+    }
+
+    /**
+     * @return The key of the first recipient, or null if there is none.
+     */
+    public PGPPublicKey getEncKey() {
+        return encKeys.isEmpty() ? null : encKeys.get(0);
+    }
+
+    public List<PGPPublicKey> getEncKeys() {
+        return encKeys;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getCipher() {
+        return cipher;
+    }
+
+    public int getCompressionAlgorithm() {
+        return compressionAlgorithm;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public boolean isArmor() {
+        return armor;
+    }
+
+    public boolean isWithIntegrityCheck() {
+        return withIntegrityCheck;
+    }
+
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    public boolean isSign() {
+        return encrypt && signingKey != null;
+    }
+
+    public PGPPrivateKey getSigningKey() {
+        return signingKey;
+    }
+
+    public int getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * @return The id of the dictionary, its Adler-32 checksum as zlib records it in the header of every stream that
+     * was compressed with it, in hex.
+     */
+    public static String getDictionaryId(byte[] dictionary) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(dictionary, 0, dictionary.length);
+        return String.format("%08x", adler32.getValue());
+    }
+}
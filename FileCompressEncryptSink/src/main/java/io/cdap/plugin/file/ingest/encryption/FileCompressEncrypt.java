@@ -4,26 +4,55 @@ import com.google.auth.Credentials;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageOptions;
+import io.cdap.plugin.file.ingest.manifest.DigestingInputStream;
+import io.cdap.plugin.file.ingest.metrics.MeteredInputStream;
+import io.cdap.plugin.file.ingest.metrics.MeteredOutputStream;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
 import io.cdap.plugin.file.ingest.utils.FileMetaData;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ByteBufferReadable;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.bouncycastle.bcpg.ArmoredOutputStream;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcePGPDataEncryptorBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyKeyEncryptionMethodGenerator;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.security.NoSuchProviderException;
+import java.security.Provider;
 import java.security.SecureRandom;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
+import javax.annotation.Nullable;
 
 /**
  * @author Vikas K  Created On 09/11/19
  **/
 public class FileCompressEncrypt {
+    /**
+     * The provider of every cipher and signature of the sink. The JCE keeps every provider instance it has
+     * verified, so a new instance per file or manifest is never freed.
+     */
+    public static final Provider PROVIDER = new BouncyCastleProvider();
+    // smaller files are read into the buffer, mapping them costs more than it saves
+    private static final long MAP_THRESHOLD = 4L << 20;
+    private static final long MAP_CHUNK_SIZE = 64L << 20;
     static Storage storage = null;
     static Configuration conf;
 
@@ -44,55 +73,148 @@ public class FileCompressEncrypt {
                         .getService();
     }
 
-    private static void encryptFile(OutputStream out,
-                                    FileMetaData fileMetaData,
-                                    boolean compressFile, boolean encryptFile, PGPPublicKey encKey,
-                                    Integer bufferSize, boolean armor,
-                                    boolean withIntegrityCheck) throws IOException, NoSuchProviderException {
-        if (compressFile && encryptFile) {
-            compressAndEncryptFile(out, fileMetaData, encKey, bufferSize, armor, withIntegrityCheck);
-        } else if (compressFile) {
-            compressOnly(out, fileMetaData, bufferSize);
-        } else if (encryptFile) {
-            encryptOnly(out, fileMetaData, encKey, bufferSize, armor, withIntegrityCheck);
+    /**
+     * Writes the file to the output stream, compressed and/or encrypted as set in the options, on the calling
+     * thread. The output stream is not closed.
+     */
+    public static void encryptFile(OutputStream out, FileMetaData fileMetaData, CompressEncryptOptions options,
+                                   StageTimer timer) throws IOException, NoSuchProviderException {
+        encryptFile(out, fileMetaData, options, timer, null);
+    }
+
+    /**
+     * @param sourceDigest A digest to update with the content of the file as it is read, or null. The bytes it
+     *                     hashed are counted as {@link Stage#DIGEST} in the timer.
+     */
+    public static void encryptFile(OutputStream out, FileMetaData fileMetaData, CompressEncryptOptions options,
+                                   StageTimer timer, @Nullable MessageDigest sourceDigest)
+            throws IOException, NoSuchProviderException {
+        if (options.isCompress() && options.getDictionary() != null) {
+            compressWithDictionary(out, fileMetaData, options, timer, sourceDigest);
+        } else if (options.isCompress() && options.isEncrypt()) {
+            compressAndEncryptFile(out, fileMetaData, options, timer, sourceDigest);
+        } else if (options.isCompress()) {
+            compressOnly(out, fileMetaData, options, timer, sourceDigest);
+        } else if (options.isEncrypt()) {
+            encryptOnly(out, fileMetaData, options, timer, sourceDigest);
         } else {
-            noCompressNoEncrypt(out, fileMetaData, bufferSize);
+            noCompressNoEncrypt(out, fileMetaData, options.getBufferSize(), timer, sourceDigest);
         }
     }
 
-    private static void compressOnly(OutputStream out, FileMetaData fileMetaData, Integer bufferSize) throws IOException, NoSuchProviderException {
-        InputStream inputStream = fileMetaData.getFileSystem().open(fileMetaData.getPath());
+    private static PGPEncryptedDataGenerator getEncryptedDataGenerator(CompressEncryptOptions options) {
+        PGPEncryptedDataGenerator cPk = new PGPEncryptedDataGenerator(new JcePGPDataEncryptorBuilder(options.getCipher()).setWithIntegrityPacket(options.isWithIntegrityCheck()).setSecureRandom(new SecureRandom()).setProvider(PROVIDER));
 
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(out)) {
-            zipOutputStream.setMethod(8);
-            zipOutputStream.setLevel(5);
+        // the data is encrypted once with a session key, which is encrypted for every recipient
+        for (PGPPublicKey encKey : options.getEncKeys()) {
+            cPk.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(encKey).setProvider(PROVIDER));
+        }
+        return cPk;
+    }
 
-            ZipEntry zipEntry = new ZipEntry(fileMetaData.getPath().getName());
-            zipOutputStream.putNextEntry(zipEntry);
+    private static InputStream openSource(FileMetaData fileMetaData, StageTimer timer,
+                                          @Nullable MessageDigest sourceDigest) throws IOException {
+        InputStream inputStream;
+        ByteBuffer content = fileMetaData.getPrefetchedContent();
+        timer.start(Stage.SOURCE_OPEN);
+        try {
+            inputStream = content != null
+                    ? new ByteArrayInputStream(content.array(), content.arrayOffset() + content.position(),
+                                               content.remaining())
+                    : fileMetaData.open();
+        } finally {
+            timer.stop();
+        }
+        // the size of the file is only reported with the event of the open
+        timer.addBytes(Stage.SOURCE_OPEN, Math.max(fileMetaData.getKnownLength(), 0));
+        InputStream in = new MeteredInputStream(inputStream, Stage.READ, timer);
+        return sourceDigest == null ? in : new DigestingInputStream(in, sourceDigest, timer);
+    }
+
+    private static void compressOnly(OutputStream out, FileMetaData fileMetaData, CompressEncryptOptions options, StageTimer timer, MessageDigest sourceDigest) throws IOException, NoSuchProviderException {
+        InputStream inputStream = openSource(fileMetaData, timer, sourceDigest);
+        int bufferSize = options.getBufferSize();
+
+        ZipOutputStream zipOutputStream = new ZipOutputStream(out);
+        OutputStream compressed = new MeteredOutputStream(zipOutputStream, Stage.COMPRESS, timer);
+        zipOutputStream.setMethod(8);
+        zipOutputStream.setLevel(options.getCompressionLevel() == Deflater.DEFAULT_COMPRESSION ? 5 : options.getCompressionLevel());
 
+        ZipEntry zipEntry = new ZipEntry(fileMetaData.getPath().getName());
+        zipOutputStream.putNextEntry(zipEntry);
+
+        byte[] buffer = new byte[bufferSize];
+        int size;
+        while ((size = inputStream.read(buffer)) > 0) {
+            compressed.write(buffer, 0, size);
+        }
+        // finish rather than close, the caller owns the output stream
+        timer.start(Stage.COMPRESS);
+        try {
+            zipOutputStream.finish();
+        } finally {
+            timer.stop();
+        }
+        inputStream.close();
+    }
+
+    /**
+     * Writes the file as a zlib stream compressed with the preset dictionary of the options, encrypted as a PGP
+     * message if encryption is enabled. PGP can't carry a preset dictionary, so the encrypted message is not
+     * compressed again.
+     */
+    private static void compressWithDictionary(OutputStream out, FileMetaData fileMetaData,
+                                               CompressEncryptOptions options, StageTimer timer,
+                                               MessageDigest sourceDigest) throws IOException {
+        InputStream inputStream = openSource(fileMetaData, timer, sourceDigest);
+        int bufferSize = options.getBufferSize();
+
+        OutputStream encrypted = null;
+        if (options.isEncrypt()) {
+            encrypted = openEncrypted(out, fileMetaData.getPath().getName(),
+                                      new Date(fileMetaData.getLastModifiedTime()), options, timer);
+            out = encrypted;
+        }
+        Deflater deflater = new Deflater(options.getCompressionLevel());
+        deflater.setDictionary(options.getDictionary());
+        try {
+            DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(out, deflater, bufferSize);
+            OutputStream compressed = new MeteredOutputStream(deflaterOutputStream, Stage.COMPRESS, timer);
             byte[] buffer = new byte[bufferSize];
             int size;
             while ((size = inputStream.read(buffer)) > 0) {
-                zipOutputStream.write(buffer, 0, size);
+                compressed.write(buffer, 0, size);
             }
+            // finish rather than close, the caller owns the output stream
+            timer.start(Stage.COMPRESS);
+            try {
+                deflaterOutputStream.finish();
+            } finally {
+                timer.stop();
+            }
+        } finally {
+            deflater.end();
+            inputStream.close();
+        }
+        if (encrypted != null) {
+            encrypted.close();
         }
-        inputStream.close();
     }
 
-    private static void encryptOnly(OutputStream out, FileMetaData fileMetaData, PGPPublicKey encKey, Integer bufferSize, boolean armor, boolean withIntegrityCheck) throws IOException, NoSuchProviderException {
+    private static void encryptOnly(OutputStream out, FileMetaData fileMetaData, CompressEncryptOptions options, StageTimer timer, MessageDigest sourceDigest) throws IOException, NoSuchProviderException {
+        boolean armor = options.isArmor();
+        int bufferSize = options.getBufferSize();
         if (armor) {
             out = new ArmoredOutputStream(out);
         }
 
         try {
-            PGPEncryptedDataGenerator cPk = new PGPEncryptedDataGenerator(new JcePGPDataEncryptorBuilder(PGPEncryptedData.CAST5).setWithIntegrityPacket(withIntegrityCheck).setSecureRandom(new SecureRandom()).setProvider(new BouncyCastleProvider()));
+            PGPEncryptedDataGenerator cPk = getEncryptedDataGenerator(options);
 
-            cPk.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(encKey).setProvider(new BouncyCastleProvider()));
-
-            OutputStream cOut = cPk.open(out, new byte[bufferSize]);
+            OutputStream cOut = new MeteredOutputStream(cPk.open(out, new byte[bufferSize]), Stage.ENCRYPT, timer);
 
             //PGPUtil.writeFileToLiteralData(cOut, PGPLiteralData.BINARY, new File(fileName), new byte[1 << 16]);
-            writeFileToLiteralData(cOut, PGPLiteralData.BINARY, fileMetaData, new byte[bufferSize]);
+            writeFileToLiteralData(cOut, PGPLiteralData.BINARY, fileMetaData, new byte[bufferSize], options, timer, sourceDigest);
 
             cOut.close();
 
@@ -100,15 +222,12 @@ public class FileCompressEncrypt {
                 out.close();
             }
         } catch (PGPException e) {
-            System.err.println(e);
-            if (e.getUnderlyingException() != null) {
-                e.getUnderlyingException().printStackTrace();
-            }
+            throw new IOException("Failed to encrypt " + fileMetaData.getPath(), e);
         }
     }
 
-    private static void noCompressNoEncrypt(OutputStream out, FileMetaData fileMetaData, Integer bufferSize) throws IOException, NoSuchProviderException {
-        InputStream inputStream = fileMetaData.getFileSystem().open(fileMetaData.getPath());
+    private static void noCompressNoEncrypt(OutputStream out, FileMetaData fileMetaData, Integer bufferSize, StageTimer timer, MessageDigest sourceDigest) throws IOException, NoSuchProviderException {
+        InputStream inputStream = openSource(fileMetaData, timer, sourceDigest);
 
         byte[] buffer = new byte[bufferSize];
 
@@ -120,30 +239,168 @@ public class FileCompressEncrypt {
         inputStream.close();
     }
 
+    /**
+     * Copies the file as is to the channel on the calling thread, without the pipe and the copies through heap
+     * buffers of {@link #gcsWriter}. Large local files are memory mapped in chunks of {@link #MAP_CHUNK_SIZE},
+     * small ones and files on filesystems that support it, like HDFS, are read into the given direct buffer, and
+     * other filesystems fall back to a heap buffer. Reads are charged to the read timer and writes to the write
+     * timer.
+     *
+     * @param buffer A direct buffer, reused across files.
+     * @return The number of bytes copied.
+     */
+    public static long copyFile(WritableByteChannel out, FileMetaData fileMetaData, ByteBuffer buffer,
+                                StageTimer readTimer, StageTimer writeTimer) throws IOException {
+        ByteBuffer content = fileMetaData.getPrefetchedContent();
+        if (content != null) {
+            // the file was read ahead, the time of the read is charged where it happened
+            int count = content.remaining();
+            readTimer.addBytes(Stage.READ, count);
+            writeFully(out, content, writeTimer);
+            return count;
+        }
+        FileSystem fileSystem = fileMetaData.getFileSystem();
+        if (fileSystem instanceof LocalFileSystem || fileSystem instanceof RawLocalFileSystem) {
+            // the checksums of the local filesystem are not verified, as for any copy of the raw file
+            File file = fileSystem instanceof LocalFileSystem
+                    ? ((LocalFileSystem) fileSystem).pathToFile(fileMetaData.getPath())
+                    : ((RawLocalFileSystem) fileSystem).pathToFile(fileMetaData.getPath());
+            readTimer.start(Stage.SOURCE_OPEN);
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            } finally {
+                readTimer.stop();
+            }
+            readTimer.addBytes(Stage.SOURCE_OPEN, Math.max(fileMetaData.getKnownLength(), 0));
+            try {
+                return copyChannel(channel, out, buffer, readTimer, writeTimer);
+            } finally {
+                channel.close();
+            }
+        }
+
+        readTimer.start(Stage.SOURCE_OPEN);
+        FSDataInputStream in;
+        try {
+            in = fileMetaData.open();
+        } finally {
+            readTimer.stop();
+        }
+        readTimer.addBytes(Stage.SOURCE_OPEN, Math.max(fileMetaData.getKnownLength(), 0));
+        try {
+            boolean byteBufferReadable = in.getWrappedStream() instanceof ByteBufferReadable;
+            // streams that can't fill a direct buffer are read into the heap, which is still one copy fewer
+            ByteBuffer readBuffer = byteBufferReadable ? buffer : ByteBuffer.allocate(buffer.capacity());
+            long total = 0;
+            while (true) {
+                readBuffer.clear();
+                int read;
+                readTimer.start(Stage.READ);
+                try {
+                    if (byteBufferReadable) {
+                        read = in.read(readBuffer);
+                    } else {
+                        read = in.read(readBuffer.array(), 0, readBuffer.capacity());
+                        readBuffer.position(Math.max(read, 0));
+                    }
+                } finally {
+                    readTimer.stop();
+                }
+                if (read < 0) {
+                    return total;
+                }
+                readTimer.addBytes(Stage.READ, read);
+                readBuffer.flip();
+                writeFully(out, readBuffer, writeTimer);
+                total += read;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long copyChannel(FileChannel channel, WritableByteChannel out, ByteBuffer buffer,
+                                    StageTimer readTimer, StageTimer writeTimer) throws IOException {
+        long size = channel.size();
+        if (size < MAP_THRESHOLD) {
+            long total = 0;
+            while (true) {
+                buffer.clear();
+                int read;
+                readTimer.start(Stage.READ);
+                try {
+                    read = channel.read(buffer);
+                } finally {
+                    readTimer.stop();
+                }
+                if (read < 0) {
+                    return total;
+                }
+                readTimer.addBytes(Stage.READ, read);
+                buffer.flip();
+                writeFully(out, buffer, writeTimer);
+                total += read;
+            }
+        }
+        for (long position = 0; position < size; position += MAP_CHUNK_SIZE) {
+            long length = Math.min(MAP_CHUNK_SIZE, size - position);
+            MappedByteBuffer mapped;
+            readTimer.start(Stage.READ);
+            try {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            } finally {
+                readTimer.stop();
+            }
+            // pages are faulted in as the destination reads them, so reading shows up as part of the upload
+            readTimer.addBytes(Stage.READ, length);
+            writeFully(out, mapped, writeTimer);
+        }
+        return size;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer, StageTimer writeTimer) throws IOException {
+        int count = buffer.remaining();
+        writeTimer.start(Stage.UPLOAD);
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } finally {
+            writeTimer.stop();
+        }
+        writeTimer.addBytes(Stage.UPLOAD, count);
+    }
+
     private static void compressAndEncryptFile(
             OutputStream out,
             FileMetaData fileMetaData,
-            PGPPublicKey encKey,
-            Integer bufferSize,
-            boolean armor,
-            boolean withIntegrityCheck)
+            CompressEncryptOptions options,
+            StageTimer timer,
+            MessageDigest sourceDigest)
             throws IOException, NoSuchProviderException {
+        boolean armor = options.isArmor();
+        int bufferSize = options.getBufferSize();
         if (armor) {
             out = new ArmoredOutputStream(out);
         }
 
         try {
-            PGPEncryptedDataGenerator cPk = new PGPEncryptedDataGenerator(new JcePGPDataEncryptorBuilder(PGPEncryptedData.CAST5).setWithIntegrityPacket(withIntegrityCheck).setSecureRandom(new SecureRandom()).setProvider(new BouncyCastleProvider()));
+            PGPEncryptedDataGenerator cPk = getEncryptedDataGenerator(options);
 
-            cPk.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(encKey).setProvider(new BouncyCastleProvider()));
+            OutputStream cOut = new MeteredOutputStream(cPk.open(out, new byte[bufferSize]), Stage.ENCRYPT, timer);
 
-            OutputStream cOut = cPk.open(out, new byte[bufferSize]);
-
-            PGPCompressedDataGenerator comData = new PGPCompressedDataGenerator(PGPCompressedData.ZIP);
+            PGPCompressedDataGenerator comData = new PGPCompressedDataGenerator(options.getCompressionAlgorithm(), options.getCompressionLevel());
 
             //PGPUtil.writeFileToLiteralData(comData.open(cOut), PGPLiteralData.BINARY, new File(fileName), new byte[1 << 16]);
-            writeFileToLiteralData(comData.open(cOut), PGPLiteralData.BINARY, fileMetaData, new byte[bufferSize]);
-            comData.close();
+            OutputStream compressed = new MeteredOutputStream(comData.open(cOut), Stage.COMPRESS, timer);
+            writeFileToLiteralData(compressed, PGPLiteralData.BINARY, fileMetaData, new byte[bufferSize], options, timer, sourceDigest);
+            timer.start(Stage.COMPRESS);
+            try {
+                comData.close();
+            } finally {
+                timer.stop();
+            }
 
             cOut.close();
 
@@ -151,22 +408,197 @@ public class FileCompressEncrypt {
                 out.close();
             }
         } catch (PGPException e) {
-            System.err.println(e);
-            if (e.getUnderlyingException() != null) {
-                e.getUnderlyingException().printStackTrace();
+            throw new IOException("Failed to encrypt " + fileMetaData.getPath(), e);
+        }
+    }
+
+    /**
+     * Starts a PGP message of a single literal data packet in the output stream, for content that doesn't come
+     * from one file, e.g. an archive of many files. The message is not compressed. Closing the returned stream
+     * finishes the message but does not close the output stream.
+     */
+    public static OutputStream openEncrypted(OutputStream out, String fileName, Date modificationTime,
+                                             CompressEncryptOptions options, StageTimer timer) throws IOException {
+        int bufferSize = options.getBufferSize();
+        PGPEncryptedDataGenerator cPk = getEncryptedDataGenerator(options);
+        OutputStream cOut;
+        try {
+            cOut = cPk.open(out, new byte[bufferSize]);
+        } catch (PGPException e) {
+            throw new IOException("Failed to start the PGP message for " + fileName, e);
+        }
+        OutputStream literalOut = openLiteralData(cOut, fileName, modificationTime, new byte[bufferSize], options,
+                                                  timer);
+        return new MeteredOutputStream(literalOut, Stage.ENCRYPT, timer) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                timer.start(Stage.ENCRYPT);
+                try {
+                    cOut.close();
+                } finally {
+                    timer.stop();
+                }
+            }
+        };
+    }
+
+    /**
+     * Starts the chain of streams that {@link #encryptFile} writes a file through, for content that is produced
+     * while it is written, e.g. the records of a stream: a ZIP archive of a single entry when only compressed, a
+     * PGP message when encrypted, with a compressed packet when also compressed. Dictionary compression is not
+     * supported, the dictionary is trained on whole files. Closing the returned stream finishes the chain but does
+     * not close the output stream.
+     *
+     * @param name The name of the entry or of the literal data, usually the name of the object.
+     */
+    public static OutputStream openCompressEncrypted(OutputStream out, String name, Date modificationTime,
+                                                     CompressEncryptOptions options, StageTimer timer) throws IOException {
+        int bufferSize = options.getBufferSize();
+        if (options.isEncrypt()) {
+            OutputStream armored = options.isArmor() ? new ArmoredOutputStream(out) : null;
+            OutputStream cOut;
+            try {
+                cOut = new MeteredOutputStream(getEncryptedDataGenerator(options).open(
+                        armored == null ? out : armored, new byte[bufferSize]), Stage.ENCRYPT, timer);
+            } catch (PGPException e) {
+                throw new IOException("Failed to start the PGP message for " + name, e);
             }
+            PGPCompressedDataGenerator comData = null;
+            OutputStream literalParent = cOut;
+            if (options.isCompress()) {
+                comData = new PGPCompressedDataGenerator(options.getCompressionAlgorithm(),
+                                                         options.getCompressionLevel());
+                literalParent = new MeteredOutputStream(comData.open(cOut), Stage.COMPRESS, timer);
+            }
+            PGPCompressedDataGenerator compressedData = comData;
+            OutputStream literalOut = openLiteralData(literalParent, name, modificationTime, new byte[bufferSize],
+                                                      options, timer);
+            return new FilterOutputStream(literalOut) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                    if (compressedData != null) {
+                        timer.start(Stage.COMPRESS);
+                        try {
+                            compressedData.close();
+                        } finally {
+                            timer.stop();
+                        }
+                    }
+                    cOut.close();
+                    if (armored != null) {
+                        armored.close();
+                    }
+                }
+            };
+        }
+        if (options.isCompress()) {
+            ZipOutputStream zipOutputStream = new ZipOutputStream(out);
+            zipOutputStream.setMethod(ZipOutputStream.DEFLATED);
+            zipOutputStream.setLevel(options.getCompressionLevel() == Deflater.DEFAULT_COMPRESSION ? 5
+                                             : options.getCompressionLevel());
+            zipOutputStream.putNextEntry(new ZipEntry(name));
+            return new MeteredOutputStream(zipOutputStream, Stage.COMPRESS, timer) {
+                @Override
+                public void close() throws IOException {
+                    // finish rather than close, the caller owns the output stream
+                    timer.start(Stage.COMPRESS);
+                    try {
+                        zipOutputStream.finish();
+                    } finally {
+                        timer.stop();
+                    }
+                }
+            };
         }
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
     }
 
     public static void writeFileToLiteralData(OutputStream var0, char var1, FileMetaData fileMetaData, byte[] var3) throws IOException {
         PGPLiteralDataGenerator var4 = new PGPLiteralDataGenerator();
         OutputStream var5 = var4.open(var0, var1, fileMetaData.getPath().getName(), new Date(fileMetaData.getLastModifiedTime()), var3);
-        pipeFileContents(fileMetaData, var5, var3.length);
+        pipeFileContents(fileMetaData, var5, var3.length, new StageTimer(), null);
     }
 
-    private static void pipeFileContents(FileMetaData var0, OutputStream var1, int var2) throws IOException {
+    private static void writeFileToLiteralData(OutputStream var0, char var1, FileMetaData fileMetaData, byte[] var3, CompressEncryptOptions options, StageTimer timer, MessageDigest sourceDigest) throws IOException {
+        OutputStream var5 = openLiteralData(var0, fileMetaData.getPath().getName(), new Date(fileMetaData.getLastModifiedTime()), var3, options, timer);
+        pipeFileContents(fileMetaData, var5, var3.length, timer, sourceDigest);
+    }
+
+    /**
+     * Starts the literal data packet of a message. When the options have a signing key, the packet is preceded by
+     * a one-pass signature packet and followed by the signature, which is computed over the content as it is
+     * written, so a signed message takes a single pass like any other. Closing the returned stream finishes the
+     * packets but does not close the output stream.
+     */
+    private static OutputStream openLiteralData(OutputStream out, String name, Date modificationTime, byte[] buffer,
+                                                CompressEncryptOptions options, StageTimer timer) throws IOException {
+        if (!options.isSign()) {
+            return new PGPLiteralDataGenerator().open(out, PGPLiteralData.BINARY, name, modificationTime, buffer);
+        }
+        PGPPrivateKey signingKey = options.getSigningKey();
+        PGPSignatureGenerator signatureGenerator = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(
+                signingKey.getPublicKeyPacket().getAlgorithm(), options.getHashAlgorithm()).setProvider(PROVIDER));
+        try {
+            signatureGenerator.init(PGPSignature.BINARY_DOCUMENT, signingKey);
+            signatureGenerator.generateOnePassVersion(false).encode(out);
+        } catch (PGPException e) {
+            throw new IOException("Failed to start the signature of " + name, e);
+        }
+        OutputStream literalOut = new PGPLiteralDataGenerator().open(out, PGPLiteralData.BINARY, name,
+                                                                     modificationTime, buffer);
+        return new FilterOutputStream(literalOut) {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                timer.start(Stage.SIGN);
+                try {
+                    signatureGenerator.update(b, off, len);
+                } finally {
+                    timer.stop();
+                }
+                timer.addBytes(Stage.SIGN, len);
+                literalOut.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                literalOut.close();
+                timer.start(Stage.SIGN);
+                try {
+                    signatureGenerator.generate().encode(out);
+                } catch (PGPException e) {
+                    throw new IOException("Failed to sign " + name, e);
+                } finally {
+                    timer.stop();
+                }
+            }
+        };
+    }
+
+    private static void pipeFileContents(FileMetaData var0, OutputStream var1, int var2, StageTimer timer, MessageDigest sourceDigest) throws IOException {
         //FileInputStream var3 = new FileInputStream(var0);
-        FSDataInputStream var3 = var0.getFileSystem().open(var0.getPath());
+        InputStream var3 = openSource(var0, timer, sourceDigest);
         byte[] var4 = new byte[var2];
 
         int var5;
@@ -179,29 +611,84 @@ public class FileCompressEncrypt {
     }
 
     public static InputStream gcsWriter(FileMetaData fileMetaData, boolean compressFile, boolean encryptFile, PGPPublicKey encKey, Integer bufferSize) throws IOException {
+        return gcsWriter(fileMetaData, new CompressEncryptOptions(compressFile, encryptFile, encKey, bufferSize), new StageTimer());
+    }
+
+    /**
+     * Compresses and/or encrypts the file on a separate thread and returns the resulting bytes as a stream.
+     * The time spent in each stage is recorded in the given timer, which may be read once the returned
+     * stream has been closed. If the file can't be compressed or encrypted, reading the end of the stream
+     * throws the error instead of returning a truncated file.
+     */
+    public static InputStream gcsWriter(FileMetaData fileMetaData, CompressEncryptOptions options, StageTimer timer) throws IOException {
+        return gcsWriter(fileMetaData, options, timer, null);
+    }
+
+    /**
+     * @param sourceDigest A digest to update with the content of the file as it is read, or null. It is complete
+     *                     once the returned stream has been closed.
+     */
+    public static InputStream gcsWriter(FileMetaData fileMetaData, CompressEncryptOptions options, StageTimer timer,
+                                        @Nullable MessageDigest sourceDigest) throws IOException {
         PipedOutputStream outPipe = new PipedOutputStream();
         PipedInputStream inPipe = new PipedInputStream();
         inPipe.connect(outPipe);
 
-        new Thread(
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread writerThread = new Thread(
                 () -> {
                     try {
-                        encryptFile(outPipe, fileMetaData, compressFile, encryptFile, encKey, bufferSize, false, true);
-                        //Thread.sleep(10000);
-                        //outPipe.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    } catch (NoSuchProviderException e) {
-                        e.printStackTrace();
+                        encryptFile(new MeteredOutputStream(outPipe, Stage.BACKPRESSURE, timer), fileMetaData, options, timer, sourceDigest);
+                    } catch (IOException | NoSuchProviderException | RuntimeException e) {
+                        failure.set(e);
                     } finally {
                         try {
                             outPipe.close();
                         } catch (IOException e) {
-                            e.printStackTrace();
+                            failure.compareAndSet(null, e);
                         }
                     }
-                })
-                .start();
-        return inPipe;
+                });
+        writerThread.start();
+
+        return new FilterInputStream(inPipe) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read < 0) {
+                    checkFailure();
+                }
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read < 0) {
+                    checkFailure();
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                // the writer thread still updates the timer while it closes its streams
+                try {
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            private void checkFailure() throws IOException {
+                // the pipe is closed once the writer has set the failure, so it is visible at the end of the stream
+                Exception e = failure.get();
+                if (e != null) {
+                    throw e instanceof IOException ? (IOException) e
+                            : new IOException("Failed to compress or encrypt " + fileMetaData.getPath(), e);
+                }
+            }
+        };
     }
 }
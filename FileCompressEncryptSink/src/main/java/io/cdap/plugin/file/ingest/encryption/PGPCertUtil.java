@@ -6,7 +6,9 @@ import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyDecryptorBuilder;
 
 import java.io.*;
 import java.security.NoSuchProviderException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 public class PGPCertUtil {
     static byte[] compressFile(String fileName, int algorithm) throws IOException {
@@ -29,7 +31,7 @@ public class PGPCertUtil {
      * @throws PGPException
      * @throws NoSuchProviderException
      */
-    static PGPPrivateKey findSecretKey(PGPSecretKeyRingCollection pgpSec, long keyID, char[] pass)
+    public static PGPPrivateKey findSecretKey(PGPSecretKeyRingCollection pgpSec, long keyID, char[] pass)
             throws PGPException, NoSuchProviderException {
         PGPSecretKey pgpSecKey = pgpSec.getSecretKey(keyID);
 
@@ -37,7 +39,40 @@ public class PGPCertUtil {
             return null;
         }
 
-        return pgpSecKey.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").build(pass));
+        return pgpSecKey.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider(FileCompressEncrypt.PROVIDER).build(pass));
+    }
+
+    /**
+     * Reads all the secret key rings of a key ring file, to look up the keys of encrypted messages with
+     * {@link #findSecretKey}.
+     *
+     * @param fileName The path of the key ring file on the local file system.
+     * @return The secret key rings.
+     * @throws IOException
+     * @throws PGPException
+     */
+    public static PGPSecretKeyRingCollection readSecretKeyRings(String fileName) throws IOException, PGPException {
+        try (InputStream keyIn = new BufferedInputStream(new FileInputStream(fileName))) {
+            return new PGPSecretKeyRingCollection(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
+        }
+    }
+
+    /**
+     * Reads the encryption key of every recipient, for messages that each of them can decrypt.
+     *
+     * @param fileNames The paths of the key ring files on the local file system, separated by commas.
+     * @return The first encryption key of every file, in order.
+     * @throws IOException
+     * @throws PGPException
+     */
+    public static List<PGPPublicKey> readPublicKeys(String fileNames) throws IOException, PGPException {
+        List<PGPPublicKey> keys = new ArrayList<>();
+        for (String fileName : fileNames.split(",")) {
+            if (!fileName.trim().isEmpty()) {
+                keys.add(readPublicKey(fileName.trim()));
+            }
+        }
+        return keys;
     }
 
     public static PGPPublicKey readPublicKey(String fileName) throws IOException, PGPException {
@@ -82,6 +117,20 @@ public class PGPCertUtil {
         throw new IllegalArgumentException("Can't find encryption key in key ring.");
     }
 
+    /**
+     * Reads the first signing key of a secret key ring file and unlocks it, to sign messages with.
+     *
+     * @param fileName   The path of the key ring file on the local file system.
+     * @param passphrase The passphrase of the key.
+     * @return The private key.
+     * @throws IOException
+     * @throws PGPException if the key can't be extracted, e.g. because of a wrong passphrase.
+     */
+    public static PGPPrivateKey readSigningKey(String fileName, char[] passphrase) throws IOException, PGPException {
+        return readSecretKey(fileName).extractPrivateKey(
+                new JcePBESecretKeyDecryptorBuilder().setProvider(FileCompressEncrypt.PROVIDER).build(passphrase));
+    }
+
     static PGPSecretKey readSecretKey(String fileName) throws IOException, PGPException {
         InputStream keyIn = new BufferedInputStream(new FileInputStream(fileName));
         PGPSecretKey secKey = readSecretKey(keyIn);
@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.events;
+
+import io.cdap.plugin.file.ingest.metrics.Stage;
+
+import javax.annotation.Nullable;
+
+/**
+ * Emits the flight recorder events of the copy path: a file is opened, its chunks are compressed, encrypted and
+ * uploaded, and the object is committed. Every event carries the path of the source file, the bytes and the
+ * stage, so that the CPU samples of a recording can be tied to the files being copied.
+ *
+ * Flight recorder is only part of Java 8 since update 262, so its classes are only touched once they are known
+ * to exist, and events are handed around as plain objects. When no recording enables an event, beginning it
+ * returns null and costs a check of a flag, the event that is created for the check doesn't escape.
+ */
+public final class CopyEvents {
+    private static final boolean AVAILABLE = isAvailable();
+
+    private CopyEvents() {
+    }
+
+    /**
+     * @return The event for a run of the stage, already begun, or null if the stage has no event or it is not
+     * recorded.
+     */
+    @Nullable
+    public static Object begin(Stage stage) {
+        return AVAILABLE ? Recorder.begin(stage) : null;
+    }
+
+    /**
+     * @return The event for committing an object, already begun, or null if it is not recorded.
+     */
+    @Nullable
+    public static Object beginCommit() {
+        return AVAILABLE ? Recorder.beginCommit() : null;
+    }
+
+    /**
+     * Ends the run of an event that is committed later, once its bytes are known.
+     */
+    public static void end(Object event) {
+        Recorder.end(event);
+    }
+
+    /**
+     * @param event An event returned by {@link #begin}, or null.
+     * @param path  The source file, or null if it isn't known.
+     */
+    public static void commit(@Nullable Object event, @Nullable String path, long bytes) {
+        if (event != null) {
+            Recorder.commit(event, path, bytes, null);
+        }
+    }
+
+    /**
+     * @param event  An event returned by {@link #beginCommit}, or null.
+     * @param path   The source file, or the object itself if it has several sources.
+     * @param output The name of the object.
+     */
+    public static void commitFile(@Nullable Object event, String path, String output, long bytes) {
+        if (event != null) {
+            Recorder.commit(event, path, bytes, output);
+        }
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return jdk.jfr.FlightRecorder.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Holds everything that refers to the event classes, it is only loaded when flight recorder is available.
+     */
+    private static class Recorder {
+        static CopyEvent begin(Stage stage) {
+            CopyEvent event;
+            switch (stage) {
+                case SOURCE_OPEN:
+                    event = new FileOpenEvent();
+                    break;
+                case COMPRESS:
+                    event = new ChunkCompressedEvent();
+                    break;
+                case ENCRYPT:
+                    event = new ChunkEncryptedEvent();
+                    break;
+                case UPLOAD:
+                    event = new ChunkUploadedEvent();
+                    break;
+                default:
+                    return null;
+            }
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.stage = stage.getMetricName();
+            event.begin();
+            return event;
+        }
+
+        static CopyEvent beginCommit() {
+            FileCommittedEvent event = new FileCommittedEvent();
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.stage = "commit";
+            event.begin();
+            return event;
+        }
+
+        static void end(Object event) {
+            ((CopyEvent) event).end();
+        }
+
+        static void commit(Object event, @Nullable String path, long bytes, @Nullable String output) {
+            CopyEvent copyEvent = (CopyEvent) event;
+            copyEvent.path = path;
+            copyEvent.bytes = bytes;
+            if (copyEvent instanceof FileCommittedEvent) {
+                ((FileCommittedEvent) copyEvent).output = output;
+            }
+            copyEvent.commit();
+        }
+    }
+}
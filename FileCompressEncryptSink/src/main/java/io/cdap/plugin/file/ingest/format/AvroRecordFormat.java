@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.format;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes records as an Avro data file per object, with the schema of the records. The data file is not compressed
+ * by Avro, the objects are compressed as a whole like the other formats.
+ */
+public class AvroRecordFormat implements RecordFormat<StructuredRecord> {
+    private final Schema schema;
+    private final org.apache.avro.Schema avroSchema;
+    private DataFileWriter<StructuredRecord> fileWriter;
+
+    public AvroRecordFormat(Schema schema) {
+        this.schema = schema;
+        // the JSON form of a CDAP schema is an Avro schema
+        this.avroSchema = new org.apache.avro.Schema.Parser().parse(schema.toString());
+    }
+
+    @Override
+    public String getExtension() {
+        return ".avro";
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/avro";
+    }
+
+    @Override
+    public void begin(OutputStream out) throws IOException {
+        fileWriter = new DataFileWriter<>(new RecordDatumWriter(schema)).create(avroSchema, out);
+    }
+
+    @Override
+    public void write(StructuredRecord record) throws IOException {
+        fileWriter.append(record);
+    }
+
+    @Override
+    public void end() throws IOException {
+        // closes the stream as well, which the rolling writer allows
+        fileWriter.close();
+        fileWriter = null;
+    }
+
+    /**
+     * Encodes records by walking their CDAP schema, without converting them to Avro records first.
+     */
+    private static class RecordDatumWriter implements DatumWriter<StructuredRecord> {
+        private final Schema schema;
+
+        RecordDatumWriter(Schema schema) {
+            this.schema = schema;
+        }
+
+        @Override
+        public void setSchema(org.apache.avro.Schema schema) {
+            // the records are always written with the schema they were created with
+        }
+
+        @Override
+        public void write(StructuredRecord record, Encoder out) throws IOException {
+            writeRecord(schema, record, out);
+        }
+
+        private void writeRecord(Schema schema, StructuredRecord record, Encoder out) throws IOException {
+            for (Schema.Field field : schema.getFields()) {
+                writeValue(field.getSchema(), record.get(field.getName()), out);
+            }
+        }
+
+        private void writeValue(Schema schema, Object value, Encoder out) throws IOException {
+            switch (schema.getType()) {
+                case NULL:
+                    out.writeNull();
+                    break;
+                case BOOLEAN:
+                    out.writeBoolean((Boolean) value);
+                    break;
+                case INT:
+                    out.writeInt(((Number) value).intValue());
+                    break;
+                case LONG:
+                    out.writeLong(((Number) value).longValue());
+                    break;
+                case FLOAT:
+                    out.writeFloat(((Number) value).floatValue());
+                    break;
+                case DOUBLE:
+                    out.writeDouble(((Number) value).doubleValue());
+                    break;
+                case BYTES:
+                    if (value instanceof ByteBuffer) {
+                        out.writeBytes(((ByteBuffer) value).duplicate());
+                    } else {
+                        out.writeBytes((byte[]) value);
+                    }
+                    break;
+                case STRING:
+                    out.writeString(value.toString());
+                    break;
+                case ENUM:
+                    out.writeEnum(schema.getEnumIndex(value.toString()));
+                    break;
+                case ARRAY:
+                    writeArray(schema.getComponentSchema(), value, out);
+                    break;
+                case MAP:
+                    Map<?, ?> map = (Map<?, ?>) value;
+                    out.writeMapStart();
+                    out.setItemCount(map.size());
+                    for (Map.Entry<?, ?> entry : map.entrySet()) {
+                        out.startItem();
+                        out.writeString(entry.getKey().toString());
+                        writeValue(schema.getMapSchema().getValue(), entry.getValue(), out);
+                    }
+                    out.writeMapEnd();
+                    break;
+                case RECORD:
+                    writeRecord(schema, (StructuredRecord) value, out);
+                    break;
+                case UNION:
+                    int index = RecordFormats.resolveUnion(schema, value);
+                    out.writeIndex(index);
+                    writeValue(schema.getUnionSchema(index), value, out);
+                    break;
+                default:
+                    throw new IOException("Unsupported type " + schema.getType());
+            }
+        }
+
+        private void writeArray(Schema componentSchema, Object value, Encoder out) throws IOException {
+            out.writeArrayStart();
+            if (value instanceof Collection) {
+                Collection<?> collection = (Collection<?>) value;
+                out.setItemCount(collection.size());
+                for (Object element : collection) {
+                    out.startItem();
+                    writeValue(componentSchema, element, out);
+                }
+            } else {
+                int length = Array.getLength(value);
+                out.setItemCount(length);
+                for (int i = 0; i < length; i++) {
+                    out.startItem();
+                    writeValue(componentSchema, Array.get(value, i), out);
+                }
+            }
+            out.writeArrayEnd();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.format;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Writes records as delimited text, one record per line, with the names of the fields on the first line of every
+ * object. Values that contain the delimiter, a quote or a line break are quoted as in RFC 4180, nulls are empty
+ * and bytes are written in base64. Only records of simple fields can be written, see
+ * {@link RecordFormats#validate(String, Schema)}.
+ */
+public class DelimitedRecordFormat implements RecordFormat<StructuredRecord> {
+    private static final char QUOTE = '"';
+    private static final char NEWLINE = '\n';
+    private static final int WRITER_BUFFER_SIZE = 8 << 10;
+
+    private final List<Schema.Field> fields;
+    private final char delimiter;
+    private Writer writer;
+
+    public DelimitedRecordFormat(Schema schema, char delimiter) {
+        this.fields = schema.getFields();
+        this.delimiter = delimiter;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".csv";
+    }
+
+    @Override
+    public String getContentType() {
+        return "text/csv";
+    }
+
+    @Override
+    public void begin(OutputStream out) throws IOException {
+        // values are written in small pieces, the encoder is much faster on a buffer of them
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                writer.write(delimiter);
+            }
+            writeText(fields.get(i).getName());
+        }
+        writer.write(NEWLINE);
+    }
+
+    @Override
+    public void write(StructuredRecord record) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                writer.write(delimiter);
+            }
+            Schema.Field field = fields.get(i);
+            Object value = record.get(field.getName());
+            if (value != null) {
+                writeValue(RecordFormats.nonNullable(field.getSchema()), value);
+            }
+        }
+        writer.write(NEWLINE);
+    }
+
+    @Override
+    public void end() throws IOException {
+        writer.flush();
+        writer = null;
+    }
+
+    private void writeValue(Schema schema, Object value) throws IOException {
+        String logical = RecordFormats.formatLogical(schema, value);
+        if (logical != null) {
+            writer.write(logical);
+            return;
+        }
+        switch (schema.getType()) {
+            case BYTES:
+                writer.write(Base64.getEncoder().encodeToString(RecordFormats.toBytes(value)));
+                break;
+            case STRING:
+            case ENUM:
+                writeText(value.toString());
+                break;
+            default:
+                writer.write(value.toString());
+        }
+    }
+
+    private void writeText(String text) throws IOException {
+        if (!needsQuotes(text)) {
+            writer.write(text);
+            return;
+        }
+        writer.write(QUOTE);
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            // a quote inside a quoted value is doubled
+            if (text.charAt(i) == QUOTE) {
+                writer.write(text, start, i + 1 - start);
+                start = i;
+            }
+        }
+        writer.write(text, start, text.length() - start);
+        writer.write(QUOTE);
+    }
+
+    private boolean needsQuotes(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == delimiter || c == QUOTE || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.format;
+
+import com.google.gson.stream.JsonWriter;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes records as JSON objects, one per line. Dates, times and timestamps are written in ISO-8601, decimals as
+ * numbers and bytes in base64. Every record is written with its own schema, so records of different schemas can
+ * share an object.
+ */
+public class JsonRecordFormat implements RecordFormat<StructuredRecord> {
+    private static final char NEWLINE = '\n';
+    private static final int WRITER_BUFFER_SIZE = 8 << 10;
+
+    private Writer writer;
+    private JsonWriter jsonWriter;
+
+    @Override
+    public String getExtension() {
+        return ".json";
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/json";
+    }
+
+    @Override
+    public void begin(OutputStream out) {
+        // values are written in small pieces, the encoder is much faster on a buffer of them
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+        jsonWriter = new JsonWriter(writer);
+        // one top level value per line, and NaN and infinite doubles are written as they are
+        jsonWriter.setLenient(true);
+    }
+
+    @Override
+    public void write(StructuredRecord record) throws IOException {
+        writeRecord(record);
+        // the JSON writer doesn't buffer, so the line ends after the record
+        writer.write(NEWLINE);
+    }
+
+    @Override
+    public void end() throws IOException {
+        jsonWriter.flush();
+        jsonWriter = null;
+        writer = null;
+    }
+
+    private void writeRecord(StructuredRecord record) throws IOException {
+        jsonWriter.beginObject();
+        for (Schema.Field field : record.getSchema().getFields()) {
+            jsonWriter.name(field.getName());
+            writeValue(field.getSchema(), record.get(field.getName()));
+        }
+        jsonWriter.endObject();
+    }
+
+    private void writeValue(Schema schema, Object value) throws IOException {
+        if (value == null) {
+            jsonWriter.nullValue();
+            return;
+        }
+        if (schema.getType() == Schema.Type.UNION) {
+            schema = schema.getUnionSchema(RecordFormats.resolveUnion(schema, value));
+        }
+        if (schema.getLogicalType() == Schema.LogicalType.DECIMAL) {
+            jsonWriter.value(RecordFormats.toDecimal(schema, value));
+            return;
+        }
+        String logical = RecordFormats.formatLogical(schema, value);
+        if (logical != null) {
+            jsonWriter.value(logical);
+            return;
+        }
+        switch (schema.getType()) {
+            case BOOLEAN:
+                jsonWriter.value((Boolean) value);
+                break;
+            case INT:
+            case LONG:
+                jsonWriter.value(((Number) value).longValue());
+                break;
+            case FLOAT:
+            case DOUBLE:
+                jsonWriter.value(((Number) value).doubleValue());
+                break;
+            case BYTES:
+                jsonWriter.value(Base64.getEncoder().encodeToString(RecordFormats.toBytes(value)));
+                break;
+            case STRING:
+            case ENUM:
+                jsonWriter.value(value.toString());
+                break;
+            case ARRAY:
+                writeArray(schema.getComponentSchema(), value);
+                break;
+            case MAP:
+                jsonWriter.beginObject();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    jsonWriter.name(entry.getKey().toString());
+                    writeValue(schema.getMapSchema().getValue(), entry.getValue());
+                }
+                jsonWriter.endObject();
+                break;
+            case RECORD:
+                writeRecord((StructuredRecord) value);
+                break;
+            default:
+                throw new IOException("Unsupported type " + schema.getType());
+        }
+    }
+
+    private void writeArray(Schema componentSchema, Object value) throws IOException {
+        jsonWriter.beginArray();
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                writeValue(componentSchema, element);
+            }
+        } else {
+            // arrays of primitives can't be cast to Object[]
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                writeValue(componentSchema, Array.get(value, i));
+            }
+        }
+        jsonWriter.endArray();
+    }
+}
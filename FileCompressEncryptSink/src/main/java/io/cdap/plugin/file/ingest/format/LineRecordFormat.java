@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.format;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes messages as they are, one per line.
+ */
+public class LineRecordFormat implements RecordFormat<byte[]> {
+    private static final byte DELIMITER = '\n';
+
+    private OutputStream out;
+
+    @Override
+    public String getExtension() {
+        return "";
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/octet-stream";
+    }
+
+    @Override
+    public void begin(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(byte[] message) throws IOException {
+        out.write(message);
+        out.write(DELIMITER);
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.flush();
+        out = null;
+    }
+}
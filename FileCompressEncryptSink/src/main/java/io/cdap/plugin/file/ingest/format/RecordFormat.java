@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.format;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serializes records into the objects of a rolling writer. Every object is self contained, so a format starts
+ * each one with its header, if it has one, and finishes it before it is committed.
+ *
+ * @param <T> The type of the records.
+ */
+public interface RecordFormat<T> {
+
+    /**
+     * @return The end of the name of the objects, before any compression or encryption extension, e.g. ".csv".
+     */
+    String getExtension();
+
+    /**
+     * @return The content type of the objects when they are neither compressed nor encrypted.
+     */
+    String getContentType();
+
+    /**
+     * Starts a new object. The records that follow are written to the given stream until {@link #end()}.
+     */
+    void begin(OutputStream out) throws IOException;
+
+    void write(T record) throws IOException;
+
+    /**
+     * Finishes the object, writing anything that is still buffered. The stream is closed by the caller.
+     */
+    void end() throws IOException;
+}
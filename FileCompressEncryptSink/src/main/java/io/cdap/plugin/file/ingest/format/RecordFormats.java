@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.format;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The formats that records can be written in, and the conversions of values that they share.
+ */
+public final class RecordFormats {
+    public static final String CSV = "csv";
+    public static final String JSON = "json";
+    public static final String AVRO = "avro";
+
+    private RecordFormats() {
+    }
+
+    /**
+     * @param name   One of {@link #CSV}, {@link #JSON} or {@link #AVRO}, ignoring case.
+     * @param schema The schema of the records, which may be null for {@link #JSON}.
+     */
+    public static RecordFormat<StructuredRecord> create(String name, Schema schema) {
+        switch (name.toLowerCase()) {
+            case CSV:
+                return new DelimitedRecordFormat(schema, ',');
+            case JSON:
+                return new JsonRecordFormat();
+            case AVRO:
+                return new AvroRecordFormat(schema);
+            default:
+                throw new IllegalArgumentException("Unsupported record format " + name);
+        }
+    }
+
+    /**
+     * Checks that records of the schema can be written in the format.
+     *
+     * @throws IllegalArgumentException If the format is unknown or can't represent the schema.
+     */
+    public static void validate(String name, Schema schema) {
+        if (schema.getType() != Schema.Type.RECORD) {
+            throw new IllegalArgumentException("The input schema must be a record");
+        }
+        switch (name.toLowerCase()) {
+            case CSV:
+                for (Schema.Field field : schema.getFields()) {
+                    if (!nonNullable(field.getSchema()).getType().isSimpleType()) {
+                        throw new IllegalArgumentException(
+                                String.format("Field %s is of type %s, CSV can only hold simple types",
+                                              field.getName(), nonNullable(field.getSchema()).getType()));
+                    }
+                }
+                return;
+            case JSON:
+            case AVRO:
+                return;
+            default:
+                throw new IllegalArgumentException("Unsupported record format " + name);
+        }
+    }
+
+    /**
+     * @return The schema of the values of a nullable schema, or the schema itself if it's not nullable.
+     */
+    static Schema nonNullable(Schema schema) {
+        if (schema.isNullable()) {
+            for (Schema union : schema.getUnionSchemas()) {
+                if (union.getType() != Schema.Type.NULL) {
+                    return union;
+                }
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * @return The index of the member of the union that the value belongs to.
+     */
+    static int resolveUnion(Schema union, Object value) {
+        int index = 0;
+        for (Schema schema : union.getUnionSchemas()) {
+            if (matches(schema, value)) {
+                return index;
+            }
+            index++;
+        }
+        throw new IllegalArgumentException("Value of type " + (value == null ? "null" : value.getClass().getName())
+                                                   + " does not match any type of the union " + union);
+    }
+
+    /**
+     * @return The value of a date, time, timestamp or decimal as text, or null if the schema has no logical type.
+     */
+    static String formatLogical(Schema schema, Object value) {
+        Schema.LogicalType logicalType = schema.getLogicalType();
+        if (logicalType == null) {
+            return null;
+        }
+        switch (logicalType) {
+            case DATE:
+                return LocalDate.ofEpochDay(((Number) value).longValue()).toString();
+            case TIME_MILLIS:
+                return LocalTime.ofNanoOfDay(TimeUnit.MILLISECONDS.toNanos(((Number) value).longValue())).toString();
+            case TIME_MICROS:
+                return LocalTime.ofNanoOfDay(TimeUnit.MICROSECONDS.toNanos(((Number) value).longValue())).toString();
+            case TIMESTAMP_MILLIS:
+                return Instant.ofEpochMilli(((Number) value).longValue()).toString();
+            case TIMESTAMP_MICROS:
+                long micros = ((Number) value).longValue();
+                return Instant.ofEpochSecond(Math.floorDiv(micros, 1000000L),
+                                             Math.floorMod(micros, 1000000L) * 1000).toString();
+            case DECIMAL:
+                return toDecimal(schema, value).toPlainString();
+            default:
+                return null;
+        }
+    }
+
+    static BigDecimal toDecimal(Schema schema, Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        return new BigDecimal(new BigInteger(toBytes(value)), schema.getScale());
+    }
+
+    static byte[] toBytes(Object value) {
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        return (byte[]) value;
+    }
+
+    private static boolean matches(Schema schema, Object value) {
+        switch (schema.getType()) {
+            case NULL:
+                return value == null;
+            case BOOLEAN:
+                return value instanceof Boolean;
+            case INT:
+                return value instanceof Integer || value instanceof Short || value instanceof Byte;
+            case LONG:
+                return value instanceof Long;
+            case FLOAT:
+                return value instanceof Float;
+            case DOUBLE:
+                return value instanceof Double;
+            case BYTES:
+                return value instanceof byte[] || value instanceof ByteBuffer;
+            case STRING:
+                return value instanceof String;
+            case ENUM:
+                return value instanceof Enum || (value instanceof String && schema.getEnumValues().contains(value));
+            case ARRAY:
+                return value instanceof Collection || (value != null && value.getClass().isArray());
+            case MAP:
+                return value instanceof Map;
+            case RECORD:
+                return value instanceof StructuredRecord
+                        && ((StructuredRecord) value).getSchema().getRecordName().equals(schema.getRecordName());
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The HTTP requests of one task and the connections opened for them, see
+ * {@link PooledHttpTransportFactory#forTask(HttpCounters)}. A request that didn't open a connection reused one,
+ * which may have been opened by another task of the executor.
+ */
+public class HttpCounters {
+    // the uploads of a task run on several threads
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+
+    void countRequest() {
+        requests.incrementAndGet();
+    }
+
+    void countConnection() {
+        connections.incrementAndGet();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.http;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.auth.http.HttpTransportFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Hands out an HTTP transport that keeps its connections alive in a pool, so that the uploads of consecutive
+ * objects, and of the tasks that run in the same executor, reuse connections instead of paying for a TCP and TLS
+ * handshake each. The transport of {@code NetHttpTransport} goes through {@code HttpURLConnection}, which keeps
+ * only a few idle connections per host.
+ *
+ * There is one factory per proxy and pool size in a JVM, see {@link #get}. Each task takes a transport of its own
+ * over the shared pool through {@link #forTask(HttpCounters)}, which counts the requests of the task and the
+ * connections they opened.
+ */
+public class PooledHttpTransportFactory implements HttpTransportFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledHttpTransportFactory.class);
+    private static final Map<String, PooledHttpTransportFactory> FACTORIES = new ConcurrentHashMap<>();
+    // set on the requests of a task, so that the socket factories count the connections they open to the task
+    private static final String COUNTERS = "io.cdap.plugin.file.ingest.http.counters";
+    // connections that were idle for longer are checked before they are reused, the server may have closed them
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+    private static final long MAX_IDLE_SECONDS = 60;
+
+    @Nullable
+    private final Proxy proxy;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+    private final HttpTransport transport;
+
+    private PooledHttpTransportFactory(@Nullable Proxy proxy, int maxConnections) {
+        this.proxy = proxy;
+        boolean socks = proxy != null && proxy.type() == Proxy.Type.SOCKS;
+        RegistryBuilder<ConnectionSocketFactory> sockets = RegistryBuilder.create();
+        sockets.register("http", new CountingPlainSocketFactory(socks ? proxy : null));
+        sockets.register("https", new CountingSSLSocketFactory(socks ? proxy : null));
+        connectionManager = new PoolingHttpClientConnectionManager(
+                sockets.build(), null, null, socks ? host -> new InetAddress[]{UnresolvedAddress.INSTANCE} : null,
+                -1, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        // uploads go to a single host
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+
+        // the client of the factory owns the pool and evicts its idle connections, the ones of the tasks share it
+        client = newClientBuilder()
+                .evictIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS)
+                .build();
+        transport = new ApacheHttpTransport(client);
+    }
+
+    private HttpClientBuilder newClientBuilder() {
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                // the Google client follows redirects and retries with its own policies
+                .disableRedirectHandling()
+                .disableCookieManagement();
+        if (proxy != null && proxy.type() == Proxy.Type.HTTP) {
+            InetSocketAddress address = (InetSocketAddress) proxy.address();
+            builder.setProxy(new HttpHost(address.getHostString(), address.getPort()));
+        }
+        return builder;
+    }
+
+    /**
+     * @param proxy          The proxy to connect through, HTTP or SOCKS, or null to connect directly.
+     * @param maxConnections The number of connections the pool keeps at most.
+     * @return The factory for the proxy and pool size, which is created the first time.
+     */
+    public static PooledHttpTransportFactory get(@Nullable Proxy proxy, int maxConnections) {
+        return FACTORIES.computeIfAbsent(proxy + "/" + maxConnections,
+                                         key -> new PooledHttpTransportFactory(proxy, maxConnections));
+    }
+
+    /**
+     * @return A transport whose requests are not counted, e.g. for the jobs' own requests.
+     */
+    @Override
+    public HttpTransport create() {
+        return transport;
+    }
+
+    /**
+     * @param counters The counters of the task, which count the requests made through the transport and the
+     *                 connections opened for them.
+     * @return A factory of a transport for one task, which shares the connections of the pool with the other tasks.
+     */
+    public HttpTransportFactory forTask(HttpCounters counters) {
+        HttpTransport taskTransport = new ApacheHttpTransport(newClientBuilder()
+                .setConnectionManagerShared(true)
+                // the interceptors run before the connection is leased, so the counters reach the socket factories
+                .addInterceptorFirst((HttpRequest request, HttpContext context) -> {
+                    context.setAttribute(COUNTERS, counters);
+                    counters.countRequest();
+                })
+                .build());
+        return () -> taskTransport;
+    }
+
+    /**
+     * Opens connections to a host in the background until the pool holds the given number, so that the first
+     * uploads don't wait for handshakes. Each connection is opened by a HEAD request to the URL, whose response
+     * doesn't matter. Failures are only logged, the uploads open their connections as usual.
+     *
+     * @param url         A URL of the host, e.g. the root of the storage API.
+     * @param connections The number of connections the pool should hold.
+     */
+    public void warmUp(String url, int connections) {
+        PoolStats stats = connectionManager.getTotalStats();
+        int missing = Math.min(connections, stats.getMax()) - stats.getLeased() - stats.getAvailable();
+        for (int i = 0; i < missing; i++) {
+            // the requests run at the same time, so each of them takes a connection of its own
+            Thread thread = new Thread(() -> warmUp(url), "http-warm-up-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void warmUp(String url) {
+        // the client of the factory counts nothing, the connections are counted as reused by the tasks
+        try (CloseableHttpResponse response = client.execute(new HttpHead(url))) {
+            // reading the response to the end leaves the connection in the pool
+            EntityUtils.consume(response.getEntity());
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Failed to open a connection to {}", url, e);
+        }
+    }
+
+    private static void countConnection(@Nullable HttpContext context) {
+        Object counters = context == null ? null : context.getAttribute(COUNTERS);
+        if (counters != null) {
+            ((HttpCounters) counters).countConnection();
+        }
+    }
+
+    /**
+     * @return A socket that connects through the SOCKS proxy, or a plain socket without one.
+     */
+    private static Socket createSocket(@Nullable Proxy socksProxy) {
+        return socksProxy == null ? new Socket() : new Socket(socksProxy);
+    }
+
+    /**
+     * The proxy resolves the host name through SOCKS, the address that was resolved locally is a placeholder.
+     */
+    private static InetSocketAddress getRemoteAddress(@Nullable Proxy socksProxy, HttpHost host,
+                                                      InetSocketAddress remoteAddress) {
+        return socksProxy == null ? remoteAddress
+                : InetSocketAddress.createUnresolved(host.getHostName(), remoteAddress.getPort());
+    }
+
+    private static class CountingPlainSocketFactory extends PlainConnectionSocketFactory {
+        private final Proxy socksProxy;
+
+        CountingPlainSocketFactory(@Nullable Proxy socksProxy) {
+            this.socksProxy = socksProxy;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) {
+            return PooledHttpTransportFactory.createSocket(socksProxy);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            countConnection(context);
+            return super.connectSocket(connectTimeout, socket, host, getRemoteAddress(socksProxy, host, remoteAddress),
+                                       localAddress, context);
+        }
+    }
+
+    private static class CountingSSLSocketFactory extends SSLConnectionSocketFactory {
+        private final Proxy socksProxy;
+
+        CountingSSLSocketFactory(@Nullable Proxy socksProxy) {
+            super(SSLContexts.createDefault(), getDefaultHostnameVerifier());
+            this.socksProxy = socksProxy;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) {
+            return PooledHttpTransportFactory.createSocket(socksProxy);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            countConnection(context);
+            return super.connectSocket(connectTimeout, socket, host, getRemoteAddress(socksProxy, host, remoteAddress),
+                                       localAddress, context);
+        }
+    }
+
+    /**
+     * The address that host names resolve to when they are resolved by the SOCKS proxy instead.
+     */
+    private static final class UnresolvedAddress {
+        private static final InetAddress INSTANCE;
+
+        static {
+            try {
+                INSTANCE = InetAddress.getByAddress(new byte[]{0, 0, 0, 0});
+            } catch (IOException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.inventory;
+
+import io.cdap.plugin.file.ingest.destination.ObjectStat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The objects already written to a destination, built once per run from a single listing, so that tasks can skip
+ * files whose object is present and current without a request per file.
+ *
+ * An object is current if it is tagged with the size and modification time of the file it was copied from, and
+ * they are the ones the file has now. The inventory keeps a 64-bit fingerprint of the name and the tags of every
+ * tagged object, sorted, which takes 8 bytes per object and answers lookups by binary search. Two objects that
+ * share a fingerprint are vanishingly rare, even with hundreds of millions of them.
+ *
+ * Files bundled into an archive have no object of their own. Their fingerprints are taken under the name their
+ * object would have, and kept in an inventory of their own that is written next to the archive.
+ */
+public class DestinationInventory {
+    public static final String METADATA_SOURCE_SIZE = "source.size";
+    public static final String METADATA_SOURCE_MODIFICATION_TIME = "source.modification.time";
+    public static final String CONTENT_TYPE = "application/octet-stream";
+
+    private static final int MAGIC = 0x46494e56;
+    // contains() is called once per file, and MessageDigest.getInstance looks up the providers on every call
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform implements MD5
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final long[] fingerprints;
+
+    private DestinationInventory(long[] fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Reads an inventory written by {@link #write(OutputStream)}. The stream is not closed.
+     */
+    public static DestinationInventory read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a destination inventory");
+        }
+        long[] fingerprints = new long[data.readInt()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = data.readLong();
+        }
+        return new DestinationInventory(fingerprints);
+    }
+
+    /**
+     * Writes the inventory, 8 bytes per object. The stream is flushed but not closed.
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(fingerprints.length);
+        for (long fingerprint : fingerprints) {
+            data.writeLong(fingerprint);
+        }
+        data.flush();
+    }
+
+    /**
+     * @return Whether the object of the given name was copied from a file of the given size and modification time.
+     */
+    public boolean contains(String name, long sourceSize, long sourceModificationTime) {
+        return Arrays.binarySearch(fingerprints, fingerprint(name, sourceSize, sourceModificationTime)) >= 0;
+    }
+
+    /**
+     * @return The number of objects in the inventory.
+     */
+    public int size() {
+        return fingerprints.length;
+    }
+
+    private static long fingerprint(String name, long sourceSize, long sourceModificationTime) {
+        MessageDigest md5 = MD5.get();
+        md5.update(name.getBytes(StandardCharsets.UTF_8));
+        md5.update(ByteBuffer.allocate(16).putLong(sourceSize).putLong(sourceModificationTime).array());
+        // digest() resets the instance for the next call
+        return ByteBuffer.wrap(md5.digest()).getLong();
+    }
+
+    /**
+     * Collects the fingerprints of an inventory.
+     */
+    public static class Builder {
+        private long[] fingerprints = new long[1024];
+        private int size;
+
+        /**
+         * Adds an object of a listing. Objects without the source tags are left out, since whether they are
+         * current can't be told.
+         */
+        public Builder add(ObjectStat object) {
+            Map<String, String> metadata = object.getMetadata();
+            String sourceSize = metadata.get(METADATA_SOURCE_SIZE);
+            String sourceModificationTime = metadata.get(METADATA_SOURCE_MODIFICATION_TIME);
+            if (sourceSize == null || sourceModificationTime == null) {
+                return this;
+            }
+            try {
+                return add(object.getName(), Long.parseLong(sourceSize), Long.parseLong(sourceModificationTime));
+            } catch (NumberFormatException e) {
+                return this;
+            }
+        }
+
+        /**
+         * Adds an object copied from a file of the given size and modification time, or a bundled file under the
+         * name its object would have.
+         */
+        public Builder add(String name, long sourceSize, long sourceModificationTime) {
+            append(fingerprint(name, sourceSize, sourceModificationTime));
+            return this;
+        }
+
+        /**
+         * Adds every object of another inventory.
+         */
+        public Builder addAll(DestinationInventory inventory) {
+            for (long fingerprint : inventory.fingerprints) {
+                append(fingerprint);
+            }
+            return this;
+        }
+
+        public DestinationInventory build() {
+            long[] sorted = Arrays.copyOf(fingerprints, size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            return new DestinationInventory(Arrays.copyOf(sorted, distinct));
+        }
+
+        private void append(long fingerprint) {
+            if (size == fingerprints.length) {
+                fingerprints = Arrays.copyOf(fingerprints, size * 2);
+            }
+            fingerprints[size++] = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.ledger;
+
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Writes one Avro record per copied file to a ledger object of its own, so that slow, badly compressed or
+ * failed files can be found and runs compared without going through the executor logs.
+ *
+ * Each record has the source and output of the file, the bytes read and written, the codec and cipher, the
+ * microseconds spent in every {@link Stage}, keyed by its metric name, the total time, and the status with the
+ * error of a failed file. Nothing is visible in the destination until the ledger is committed.
+ */
+public class TransferLedger {
+    public static final String CONTENT_TYPE = "avro/binary";
+    public static final Schema SCHEMA = new Schema.Parser().parse(
+            "{\"type\": \"record\", \"name\": \"TransferLedgerEntry\","
+                    + " \"namespace\": \"io.cdap.plugin.file.ingest.ledger\", \"fields\": ["
+                    + "{\"name\": \"source\", \"type\": \"string\"},"
+                    + "{\"name\": \"output\", \"type\": \"string\"},"
+                    + "{\"name\": \"startTime\", \"type\": \"long\"},"
+                    + "{\"name\": \"totalMicros\", \"type\": \"long\"},"
+                    + "{\"name\": \"bytesIn\", \"type\": \"long\"},"
+                    + "{\"name\": \"bytesOut\", \"type\": \"long\"},"
+                    + "{\"name\": \"codec\", \"type\": \"string\"},"
+                    + "{\"name\": \"cipher\", \"type\": \"string\"},"
+                    + "{\"name\": \"stageMicros\", \"type\": {\"type\": \"map\", \"values\": \"long\"}},"
+                    + "{\"name\": \"status\", \"type\": {\"type\": \"enum\", \"name\": \"Status\","
+                    + " \"symbols\": [\"SUCCEEDED\", \"FAILED\"]}},"
+                    + "{\"name\": \"error\", \"type\": [\"null\", \"string\"], \"default\": null}"
+                    + "]}");
+
+    private static final Schema STATUS_SCHEMA = SCHEMA.getField("status").schema();
+    private static final GenericData.EnumSymbol SUCCEEDED = new GenericData.EnumSymbol(STATUS_SCHEMA, "SUCCEEDED");
+    private static final GenericData.EnumSymbol FAILED = new GenericData.EnumSymbol(STATUS_SCHEMA, "FAILED");
+    private static final int DEFLATE_LEVEL = 1;
+
+    private final String name;
+    private final DestinationWriter writer;
+    private final DataFileWriter<GenericRecord> fileWriter;
+    private int records;
+
+    /**
+     * @param name The name of the ledger object.
+     */
+    public TransferLedger(Destination destination, String name) throws IOException {
+        this.name = name;
+        this.writer = destination.open(name, CONTENT_TYPE, Collections.emptyMap());
+        this.fileWriter = new DataFileWriter<GenericRecord>(new GenericDatumWriter<>(SCHEMA))
+                .setCodec(CodecFactory.deflateCodec(DEFLATE_LEVEL));
+        try {
+            fileWriter.create(SCHEMA, writer.asOutputStream());
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Records one file.
+     *
+     * @param source     The path of the source file.
+     * @param output     The name of the object the file was written to.
+     * @param producer   The timer of the thread that read, compressed and encrypted the file.
+     * @param consumer   The timer of the thread that uploaded the file, or null if it was copied on one thread.
+     * @param startTime  The time the copy started, in milliseconds since the epoch.
+     * @param totalNanos The wall time taken by the file.
+     * @param error      The reason the file failed, or null if it was copied.
+     */
+    public void record(String source, String output, String codec, String cipher, StageTimer producer,
+                       @Nullable StageTimer consumer, long startTime, long totalNanos, @Nullable String error)
+            throws IOException {
+        Map<String, Long> stageMicros = new HashMap<>();
+        long bytesIn = producer.getBytes(Stage.READ);
+        long bytesOut = producer.getBytes(Stage.UPLOAD);
+        for (Stage stage : Stage.values()) {
+            long nanos = producer.getNanos(stage) + (consumer == null ? 0 : consumer.getNanos(stage));
+            stageMicros.put(stage.getMetricName(), TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+        if (consumer != null) {
+            bytesIn += consumer.getBytes(Stage.READ);
+            bytesOut += consumer.getBytes(Stage.UPLOAD);
+        }
+
+        GenericRecord record = new GenericData.Record(SCHEMA);
+        record.put("source", source);
+        record.put("output", output);
+        record.put("startTime", startTime);
+        record.put("totalMicros", TimeUnit.NANOSECONDS.toMicros(totalNanos));
+        record.put("bytesIn", bytesIn);
+        record.put("bytesOut", bytesOut);
+        record.put("codec", codec);
+        record.put("cipher", cipher);
+        record.put("stageMicros", stageMicros);
+        record.put("status", error == null ? SUCCEEDED : FAILED);
+        record.put("error", error);
+        fileWriter.append(record);
+        records++;
+    }
+
+    /**
+     * @return The number of files recorded so far.
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Writes the records that are still buffered and makes the ledger visible.
+     */
+    public void commit() throws IOException {
+        // closing the file writer would close the writer before it is committed
+        fileWriter.flush();
+        writer.commit();
+    }
+
+    /**
+     * Discards the ledger. Does nothing once it has been committed.
+     */
+    public void abort() {
+        writer.abort();
+    }
+}
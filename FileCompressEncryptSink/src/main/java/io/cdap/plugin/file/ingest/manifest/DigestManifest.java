@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.manifest;
+
+import com.google.common.io.BaseEncoding;
+import com.google.gson.stream.JsonWriter;
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import javax.annotation.Nullable;
+
+/**
+ * Writes the SHA-256 digests of the files a task copied, and of the objects it wrote them to, to a manifest object
+ * of its own, so that a source file can be matched to its encrypted object without reading either of them again.
+ *
+ * The manifest has one JSON object per line: the source path and the output object, with the size and digest of
+ * the plaintext and of the object. Files in a bundle only have their plaintext, and the bundle has a line of its
+ * own without a source. When a signing key is given, a detached PGP signature of the manifest is written next to
+ * it, named after the manifest with {@link #SIGNATURE_SUFFIX}. The signature is committed after the manifest, so
+ * a manifest without one is either unsigned or from a task that failed.
+ */
+public class DigestManifest {
+    public static final String ALGORITHM = "SHA-256";
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+    public static final String SIGNATURE_SUFFIX = ".sig";
+    public static final String SIGNATURE_CONTENT_TYPE = "application/pgp-signature";
+
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+    private final Destination destination;
+    private final String name;
+    private final DestinationWriter writer;
+    private final OutputStream out;
+    private final PGPSignatureGenerator signatureGenerator;
+    private int records;
+
+    /**
+     * @param name          The name of the manifest object.
+     * @param signingKey    The key to sign the manifest with, or null to leave it unsigned.
+     * @param hashAlgorithm One of the {@link org.bouncycastle.bcpg.HashAlgorithmTags}, the digest of the signature.
+     */
+    public DigestManifest(Destination destination, String name, @Nullable PGPPrivateKey signingKey,
+                          int hashAlgorithm) throws IOException {
+        this.destination = destination;
+        this.name = name;
+        if (signingKey == null) {
+            signatureGenerator = null;
+        } else {
+            signatureGenerator = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(
+                    signingKey.getPublicKeyPacket().getAlgorithm(), hashAlgorithm)
+                                                                   .setProvider(FileCompressEncrypt.PROVIDER));
+            try {
+                signatureGenerator.init(PGPSignature.BINARY_DOCUMENT, signingKey);
+            } catch (PGPException e) {
+                throw new IOException("Failed to start the signature of " + name, e);
+            }
+        }
+        this.writer = destination.open(name, CONTENT_TYPE, Collections.emptyMap());
+        this.out = new BufferedOutputStream(writer.asOutputStream());
+    }
+
+    /**
+     * @return A new digest of the algorithm of the manifest.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform implements SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records one file or object.
+     *
+     * @param source          The path of the source file, or null for a bundle.
+     * @param output          The name of the object the file was written to.
+     * @param plaintextSize   The size of the file, or -1 for a bundle.
+     * @param plaintextDigest The digest of the file, or null for a bundle.
+     * @param objectSize      The size of the object, or -1 for a file in a bundle.
+     * @param objectDigest    The digest of the object, or null for a file in a bundle.
+     */
+    public void record(@Nullable String source, String output, long plaintextSize, @Nullable byte[] plaintextDigest,
+                       long objectSize, @Nullable byte[] objectDigest) throws IOException {
+        StringWriter line = new StringWriter();
+        JsonWriter json = new JsonWriter(line);
+        json.beginObject();
+        if (source != null) {
+            json.name("source").value(source);
+        }
+        json.name("output").value(output);
+        if (plaintextDigest != null) {
+            json.name("plaintextSize").value(plaintextSize);
+            json.name("plaintextSha256").value(HEX.encode(plaintextDigest));
+        }
+        if (objectDigest != null) {
+            json.name("objectSize").value(objectSize);
+            json.name("objectSha256").value(HEX.encode(objectDigest));
+        }
+        json.endObject();
+        json.close();
+        line.write('\n');
+
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (signatureGenerator != null) {
+            signatureGenerator.update(bytes);
+        }
+        out.write(bytes);
+        records++;
+    }
+
+    /**
+     * @return The number of lines written so far.
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Makes the manifest visible, and then its signature.
+     */
+    public void commit() throws IOException {
+        out.flush();
+        writer.commit();
+        if (signatureGenerator == null) {
+            return;
+        }
+        try (DestinationWriter signatureWriter = destination.open(name + SIGNATURE_SUFFIX, SIGNATURE_CONTENT_TYPE,
+                                                                  Collections.emptyMap())) {
+            OutputStream signatureOut = signatureWriter.asOutputStream();
+            signatureGenerator.generate().encode(signatureOut);
+            signatureOut.flush();
+            signatureWriter.commit();
+        } catch (PGPException e) {
+            throw new IOException("Failed to sign " + name, e);
+        }
+    }
+
+    /**
+     * Discards the manifest. Does nothing once it has been committed.
+     */
+    public void abort() {
+        writer.abort();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.manifest;
+
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * Updates a digest with every byte written through it, and counts them, for copies that write buffers to a
+ * channel. The time spent hashing is charged to {@link Stage#DIGEST}.
+ */
+public class DigestingChannel implements WritableByteChannel {
+    private final WritableByteChannel channel;
+    private final MessageDigest digest;
+    private final StageTimer timer;
+    private long count;
+
+    public DigestingChannel(WritableByteChannel channel, MessageDigest digest, StageTimer timer) {
+        this.channel = channel;
+        this.digest = digest;
+        this.timer = timer;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        // the channel may take only part of the buffer, only that part is hashed
+        ByteBuffer written = src.duplicate();
+        int count = channel.write(src);
+        written.limit(written.position() + count);
+        timer.start(Stage.DIGEST);
+        try {
+            digest.update(written);
+        } finally {
+            timer.stop();
+        }
+        timer.addBytes(Stage.DIGEST, count);
+        this.count += count;
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return The number of bytes written so far.
+     */
+    public long getCount() {
+        return count;
+    }
+}
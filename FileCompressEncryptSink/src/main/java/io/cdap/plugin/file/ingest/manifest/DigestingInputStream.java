@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.manifest;
+
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Updates a digest with every byte read through it, and counts them. The time spent hashing is charged to
+ * {@link Stage#DIGEST}.
+ */
+public class DigestingInputStream extends FilterInputStream {
+    private final MessageDigest digest;
+    private final StageTimer timer;
+    private long count;
+
+    public DigestingInputStream(InputStream in, MessageDigest digest, StageTimer timer) {
+        super(in);
+        this.digest = digest;
+        this.timer = timer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            update(new byte[]{(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            update(b, off, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes would be missing from the digest
+        throw new IOException("Skipping is not supported");
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return The number of bytes read so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    private void update(byte[] b, int off, int len) {
+        timer.start(Stage.DIGEST);
+        try {
+            digest.update(b, off, len);
+        } finally {
+            timer.stop();
+        }
+        timer.addBytes(Stage.DIGEST, len);
+        count += len;
+    }
+}
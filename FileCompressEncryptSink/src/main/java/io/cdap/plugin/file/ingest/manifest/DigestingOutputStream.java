@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.manifest;
+
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Updates a digest with every byte written through it, and counts them. The time spent hashing is charged to
+ * {@link Stage#DIGEST}.
+ */
+public class DigestingOutputStream extends FilterOutputStream {
+    private final MessageDigest digest;
+    private final StageTimer timer;
+    private long count;
+
+    public DigestingOutputStream(OutputStream out, MessageDigest digest, StageTimer timer) {
+        super(out);
+        this.digest = digest;
+        this.timer = timer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        timer.start(Stage.DIGEST);
+        try {
+            digest.update(b, off, len);
+        } finally {
+            timer.stop();
+        }
+        timer.addBytes(Stage.DIGEST, len);
+        count += len;
+        out.write(b, off, len);
+    }
+
+    /**
+     * @return The number of bytes written so far.
+     */
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.manifest;
+
+import com.google.gson.stream.JsonWriter;
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * Writes the objects that the files of a task were written to, to a mapping object of its own, for layouts where
+ * the name of an object isn't the path of its file.
+ *
+ * The mapping has one JSON object per line: the relative path of the file, as the FileList source lists it, and
+ * the object. A file in a bundle maps to the bundle, where it is the member of the same path.
+ */
+public class NameMapping {
+    public static final String CONTENT_TYPE = DigestManifest.CONTENT_TYPE;
+
+    private final String name;
+    private final DestinationWriter writer;
+    private final OutputStream out;
+    private int records;
+
+    /**
+     * @param name The name of the mapping object.
+     */
+    public NameMapping(Destination destination, String name) throws IOException {
+        this.name = name;
+        this.writer = destination.open(name, CONTENT_TYPE, Collections.emptyMap());
+        this.out = new BufferedOutputStream(writer.asOutputStream());
+    }
+
+    /**
+     * Records the object of a file.
+     *
+     * @param path   The path of the file relative to the source path.
+     * @param output The name of the object the file was written to.
+     */
+    public void record(String path, String output) throws IOException {
+        StringWriter line = new StringWriter();
+        JsonWriter json = new JsonWriter(line);
+        json.beginObject();
+        json.name("path").value(path);
+        json.name("output").value(output);
+        json.endObject();
+        json.close();
+        line.write('\n');
+        out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        records++;
+    }
+
+    /**
+     * @return The number of lines written so far.
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Makes the mapping visible.
+     */
+    public void commit() throws IOException {
+        out.flush();
+        writer.commit();
+    }
+
+    /**
+     * Discards the mapping. Does nothing once it has been committed.
+     */
+    public void abort() {
+        writer.abort();
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.metrics;
+
+import io.cdap.cdap.etl.api.StageMetrics;
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Per-task copy statistics: a latency histogram for every {@link Stage} and for whole files, plus byte
+ * and file counters. Per-file counters are published to the sink's {@link StageMetrics} as files complete,
+ * the histograms are published as gauges when the task finishes.
+ *
+ * The RecordWriter is created by the OutputFormat, which has no access to the plugin context, so each sink
+ * registers its {@link StageMetrics} under its stage name through {@link #setStageMetrics(String, StageMetrics)}
+ * when it is initialized in the same executor, and the RecordWriter finds them by the stage name in its
+ * configuration. Several sinks of a pipeline can run in the same executor, each publishes to its own stage.
+ */
+public class CopyMetrics {
+    public static final String FILES = "copy.files";
+    public static final String FILES_FAILED = "copy.files.failed";
+    public static final String FILES_SKIPPED = "copy.files.skipped";
+    public static final String BYTES_IN = "copy.bytes.in";
+    public static final String BYTES_OUT = "copy.bytes.out";
+    public static final String HTTP_REQUESTS = "copy.http.requests";
+    public static final String HTTP_CONNECTIONS = "copy.http.connections";
+    private static final String HTTP_CONNECTION_REUSE = "copy.http.connection.reuse.pct";
+    private static final String PREFIX = "copy.";
+    private static final String FILE_LATENCY = "file";
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private static final Map<String, StageMetrics> STAGE_METRICS = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram[] stageHistograms = new LatencyHistogram[Stage.values().length];
+    private final long[] stageNanos = new long[Stage.values().length];
+    @Nullable
+    private final String stageName;
+    private final LatencyHistogram fileHistogram = new LatencyHistogram();
+    private final long startNanos = System.nanoTime();
+    private long files;
+    private long failedFiles;
+    private long skippedFiles;
+    private long bytesIn;
+    private long bytesOut;
+    private long httpRequests;
+    private long httpConnections;
+
+    /**
+     * Creates statistics that are only kept in memory, e.g. to summarize several tasks.
+     */
+    public CopyMetrics() {
+        this(null);
+    }
+
+    /**
+     * @param stageName The stage whose {@link StageMetrics} the statistics are published to, or null to only keep
+     *                  them in memory.
+     */
+    public CopyMetrics(@Nullable String stageName) {
+        this.stageName = stageName;
+        for (Stage stage : Stage.values()) {
+            stageHistograms[stage.ordinal()] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Registers the metrics of a stage for the RecordWriters of the executor.
+     */
+    public static void setStageMetrics(String stageName, StageMetrics metrics) {
+        STAGE_METRICS.put(stageName, metrics);
+    }
+
+    // the sink is initialized when its first record is transformed, which may be after the RecordWriter is created
+    @Nullable
+    private StageMetrics getStageMetrics() {
+        return stageName == null ? null : STAGE_METRICS.get(stageName);
+    }
+
+    /**
+     * Records one copied file.
+     *
+     * @param producer   The timer of the thread that read, compressed and encrypted the file.
+     * @param consumer   The timer of the thread that uploaded the file.
+     * @param totalNanos The wall time taken by the file.
+     * @param succeeded  Whether the file was copied successfully.
+     */
+    public void recordFile(StageTimer producer, StageTimer consumer, long totalNanos, boolean succeeded) {
+        long[] nanos = new long[Stage.values().length];
+        for (Stage stage : Stage.values()) {
+            nanos[stage.ordinal()] = producer.getNanos(stage) + consumer.getNanos(stage);
+        }
+        recordFile(nanos, producer.getBytes(Stage.READ), consumer.getBytes(Stage.UPLOAD), totalNanos, succeeded);
+    }
+
+    /**
+     * Records one file that was copied on a single thread, e.g. a member of a bundle.
+     *
+     * @param timer      The timer that recorded every stage of the file.
+     * @param totalNanos The wall time taken by the file.
+     * @param succeeded  Whether the file was copied successfully.
+     */
+    public void recordFile(StageTimer timer, long totalNanos, boolean succeeded) {
+        long[] nanos = new long[Stage.values().length];
+        for (Stage stage : Stage.values()) {
+            nanos[stage.ordinal()] = timer.getNanos(stage);
+        }
+        recordFile(nanos, timer.getBytes(Stage.READ), timer.getBytes(Stage.UPLOAD), totalNanos, succeeded);
+    }
+
+    private void recordFile(long[] nanos, long in, long out, long totalNanos, boolean succeeded) {
+        for (Stage stage : Stage.values()) {
+            stageNanos[stage.ordinal()] += nanos[stage.ordinal()];
+            stageHistograms[stage.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(nanos[stage.ordinal()]));
+        }
+        fileHistogram.record(TimeUnit.NANOSECONDS.toMicros(totalNanos));
+
+        files++;
+        bytesIn += in;
+        bytesOut += out;
+        if (!succeeded) {
+            failedFiles++;
+        }
+
+        StageMetrics metrics = getStageMetrics();
+        if (metrics != null) {
+            metrics.count(succeeded ? FILES : FILES_FAILED, 1);
+            count(metrics, BYTES_IN, in);
+            count(metrics, BYTES_OUT, out);
+            for (Stage stage : Stage.values()) {
+                count(metrics, PREFIX + stage.getMetricName() + ".time.ms",
+                      TimeUnit.NANOSECONDS.toMillis(nanos[stage.ordinal()]));
+            }
+        }
+    }
+
+    /**
+     * Records one file that was skipped, because its object is already present and current.
+     */
+    public void recordSkipped() {
+        skippedFiles++;
+        StageMetrics metrics = getStageMetrics();
+        if (metrics != null) {
+            metrics.count(FILES_SKIPPED, 1);
+        }
+    }
+
+    /**
+     * Records the HTTP requests made to the destination and the connections opened for them, the other requests
+     * reused a connection.
+     */
+    public void recordConnections(long requests, long connections) {
+        httpRequests += requests;
+        httpConnections += connections;
+        StageMetrics metrics = getStageMetrics();
+        if (metrics != null) {
+            count(metrics, HTTP_REQUESTS, requests);
+            count(metrics, HTTP_CONNECTIONS, connections);
+        }
+    }
+
+    /**
+     * @return The percentage of the HTTP requests that reused a connection, or 0 if there were none.
+     */
+    public double getConnectionReuse() {
+        if (httpRequests == 0) {
+            return 0;
+        }
+        return 100.0 * Math.max(0, httpRequests - httpConnections) / httpRequests;
+    }
+
+    /**
+     * Adds the statistics of another task to this one, e.g. to summarize all the tasks of a run.
+     */
+    public void add(CopyMetrics other) {
+        for (Stage stage : Stage.values()) {
+            stageHistograms[stage.ordinal()].add(other.stageHistograms[stage.ordinal()]);
+            stageNanos[stage.ordinal()] += other.stageNanos[stage.ordinal()];
+        }
+        fileHistogram.add(other.fileHistogram);
+        files += other.files;
+        failedFiles += other.failedFiles;
+        skippedFiles += other.skippedFiles;
+        bytesIn += other.bytesIn;
+        bytesOut += other.bytesOut;
+        httpRequests += other.httpRequests;
+        httpConnections += other.httpConnections;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getFailedFiles() {
+        return failedFiles;
+    }
+
+    public long getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * @return The wall time per file in microseconds.
+     */
+    public LatencyHistogram getFileHistogram() {
+        return fileHistogram;
+    }
+
+    /**
+     * @return The time spent per file in the given stage in microseconds.
+     */
+    public LatencyHistogram getStageHistogram(Stage stage) {
+        return stageHistograms[stage.ordinal()];
+    }
+
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    /**
+     * Publishes the histograms of the task as gauges.
+     */
+    public void publish() {
+        StageMetrics metrics = getStageMetrics();
+        if (metrics == null) {
+            return;
+        }
+        for (Stage stage : Stage.values()) {
+            publish(metrics, stage.getMetricName(), stageHistograms[stage.ordinal()]);
+        }
+        publish(metrics, FILE_LATENCY, fileHistogram);
+        if (httpRequests > 0) {
+            metrics.gauge(HTTP_CONNECTION_REUSE, Math.round(getConnectionReuse()));
+        }
+    }
+
+    /**
+     * Returns the stage that took the largest share of the time. Backpressure is excluded since it is the
+     * producer waiting on the upload.
+     */
+    public Stage getBottleneck() {
+        Stage bottleneck = Stage.UPLOAD;
+        for (Stage stage : Stage.values()) {
+            if (stage != Stage.BACKPRESSURE && stageNanos[stage.ordinal()] > stageNanos[bottleneck.ordinal()]) {
+                bottleneck = stage;
+            }
+        }
+        return bottleneck;
+    }
+
+    public void logSummary(Logger log) {
+        long wallNanos = System.nanoTime() - startNanos;
+        long stageTotal = 0;
+        for (long nanos : stageNanos) {
+            stageTotal += nanos;
+        }
+
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Copied %d files (%d failed, %d skipped), %d bytes in, %d bytes out in %d ms. "
+                                     + "Bottleneck: %s.", files, failedFiles, skippedFiles, bytesIn, bytesOut,
+                                     TimeUnit.NANOSECONDS.toMillis(wallNanos), getBottleneck().getMetricName()));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stageHistograms[stage.ordinal()];
+            long nanos = stageNanos[stage.ordinal()];
+            summary.append(String.format(" %s: %d ms (%.1f%%), p50 %d us, p99 %d us, max %d us;",
+                                         stage.getMetricName(), TimeUnit.NANOSECONDS.toMillis(nanos),
+                                         stageTotal == 0 ? 0.0 : 100.0 * nanos / stageTotal,
+                                         histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                                         histogram.getMax()));
+        }
+        summary.append(String.format(" file: p50 %d us, p99 %d us, max %d us",
+                                     fileHistogram.getValueAtPercentile(50), fileHistogram.getValueAtPercentile(99),
+                                     fileHistogram.getMax()));
+        if (httpRequests > 0) {
+            summary.append(String.format("; http: %d requests, %d new connections, %.1f%% reused",
+                                         httpRequests, httpConnections, getConnectionReuse()));
+        }
+        log.info(summary.toString());
+    }
+
+    private static void publish(StageMetrics metrics, String name, LatencyHistogram histogram) {
+        for (double percentile : PERCENTILES) {
+            metrics.gauge(PREFIX + name + ".latency.p" + (int) percentile + ".us",
+                          histogram.getValueAtPercentile(percentile));
+        }
+        metrics.gauge(PREFIX + name + ".latency.max.us", histogram.getMax());
+        metrics.gauge(PREFIX + name + ".latency.mean.us", histogram.getMean());
+    }
+
+    // StageMetrics only counts ints
+    private static void count(StageMetrics metrics, String name, long delta) {
+        while (delta > 0) {
+            int chunk = (int) Math.min(delta, Integer.MAX_VALUE);
+            metrics.count(name, chunk);
+            delta -= chunk;
+        }
+    }
+}
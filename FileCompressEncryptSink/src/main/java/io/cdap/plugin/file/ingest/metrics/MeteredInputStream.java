@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Charges the time spent reading from the wrapped stream, and the bytes returned by it, to a {@link Stage}.
+ */
+public class MeteredInputStream extends FilterInputStream {
+    private final Stage stage;
+    private final StageTimer timer;
+
+    public MeteredInputStream(InputStream in, Stage stage, StageTimer timer) {
+        super(in);
+        this.stage = stage;
+        this.timer = timer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b;
+        timer.start(stage);
+        try {
+            b = in.read();
+        } finally {
+            timer.stop();
+        }
+        if (b >= 0) {
+            timer.addBytes(stage, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count;
+        timer.start(stage);
+        try {
+            count = in.read(b, off, len);
+        } finally {
+            timer.stop();
+        }
+        if (count > 0) {
+            timer.addBytes(stage, count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Charges the time spent writing into the wrapped stream, and the bytes handed to it, to a {@link Stage}.
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+    private final Stage stage;
+    private final StageTimer timer;
+
+    public MeteredOutputStream(OutputStream out, Stage stage, StageTimer timer) {
+        super(out);
+        this.stage = stage;
+        this.timer = timer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        timer.start(stage);
+        try {
+            out.write(b);
+        } finally {
+            timer.stop();
+        }
+        timer.addBytes(stage, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        timer.start(stage);
+        try {
+            out.write(b, off, len);
+        } finally {
+            timer.stop();
+        }
+        timer.addBytes(stage, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        timer.start(stage);
+        try {
+            out.flush();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // compressors and ciphers emit their trailing blocks on close
+        timer.start(stage);
+        try {
+            out.close();
+        } finally {
+            timer.stop();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.metrics;
+
+/**
+ * The stages of the file copy path that are timed separately.
+ */
+public enum Stage {
+    SOURCE_OPEN("source.open"),
+    READ("read"),
+    COMPRESS("compress"),
+    ENCRYPT("encrypt"),
+    SIGN("sign"),
+    DIGEST("digest"),
+    UPLOAD("upload"),
+    // time the producer spends blocked because the consumer has not drained the pipe yet
+    BACKPRESSURE("backpressure");
+
+    private final String metricName;
+
+    Stage(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
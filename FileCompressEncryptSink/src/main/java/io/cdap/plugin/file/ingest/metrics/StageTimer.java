@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.metrics;
+
+import io.cdap.plugin.file.ingest.events.CopyEvents;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Accumulates the time and bytes spent in each {@link Stage} for a single file on a single thread.
+ *
+ * Stages nest the same way the streams of the copy path do (compress writes into encrypt, which writes
+ * into the pipe), so every stage is charged only its exclusive time: the time spent in a nested stage is
+ * subtracted from the stage that called into it. Instances are not thread safe.
+ *
+ * Every run of a stage is also a flight recorder event when a recording enables it, see {@link CopyEvents}. The
+ * bytes of a run are added right after it stops, so its event is committed by the next call to the timer.
+ */
+public class StageTimer {
+    private static final int MAX_DEPTH = 16;
+
+    private final long[] nanos = new long[Stage.values().length];
+    private final long[] bytes = new long[Stage.values().length];
+
+    private final Stage[] stack = new Stage[MAX_DEPTH];
+    private final long[] startNanos = new long[MAX_DEPTH];
+    private final long[] childNanos = new long[MAX_DEPTH];
+    private final Object[] events = new Object[MAX_DEPTH];
+    private int depth;
+    // the event of the last stage that stopped, until its bytes are added
+    private Object stoppedEvent;
+    private Stage stoppedStage;
+    private String file;
+
+    /**
+     * @param file The path of the file that the flight recorder events of the timer are for, or null.
+     */
+    public void setFile(@Nullable String file) {
+        commitStoppedEvent(0);
+        this.file = file;
+    }
+
+    /**
+     * Marks the start of a (possibly nested) stage.
+     */
+    public void start(Stage stage) {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Stages nested deeper than " + MAX_DEPTH);
+        }
+        commitStoppedEvent(0);
+        stack[depth] = stage;
+        events[depth] = CopyEvents.begin(stage);
+        startNanos[depth] = System.nanoTime();
+        childNanos[depth] = 0;
+        depth++;
+    }
+
+    /**
+     * Marks the end of the innermost stage that was started.
+     */
+    public void stop() {
+        depth--;
+        long elapsed = System.nanoTime() - startNanos[depth];
+        nanos[stack[depth].ordinal()] += elapsed - childNanos[depth];
+        if (depth > 0) {
+            childNanos[depth - 1] += elapsed;
+        }
+        commitStoppedEvent(0);
+        if (events[depth] != null) {
+            CopyEvents.end(events[depth]);
+            stoppedEvent = events[depth];
+            stoppedStage = stack[depth];
+            events[depth] = null;
+        }
+    }
+
+    /**
+     * Clears the time and bytes recorded so far, so that the timer can be reused for the next file. Must not be
+     * called while a stage is running.
+     */
+    public void reset() {
+        if (depth != 0) {
+            throw new IllegalStateException("Cannot reset while a stage is running");
+        }
+        commitStoppedEvent(0);
+        Arrays.fill(nanos, 0);
+        Arrays.fill(bytes, 0);
+    }
+
+    /**
+     * Adds the time and bytes of another timer, e.g. of work done ahead for the same file on another thread. The
+     * other timer must not be in use anymore.
+     */
+    public void add(StageTimer other) {
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] += other.nanos[i];
+            bytes[i] += other.bytes[i];
+        }
+    }
+
+    public void addBytes(Stage stage, long count) {
+        bytes[stage.ordinal()] += count;
+        if (stage == stoppedStage) {
+            commitStoppedEvent(count);
+        }
+    }
+
+    private void commitStoppedEvent(long count) {
+        if (stoppedEvent != null) {
+            CopyEvents.commit(stoppedEvent, file, count);
+            stoppedEvent = null;
+            stoppedStage = null;
+        }
+    }
+
+    public long getNanos(Stage stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    public long getBytes(Stage stage) {
+        return bytes[stage.ordinal()];
+    }
+}
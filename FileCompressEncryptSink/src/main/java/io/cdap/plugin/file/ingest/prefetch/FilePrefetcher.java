@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.prefetch;
+
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.upload.BufferPool;
+import io.cdap.plugin.file.ingest.utils.FileMetaData;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the next files of a task while the current one is copied, so that the round trips that start a copy
+ * overlap with the copies before it instead of adding up: the object is opened, which starts the upload session
+ * of GCS, the source file is opened, and a small file is read whole into a pooled buffer.
+ *
+ * Each file is fetched on a thread of its own, up to the number of files that the task looks ahead. Fetching is
+ * best effort, whatever fails is left to the copy, which does it again and reports the failure as usual.
+ */
+public class FilePrefetcher {
+    private final ExecutorService executor;
+    private final BufferPool pool;
+
+    /**
+     * @param files          The number of files that are fetched ahead at most.
+     * @param maxContentSize Files up to this size are read whole.
+     */
+    public FilePrefetcher(int files, int maxContentSize) {
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(files, runnable -> {
+            Thread thread = new Thread(runnable, "file-prefetch-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // one buffer for each file that is ahead and one for the file being copied
+        this.pool = new BufferPool(maxContentSize, files + 1);
+    }
+
+    /**
+     * Starts fetching a file.
+     *
+     * @param writerOpener Opens the object that the file is copied to.
+     */
+    public PrefetchedFile prefetch(FileMetaData fileMetaData, Callable<DestinationWriter> writerOpener) {
+        PrefetchedFile file = new PrefetchedFile(fileMetaData, pool);
+        file.start(executor, writerOpener);
+        return file;
+    }
+
+    /**
+     * Stops the threads once the files that were started are fetched.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.prefetch;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.ingest.upload.BufferPool;
+import io.cdap.plugin.file.ingest.utils.FileMetaData;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+
+/**
+ * A file that is fetched ahead of its copy by a {@link FilePrefetcher}. What was fetched is attached to the
+ * {@link FileMetaData} of the file, which the copy reads as usual, and the object that was opened is handed out
+ * by {@link #await()}. Once the copy is done, {@link #release()} returns the buffer and closes what wasn't used.
+ */
+public class PrefetchedFile {
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchedFile.class);
+
+    private final FileMetaData fileMetaData;
+    private final BufferPool pool;
+    private final StageTimer timer = new StageTimer();
+    private Future<?> future;
+    private DestinationWriter writer;
+    private ByteBuffer buffer;
+
+    PrefetchedFile(FileMetaData fileMetaData, BufferPool pool) {
+        this.fileMetaData = fileMetaData;
+        this.pool = pool;
+    }
+
+    void start(ExecutorService executor, Callable<DestinationWriter> writerOpener) {
+        future = executor.submit(() -> fetch(writerOpener));
+    }
+
+    public FileMetaData getFileMetaData() {
+        return fileMetaData;
+    }
+
+    /**
+     * @return The time and bytes of fetching the file, once {@link #await()} returned.
+     */
+    public StageTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Waits until the file is fetched.
+     *
+     * @return The object opened for the file, which the caller commits or aborts, or null if it couldn't be
+     * opened ahead.
+     */
+    @Nullable
+    public DestinationWriter await() {
+        try {
+            Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            // fetching catches its failures, this is a bug
+            LOG.warn("Failed to fetch {} ahead", fileMetaData.getPath(), e);
+        }
+        DestinationWriter opened = writer;
+        writer = null;
+        return opened;
+    }
+
+    /**
+     * Returns the buffer of the file to the pool, closes the source if the copy didn't use it and aborts the object
+     * if it wasn't handed out. Waits for the fetch if it is still running.
+     */
+    public void release() {
+        DestinationWriter unused = await();
+        if (unused != null) {
+            unused.abort();
+        }
+        try {
+            fileMetaData.clearPrefetched();
+        } catch (IOException e) {
+            LOG.debug("Failed to close {}", fileMetaData.getPath(), e);
+        }
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void fetch(Callable<DestinationWriter> writerOpener) {
+        String path = fileMetaData.getPath().toString();
+        timer.setFile(path);
+        try {
+            writer = writerOpener.call();
+        } catch (Exception e) {
+            LOG.debug("Failed to open the object of {} ahead", path, e);
+        }
+
+        FileSystem fileSystem = fileMetaData.getFileSystem();
+        long length = fileMetaData.getKnownLength();
+        boolean whole = length >= 0 && length <= pool.getBufferSize();
+        // opening a local file is no round trip, and the copy reads those through a channel
+        if (!whole && (fileSystem instanceof LocalFileSystem || fileSystem instanceof RawLocalFileSystem)) {
+            return;
+        }
+        try {
+            FSDataInputStream in;
+            timer.start(Stage.SOURCE_OPEN);
+            try {
+                in = fileSystem.open(fileMetaData.getPath());
+            } finally {
+                timer.stop();
+            }
+            if (!whole) {
+                fileMetaData.setPrefetched(null, in);
+                return;
+            }
+            try {
+                buffer = pool.acquire();
+                timer.start(Stage.READ);
+                try {
+                    // fails if the file was truncated since it was listed
+                    in.readFully(0, buffer.array(), 0, (int) length);
+                } finally {
+                    timer.stop();
+                }
+            } finally {
+                in.close();
+            }
+            // the copy counts the bytes when it opens the file and reads the buffer, only the time is spent here
+            buffer.limit((int) length);
+            fileMetaData.setPrefetched(buffer, null);
+        } catch (IOException e) {
+            LOG.debug("Failed to read {} ahead", path, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
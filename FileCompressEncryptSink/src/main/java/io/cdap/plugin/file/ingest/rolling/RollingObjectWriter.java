@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.rolling;
+
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import io.cdap.plugin.file.ingest.format.RecordFormat;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.ingest.upload.BufferPool;
+import io.cdap.plugin.file.ingest.upload.PipelinedUploadStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes records into a sequence of objects that are compressed and encrypted while they are written, so that
+ * the output never touches the local disk. At most one object is open at a time. It is committed once it reaches
+ * the roll size or age at the end of a record, and the next record starts a new one.
+ *
+ * The records are serialized, compressed and encrypted on the calling thread, and uploaded on another one through
+ * a small pool of buffers that is reused by every object, see {@link PipelinedUploadStream}.
+ *
+ * Objects are named after a prefix and a sequence number, so writing the same records again, e.g. when a batch is
+ * replayed, overwrites the objects of the same sequence numbers. A replay that rolls differently may write fewer
+ * objects and leave the higher sequence numbers of the earlier attempt in place, which is why only the names
+ * returned by {@link #commit()} are authoritative and callers publish them in a marker.
+ *
+ * @param <T> The type of the records.
+ */
+public class RollingObjectWriter<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(RollingObjectWriter.class);
+    // records are written in small pieces, the compressors and ciphers work best on larger blocks
+    private static final int MIN_BUFFER_SIZE = 64 << 10;
+    // enough for the upload of one buffer to overlap the compression of the next two
+    private static final int UPLOAD_BUFFER_SIZE = 1 << 20;
+    private static final int UPLOAD_BUFFERS = 3;
+
+    private final Destination destination;
+    private final String prefix;
+    private final RecordFormat<T> format;
+    private final String extension;
+    private final String contentType;
+    private final CompressEncryptOptions options;
+    private final long rollSize;
+    private final long rollAgeNanos;
+    private final CopyMetrics metrics;
+    private final BufferPool pool = new BufferPool(UPLOAD_BUFFER_SIZE, UPLOAD_BUFFERS);
+    private final StageTimer producer = new StageTimer();
+    private final StageTimer consumer = new StageTimer();
+    private final List<String> committed = new ArrayList<>();
+    private int sequence;
+    private String name;
+    private DestinationWriter writer;
+    private PipelinedUploadStream upload;
+    private OutputStream out;
+    private long openNanos;
+    private long records;
+
+    /**
+     * @param prefix   The name of every object up to its sequence number. The name ends with the extension of
+     *                 the format and of the compression and encryption.
+     * @param rollSize The number of bytes written to an object after which it is committed, or 0 for no limit.
+     * @param rollAge  The number of milliseconds an object stays open after which it is committed, or 0 for no
+     *                 limit. The age is only checked when a record ends.
+     * @param metrics  The statistics that every committed object is recorded in, as one file.
+     */
+    public RollingObjectWriter(Destination destination, String prefix, RecordFormat<T> format,
+                               CompressEncryptOptions options, long rollSize, long rollAge, CopyMetrics metrics) {
+        this.destination = destination;
+        this.prefix = prefix;
+        this.format = format;
+        this.options = options;
+        this.rollSize = rollSize;
+        this.rollAgeNanos = TimeUnit.MILLISECONDS.toNanos(rollAge);
+        this.metrics = metrics;
+
+        String extension = format.getExtension();
+        String contentType = format.getContentType();
+        if (options.isCompress()) {
+            extension += ".zip";
+            contentType = "application/zip";
+        }
+        if (options.isEncrypt()) {
+            extension += ".pgp";
+            contentType = "application/pgp-encrypted";
+        }
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Writes a record, starting a new object if none is open, and commits the object if it is due.
+     */
+    public void write(T record) throws IOException {
+        if (out == null) {
+            open();
+        }
+        try {
+            format.write(record);
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+        records++;
+        if ((rollSize > 0 && upload.getCount() >= rollSize)
+                || (rollAgeNanos > 0 && System.nanoTime() - openNanos >= rollAgeNanos)) {
+            commitObject();
+        }
+    }
+
+    /**
+     * Commits the open object, if any.
+     *
+     * @return The names of all the objects committed by this writer, in order.
+     */
+    public List<String> commit() throws IOException {
+        if (out != null) {
+            commitObject();
+        }
+        return Collections.unmodifiableList(committed);
+    }
+
+    /**
+     * Discards the open object. Objects that have been committed are left as they are.
+     */
+    public void abort() {
+        if (writer != null) {
+            LOG.error("Discarding {} of {} records", name, records);
+            upload.abort();
+            writer.abort();
+            writer = null;
+            upload = null;
+            out = null;
+            producer.reset();
+            consumer.reset();
+        }
+    }
+
+    private void open() throws IOException {
+        name = String.format("%s%05d%s", prefix, sequence++, extension);
+        LOG.info("Output Object Name " + name);
+        openNanos = System.nanoTime();
+        records = 0;
+        writer = destination.open(name, contentType, Collections.emptyMap());
+        // closing the chain only waits for the upload, the writer is committed instead
+        upload = new PipelinedUploadStream(writer, name, pool, producer, consumer);
+        try {
+            String entryName = name.substring(name.lastIndexOf('/') + 1,
+                                              name.length() - extension.length() + format.getExtension().length());
+            OutputStream chain = FileCompressEncrypt.openCompressEncrypted(upload, entryName, new Date(), options,
+                                                                           producer);
+            out = new BufferedOutputStream(chain, Math.max(options.getBufferSize(), MIN_BUFFER_SIZE));
+            format.begin(new RecordOutputStream());
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    private void commitObject() throws IOException {
+        try {
+            format.end();
+            out.close();
+            upload.close();
+            consumer.start(Stage.UPLOAD);
+            try {
+                writer.commit();
+            } finally {
+                consumer.stop();
+            }
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+        metrics.recordFile(producer, consumer, System.nanoTime() - openNanos, true);
+        LOG.info("Committed {} of {} records, {} bytes", name, records, consumer.getBytes(Stage.UPLOAD));
+        committed.add(name);
+        writer = null;
+        upload = null;
+        out = null;
+        producer.reset();
+        consumer.reset();
+    }
+
+    /**
+     * Counts the bytes of the records, as the bytes read of the object, and keeps the format from closing the
+     * object early.
+     */
+    private class RecordOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            producer.addBytes(Stage.READ, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            producer.addBytes(Stage.READ, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.upload;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed number of equally sized buffers that are handed from the thread that fills them to the thread that
+ * uploads them and back, so that the memory of an upload is bounded and allocated once. Buffers are only
+ * allocated when none is free, up to the limit, after which {@link #acquire()} waits for one to be released.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> free;
+    // the buffers that may still be allocated before acquire waits for a released one
+    private int remaining;
+
+    /**
+     * @param bufferSize The size of every buffer.
+     * @param maxBuffers The number of buffers that may exist at the same time.
+     */
+    public BufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxBuffers);
+        this.remaining = maxBuffers;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return An empty buffer, waiting for one to be released if all of them are in use.
+     */
+    public ByteBuffer acquire() throws InterruptedException {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        synchronized (this) {
+            if (remaining > 0) {
+                remaining--;
+                return ByteBuffer.allocate(bufferSize);
+            }
+        }
+        return free.take();
+    }
+
+    /**
+     * Returns a buffer that was acquired from this pool.
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        free.offer(buffer);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.upload;
+
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Uploads what is written to it on a separate thread, so that the thread that writes keeps compressing and
+ * encrypting while the previous bytes are sent. Bytes are collected in buffers of a {@link BufferPool}, which are
+ * handed to the upload thread once full and returned to the pool once uploaded. When the upload falls behind and
+ * every buffer is in use, the writer waits for one, which is recorded as {@link Stage#BACKPRESSURE}.
+ *
+ * Closing the stream waits for the last bytes to be uploaded, but does not commit the object. If the upload fails,
+ * the next write or close throws the error.
+ */
+public class PipelinedUploadStream extends OutputStream {
+    // handed to the upload thread after the last buffer
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final DestinationWriter writer;
+    private final BufferPool pool;
+    private final StageTimer producer;
+    private final StageTimer consumer;
+    private final BlockingQueue<ByteBuffer> filled = new LinkedBlockingQueue<>();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final Thread uploadThread;
+    private ByteBuffer buffer;
+    private long count;
+    private boolean closed;
+
+    /**
+     * @param producer The timer of the writing thread, which records the time spent waiting for buffers.
+     * @param consumer The timer of the upload thread, which records the upload. It may only be read once the stream
+     *                 is closed.
+     */
+    public PipelinedUploadStream(DestinationWriter writer, String name, BufferPool pool, StageTimer producer,
+                                 StageTimer consumer) {
+        this.writer = writer;
+        this.pool = pool;
+        this.producer = producer;
+        this.consumer = consumer;
+        this.uploadThread = new Thread(this::upload, "upload-" + name);
+        this.uploadThread.setDaemon(true);
+        this.uploadThread.start();
+    }
+
+    /**
+     * @return The number of bytes written so far, whether or not they have been uploaded yet.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (buffer == null || !buffer.hasRemaining()) {
+            nextBuffer();
+        }
+        buffer.put((byte) b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (buffer == null || !buffer.hasRemaining()) {
+                nextBuffer();
+            }
+            int length = Math.min(len, buffer.remaining());
+            buffer.put(b, off, length);
+            off += length;
+            len -= length;
+            count += length;
+        }
+    }
+
+    /**
+     * Does nothing, bytes are handed to the upload thread once a buffer is full or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (buffer != null && buffer.position() > 0) {
+            hand(buffer);
+        } else if (buffer != null) {
+            pool.release(buffer);
+        }
+        buffer = null;
+        filled.add(END);
+        join();
+        checkFailure();
+    }
+
+    /**
+     * Stops the upload without waiting for the bytes written so far. The writer is left to be aborted by the
+     * caller.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        failure.compareAndSet(null, new IOException("Upload aborted"));
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+        uploadThread.interrupt();
+        join();
+    }
+
+    private void nextBuffer() throws IOException {
+        if (buffer != null) {
+            hand(buffer);
+        }
+        checkFailure();
+        producer.start(Stage.BACKPRESSURE);
+        try {
+            buffer = pool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an upload buffer");
+        } finally {
+            producer.stop();
+        }
+    }
+
+    private void hand(ByteBuffer full) {
+        full.flip();
+        filled.add(full);
+    }
+
+    private void upload() {
+        try {
+            ByteBuffer next;
+            while ((next = filled.take()) != END) {
+                try {
+                    if (failure.get() == null) {
+                        consumer.start(Stage.UPLOAD);
+                        try {
+                            consumer.addBytes(Stage.UPLOAD, next.remaining());
+                            while (next.hasRemaining()) {
+                                writer.write(next);
+                            }
+                        } finally {
+                            consumer.stop();
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // the remaining buffers are still returned to the pool, so the writer doesn't wait forever
+                    failure.compareAndSet(null, e);
+                } finally {
+                    pool.release(next);
+                }
+            }
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, new InterruptedIOException("Upload interrupted"));
+        }
+        // buffers handed over after an interrupt go back to the pool as well
+        ByteBuffer next;
+        while ((next = filled.poll()) != null) {
+            if (next != END) {
+                pool.release(next);
+            }
+        }
+    }
+
+    private void join() {
+        try {
+            uploadThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Exception e = failure.get();
+        if (e != null) {
+            throw e instanceof IOException ? (IOException) e : new IOException("Upload failed", e);
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package io.cdap.plugin.file.ingest.utils;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
 
 /**
  * @author Vikas K  Created On 14/11/19
@@ -12,6 +16,12 @@ import java.io.IOException;
 public class FileMetaData {
     Path path;
     FileSystem fileSystem;
+    // from the listing, -1 until known
+    long length = -1;
+    long modificationTime = -1;
+    // fetched ahead of the copy, see FilePrefetcher
+    private ByteBuffer prefetchedContent;
+    private FSDataInputStream prefetchedStream;
 
     private FileMetaData() {
     }
@@ -26,6 +36,19 @@ public class FileMetaData {
         }
     }
 
+    /**
+     * Use this constructor when the listing already has the status of the file, so that it isn't fetched again.
+     *
+     * @param length           The size of the file, or -1 to look it up when needed.
+     * @param modificationTime The modification time of the file, or -1 to look it up when needed.
+     */
+    public FileMetaData(Path path, FileSystem fileSystem, long length, long modificationTime) {
+        this.path = path;
+        this.fileSystem = fileSystem;
+        this.length = length;
+        this.modificationTime = modificationTime;
+    }
+
     public Path getPath() {
         return path;
     }
@@ -35,11 +58,75 @@ public class FileMetaData {
     }
 
     public long getLastModifiedTime() {
-        try {
-            return fileSystem.getFileStatus(path).getModificationTime();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (modificationTime < 0) {
+            try {
+                readStatus();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return 0;
+            }
+        }
+        return modificationTime;
+    }
+
+    public long getLength() throws IOException {
+        if (length < 0) {
+            readStatus();
+        }
+        return length;
+    }
+
+    /**
+     * Attaches what was fetched ahead of the copy, the whole content of a small file or the opened stream of a
+     * larger one.
+     */
+    public void setPrefetched(@Nullable ByteBuffer content, @Nullable FSDataInputStream stream) {
+        this.prefetchedContent = content;
+        this.prefetchedStream = stream;
+    }
+
+    /**
+     * @return The whole content of the file if it was read ahead, or null.
+     */
+    @Nullable
+    public ByteBuffer getPrefetchedContent() {
+        return prefetchedContent == null ? null : prefetchedContent.duplicate();
+    }
+
+    /**
+     * Drops what was fetched ahead, closing the stream if it was never handed out.
+     */
+    public void clearPrefetched() throws IOException {
+        FSDataInputStream stream = prefetchedStream;
+        prefetchedContent = null;
+        prefetchedStream = null;
+        if (stream != null) {
+            stream.close();
         }
-        return 0;
+    }
+
+    /**
+     * Opens the file, using the stream that was opened ahead if there is one. That stream is only handed out once.
+     */
+    public FSDataInputStream open() throws IOException {
+        FSDataInputStream stream = prefetchedStream;
+        if (stream != null) {
+            prefetchedStream = null;
+            return stream;
+        }
+        return fileSystem.open(path);
+    }
+
+    /**
+     * @return The length of the file if it is known without asking the filesystem, or -1.
+     */
+    public long getKnownLength() {
+        return length;
+    }
+
+    private void readStatus() throws IOException {
+        FileStatus status = fileSystem.getFileStatus(path);
+        length = status.getLen();
+        modificationTime = status.getModificationTime();
     }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.bundle;
+
+import com.google.common.base.Strings;
+import io.cdap.plugin.file.ingest.destination.InMemoryDestination;
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class BundleWriterTest {
+
+    private static final String NAME = "out/bundles/task-00000.tar";
+    private static final long MODIFICATION_TIME = 1574000000000L;
+
+    @Test
+    public void testArchive() throws IOException {
+        assertArchive(false);
+    }
+
+    @Test
+    public void testCompressedArchive() throws IOException {
+        assertArchive(true);
+    }
+
+    private static void assertArchive(boolean compress) throws IOException {
+        Map<String, byte[]> members = getMembers();
+        InMemoryDestination destination = new InMemoryDestination(true);
+        CompressEncryptOptions options = new CompressEncryptOptions(compress, false, Collections.emptyList(), 4096);
+        BundleWriter writer = new BundleWriter(destination, NAME, "application/x-tar", options, new StageTimer());
+        for (Map.Entry<String, byte[]> member : members.entrySet()) {
+            writer.add(member.getKey(), member.getValue(), member.getValue().length, MODIFICATION_TIME);
+        }
+        writer.commit();
+        Assert.assertEquals(members.size(), writer.getMembers());
+
+        // the whole archive, the gzip members of a compressed one concatenate into a single stream
+        byte[] archive = destination.getContent(NAME);
+        assertMembers(members, readTar(compress ? gunzip(archive) : archive));
+
+        // every range of the index is a tar of its member on its own
+        String indexName = NAME + BundleWriter.INDEX_SUFFIX;
+        Assert.assertEquals(String.valueOf(members.size()),
+                            destination.getObjects().get(indexName).getMetadata().get(BundleWriter.METADATA_MEMBERS));
+        String[] lines = new String(destination.getContent(indexName), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(BundleWriter.INDEX_HEADER, lines[0] + "\n");
+        Assert.assertEquals(members.size() + 1, lines.length);
+        List<String> names = new ArrayList<>(members.keySet());
+        long end = 0;
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split("\t");
+            int offset = Integer.parseInt(fields[0]);
+            int length = Integer.parseInt(fields[1]);
+            String name = URLDecoder.decode(fields[3], StandardCharsets.UTF_8.name());
+            Assert.assertEquals(names.get(i - 1), name);
+            Assert.assertEquals(end, offset);
+            Assert.assertEquals(members.get(name).length, Long.parseLong(fields[2]));
+
+            byte[] range = Arrays.copyOfRange(archive, offset, offset + length);
+            byte[] tar = compress ? gunzip(range) : range;
+            assertMembers(Collections.singletonMap(name, members.get(name)), readTar(tar));
+            assertChecksums(tar);
+            end = offset + length;
+        }
+    }
+
+    /**
+     * @return Members whose names fit the name field, need the prefix field or need a pax header, with content
+     * that is empty, a whole number of blocks or a partial block.
+     */
+    private static Map<String, byte[]> getMembers() {
+        Random random = new Random(42);
+        Map<String, byte[]> members = new LinkedHashMap<>();
+        String directory = Strings.repeat("d", 60) + "/" + Strings.repeat("e", 60);
+        members.put("a.txt", content(random, 100));
+        members.put("empty", content(random, 0));
+        members.put(directory + "/" + Strings.repeat("f", 90) + ".txt", content(random, 512));
+        members.put(Strings.repeat("g", 120) + ".txt", content(random, 513));
+        members.put(directory + "/donn\u00e9es-\u30d5\u30a1\u30a4\u30eb-" + Strings.repeat("h", 100),
+                    content(random, 3000));
+        members.put(Strings.repeat("i/", 100) + "j", content(random, 1));
+        // the length of its pax record gains a digit when the length itself is counted
+        members.put(Strings.repeat("k", 992), content(random, 10));
+        return members;
+    }
+
+    private static byte[] content(Random random, int length) {
+        byte[] content = new byte[length];
+        random.nextBytes(content);
+        return content;
+    }
+
+    /**
+     * @return The members of a tar in order, with the names of pax headers applied.
+     */
+    private static Map<String, byte[]> readTar(byte[] tar) throws IOException {
+        Map<String, byte[]> members = new LinkedHashMap<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(new ByteArrayInputStream(tar))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextTarEntry()) != null) {
+                Assert.assertEquals(MODIFICATION_TIME / 1000, entry.getModTime().getTime() / 1000);
+                members.put(entry.getName(), readFully(in));
+            }
+        }
+        return members;
+    }
+
+    private static void assertMembers(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        Assert.assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        for (Map.Entry<String, byte[]> member : expected.entrySet()) {
+            Assert.assertArrayEquals(member.getKey(), member.getValue(), actual.get(member.getKey()));
+        }
+    }
+
+    /**
+     * Checks the checksum of every header of a member, the tar reader doesn't.
+     */
+    private static void assertChecksums(byte[] tar) {
+        int offset = 0;
+        while (offset < tar.length) {
+            byte[] header = Arrays.copyOfRange(tar, offset, offset + 512);
+            long checksum = 0;
+            for (int i = 0; i < header.length; i++) {
+                checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+            }
+            Assert.assertEquals(checksum, parseOctal(header, 148, 7));
+            long size = parseOctal(header, 124, 11);
+            offset += 512 + (size + 511) / 512 * 512;
+        }
+        Assert.assertEquals(tar.length, offset);
+    }
+
+    private static long parseOctal(byte[] header, int offset, int length) {
+        return Long.parseLong(new String(header, offset, length, StandardCharsets.US_ASCII).trim(), 8);
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return readFully(in);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.inventory;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.plugin.file.ingest.destination.ObjectStat;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+public class DestinationInventoryTest {
+
+    @Test
+    public void testLookup() {
+        DestinationInventory inventory = new DestinationInventory.Builder()
+                .add(object("dir/a.zip", 100, 1000))
+                .add(object("dir/b.zip", 200, 2000))
+                .build();
+        Assert.assertEquals(2, inventory.size());
+        Assert.assertTrue(inventory.contains("dir/a.zip", 100, 1000));
+        Assert.assertTrue(inventory.contains("dir/b.zip", 200, 2000));
+        // a file that changed since its object was written, or another file
+        Assert.assertFalse(inventory.contains("dir/a.zip", 101, 1000));
+        Assert.assertFalse(inventory.contains("dir/a.zip", 100, 1001));
+        Assert.assertFalse(inventory.contains("dir/c.zip", 100, 1000));
+        Assert.assertFalse(inventory.contains("dir/a.zip", 200, 2000));
+    }
+
+    @Test
+    public void testUntaggedObjects() {
+        DestinationInventory inventory = new DestinationInventory.Builder()
+                .add(new ObjectStat("untagged.zip", 10, 0, Collections.emptyMap()))
+                .add(new ObjectStat("size.zip", 10, 0,
+                                    ImmutableMap.of(DestinationInventory.METADATA_SOURCE_SIZE, "10")))
+                .add(new ObjectStat("invalid.zip", 10, 0,
+                                    ImmutableMap.of(DestinationInventory.METADATA_SOURCE_SIZE, "10",
+                                                    DestinationInventory.METADATA_SOURCE_MODIFICATION_TIME, "x")))
+                .add(object("tagged.zip", 10, 20))
+                .build();
+        Assert.assertEquals(1, inventory.size());
+        Assert.assertTrue(inventory.contains("tagged.zip", 10, 20));
+    }
+
+    @Test
+    public void testMerge() {
+        DestinationInventory bundle = new DestinationInventory.Builder()
+                .add("a.zip", 1, 2)
+                .add("b.zip", 3, 4)
+                .build();
+        DestinationInventory merged = new DestinationInventory.Builder()
+                .add("b.zip", 3, 4)
+                .addAll(bundle)
+                .addAll(bundle)
+                .add("c.zip", 5, 6)
+                .build();
+        Assert.assertEquals(3, merged.size());
+        Assert.assertTrue(merged.contains("a.zip", 1, 2));
+        Assert.assertTrue(merged.contains("b.zip", 3, 4));
+        Assert.assertTrue(merged.contains("c.zip", 5, 6));
+    }
+
+    // more objects than the builder starts with, so that it grows
+    @Test
+    public void testRoundTrip() throws IOException {
+        DestinationInventory.Builder builder = new DestinationInventory.Builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.add("file-" + i, i, 1000L * i);
+        }
+        DestinationInventory inventory = builder.build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        inventory.write(out);
+        Assert.assertEquals(8 + 8 * 5000, out.size());
+
+        DestinationInventory read = DestinationInventory.read(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(5000, read.size());
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertTrue(read.contains("file-" + i, i, 1000L * i));
+        }
+        Assert.assertFalse(read.contains("file-5000", 5000, 5000000));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DestinationInventory.Builder().build().write(out);
+        DestinationInventory read = DestinationInventory.read(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(0, read.size());
+        Assert.assertFalse(read.contains("", 0, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAnInventory() throws IOException {
+        DestinationInventory.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 0, 0, 0, 0}));
+    }
+
+    private static ObjectStat object(String name, long sourceSize, long sourceModificationTime) {
+        Map<String, String> metadata = ImmutableMap.of(
+                DestinationInventory.METADATA_SOURCE_SIZE, Long.toString(sourceSize),
+                DestinationInventory.METADATA_SOURCE_MODIFICATION_TIME, Long.toString(sourceModificationTime));
+        return new ObjectStat(name, 1, 0, metadata);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.batchsink;
+
+import io.cdap.plugin.file.ingest.common.FileListData;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Class for the OutputFormat that the restore sink uses.
+ */
+public class FileRestoreOutputFormat extends OutputFormat<NullWritable, FileListData> {
+    public static final String NAME_SOURCE_TYPE = "restore.source.type";
+    public static final String NAME_GCS_PROJECTID = "restore.gcs.projectid";
+    public static final String NAME_GCS_SERVICEACCOUNTJSON = "restore.gcs.service.account";
+    public static final String NAME_OUTPUT_PATH = "restore.output.path";
+    public static final String NAME_PGP_PRIVATE_KEY = "restore.pgp.private.key";
+    public static final String NAME_PGP_PASSPHRASE = "restore.pgp.passphrase";
+    public static final String NAME_DICTIONARY_PATH = "restore.compression.dictionary.path";
+    public static final String NAME_CONCURRENCY = "restore.concurrency";
+    public static final String NAME_RANGE_SIZE = "restore.range.size";
+    public static final String NAME_RANGE_READS = "restore.range.reads";
+    public static final String NAME_BUFFER_SIZE = "restore.buffer.size";
+    public static final String NAME_STAGE_NAME = "restore.stage.name";
+
+    public static void setStageName(Map<String, String> conf, String value) {
+        conf.put(NAME_STAGE_NAME, value == null ? "" : value);
+    }
+
+    public static void setSourceType(Map<String, String> conf, String value) {
+        conf.put(NAME_SOURCE_TYPE, value == null ? "" : value);
+    }
+
+    public static void setGCSProjectID(Map<String, String> conf, String value) {
+        conf.put(NAME_GCS_PROJECTID, value == null ? "" : value);
+    }
+
+    public static void setGCSServiceAccount(Map<String, String> conf, String value) {
+        conf.put(NAME_GCS_SERVICEACCOUNTJSON, value == null ? "" : value);
+    }
+
+    public static void setOutputPath(Map<String, String> conf, String value) {
+        conf.put(NAME_OUTPUT_PATH, value);
+    }
+
+    public static void setPGPPrivateKey(Map<String, String> conf, String value) {
+        conf.put(NAME_PGP_PRIVATE_KEY, value == null ? "" : value);
+    }
+
+    public static void setPGPPassphrase(Map<String, String> conf, String value) {
+        conf.put(NAME_PGP_PASSPHRASE, value == null ? "" : value);
+    }
+
+    public static void setDictionaryPath(Map<String, String> conf, String value) {
+        conf.put(NAME_DICTIONARY_PATH, value == null ? "" : value);
+    }
+
+    public static void setConcurrency(Map<String, String> conf, String value) {
+        conf.put(NAME_CONCURRENCY, value == null ? "" : value);
+    }
+
+    public static void setRangeSize(Map<String, String> conf, String value) {
+        conf.put(NAME_RANGE_SIZE, value == null ? "" : value);
+    }
+
+    public static void setRangeReads(Map<String, String> conf, String value) {
+        conf.put(NAME_RANGE_READS, value == null ? "" : value);
+    }
+
+    public static void setBufferSize(Map<String, String> conf, String value) {
+        conf.put(NAME_BUFFER_SIZE, value == null ? "" : value);
+    }
+
+    @Override
+    public void checkOutputSpecs(JobContext jobContext) {
+        // files are restored under their own names, existing files are replaced
+    }
+
+    @Override
+    public OutputCommitter getOutputCommitter(TaskAttemptContext taskAttemptContext) {
+        // every file is renamed into place as soon as it has been restored
+        return new OutputCommitter() {
+            @Override
+            public void setupJob(JobContext jobContext) {
+                // no op
+            }
+
+            @Override
+            public void setupTask(TaskAttemptContext taskAttemptContext) {
+                // no op
+            }
+
+            @Override
+            public boolean needsTaskCommit(TaskAttemptContext taskAttemptContext) {
+                return false;
+            }
+
+            @Override
+            public void commitTask(TaskAttemptContext taskAttemptContext) {
+                // no op
+            }
+
+            @Override
+            public void abortTask(TaskAttemptContext taskAttemptContext) {
+                // no op
+            }
+        };
+    }
+
+    @Override
+    public RecordWriter<NullWritable, FileListData> getRecordWriter(TaskAttemptContext taskAttemptContext)
+            throws IOException {
+        Configuration conf = taskAttemptContext.getConfiguration();
+        return new FileRestoreRecordWriter(conf);
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.batchsink;
+
+import com.google.auth.Credentials;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.storage.StorageOptions;
+import io.cdap.plugin.file.ingest.batchsink.FileCopyRecordWriter;
+import io.cdap.plugin.file.ingest.common.FileListData;
+import io.cdap.plugin.file.ingest.compression.DictionaryTrainer;
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.destination.FileSystemDestination;
+import io.cdap.plugin.file.ingest.encryption.PGPCertUtil;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
+import io.cdap.plugin.file.ingest.metrics.MeteredInputStream;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.restore.decode.DecodedObject;
+import io.cdap.plugin.file.restore.decode.ObjectDecoder;
+import io.cdap.plugin.file.restore.decode.PrivateKeyCache;
+import io.cdap.plugin.file.restore.source.FileSystemObjectSource;
+import io.cdap.plugin.file.restore.source.GCSObjectSource;
+import io.cdap.plugin.file.restore.source.ObjectSource;
+import io.cdap.plugin.file.restore.source.RangedInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * The record writer that restores the objects written by the compress and encrypt sink. Each object is read,
+ * decrypted and decompressed as one stream straight into the output file, and several objects are restored at
+ * once. Objects larger than a range are read as parallel ranged requests.
+ *
+ * The memory of a task is bounded by the number of objects in flight times the ranges that are read ahead for
+ * each of them. An object that can't be restored doesn't stop the others, but the task fails when it is closed.
+ */
+public class FileRestoreRecordWriter extends RecordWriter<NullWritable, FileListData> {
+    private static final Logger LOG = LoggerFactory.getLogger(FileRestoreRecordWriter.class);
+    private static final int DEFAULT_CONCURRENCY = 8;
+    private static final int DEFAULT_RANGE_SIZE = 8 << 20;
+    private static final int DEFAULT_RANGE_READS = 4;
+    private static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+    private static final String PGP_SUFFIX = ".pgp";
+
+    private final ObjectSource source;
+    private final Destination destination;
+    private final ObjectDecoder decoder;
+    private final String outputPath;
+    private final int concurrency;
+    private final int rangeSize;
+    private final int rangeReads;
+    private final int bufferSize;
+    private final ExecutorService objectExecutor;
+    private final ExecutorService rangeExecutor;
+    // a new object is taken on only when one of the objects in flight is done
+    private final Semaphore objectPermits;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final CopyMetrics metrics;
+
+    /**
+     * Construct a RecordWriter given user configurations.
+     *
+     * @param conf The configuration that contains required information to intialize the recordWriter.
+     * @throws IOException
+     */
+    public FileRestoreRecordWriter(Configuration conf) throws IOException {
+        this(conf, null);
+    }
+
+    /**
+     * Construct a RecordWriter that reads from the given source instead of the one in the configuration.
+     *
+     * @param conf   The configuration that contains required information to intialize the recordWriter.
+     * @param source The source to read objects from, or null to create it from the configuration.
+     * @throws IOException
+     */
+    public FileRestoreRecordWriter(Configuration conf, @Nullable ObjectSource source) throws IOException {
+        LOG.info("Initializing of RecordWriter");
+
+        metrics = new CopyMetrics(conf.get(FileRestoreOutputFormat.NAME_STAGE_NAME));
+        concurrency = getPositive(conf, FileRestoreOutputFormat.NAME_CONCURRENCY, DEFAULT_CONCURRENCY);
+        rangeSize = getPositive(conf, FileRestoreOutputFormat.NAME_RANGE_SIZE, DEFAULT_RANGE_SIZE);
+        rangeReads = getPositive(conf, FileRestoreOutputFormat.NAME_RANGE_READS, DEFAULT_RANGE_READS);
+        bufferSize = getPositive(conf, FileRestoreOutputFormat.NAME_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+        LOG.info("Concurrency - {}, range size - {}, range reads - {}, buffer size - {}",
+                 concurrency, rangeSize, rangeReads, bufferSize);
+
+        String sourceType = conf.get(FileRestoreOutputFormat.NAME_SOURCE_TYPE, "GCS");
+        LOG.info("Source Type - " + sourceType);
+        if (source != null) {
+            this.source = source;
+            LOG.info("Using the given source");
+        } else if ("FILESYSTEM".equals(sourceType)) {
+            this.source = new FileSystemObjectSource(conf);
+        } else {
+            String project = conf.get(FileRestoreOutputFormat.NAME_GCS_PROJECTID, "");
+            LOG.info("GCS Project ID - " + project);
+            String serviceAccount = conf.get(FileRestoreOutputFormat.NAME_GCS_SERVICEACCOUNTJSON, "");
+            LOG.info("GCS Service Account - " + serviceAccount);
+            StorageOptions.Builder builder = StorageOptions.newBuilder();
+            if (!project.isEmpty()) {
+                builder.setProjectId(project);
+            }
+            if (!serviceAccount.isEmpty()) {
+                Credentials credentials;
+                try (InputStream in = new FileInputStream(serviceAccount)) {
+                    credentials = GoogleCredentials.fromStream(in);
+                }
+                builder.setCredentials(credentials);
+            }
+            this.source = new GCSObjectSource(builder.build().getService());
+            LOG.info("Created GCS Storage");
+        }
+
+        outputPath = StringUtils.stripEnd(conf.get(FileRestoreOutputFormat.NAME_OUTPUT_PATH), "/");
+        LOG.info("Output Path - " + outputPath);
+        this.destination = new FileSystemDestination(new Path(outputPath).getFileSystem(conf));
+
+        PGPSecretKeyRingCollection keyRings = null;
+        String privateKeyPath = conf.get(FileRestoreOutputFormat.NAME_PGP_PRIVATE_KEY, "");
+        if (!privateKeyPath.isEmpty()) {
+            LOG.info("PrivateKeyPath - " + privateKeyPath);
+            try {
+                keyRings = PGPCertUtil.readSecretKeyRings(privateKeyPath);
+                LOG.info("Retrieved PrivateKey");
+            } catch (PGPException ex) {
+                LOG.error(ex.getMessage());
+                throw new IOException(ex.getMessage());
+            }
+        }
+        char[] passphrase = conf.get(FileRestoreOutputFormat.NAME_PGP_PASSPHRASE, "").toCharArray();
+
+        PrivateKeyCache keys = new PrivateKeyCache(keyRings, passphrase);
+
+        byte[] dictionary = null;
+        String dictionaryPath = conf.get(FileRestoreOutputFormat.NAME_DICTIONARY_PATH, "");
+        if (!dictionaryPath.isEmpty()) {
+            LOG.info("Dictionary Path - " + dictionaryPath);
+            dictionary = readDictionary(dictionaryPath, conf, keys);
+        }
+        decoder = new ObjectDecoder(keys, dictionary, bufferSize);
+
+        objectExecutor = Executors.newFixedThreadPool(concurrency);
+        rangeExecutor = Executors.newFixedThreadPool(concurrency * rangeReads);
+        objectPermits = new Semaphore(concurrency);
+    }
+
+    /**
+     * Reads the dictionary, decrypting it first if the sink encrypted it along with the files.
+     */
+    private byte[] readDictionary(String path, Configuration conf, PrivateKeyCache keys) throws IOException {
+        if (!path.endsWith(PGP_SUFFIX)) {
+            return FileCopyRecordWriter.readDictionary(path, conf);
+        }
+        Path dictionaryPath = new Path(path);
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+        try (InputStream in = dictionaryPath.getFileSystem(conf).open(dictionaryPath)) {
+            InputStream clear = new ObjectDecoder(keys, null, bufferSize)
+                    .decode(in, dictionaryPath.getName(), new StageTimer()).getStream();
+            byte[] buffer = new byte[bufferSize];
+            int read;
+            while ((read = clear.read(buffer)) >= 0) {
+                dictionary.write(buffer, 0, read);
+            }
+            clear.close();
+        }
+        // only the end of a larger dictionary is within reach of DEFLATE
+        byte[] content = dictionary.toByteArray();
+        return Arrays.copyOfRange(content, Math.max(0, content.length - DictionaryTrainer.MAX_DICTIONARY_SIZE),
+                                  content.length);
+    }
+
+    private static int getPositive(Configuration conf, String name, int defaultValue) {
+        String value = conf.get(name, "");
+        int parsed = StringUtils.isNumeric(value) ? Integer.parseInt(value) : defaultValue;
+        return parsed > 0 ? parsed : defaultValue;
+    }
+
+    /**
+     * Hands the object to one of the restore threads, waiting while all of them are busy.
+     *
+     * @param key          Unused key.
+     * @param fileListData The object to restore.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Override
+    public void write(NullWritable key, FileListData fileListData) throws IOException, InterruptedException {
+        if (fileListData.getRelativePath().isEmpty()) {
+            return;
+        }
+        objectPermits.acquire();
+        try {
+            objectExecutor.execute(() -> {
+                try {
+                    restore(fileListData);
+                } finally {
+                    objectPermits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            objectPermits.release();
+            throw e;
+        }
+    }
+
+    private void restore(FileListData fileListData) {
+        String name = StringUtils.stripEnd(fileListData.getHostURI(), "/") + "/"
+                + StringUtils.stripStart(fileListData.getFullPath(), "/");
+        StageTimer timer = new StageTimer();
+        long startNanos = System.nanoTime();
+        boolean succeeded = false;
+
+        InputStream in = null;
+        try {
+            timer.start(Stage.SOURCE_OPEN);
+            long size;
+            try {
+                // listings of the object store carry the size, the others take a request per object
+                size = fileListData.getFileSize() >= 0 ? fileListData.getFileSize() : source.getSize(name);
+                // small objects take a single request, which saves the round trips of the ranges
+                in = size <= rangeSize ? source.open(name)
+                        : new RangedInputStream(source, name, size, rangeSize, rangeReads, rangeExecutor);
+            } finally {
+                timer.stop();
+            }
+            in = new MeteredInputStream(in, Stage.READ, timer);
+
+            DecodedObject decoded = decoder.decode(in, fileListData.getRelativePath(), timer);
+            in = decoded.getStream();
+            String outFileName = outputPath + "/" + StringUtils.stripStart(decoded.getName(), "/");
+            LOG.info("Output File Name " + outFileName);
+
+            // a writer that is closed without being committed is aborted
+            try (DestinationWriter writer = destination.open(outFileName, "application/octet-stream",
+                                                             Collections.emptyMap())) {
+                byte[] buffer = new byte[bufferSize];
+                int limit;
+                while ((limit = in.read(buffer)) >= 0) {
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, limit);
+                    timer.start(Stage.UPLOAD);
+                    try {
+                        while (byteBuffer.hasRemaining()) {
+                            writer.write(byteBuffer);
+                        }
+                    } finally {
+                        timer.stop();
+                    }
+                    timer.addBytes(Stage.UPLOAD, limit);
+                }
+                timer.start(Stage.UPLOAD);
+                try {
+                    writer.commit();
+                } finally {
+                    timer.stop();
+                }
+            }
+            succeeded = true;
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            LOG.error("Failed to restore {}: {}", name, e.getMessage(), e);
+        }
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+        synchronized (metrics) {
+            metrics.recordFile(timer, System.nanoTime() - startNanos, succeeded);
+        }
+    }
+
+    /**
+     * @return The metrics of the objects restored so far.
+     */
+    public CopyMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close(TaskAttemptContext taskAttemptContext) throws IOException, InterruptedException {
+        objectExecutor.shutdown();
+        while (!objectExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+            LOG.info("Waiting for {} objects to be restored", concurrency - objectPermits.availablePermits());
+        }
+        rangeExecutor.shutdownNow();
+        synchronized (metrics) {
+            metrics.publish();
+            metrics.logSummary(LOG);
+        }
+        destination.close();
+        // the task fails rather than reporting success for a partial restore
+        if (failures.get() > 0) {
+            throw new IOException(String.format("%d objects could not be restored, see the task log for the causes",
+                                                failures.get()));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.batchsink;
+
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Plugin;
+import io.cdap.cdap.api.data.batch.Output;
+import io.cdap.cdap.api.data.batch.OutputFormatProvider;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.dataset.lib.KeyValue;
+import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
+import io.cdap.cdap.etl.api.batch.BatchSink;
+import io.cdap.cdap.etl.api.batch.BatchSinkContext;
+import io.cdap.plugin.file.ingest.common.FileListData;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.io.NullWritable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Plugin(type = BatchSink.PLUGIN_TYPE)
+@Name(fileDecompressDecryptGCSBatchSink.NAME)
+@Description("Restore files written by the compress / encrypt sink from GCS, decrypting and decompressing them.")
+public class fileDecompressDecryptGCSBatchSink extends BatchSink<StructuredRecord, NullWritable, FileListData> {
+    public static final String NAME = "fileDecompressDecryptGCSBatchSink";
+
+    private final fileDecompressDecryptGCSBatchSinkConfig config;
+
+    public fileDecompressDecryptGCSBatchSink(fileDecompressDecryptGCSBatchSinkConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+        super.configurePipeline(pipelineConfigurer);
+    }
+
+    @Override
+    public void prepareRun(BatchSinkContext context) throws Exception {
+        if (StringUtils.isEmpty(config.getPath())) {
+            throw new IllegalArgumentException(String.format("Path is missing for %s plugin. Please provide the same.", NAME));
+        }
+        if (StringUtils.startsWith(config.getPath(), fileDecompressDecryptGCSBatchSinkConfig.SCHEME)) {
+            throw new IllegalArgumentException(String.format("Path must be a filesystem path for %s plugin. Please correct the same.", NAME));
+        }
+        checkNumber(config.getConcurrency(), "Concurrency");
+        checkNumber(config.getRangeSize(), "Range size");
+        checkNumber(config.getRangeReads(), "Range reads");
+        checkNumber(config.getBufferSize(), "Buffer size");
+
+        context.addOutput(Output.of("FileRestoreOutputFormatProvider", new FileRestoreOutputFormatProvider(config, context.getStageName())));
+    }
+
+    private static void checkNumber(String value, String property) {
+        if (StringUtils.isNotEmpty(value) && (!StringUtils.isNumeric(value) || Long.parseLong(value) == 0
+                || Long.parseLong(value) > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException(String.format("%s must be a positive number for %s plugin. Please correct the same.", property, NAME));
+        }
+    }
+
+    @Override
+    public void initialize(BatchRuntimeContext context) throws Exception {
+        super.initialize(context);
+        // the record writer publishes its per-stage metrics through this stage's metrics
+        CopyMetrics.setStageMetrics(context.getStageName(), context.getMetrics());
+    }
+
+    @Override
+    public void transform(StructuredRecord input, Emitter<KeyValue<NullWritable, FileListData>> emitter) throws Exception {
+        FileListData output = new FileListData(input);
+        emitter.emit(new KeyValue<NullWritable, FileListData>(null, output));
+    }
+
+    /**
+     * Adds necessary configuration resources and provides OutputFormat Class
+     */
+    public class FileRestoreOutputFormatProvider implements OutputFormatProvider {
+        protected final Map<String, String> conf;
+
+        /**
+         * @param stageName The name of the sink's stage, which its RecordWriters publish their metrics to.
+         */
+        public FileRestoreOutputFormatProvider(fileDecompressDecryptGCSBatchSinkConfig config, String stageName) {
+            this.conf = new HashMap<>();
+            FileRestoreOutputFormat.setStageName(conf, stageName);
+            FileRestoreOutputFormat.setSourceType(conf, config.getSourceType());
+            FileRestoreOutputFormat.setGCSProjectID(conf, config.getProject());
+            FileRestoreOutputFormat.setGCSServiceAccount(conf, config.getServiceAccountFilePath());
+            FileRestoreOutputFormat.setOutputPath(conf, config.getPath());
+            FileRestoreOutputFormat.setPGPPrivateKey(conf, config.getPrivateKeyPath());
+            FileRestoreOutputFormat.setPGPPassphrase(conf, config.getPrivateKeyPassword());
+            FileRestoreOutputFormat.setDictionaryPath(conf, config.getDictionaryPath());
+            FileRestoreOutputFormat.setConcurrency(conf, config.getConcurrency());
+            FileRestoreOutputFormat.setRangeSize(conf, config.getRangeSize());
+            FileRestoreOutputFormat.setRangeReads(conf, config.getRangeReads());
+            FileRestoreOutputFormat.setBufferSize(conf, config.getBufferSize());
+        }
+
+        @Override
+        public Map<String, String> getOutputFormatConfiguration() {
+            return conf;
+        }
+
+        @Override
+        public String getOutputFormatClassName() {
+            return FileRestoreOutputFormat.class.getName();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.batchsink;
+
+import com.google.cloud.ServiceOptions;
+import com.google.common.base.Strings;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.plugin.PluginConfig;
+
+import javax.annotation.Nullable;
+
+public class fileDecompressDecryptGCSBatchSinkConfig extends PluginConfig {
+    public static final String NAME_SOURCE_TYPE = "sourceType";
+    public static final String NAME_PROJECT = "project";
+    public static final String NAME_SERVICE_ACCOUNT_FILE_PATH = "serviceFilePath";
+    public static final String AUTO_DETECT = "auto-detect";
+    public static final String NAME_PATH = "path";
+    public static final String NAME_DECRYPTION_PRIVATE_KEY_FILE_PATH = "privateKeyPath";
+    public static final String NAME_DECRYPTION_PRIVATE_KEY_PASSWORD = "privateKeyPassword";
+    public static final String NAME_DICTIONARY_PATH = "dictionaryPath";
+    public static final String NAME_CONCURRENCY = "concurrency";
+    public static final String NAME_RANGE_SIZE = "rangeSize";
+    public static final String NAME_RANGE_READS = "rangeReads";
+    public static final String NAME_BUFFER_SIZE = "bufferSize";
+    public static final String SCHEME = "gs://";
+
+    @Name(NAME_SOURCE_TYPE)
+    @Description("Where the objects are read from. GCS - a Google Cloud Storage bucket, FILESYSTEM - a Hadoop " +
+            "filesystem such as HDFS or the local disk.")
+    @Nullable
+    protected String sourceType = SourceType.GCS.getType();
+
+    @Name(NAME_PROJECT)
+    @Description("Google Cloud Project ID, which uniquely identifies a project. "
+            + "It can be found on the Dashboard in the Google Cloud Platform Console.")
+    @Macro
+    @Nullable
+    protected String project;
+
+    @Name(NAME_SERVICE_ACCOUNT_FILE_PATH)
+    @Description("Path on the local file system of the service account key used "
+            + "for authorization. Can be set to 'auto-detect' when running on a Dataproc cluster. "
+            + "When running on other clusters, the file must be present on every node in the cluster.")
+    @Macro
+    @Nullable
+    protected String serviceFilePath;
+
+    @Name(NAME_PATH)
+    @Description("The directory to restore the files to. For example, hdfs://<namenode>/path or file:///path")
+    @Macro
+    protected String path;
+
+    @Name(NAME_DECRYPTION_PRIVATE_KEY_FILE_PATH)
+    @Description("Path on the local file system of the secret key ring used for decryption. Required when the " +
+            "objects are encrypted.")
+    @Macro
+    @Nullable
+    protected String privateKeyPath;
+
+    @Name(NAME_DECRYPTION_PRIVATE_KEY_PASSWORD)
+    @Description("The passphrase of the private key.")
+    @Macro
+    @Nullable
+    protected String privateKeyPassword;
+
+    @Name(NAME_DICTIONARY_PATH)
+    @Description("Path of the dictionary that the objects were compressed with by DEFLATE_DICTIONARY " +
+            "compression. Required to restore .zlib objects.")
+    @Macro
+    @Nullable
+    protected String dictionaryPath;
+
+    @Name(NAME_CONCURRENCY)
+    @Description("The number of objects each task restores at the same time. The default is 8")
+    @Macro
+    @Nullable
+    protected String concurrency;
+
+    @Name(NAME_RANGE_SIZE)
+    @Description("Objects larger than this many bytes are read as ranges of this size in parallel. " +
+            "The default is 8388608 (8 MB)")
+    @Macro
+    @Nullable
+    protected String rangeSize;
+
+    @Name(NAME_RANGE_READS)
+    @Description("The number of ranges of a large object that are read ahead in parallel. The default is 4")
+    @Macro
+    @Nullable
+    protected String rangeReads;
+
+    @Name(NAME_BUFFER_SIZE)
+    @Description("Buffer size to decompress and write the contents. The default is 65536")
+    @Macro
+    @Nullable
+    protected String bufferSize;
+
+    public String getSourceType() {
+        return Strings.isNullOrEmpty(sourceType) ? SourceType.GCS.getType() : sourceType;
+    }
+
+    public boolean readsFromGCS() {
+        return getSourceType().equals(SourceType.GCS.getType());
+    }
+
+    @Nullable
+    public String getProject() {
+        String projectId = project;
+        if (Strings.isNullOrEmpty(project) || AUTO_DETECT.equals(project)) {
+            projectId = ServiceOptions.getDefaultProjectId();
+        }
+        return projectId;
+    }
+
+    @Nullable
+    public String getServiceAccountFilePath() {
+        if (containsMacro(NAME_SERVICE_ACCOUNT_FILE_PATH) || serviceFilePath == null ||
+                serviceFilePath.isEmpty() || AUTO_DETECT.equals(serviceFilePath)) {
+            return null;
+        }
+        return serviceFilePath;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    @Nullable
+    public String getPrivateKeyPath() {
+        return privateKeyPath;
+    }
+
+    @Nullable
+    public String getPrivateKeyPassword() {
+        return privateKeyPassword;
+    }
+
+    @Nullable
+    public String getDictionaryPath() {
+        return dictionaryPath;
+    }
+
+    @Nullable
+    public String getConcurrency() {
+        return concurrency;
+    }
+
+    @Nullable
+    public String getRangeSize() {
+        return rangeSize;
+    }
+
+    @Nullable
+    public String getRangeReads() {
+        return rangeReads;
+    }
+
+    @Nullable
+    public String getBufferSize() {
+        return bufferSize;
+    }
+
+    private enum SourceType {
+        GCS("GCS"),
+        FILESYSTEM("FILESYSTEM");
+        private String type;
+
+        SourceType(String type) {
+            this.type = type;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+}
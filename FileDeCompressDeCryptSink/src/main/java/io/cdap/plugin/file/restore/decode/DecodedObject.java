@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.decode;
+
+import java.io.InputStream;
+
+/**
+ * The content and name of a file restored by {@link ObjectDecoder}.
+ */
+public class DecodedObject {
+    private final String name;
+    private final InputStream stream;
+
+    public DecodedObject(String name, InputStream stream) {
+        this.name = name;
+        this.stream = stream;
+    }
+
+    /**
+     * @return The name of the object without the suffixes of the sink.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The decoded content. Closing it closes the stream of the object.
+     */
+    public InputStream getStream() {
+        return stream;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.decode;
+
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import io.cdap.plugin.file.ingest.metrics.MeteredInputStream;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import org.bouncycastle.openpgp.PGPCompressedData;
+import org.bouncycastle.openpgp.PGPEncryptedDataList;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPLiteralData;
+import org.bouncycastle.openpgp.PGPOnePassSignatureList;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKeyEncryptedData;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.jcajce.JcaPGPObjectFactory;
+import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyDataDecryptorFactoryBuilder;
+
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipInputStream;
+import javax.annotation.Nullable;
+
+/**
+ * The inverse of {@link io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt}: turns the stream of an object
+ * written by the sink back into the original file, based on the suffixes the sink appended to its name.
+ *
+ * <ul>
+ *   <li>.pgp is a PGP message, whose literal data is the rest. It is compressed within the message when the
+ *   name ends with .zip.pgp.</li>
+ *   <li>.zip without encryption is a ZIP archive of the single file.</li>
+ *   <li>.zlib is a zlib stream compressed with a preset dictionary.</li>
+ * </ul>
+ *
+ * Everything is decoded while it is read, nothing is buffered beyond the buffers of the codecs.
+ */
+public class ObjectDecoder {
+    private static final String PGP_SUFFIX = ".pgp";
+    private static final String ZIP_SUFFIX = ".zip";
+    private static final String ZLIB_SUFFIX = ".zlib";
+    private static final int ZLIB_HEADER_SIZE = 2;
+    private static final int ZLIB_DICTIONARY_ID_SIZE = 4;
+    private static final int ZLIB_FLAG_DICTIONARY = 0x20;
+
+    private final PrivateKeyCache keys;
+    private final byte[] dictionary;
+    private final int bufferSize;
+
+    /**
+     * @param keys       The keys to decrypt messages with.
+     * @param dictionary The preset dictionary of zlib streams, or null if there are none.
+     * @param bufferSize The size of the buffers of the decompressors.
+     */
+    public ObjectDecoder(PrivateKeyCache keys, @Nullable byte[] dictionary, int bufferSize) {
+        this.keys = keys;
+        this.dictionary = dictionary;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @param in    The content of the object.
+     * @param name  The name of the object.
+     * @param timer Charged with decryption as {@link Stage#ENCRYPT} and decompression as {@link Stage#COMPRESS}.
+     * @return The content and name of the original file.
+     * @throws IOException if the object can't be decoded.
+     */
+    public DecodedObject decode(InputStream in, String name, StageTimer timer) throws IOException {
+        boolean encrypted = false;
+        if (name.endsWith(PGP_SUFFIX)) {
+            name = strip(name, PGP_SUFFIX);
+            in = decrypt(in, timer);
+            encrypted = true;
+        }
+        if (name.endsWith(ZLIB_SUFFIX)) {
+            name = strip(name, ZLIB_SUFFIX);
+            in = new MeteredInputStream(inflate(in), Stage.COMPRESS, timer);
+        } else if (name.endsWith(ZIP_SUFFIX)) {
+            name = strip(name, ZIP_SUFFIX);
+            // the compressed data of an encrypted file is within the PGP message
+            if (!encrypted) {
+                ZipInputStream zip = new ZipInputStream(in);
+                if (zip.getNextEntry() == null) {
+                    throw new IOException("The ZIP archive has no entry");
+                }
+                in = new MeteredInputStream(zip, Stage.COMPRESS, timer);
+            }
+        }
+        return new DecodedObject(name, in);
+    }
+
+    private InputStream inflate(InputStream in) throws IOException {
+        Inflater inflater = new Inflater();
+        // the header names the dictionary of the stream, which must be set before anything is inflated
+        byte[] header = new byte[ZLIB_HEADER_SIZE + ZLIB_DICTIONARY_ID_SIZE];
+        DataInputStream dataIn = new DataInputStream(in);
+        dataIn.readFully(header, 0, ZLIB_HEADER_SIZE);
+        int length = ZLIB_HEADER_SIZE;
+        if ((header[1] & ZLIB_FLAG_DICTIONARY) != 0) {
+            dataIn.readFully(header, length, ZLIB_DICTIONARY_ID_SIZE);
+            length += ZLIB_DICTIONARY_ID_SIZE;
+        }
+        inflater.setInput(header, 0, length);
+        try {
+            inflater.inflate(new byte[1]);
+        } catch (DataFormatException e) {
+            inflater.end();
+            throw new IOException("Invalid zlib header: " + e.getMessage(), e);
+        }
+        if (inflater.needsDictionary()) {
+            String id = String.format("%08x", inflater.getAdler());
+            if (dictionary == null || !id.equals(CompressEncryptOptions.getDictionaryId(dictionary))) {
+                inflater.end();
+                throw new IOException(String.format("The stream needs dictionary %s, which is not set", id));
+            }
+            inflater.setDictionary(dictionary);
+        }
+        return new InflaterInputStream(in, inflater, bufferSize) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inflater.end();
+            }
+        };
+    }
+
+    private InputStream decrypt(InputStream in, StageTimer timer) throws IOException {
+        try {
+            JcaPGPObjectFactory factory = new JcaPGPObjectFactory(PGPUtil.getDecoderStream(in));
+            Object object = factory.nextObject();
+            // the list may be preceded by a marker packet
+            PGPEncryptedDataList encryptedDataList = object instanceof PGPEncryptedDataList
+                    ? (PGPEncryptedDataList) object : (PGPEncryptedDataList) factory.nextObject();
+
+            PGPPublicKeyEncryptedData encryptedData = null;
+            PGPPrivateKey key = null;
+            Iterator<?> iterator = encryptedDataList.getEncryptedDataObjects();
+            while (key == null && iterator.hasNext()) {
+                encryptedData = (PGPPublicKeyEncryptedData) iterator.next();
+                key = keys.get(encryptedData.getKeyID());
+            }
+            if (key == null) {
+                throw new IOException("None of the private keys can decrypt the message");
+            }
+
+            InputStream clear = new MeteredInputStream(encryptedData.getDataStream(
+                    new JcePublicKeyDataDecryptorFactoryBuilder().setProvider(FileCompressEncrypt.PROVIDER).build(key)), Stage.ENCRYPT, timer);
+            JcaPGPObjectFactory clearFactory = new JcaPGPObjectFactory(clear);
+            Object message = clearFactory.nextObject();
+            if (message instanceof PGPCompressedData) {
+                InputStream decompressed = new MeteredInputStream(((PGPCompressedData) message).getDataStream(),
+                                                                  Stage.COMPRESS, timer);
+                clearFactory = new JcaPGPObjectFactory(decompressed);
+                message = clearFactory.nextObject();
+            }
+            // signed messages start with the one-pass signature, the signature itself follows the data and is
+            // left unread
+            if (message instanceof PGPOnePassSignatureList) {
+                message = clearFactory.nextObject();
+            }
+            if (!(message instanceof PGPLiteralData)) {
+                throw new IOException("The message has no literal data");
+            }
+            return new VerifyingInputStream(((PGPLiteralData) message).getInputStream(), encryptedData);
+        } catch (PGPException | ClassCastException e) {
+            throw new IOException("Failed to decrypt the message: " + e.getMessage(), e);
+        }
+    }
+
+    private static String strip(String name, String suffix) {
+        return name.substring(0, name.length() - suffix.length());
+    }
+
+    /**
+     * Checks the integrity packet of the message once all of it has been read, so that a tampered or truncated
+     * file fails instead of being restored.
+     */
+    private static class VerifyingInputStream extends FilterInputStream {
+        private final PGPPublicKeyEncryptedData encryptedData;
+        private boolean verified;
+
+        VerifyingInputStream(InputStream in, PGPPublicKeyEncryptedData encryptedData) {
+            super(in);
+            this.encryptedData = encryptedData;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                verify();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count < 0) {
+                verify();
+            }
+            return count;
+        }
+
+        private void verify() throws IOException {
+            if (verified || !encryptedData.isIntegrityProtected()) {
+                return;
+            }
+            verified = true;
+            try {
+                if (!encryptedData.verify()) {
+                    throw new IOException("The integrity check of the message failed");
+                }
+            } catch (PGPException e) {
+                throw new IOException("Failed to check the integrity of the message", e);
+            }
+        }
+    }
+}
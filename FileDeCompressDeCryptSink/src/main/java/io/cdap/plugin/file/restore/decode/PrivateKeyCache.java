@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.decode;
+
+import io.cdap.plugin.file.ingest.encryption.PGPCertUtil;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+
+import java.security.NoSuchProviderException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Looks up the private keys of encrypted messages by key id. Extracting a private key from its key ring decrypts
+ * it with the passphrase, which takes far longer than decrypting a small file, so every key is extracted once and
+ * shared by all the objects of the task.
+ */
+public class PrivateKeyCache {
+    private final PGPSecretKeyRingCollection keyRings;
+    private final char[] passphrase;
+    private final Map<Long, PGPPrivateKey> keys = new ConcurrentHashMap<>();
+
+    /**
+     * @param keyRings   The secret key rings to extract keys from, or null to only use keys that are added.
+     * @param passphrase The passphrase of the secret keys.
+     */
+    public PrivateKeyCache(@Nullable PGPSecretKeyRingCollection keyRings, char[] passphrase) {
+        this.keyRings = keyRings;
+        this.passphrase = passphrase;
+    }
+
+    /**
+     * Adds a key that was already extracted.
+     */
+    public void add(PGPPrivateKey key) {
+        keys.put(key.getKeyID(), key);
+    }
+
+    /**
+     * @return The private key with the given id, or null if there is no such key.
+     * @throws PGPException if the key can't be extracted, e.g. because of a wrong passphrase.
+     */
+    @Nullable
+    public PGPPrivateKey get(long keyID) throws PGPException {
+        PGPPrivateKey key = keys.get(keyID);
+        if (key != null || keyRings == null) {
+            return key;
+        }
+        try {
+            key = PGPCertUtil.findSecretKey(keyRings, keyID, passphrase);
+        } catch (NoSuchProviderException e) {
+            throw new PGPException("BouncyCastle provider is not available", e);
+        }
+        if (key != null) {
+            keys.put(keyID, key);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.source;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link ObjectSource} that reads objects from any Hadoop filesystem, e.g. archives that were copied to HDFS
+ * or written with the FILESYSTEM destination of the sink.
+ */
+public class FileSystemObjectSource implements ObjectSource {
+    private final Configuration conf;
+
+    public FileSystemObjectSource(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public long getSize(String name) throws IOException {
+        Path path = new Path(name);
+        return path.getFileSystem(conf).getFileStatus(path).getLen();
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        Path path = new Path(name);
+        return path.getFileSystem(conf).open(path);
+    }
+
+    @Override
+    public byte[] read(String name, long offset, int length) throws IOException {
+        Path path = new Path(name);
+        byte[] range = new byte[length];
+        try (FSDataInputStream in = path.getFileSystem(conf).open(path)) {
+            in.readFully(offset, range);
+        }
+        return range;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.source;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import io.cdap.plugin.file.ingest.utils.GCSPath;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+/**
+ * An {@link ObjectSource} that reads objects from Google Cloud Storage. Every ranged read is a request of its own,
+ * so several of them can be in flight for the same object.
+ */
+public class GCSObjectSource implements ObjectSource {
+    private final Storage storage;
+
+    public GCSObjectSource(Storage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public long getSize(String name) throws IOException {
+        Blob blob;
+        try {
+            blob = storage.get(getBlobId(name));
+        } catch (StorageException e) {
+            throw new IOException(e);
+        }
+        if (blob == null) {
+            throw new FileNotFoundException(name);
+        }
+        return blob.getSize() == null ? 0 : blob.getSize();
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        try {
+            return Channels.newInputStream(storage.reader(getBlobId(name)));
+        } catch (StorageException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public byte[] read(String name, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (ReadChannel reader = storage.reader(getBlobId(name))) {
+            reader.seek(offset);
+            // the reader fetches a chunk per request, so the range takes a single one
+            reader.setChunkSize(length);
+            while (buffer.hasRemaining()) {
+                if (reader.read(buffer) < 0) {
+                    throw new EOFException(String.format("%s ended before %d", name, offset + length));
+                }
+            }
+        } catch (StorageException e) {
+            throw new IOException(e);
+        }
+        return buffer.array();
+    }
+
+    private static BlobId getBlobId(String name) {
+        GCSPath path = GCSPath.from(name);
+        return BlobId.of(path.getBucket(), path.getName());
+    }
+}
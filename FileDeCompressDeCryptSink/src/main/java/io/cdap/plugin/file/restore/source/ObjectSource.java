@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A store that the restore pipeline reads archived objects from. Objects are named by their full path, e.g.
+ * gs://bucket/path/file.zip.pgp or hdfs://namenode/path/file.zip.pgp.
+ */
+public interface ObjectSource {
+
+    /**
+     * @param name The full path of the object.
+     * @return The size of the object in bytes.
+     * @throws IOException
+     */
+    long getSize(String name) throws IOException;
+
+    /**
+     * Opens the whole object for sequential reading.
+     *
+     * @param name The full path of the object.
+     * @throws IOException
+     */
+    InputStream open(String name) throws IOException;
+
+    /**
+     * Reads a range of the object with a single request.
+     *
+     * @param name   The full path of the object.
+     * @param offset The offset of the first byte to read.
+     * @param length The number of bytes to read, which must all exist.
+     * @return The bytes of the range.
+     * @throws IOException
+     */
+    byte[] read(String name, long offset, int length) throws IOException;
+}
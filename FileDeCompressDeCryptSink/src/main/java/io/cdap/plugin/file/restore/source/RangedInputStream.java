@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.restore.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a large object as a stream of consecutive ranges that are fetched ahead in parallel, so that a single
+ * object is not limited by the throughput of one request. Besides the range being read, at most
+ * {@code rangeReads} ranges of {@code rangeSize} bytes are in flight or waiting, which bounds the memory taken by
+ * the object.
+ */
+public class RangedInputStream extends InputStream {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ObjectSource source;
+    private final String name;
+    private final long size;
+    private final int rangeSize;
+    private final int rangeReads;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private long nextOffset;
+    private byte[] current = EMPTY;
+    private int position;
+
+    /**
+     * @param size       The size of the object.
+     * @param rangeSize  The number of bytes fetched by each request.
+     * @param rangeReads The number of ranges fetched ahead of the reader.
+     * @param executor   The executor that fetches the ranges, it may be shared by many streams.
+     */
+    public RangedInputStream(ObjectSource source, String name, long size, int rangeSize, int rangeReads,
+                             ExecutorService executor) {
+        this.source = source;
+        this.name = name;
+        this.size = size;
+        this.rangeSize = rangeSize;
+        this.rangeReads = rangeReads;
+        this.executor = executor;
+        fetchAhead();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() {
+        for (Future<byte[]> range : pending) {
+            range.cancel(true);
+        }
+        pending.clear();
+        current = EMPTY;
+        position = 0;
+    }
+
+    /**
+     * @return false at the end of the object.
+     */
+    private boolean ensureAvailable() throws IOException {
+        while (position == current.length) {
+            Future<byte[]> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+            try {
+                current = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + name);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            position = 0;
+            // the range that was just taken frees room for the next one
+            fetchAhead();
+        }
+        return true;
+    }
+
+    private void fetchAhead() {
+        while (pending.size() < rangeReads && nextOffset < size) {
+            long offset = nextOffset;
+            int length = (int) Math.min(rangeSize, size - offset);
+            pending.add(executor.submit(() -> source.read(name, offset, length)));
+            nextOffset += length;
+        }
+    }
+}
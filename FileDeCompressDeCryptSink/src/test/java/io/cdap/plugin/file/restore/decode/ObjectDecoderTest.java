@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.restore.decode;
+
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.ingest.utils.FileMetaData;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+public class ObjectDecoderTest {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static PGPKeyPair keyPair;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void generateKeyPair() throws GeneralSecurityException, PGPException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = new JcaPGPKeyPair(PGPPublicKey.RSA_GENERAL, generator.generateKeyPair(), new Date());
+    }
+
+    @Test
+    public void testZip() throws Exception {
+        assertRoundTrip("data.csv.zip", new CompressEncryptOptions(true, false, (PGPPublicKey) null, BUFFER_SIZE),
+                        null);
+    }
+
+    @Test
+    public void testEncrypted() throws Exception {
+        assertRoundTrip("data.csv.pgp", new CompressEncryptOptions(false, true, keyPair.getPublicKey(), BUFFER_SIZE),
+                        null);
+    }
+
+    @Test
+    public void testCompressedAndEncrypted() throws Exception {
+        assertRoundTrip("data.csv.zip.pgp",
+                        new CompressEncryptOptions(true, true, keyPair.getPublicKey(), BUFFER_SIZE), null);
+    }
+
+    @Test
+    public void testZlibWithDictionary() throws Exception {
+        byte[] dictionary = getContent(1024, 7);
+        assertRoundTrip("data.csv.zlib", new CompressEncryptOptions(true, false, (PGPPublicKey) null, BUFFER_SIZE)
+                .setDictionary(dictionary), dictionary);
+    }
+
+    @Test
+    public void testEncryptedZlibWithDictionary() throws Exception {
+        byte[] dictionary = getContent(1024, 7);
+        assertRoundTrip("data.csv.zlib.pgp", new CompressEncryptOptions(true, true, keyPair.getPublicKey(), BUFFER_SIZE)
+                .setDictionary(dictionary), dictionary);
+    }
+
+    @Test
+    public void testSigned() throws Exception {
+        assertRoundTrip("data.csv.zip.pgp", new CompressEncryptOptions(true, true, keyPair.getPublicKey(), BUFFER_SIZE)
+                .setSigningKey(keyPair.getPrivateKey()), null);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingDictionary() throws Exception {
+        byte[] dictionary = getContent(1024, 7);
+        byte[] encoded = encode(new CompressEncryptOptions(true, false, (PGPPublicKey) null, BUFFER_SIZE)
+                                        .setDictionary(dictionary));
+        newDecoder(null).decode(new ByteArrayInputStream(encoded), "data.csv.zlib", new StageTimer());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownKey() throws Exception {
+        byte[] encoded = encode(new CompressEncryptOptions(false, true, keyPair.getPublicKey(), BUFFER_SIZE));
+        new ObjectDecoder(new PrivateKeyCache(null, new char[0]), null, BUFFER_SIZE)
+                .decode(new ByteArrayInputStream(encoded), "data.csv.pgp", new StageTimer());
+    }
+
+    private void assertRoundTrip(String name, CompressEncryptOptions options, byte[] dictionary) throws Exception {
+        byte[] encoded = encode(options);
+        DecodedObject decoded = newDecoder(dictionary).decode(new ByteArrayInputStream(encoded), name,
+                                                             new StageTimer());
+        Assert.assertEquals("data.csv", decoded.getName());
+        try (InputStream in = decoded.getStream()) {
+            Assert.assertArrayEquals(getContent(), readFully(in));
+        }
+    }
+
+    private byte[] encode(CompressEncryptOptions options) throws Exception {
+        File file = folder.newFile("data.csv");
+        Files.write(file.toPath(), getContent());
+        FileSystem fileSystem = FileSystem.getLocal(new Configuration());
+        FileMetaData fileMetaData = new FileMetaData(new Path(file.toURI()), fileSystem, file.length(),
+                                                     file.lastModified());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileCompressEncrypt.encryptFile(out, fileMetaData, options, new StageTimer());
+        return out.toByteArray();
+    }
+
+    private static ObjectDecoder newDecoder(byte[] dictionary) {
+        PrivateKeyCache keys = new PrivateKeyCache(null, new char[0]);
+        keys.add(keyPair.getPrivateKey());
+        return new ObjectDecoder(keys, dictionary, BUFFER_SIZE);
+    }
+
+    /**
+     * @return Repetitive content that is larger than the buffers, so that every codec takes more than one pass.
+     */
+    private static byte[] getContent() {
+        byte[] content = new byte[10 * BUFFER_SIZE + 17];
+        byte[] line = getContent(64, 3);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = line[i % line.length];
+        }
+        return content;
+    }
+
+    private static byte[] getContent(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
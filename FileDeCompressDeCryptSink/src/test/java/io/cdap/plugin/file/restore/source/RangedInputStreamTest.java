@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.restore.source;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class RangedInputStreamTest {
+
+    private static final int RANGE_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+    private ObjectSource source;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        source = new FileSystemObjectSource(new Configuration());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRanges() throws IOException {
+        // a partial last range
+        assertRead(getContent(10 * RANGE_SIZE + 123), 4);
+    }
+
+    @Test
+    public void testWholeRanges() throws IOException {
+        assertRead(getContent(5 * RANGE_SIZE), 2);
+    }
+
+    @Test
+    public void testSingleRangeAhead() throws IOException {
+        assertRead(getContent(3 * RANGE_SIZE + 1), 1);
+    }
+
+    @Test
+    public void testSmallerThanRange() throws IOException {
+        assertRead(getContent(RANGE_SIZE / 2), 4);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        String name = write(new byte[0]);
+        try (InputStream in = new RangedInputStream(source, name, 0, RANGE_SIZE, 4, executor)) {
+            Assert.assertEquals(-1, in.read());
+            Assert.assertEquals(-1, in.read(new byte[10], 0, 10));
+        }
+    }
+
+    @Test
+    public void testSingleBytes() throws IOException {
+        byte[] content = getContent(2 * RANGE_SIZE + 7);
+        String name = write(content);
+        try (InputStream in = new RangedInputStream(source, name, content.length, RANGE_SIZE, 2, executor)) {
+            for (byte b : content) {
+                Assert.assertEquals(b & 0xff, in.read());
+            }
+            Assert.assertEquals(-1, in.read());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingObject() throws IOException {
+        String name = new File(folder.getRoot(), "missing").toURI().toString();
+        try (InputStream in = new RangedInputStream(source, name, 3 * RANGE_SIZE, RANGE_SIZE, 2, executor)) {
+            in.read();
+        }
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws IOException {
+        byte[] content = getContent(20 * RANGE_SIZE);
+        String name = write(content);
+        InputStream in = new RangedInputStream(source, name, content.length, RANGE_SIZE, 4, executor);
+        Assert.assertEquals(content[0] & 0xff, in.read());
+        in.close();
+        Assert.assertEquals(-1, in.read());
+    }
+
+    private void assertRead(byte[] content, int rangeReads) throws IOException {
+        String name = write(content);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new RangedInputStream(source, name, content.length, RANGE_SIZE, rangeReads,
+                                                    executor)) {
+            // the buffer doesn't line up with the ranges
+            byte[] buffer = new byte[RANGE_SIZE / 3 + 1];
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        Assert.assertArrayEquals(content, out.toByteArray());
+    }
+
+    private String write(byte[] content) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content);
+        return file.toURI().toString();
+    }
+
+    private static byte[] getContent(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.fpe;
+
+import java.util.Arrays;
+
+/**
+ * The characters that a field is tokenized over, in the order of their numerals. Characters outside of the
+ * alphabet are kept as they are, e.g. the dashes of a social security number.
+ */
+public final class Alphabet {
+    public static final String NUMERIC = "numeric";
+    public static final String LOWER = "lower";
+    public static final String UPPER = "upper";
+    public static final String ALPHA = "alpha";
+    public static final String ALPHANUMERIC = "alphanumeric";
+
+    private static final String DIGITS = "0123456789";
+    private static final String LOWER_LETTERS = "abcdefghijklmnopqrstuvwxyz";
+    private static final String UPPER_LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private final String characters;
+    // the numeral of every character up to the largest one in the alphabet, -1 for the others
+    private final int[] numerals;
+
+    private Alphabet(String characters) {
+        this.characters = characters;
+        int max = 0;
+        for (int i = 0; i < characters.length(); i++) {
+            max = Math.max(max, characters.charAt(i));
+        }
+        this.numerals = new int[max + 1];
+        Arrays.fill(numerals, -1);
+        for (int i = 0; i < characters.length(); i++) {
+            char c = characters.charAt(i);
+            if (numerals[c] >= 0) {
+                throw new IllegalArgumentException("Alphabet has '" + c + "' more than once");
+            }
+            numerals[c] = i;
+        }
+        if (characters.length() < 2) {
+            throw new IllegalArgumentException("Alphabet must have at least 2 characters");
+        }
+    }
+
+    /**
+     * @param spec One of the named alphabets, or the characters of the alphabet.
+     */
+    public static Alphabet of(String spec) {
+        switch (spec) {
+            case NUMERIC:
+                return new Alphabet(DIGITS);
+            case LOWER:
+                return new Alphabet(LOWER_LETTERS);
+            case UPPER:
+                return new Alphabet(UPPER_LETTERS);
+            case ALPHA:
+                return new Alphabet(LOWER_LETTERS + UPPER_LETTERS);
+            case ALPHANUMERIC:
+                return new Alphabet(DIGITS + LOWER_LETTERS + UPPER_LETTERS);
+            default:
+                return new Alphabet(spec);
+        }
+    }
+
+    public int getRadix() {
+        return characters.length();
+    }
+
+    /**
+     * @return The numeral of the character, or -1 if it's not in the alphabet.
+     */
+    public int toNumeral(char c) {
+        return c < numerals.length ? numerals[c] : -1;
+    }
+
+    public char toChar(int numeral) {
+        return characters.charAt(numeral);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.fpe;
+
+import java.math.BigInteger;
+
+/**
+ * FF1 of NIST SP 800-38G: ten Feistel rounds with AES-CBC-MAC as the round function, and a tweak of any length.
+ *
+ * The round function MACs a block that only depends on the length and the tweak, followed by the tweak itself and
+ * then the round number and the right half. Everything before the round number is the same for every value of a
+ * length, so the MAC state after it is derived once per length and every round starts from it.
+ */
+public class FF1Cipher extends FormatPreservingCipher {
+    /**
+     * FF1 allows up to 2^32 numerals, longer values than this are not identifiers.
+     */
+    public static final int MAX_LENGTH = 4096;
+    private static final int ROUNDS = 10;
+
+    private final byte[] tweak;
+    private final LengthState[] states = new LengthState[MAX_LENGTH + 1];
+    private final byte[] block = new byte[16];
+    private final byte[] extra = new byte[16];
+
+    /**
+     * @param tweak The tweak, which may be empty. Values encrypted with a different tweak decrypt differently.
+     */
+    public FF1Cipher(byte[] key, int radix, byte[] tweak) {
+        super(key, radix);
+        this.tweak = tweak.clone();
+    }
+
+    @Override
+    public int getMaxLength() {
+        return MAX_LENGTH;
+    }
+
+    @Override
+    public void encrypt(int[] numerals, int length) {
+        checkLength(length);
+        LengthState state = getState(length);
+        if (state.fastModulusV != 0) {
+            long a = num(numerals, 0, state.u);
+            long b = num(numerals, state.u, length);
+            for (int i = 0; i < ROUNDS; i++) {
+                long modulus = (i & 1) == 0 ? state.fastModulusU : state.fastModulusV;
+                putLong(b, state.q, state.q.length - state.b, state.b);
+                round(state, i);
+                long c = (a + mod(block, 0, state.d, modulus)) % modulus;
+                a = b;
+                b = c;
+            }
+            str(a, numerals, 0, state.u);
+            str(b, numerals, state.u, state.v);
+        } else {
+            BigInteger a = bigNum(numerals, 0, state.u);
+            BigInteger b = bigNum(numerals, state.u, length);
+            for (int i = 0; i < ROUNDS; i++) {
+                BigInteger modulus = (i & 1) == 0 ? state.modulusU : state.modulusV;
+                putBigInteger(b, state.q, state.q.length - state.b, state.b);
+                BigInteger c = a.add(bigRound(state, i)).mod(modulus);
+                a = b;
+                b = c;
+            }
+            bigStr(a, numerals, 0, state.u);
+            bigStr(b, numerals, state.u, state.v);
+        }
+    }
+
+    @Override
+    public void decrypt(int[] numerals, int length) {
+        checkLength(length);
+        LengthState state = getState(length);
+        if (state.fastModulusV != 0) {
+            long a = num(numerals, 0, state.u);
+            long b = num(numerals, state.u, length);
+            for (int i = ROUNDS - 1; i >= 0; i--) {
+                long modulus = (i & 1) == 0 ? state.fastModulusU : state.fastModulusV;
+                putLong(a, state.q, state.q.length - state.b, state.b);
+                round(state, i);
+                long c = b - mod(block, 0, state.d, modulus);
+                b = a;
+                a = c < 0 ? c + modulus : c;
+            }
+            str(a, numerals, 0, state.u);
+            str(b, numerals, state.u, state.v);
+        } else {
+            BigInteger a = bigNum(numerals, 0, state.u);
+            BigInteger b = bigNum(numerals, state.u, length);
+            for (int i = ROUNDS - 1; i >= 0; i--) {
+                BigInteger modulus = (i & 1) == 0 ? state.modulusU : state.modulusV;
+                putBigInteger(a, state.q, state.q.length - state.b, state.b);
+                BigInteger c = b.subtract(bigRound(state, i)).mod(modulus);
+                b = a;
+                a = c;
+            }
+            bigStr(a, numerals, 0, state.u);
+            bigStr(b, numerals, state.u, state.v);
+        }
+    }
+
+    /**
+     * Computes R, the MAC of P || Q of the round, into the block. The half is already in Q.
+     */
+    private void round(LengthState state, int round) {
+        byte[] q = state.q;
+        q[state.roundOffset] = (byte) round;
+        System.arraycopy(state.prefixMac, 0, block, 0, 16);
+        for (int offset = state.variableOffset; offset < q.length; offset += 16) {
+            for (int i = 0; i < 16; i++) {
+                block[i] ^= q[offset + i];
+            }
+            encryptBlock(block);
+        }
+    }
+
+    /**
+     * @return y of the round, R extended with the encryptions of R xor [j] when d is longer than a block.
+     */
+    private BigInteger bigRound(LengthState state, int round) {
+        round(state, round);
+        byte[] s = new byte[state.d];
+        System.arraycopy(block, 0, s, 0, Math.min(16, state.d));
+        for (int j = 1; j * 16 < state.d; j++) {
+            System.arraycopy(block, 0, extra, 0, 16);
+            for (int i = 0; i < 4; i++) {
+                extra[15 - i] ^= (byte) (j >>> (8 * i));
+            }
+            encryptBlock(extra);
+            System.arraycopy(extra, 0, s, j * 16, Math.min(16, state.d - j * 16));
+        }
+        return new BigInteger(1, s);
+    }
+
+    private LengthState getState(int length) {
+        LengthState state = states[length];
+        if (state == null) {
+            state = new LengthState(length);
+            states[length] = state;
+        }
+        return state;
+    }
+
+    private long num(int[] numerals, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * radix + checkNumeral(numerals[i]);
+        }
+        return value;
+    }
+
+    private void str(long value, int[] numerals, int offset, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            numerals[i] = (int) (value % radix);
+            value /= radix;
+        }
+    }
+
+    private BigInteger bigNum(int[] numerals, int from, int to) {
+        BigInteger bigRadix = BigInteger.valueOf(radix);
+        BigInteger value = BigInteger.ZERO;
+        for (int i = from; i < to; i++) {
+            value = value.multiply(bigRadix).add(BigInteger.valueOf(checkNumeral(numerals[i])));
+        }
+        return value;
+    }
+
+    private void bigStr(BigInteger value, int[] numerals, int offset, int length) {
+        BigInteger bigRadix = BigInteger.valueOf(radix);
+        for (int i = offset + length - 1; i >= offset; i--) {
+            BigInteger[] divided = value.divideAndRemainder(bigRadix);
+            numerals[i] = divided[1].intValue();
+            value = divided[0];
+        }
+    }
+
+    /**
+     * What the rounds of one length share.
+     */
+    private final class LengthState {
+        private final int u;
+        private final int v;
+        // the bytes of a half in Q, and of y in R
+        private final int b;
+        private final int d;
+        // T || 0^pad || [i] || [NUM(B)]^b, only the round number and the half change
+        private final byte[] q;
+        private final int roundOffset;
+        private final int variableOffset;
+        // the MAC state after P and the blocks of Q before the round number
+        private final byte[] prefixMac = new byte[16];
+        private final long fastModulusU;
+        private final long fastModulusV;
+        private final BigInteger modulusU;
+        private final BigInteger modulusV;
+
+        LengthState(int n) {
+            u = n / 2;
+            v = n - u;
+            modulusU = BigInteger.valueOf(radix).pow(u);
+            modulusV = BigInteger.valueOf(radix).pow(v);
+            fastModulusU = fastModulus(u);
+            fastModulusV = fastModulus(v);
+            b = (modulusV.subtract(BigInteger.ONE).bitLength() + 7) / 8;
+            d = 4 * ((b + 3) / 4) + 4;
+
+            int t = tweak.length;
+            int pad = Math.floorMod(-t - b - 1, 16);
+            q = new byte[t + pad + 1 + b];
+            System.arraycopy(tweak, 0, q, 0, t);
+            roundOffset = t + pad;
+            variableOffset = roundOffset / 16 * 16;
+
+            prefixMac[0] = 1;
+            prefixMac[1] = 2;
+            prefixMac[2] = 1;
+            putLong(radix, prefixMac, 3, 3);
+            prefixMac[6] = 10;
+            prefixMac[7] = (byte) u;
+            putLong(n, prefixMac, 8, 4);
+            putLong(t, prefixMac, 12, 4);
+            encryptBlock(prefixMac);
+            for (int offset = 0; offset < variableOffset; offset += 16) {
+                for (int i = 0; i < 16; i++) {
+                    prefixMac[i] ^= q[offset + i];
+                }
+                encryptBlock(prefixMac);
+            }
+        }
+    }
+}
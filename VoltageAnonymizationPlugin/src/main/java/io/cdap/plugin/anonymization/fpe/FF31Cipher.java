@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.fpe;
+
+import java.math.BigInteger;
+
+/**
+ * FF3-1 of NIST SP 800-38G Revision 1: eight Feistel rounds with a single AES block as the round function, and a
+ * 56-bit tweak. The two round tweaks are derived from the tweak once, and every round is one block encryption.
+ *
+ * FF3-1 reverses the key, the numerals and the bytes of each block. The halves are kept as the numbers of their
+ * reversed numerals, so none of the reversals copy anything.
+ */
+public class FF31Cipher extends FormatPreservingCipher {
+    public static final int TWEAK_LENGTH = 7;
+    private static final int ROUNDS = 8;
+    // a half is written to 12 bytes of the block
+    private static final int HALF_BITS = 96;
+
+    private final int maxLength;
+    private final byte[] tweakLeft;
+    private final byte[] tweakRight;
+    private final byte[] block = new byte[16];
+    private final byte[] half = new byte[12];
+
+    /**
+     * @param tweak The tweak, {@link #TWEAK_LENGTH} bytes.
+     */
+    public FF31Cipher(byte[] key, int radix, byte[] tweak) {
+        this(key, radix, leftTweak(tweak), rightTweak(tweak));
+    }
+
+    private FF31Cipher(byte[] key, int radix, byte[] tweakLeft, byte[] tweakRight) {
+        super(reverse(key), radix);
+        this.tweakLeft = tweakLeft;
+        this.tweakRight = tweakRight;
+        BigInteger limit = BigInteger.ONE.shiftLeft(HALF_BITS);
+        int halfLength = 0;
+        while (BigInteger.valueOf(radix).pow(halfLength + 1).compareTo(limit) <= 0) {
+            halfLength++;
+        }
+        this.maxLength = 2 * halfLength;
+    }
+
+    /**
+     * Creates a cipher with the 64-bit tweak of FF3, which FF3-1 replaced. FF3 and FF3-1 only differ in the
+     * tweak, so this checks the rounds against the published FF3 samples.
+     */
+    static FF31Cipher withFF3Tweak(byte[] key, int radix, byte[] tweak) {
+        byte[] left = new byte[4];
+        byte[] right = new byte[4];
+        System.arraycopy(tweak, 0, left, 0, 4);
+        System.arraycopy(tweak, 4, right, 0, 4);
+        return new FF31Cipher(key, radix, left, right);
+    }
+
+    @Override
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public void encrypt(int[] numerals, int length) {
+        checkLength(length);
+        int u = (length + 1) / 2;
+        int v = length - u;
+        long fastModulusU = fastModulus(u);
+        if (fastModulusU != 0) {
+            long fastModulusV = fastModulus(v);
+            long a = numReversed(numerals, 0, u);
+            long b = numReversed(numerals, u, length);
+            for (int i = 0; i < ROUNDS; i++) {
+                boolean even = (i & 1) == 0;
+                long modulus = even ? fastModulusU : fastModulusV;
+                round(even ? tweakRight : tweakLeft, i, b);
+                long c = (a + modReversed(modulus)) % modulus;
+                a = b;
+                b = c;
+            }
+            strReversed(a, numerals, 0, u);
+            strReversed(b, numerals, u, v);
+        } else {
+            BigInteger modulusU = BigInteger.valueOf(radix).pow(u);
+            BigInteger modulusV = BigInteger.valueOf(radix).pow(v);
+            BigInteger a = bigNumReversed(numerals, 0, u);
+            BigInteger b = bigNumReversed(numerals, u, length);
+            for (int i = 0; i < ROUNDS; i++) {
+                boolean even = (i & 1) == 0;
+                BigInteger c = a.add(bigRound(even ? tweakRight : tweakLeft, i, b)).mod(even ? modulusU : modulusV);
+                a = b;
+                b = c;
+            }
+            bigStrReversed(a, numerals, 0, u);
+            bigStrReversed(b, numerals, u, v);
+        }
+    }
+
+    @Override
+    public void decrypt(int[] numerals, int length) {
+        checkLength(length);
+        int u = (length + 1) / 2;
+        int v = length - u;
+        long fastModulusU = fastModulus(u);
+        if (fastModulusU != 0) {
+            long fastModulusV = fastModulus(v);
+            long a = numReversed(numerals, 0, u);
+            long b = numReversed(numerals, u, length);
+            for (int i = ROUNDS - 1; i >= 0; i--) {
+                boolean even = (i & 1) == 0;
+                long modulus = even ? fastModulusU : fastModulusV;
+                round(even ? tweakRight : tweakLeft, i, a);
+                long c = b - modReversed(modulus);
+                b = a;
+                a = c < 0 ? c + modulus : c;
+            }
+            strReversed(a, numerals, 0, u);
+            strReversed(b, numerals, u, v);
+        } else {
+            BigInteger modulusU = BigInteger.valueOf(radix).pow(u);
+            BigInteger modulusV = BigInteger.valueOf(radix).pow(v);
+            BigInteger a = bigNumReversed(numerals, 0, u);
+            BigInteger b = bigNumReversed(numerals, u, length);
+            for (int i = ROUNDS - 1; i >= 0; i--) {
+                boolean even = (i & 1) == 0;
+                BigInteger c = b.subtract(bigRound(even ? tweakRight : tweakLeft, i, a)).mod(even ? modulusU : modulusV);
+                b = a;
+                a = c;
+            }
+            bigStrReversed(a, numerals, 0, u);
+            bigStrReversed(b, numerals, u, v);
+        }
+    }
+
+    /**
+     * Encrypts REVB(P) into the block, where P is the round tweak xor the round number followed by the half in 12
+     * bytes. Reversed, the half comes first and least significant byte first.
+     */
+    private void round(byte[] tweak, int round, long value) {
+        for (int i = 0; i < 12; i++) {
+            block[i] = (byte) value;
+            value >>>= 8;
+        }
+        putTweak(tweak, round);
+        encryptBlock(block);
+    }
+
+    private BigInteger bigRound(byte[] tweak, int round, BigInteger value) {
+        putBigInteger(value, half, 0, 12);
+        for (int i = 0; i < 12; i++) {
+            block[i] = half[11 - i];
+        }
+        putTweak(tweak, round);
+        encryptBlock(block);
+        // S is the reversed block, read as a big-endian number
+        byte[] s = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            s[i] = block[15 - i];
+        }
+        return new BigInteger(1, s);
+    }
+
+    private void putTweak(byte[] tweak, int round) {
+        block[15] = tweak[0];
+        block[14] = tweak[1];
+        block[13] = tweak[2];
+        block[12] = (byte) (tweak[3] ^ round);
+    }
+
+    /**
+     * @return y, the reversed block read as a big-endian number, modulo the modulus.
+     */
+    private long modReversed(long modulus) {
+        long result = 0;
+        for (int i = 15; i >= 0; i--) {
+            result = ((result << 8) | (block[i] & 0xff)) % modulus;
+        }
+        return result;
+    }
+
+    private long numReversed(int[] numerals, int from, int to) {
+        long value = 0;
+        for (int i = to - 1; i >= from; i--) {
+            value = value * radix + checkNumeral(numerals[i]);
+        }
+        return value;
+    }
+
+    private void strReversed(long value, int[] numerals, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            numerals[i] = (int) (value % radix);
+            value /= radix;
+        }
+    }
+
+    private BigInteger bigNumReversed(int[] numerals, int from, int to) {
+        BigInteger bigRadix = BigInteger.valueOf(radix);
+        BigInteger value = BigInteger.ZERO;
+        for (int i = to - 1; i >= from; i--) {
+            value = value.multiply(bigRadix).add(BigInteger.valueOf(checkNumeral(numerals[i])));
+        }
+        return value;
+    }
+
+    private void bigStrReversed(BigInteger value, int[] numerals, int offset, int length) {
+        BigInteger bigRadix = BigInteger.valueOf(radix);
+        for (int i = offset; i < offset + length; i++) {
+            BigInteger[] divided = value.divideAndRemainder(bigRadix);
+            numerals[i] = divided[1].intValue();
+            value = divided[0];
+        }
+    }
+
+    private static byte[] leftTweak(byte[] tweak) {
+        checkTweak(tweak);
+        return new byte[] {tweak[0], tweak[1], tweak[2], (byte) (tweak[3] & 0xf0)};
+    }
+
+    private static byte[] rightTweak(byte[] tweak) {
+        checkTweak(tweak);
+        return new byte[] {tweak[4], tweak[5], tweak[6], (byte) (tweak[3] << 4)};
+    }
+
+    private static void checkTweak(byte[] tweak) {
+        if (tweak.length != TWEAK_LENGTH) {
+            throw new IllegalArgumentException("FF3-1 tweak must be 56 bits, not " + tweak.length * 8);
+        }
+    }
+
+    private static byte[] reverse(byte[] bytes) {
+        byte[] reversed = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            reversed[i] = bytes[bytes.length - 1 - i];
+        }
+        return reversed;
+    }
+}
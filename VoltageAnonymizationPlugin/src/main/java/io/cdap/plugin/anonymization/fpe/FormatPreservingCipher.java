@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.fpe;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A format-preserving cipher of NIST SP 800-38G: it encrypts a string of numerals in some radix into another
+ * string of numerals of the same radix and length. The numerals are encrypted in place, so a caller can reuse
+ * its buffers across values.
+ *
+ * Both modes are Feistel networks over the two halves of the string. While a half fits in a long, the rounds
+ * run on longs and allocate nothing, longer halves fall back to BigInteger.
+ *
+ * Instances hold the AES key schedule and scratch buffers, and are not thread safe.
+ */
+public abstract class FormatPreservingCipher {
+    /**
+     * NIST requires every length to have at least a million possible values.
+     */
+    static final int MIN_DOMAIN_SIZE = 1000000;
+    // the sum of two values below this doesn't overflow, and neither does a value below it shifted by a byte
+    static final long MAX_FAST_MODULUS = 1L << 55;
+
+    protected final int radix;
+    protected final int minLength;
+    private final long[] powers;
+    private final Cipher aes;
+
+    /**
+     * @param key   The AES key, 16, 24 or 32 bytes.
+     * @param radix The number of distinct numerals, at least 2.
+     */
+    protected FormatPreservingCipher(byte[] key, int radix) {
+        if (radix < 2 || radix > 1 << 16) {
+            throw new IllegalArgumentException("Radix must be between 2 and 65536, not " + radix);
+        }
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("Key must be 128, 192 or 256 bits, not " + key.length * 8);
+        }
+        this.radix = radix;
+        int length = 2;
+        while (BigInteger.valueOf(radix).pow(length).compareTo(BigInteger.valueOf(MIN_DOMAIN_SIZE)) < 0) {
+            length++;
+        }
+        this.minLength = length;
+
+        // radix^0 and radix^1, and every larger power below the fast limit
+        int count = 2;
+        for (long power = radix; power <= (MAX_FAST_MODULUS - 1) / radix; power *= radix) {
+            count++;
+        }
+        this.powers = new long[count];
+        powers[0] = 1;
+        for (int i = 1; i < powers.length; i++) {
+            powers[i] = powers[i - 1] * radix;
+        }
+
+        try {
+            this.aes = Cipher.getInstance("AES/ECB/NoPadding");
+            this.aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES is not available", e);
+        }
+    }
+
+    public int getRadix() {
+        return radix;
+    }
+
+    /**
+     * @return The shortest string this cipher encrypts.
+     */
+    public int getMinLength() {
+        return minLength;
+    }
+
+    /**
+     * @return The longest string this cipher encrypts.
+     */
+    public abstract int getMaxLength();
+
+    /**
+     * Encrypts the first {@code length} numerals, each in {@code [0, radix)}, in place.
+     *
+     * @throws IllegalArgumentException If the length is outside of {@link #getMinLength()} and
+     *                                  {@link #getMaxLength()}.
+     */
+    public abstract void encrypt(int[] numerals, int length);
+
+    /**
+     * Decrypts the first {@code length} numerals in place, the inverse of {@link #encrypt(int[], int)}.
+     */
+    public abstract void decrypt(int[] numerals, int length);
+
+    /**
+     * Parses a tweak or key given in hex, in either case.
+     *
+     * @throws IllegalArgumentException If the string is not an even number of hex digits.
+     */
+    public static byte[] parseHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Hex must have an even number of digits, not " + hex.length());
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Not a hex digit at " + (high < 0 ? 2 * i : 2 * i + 1));
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    protected void checkLength(int length) {
+        if (length < minLength || length > getMaxLength()) {
+            throw new IllegalArgumentException(String.format("Length must be between %d and %d for radix %d, not %d",
+                                                             minLength, getMaxLength(), radix, length));
+        }
+    }
+
+    protected int checkNumeral(int numeral) {
+        if (numeral < 0 || numeral >= radix) {
+            throw new IllegalArgumentException("Numeral " + numeral + " is out of radix " + radix);
+        }
+        return numeral;
+    }
+
+    /**
+     * @return radix^length if it is small enough for the rounds to run on longs, or 0 otherwise.
+     */
+    protected long fastModulus(int length) {
+        return length < powers.length ? powers[length] : 0;
+    }
+
+    /**
+     * Encrypts one block in place.
+     */
+    protected void encryptBlock(byte[] block) {
+        try {
+            aes.update(block, 0, 16, block, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt a block", e);
+        }
+    }
+
+    /**
+     * @return The bytes as an unsigned big-endian number, modulo the modulus.
+     */
+    protected static long mod(byte[] bytes, int offset, int length, long modulus) {
+        long result = 0;
+        for (int i = offset; i < offset + length; i++) {
+            result = ((result << 8) | (bytes[i] & 0xff)) % modulus;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the value as an unsigned big-endian number.
+     */
+    protected static void putLong(long value, byte[] bytes, int offset, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Writes the value as an unsigned big-endian number, which must fit.
+     */
+    protected static void putBigInteger(BigInteger value, byte[] bytes, int offset, int length) {
+        byte[] magnitude = value.toByteArray();
+        // toByteArray has a leading zero byte when the top bit is set
+        int skip = magnitude.length > length ? magnitude.length - length : 0;
+        int pad = length - (magnitude.length - skip);
+        for (int i = 0; i < pad; i++) {
+            bytes[offset + i] = 0;
+        }
+        System.arraycopy(magnitude, skip, bytes, offset + pad, magnitude.length - skip);
+    }
+}
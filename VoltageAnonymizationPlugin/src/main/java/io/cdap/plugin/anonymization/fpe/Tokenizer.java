@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.fpe;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tokenizes the values of one field: the characters of the alphabet are encrypted, or decrypted, as one string of
+ * numerals and put back in their places, and the other characters are kept. The result has the length and the
+ * format of the value.
+ *
+ * The characters and numerals of a value are kept in buffers that are reused for every value, so a value costs
+ * only its result. Fields with many repeated values, e.g. the customer of an order, can also keep the results of
+ * the most recently used values. Instances are not thread safe.
+ */
+public class Tokenizer {
+    private static final int INITIAL_LENGTH = 64;
+
+    private final Alphabet alphabet;
+    private final FormatPreservingCipher cipher;
+    private final boolean decrypt;
+    private final Map<String, String> cache;
+    private char[] chars = new char[INITIAL_LENGTH];
+    private int[] numerals = new int[INITIAL_LENGTH];
+
+    /**
+     * @param decrypt   Whether tokens are turned back into values.
+     * @param cacheSize The number of values whose results are kept, or 0 to keep none.
+     */
+    public Tokenizer(Alphabet alphabet, FormatPreservingCipher cipher, boolean decrypt, int cacheSize) {
+        if (alphabet.getRadix() != cipher.getRadix()) {
+            throw new IllegalArgumentException(String.format("Alphabet has %d characters, the cipher has radix %d",
+                                                             alphabet.getRadix(), cipher.getRadix()));
+        }
+        this.alphabet = alphabet;
+        this.cipher = cipher;
+        this.decrypt = decrypt;
+        this.cache = cacheSize > 0 ? new LruCache(cacheSize) : null;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the value has too few or too many characters of the alphabet to be
+     *                                  tokenized.
+     */
+    public String apply(String value) {
+        if (cache != null) {
+            String cached = cache.get(value);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        int length = value.length();
+        if (length > chars.length) {
+            int capacity = Math.max(length, chars.length * 2);
+            chars = new char[capacity];
+            numerals = new int[capacity];
+        }
+        value.getChars(0, length, chars, 0);
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            int numeral = alphabet.toNumeral(chars[i]);
+            if (numeral >= 0) {
+                numerals[count++] = numeral;
+            }
+        }
+        if (count < cipher.getMinLength() || count > cipher.getMaxLength()) {
+            throw new IllegalArgumentException(String.format(
+                    "Value has %d characters of the alphabet, it must have between %d and %d to be tokenized",
+                    count, cipher.getMinLength(), cipher.getMaxLength()));
+        }
+        if (decrypt) {
+            cipher.decrypt(numerals, count);
+        } else {
+            cipher.encrypt(numerals, count);
+        }
+        count = 0;
+        for (int i = 0; i < length; i++) {
+            if (alphabet.toNumeral(chars[i]) >= 0) {
+                chars[i] = alphabet.toChar(numerals[count++]);
+            }
+        }
+
+        String result = new String(chars, 0, length);
+        if (cache != null) {
+            cache.put(value, result);
+        }
+        return result;
+    }
+
+    /**
+     * Drops the least recently used value once it holds the maximum.
+     */
+    private static class LruCache extends LinkedHashMap<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.key;
+
+import java.io.IOException;
+
+/**
+ * Where the keys of the format-preserving ciphers come from. Keys are looked up once when a stage starts.
+ */
+public interface KeyProvider {
+
+    /**
+     * @return The raw AES key, 16, 24 or 32 bytes.
+     * @throws IOException If the key doesn't exist or can't be read.
+     */
+    byte[] getKey(String alias) throws IOException;
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.key;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+
+/**
+ * Reads AES keys from a Java key store file, e.g. one made with
+ * {@code keytool -genseckey -keyalg AES -keysize 256 -storetype JCEKS}. Every key is protected with the password
+ * of the store.
+ */
+public class KeyStoreKeyProvider implements KeyProvider {
+    public static final String DEFAULT_TYPE = "JCEKS";
+
+    private final KeyStore keyStore;
+    private final char[] password;
+
+    public KeyStoreKeyProvider(String path, String type, char[] password) throws IOException {
+        this.password = password.clone();
+        try (InputStream in = new FileInputStream(path)) {
+            keyStore = KeyStore.getInstance(type);
+            keyStore.load(in, this.password);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to load key store " + path, e);
+        }
+    }
+
+    @Override
+    public byte[] getKey(String alias) throws IOException {
+        Key key;
+        try {
+            key = keyStore.getKey(alias, password);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to read key " + alias, e);
+        }
+        if (key == null || !"AES".equalsIgnoreCase(key.getAlgorithm())) {
+            throw new IOException("Key store has no AES key " + alias);
+        }
+        return key.getEncoded();
+    }
+}
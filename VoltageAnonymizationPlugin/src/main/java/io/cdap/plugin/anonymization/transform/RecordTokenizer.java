@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.transform;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.anonymization.fpe.Tokenizer;
+
+import java.util.Map;
+
+/**
+ * Tokenizes the fields of records that have a {@link Tokenizer}, and copies the other fields as they are.
+ */
+public class RecordTokenizer {
+    private final Map<String, Tokenizer> tokenizers;
+
+    /**
+     * @param tokenizers The tokenizer of every field to tokenize, by name.
+     */
+    public RecordTokenizer(Map<String, Tokenizer> tokenizers) {
+        this.tokenizers = tokenizers;
+    }
+
+    /**
+     * @throws IllegalArgumentException If a value can't be tokenized.
+     */
+    public StructuredRecord tokenize(StructuredRecord record) {
+        Schema schema = record.getSchema();
+        StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+        for (Schema.Field field : schema.getFields()) {
+            String name = field.getName();
+            Object value = record.get(name);
+            Tokenizer tokenizer = tokenizers.get(name);
+            if (tokenizer != null && value != null) {
+                try {
+                    value = tokenizer.apply((String) value);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(String.format("Field %s: %s", name, e.getMessage()), e);
+                }
+            }
+            builder.set(name, value);
+        }
+        return builder.build();
+    }
+}
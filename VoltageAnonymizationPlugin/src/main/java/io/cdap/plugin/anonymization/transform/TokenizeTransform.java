@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.transform;
+
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Plugin;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.InvalidEntry;
+import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.StageConfigurer;
+import io.cdap.cdap.etl.api.Transform;
+import io.cdap.cdap.etl.api.TransformContext;
+import io.cdap.plugin.anonymization.fpe.Alphabet;
+import io.cdap.plugin.anonymization.fpe.FF1Cipher;
+import io.cdap.plugin.anonymization.fpe.FF31Cipher;
+import io.cdap.plugin.anonymization.fpe.FormatPreservingCipher;
+import io.cdap.plugin.anonymization.fpe.Tokenizer;
+import io.cdap.plugin.anonymization.key.KeyStoreKeyProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces the values of string fields with tokens of the same length and format, by format-preserving
+ * encryption with NIST FF1 or FF3-1, or turns tokens back into values. Everything runs locally with a key from a
+ * key store, so no record leaves the pipeline to be anonymized.
+ */
+@Plugin(type = Transform.PLUGIN_TYPE)
+@Name(TokenizeTransform.NAME)
+@Description("Tokenizes fields with format-preserving encryption (FF1 or FF3-1), or detokenizes them.")
+public class TokenizeTransform extends Transform<StructuredRecord, StructuredRecord> {
+    public static final String NAME = "formatPreservingTokenizer";
+    private static final Logger LOG = LoggerFactory.getLogger(TokenizeTransform.class);
+    private static final int ERROR_CODE = 400;
+
+    private final TokenizeTransformConfig config;
+    private RecordTokenizer tokenizer;
+
+    public TokenizeTransform(TokenizeTransformConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+        super.configurePipeline(pipelineConfigurer);
+        StageConfigurer stageConfigurer = pipelineConfigurer.getStageConfigurer();
+        Schema inputSchema = stageConfigurer.getInputSchema();
+        if (!config.containsMacro(TokenizeTransformConfig.NAME_FIELDS)) {
+            validateFields(config, inputSchema);
+        }
+        if (!config.containsMacro(TokenizeTransformConfig.NAME_TWEAK)) {
+            validateTweak(config);
+        }
+        stageConfigurer.setOutputSchema(inputSchema);
+    }
+
+    @Override
+    public void initialize(TransformContext context) throws Exception {
+        super.initialize(context);
+        validateFields(config, context.getInputSchema());
+        validateTweak(config);
+        byte[] key = new KeyStoreKeyProvider(config.getKeyStorePath(), config.getKeyStoreType(),
+                                             config.getKeyStorePassword().toCharArray()).getKey(config.getKeyAlias());
+        Map<String, Tokenizer> tokenizers = new HashMap<>();
+        for (Map.Entry<String, String> field : config.getFields().entrySet()) {
+            Alphabet alphabet = Alphabet.of(field.getValue());
+            FormatPreservingCipher cipher = createCipher(config.getAlgorithm(), key, alphabet.getRadix(),
+                                                         config.getTweak());
+            tokenizers.put(field.getKey(), new Tokenizer(alphabet, cipher, config.isDetokenize(),
+                                                         config.getCacheSize()));
+        }
+        tokenizer = new RecordTokenizer(tokenizers);
+        LOG.info("{} {} fields with {}", config.isDetokenize() ? "Detokenizing" : "Tokenizing", tokenizers.keySet(),
+                 config.getAlgorithm());
+    }
+
+    @Override
+    public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) {
+        try {
+            emitter.emit(tokenizer.tokenize(input));
+        } catch (IllegalArgumentException e) {
+            emitter.emitError(new InvalidEntry<>(ERROR_CODE, e.getMessage(), input));
+        }
+    }
+
+    /**
+     * @param algorithm {@link TokenizeTransformConfig#ALGORITHM_FF1} or {@link TokenizeTransformConfig#ALGORITHM_FF3_1}.
+     */
+    public static FormatPreservingCipher createCipher(String algorithm, byte[] key, int radix, byte[] tweak) {
+        if (TokenizeTransformConfig.ALGORITHM_FF3_1.equals(algorithm)) {
+            return new FF31Cipher(key, radix, tweak);
+        }
+        return new FF1Cipher(key, radix, tweak);
+    }
+
+    private static void validateFields(TokenizeTransformConfig config, Schema inputSchema) {
+        String algorithm = config.getAlgorithm();
+        if (!TokenizeTransformConfig.ALGORITHM_FF1.equals(algorithm)
+                && !TokenizeTransformConfig.ALGORITHM_FF3_1.equals(algorithm)) {
+            throw new IllegalArgumentException(String.format("Algorithm must be FF1 or FF3-1 for %s plugin. Please correct the same.", NAME));
+        }
+        String mode = config.getMode();
+        if (mode != null && !mode.isEmpty() && !TokenizeTransformConfig.MODE_TOKENIZE.equals(mode)
+                && !TokenizeTransformConfig.MODE_DETOKENIZE.equals(mode)) {
+            throw new IllegalArgumentException(String.format("Mode must be TOKENIZE or DETOKENIZE for %s plugin. Please correct the same.", NAME));
+        }
+        if (config.getCacheSize() < 0) {
+            throw new IllegalArgumentException(String.format("Cache size must not be negative for %s plugin. Please correct the same.", NAME));
+        }
+        Map<String, String> fields;
+        try {
+            fields = config.getFields();
+            for (String alphabet : fields.values()) {
+                Alphabet.of(alphabet);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("%s for %s plugin. Please correct the same.", e.getMessage(), NAME), e);
+        }
+        if (inputSchema == null) {
+            return;
+        }
+        for (String name : fields.keySet()) {
+            Schema.Field field = inputSchema.getField(name);
+            if (field == null) {
+                throw new IllegalArgumentException(String.format("Field %s is not in the input schema for %s plugin. Please correct the same.", name, NAME));
+            }
+            Schema schema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+            if (schema.getType() != Schema.Type.STRING) {
+                throw new IllegalArgumentException(String.format("Field %s must be a string for %s plugin. Please correct the same.", name, NAME));
+            }
+        }
+    }
+
+    private static void validateTweak(TokenizeTransformConfig config) {
+        byte[] tweak;
+        try {
+            tweak = config.getTweak();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Tweak must be hex for %s plugin. Please correct the same.", NAME), e);
+        }
+        if (TokenizeTransformConfig.ALGORITHM_FF3_1.equals(config.getAlgorithm())
+                && tweak.length != FF31Cipher.TWEAK_LENGTH) {
+            throw new IllegalArgumentException(String.format("FF3-1 needs a tweak of %d bytes for %s plugin. Please correct the same.", FF31Cipher.TWEAK_LENGTH, NAME));
+        }
+    }
+}
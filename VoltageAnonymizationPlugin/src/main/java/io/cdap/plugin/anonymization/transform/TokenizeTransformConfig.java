@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.transform;
+
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.plugin.PluginConfig;
+import io.cdap.plugin.anonymization.fpe.FF31Cipher;
+import io.cdap.plugin.anonymization.fpe.FormatPreservingCipher;
+import io.cdap.plugin.anonymization.key.KeyStoreKeyProvider;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Config of the {@link TokenizeTransform}.
+ */
+public class TokenizeTransformConfig extends PluginConfig {
+    public static final String NAME_FIELDS = "fields";
+    public static final String NAME_ALGORITHM = "algorithm";
+    public static final String NAME_MODE = "mode";
+    public static final String NAME_TWEAK = "tweak";
+    public static final String ALGORITHM_FF1 = "FF1";
+    public static final String ALGORITHM_FF3_1 = "FF3-1";
+    public static final String MODE_TOKENIZE = "TOKENIZE";
+    public static final String MODE_DETOKENIZE = "DETOKENIZE";
+
+    @Name(NAME_FIELDS)
+    @Description("The fields to tokenize and their alphabets, as field:alphabet pairs separated by commas. An " +
+            "alphabet is numeric, lower, upper, alpha, alphanumeric or the characters themselves. Characters " +
+            "outside of the alphabet are kept as they are.")
+    @Macro
+    protected String fields;
+
+    @Name(NAME_ALGORITHM)
+    @Description("FF1 or FF3-1. The default is FF1.")
+    @Nullable
+    protected String algorithm;
+
+    @Name(NAME_MODE)
+    @Description("TOKENIZE to encrypt the fields, DETOKENIZE to decrypt tokens back into values. The default is " +
+            "TOKENIZE.")
+    @Nullable
+    protected String mode;
+
+    @Name("keyStorePath")
+    @Description("Path on the local file system of the key store that holds the AES key.")
+    @Macro
+    protected String keyStorePath;
+
+    @Name("keyStoreType")
+    @Description("The type of the key store. The default is JCEKS.")
+    @Nullable
+    @Macro
+    protected String keyStoreType;
+
+    @Name("keyStorePassword")
+    @Description("The password of the key store and of the key.")
+    @Macro
+    protected String keyStorePassword;
+
+    @Name("keyAlias")
+    @Description("The alias of the AES key in the key store.")
+    @Macro
+    protected String keyAlias;
+
+    @Name(NAME_TWEAK)
+    @Description("The tweak in hex. Tokens made with a different tweak decrypt differently. FF1 takes a tweak " +
+            "of any length and defaults to none, FF3-1 takes 7 bytes and defaults to zeros.")
+    @Nullable
+    @Macro
+    protected String tweak;
+
+    @Name("cacheSize")
+    @Description("The number of distinct values per field whose tokens are kept, for fields that repeat values. " +
+            "The default is 0, no cache.")
+    @Nullable
+    protected Integer cacheSize;
+
+    /**
+     * @return The alphabet of every field, by name.
+     * @throws IllegalArgumentException If a pair has no alphabet.
+     */
+    public Map<String, String> getFields() {
+        Map<String, String> alphabets = new LinkedHashMap<>();
+        for (String pair : fields.split(",")) {
+            int separator = pair.indexOf(':');
+            if (separator <= 0 || separator == pair.length() - 1) {
+                throw new IllegalArgumentException("Expected field:alphabet, not " + pair.trim());
+            }
+            alphabets.put(pair.substring(0, separator).trim(), pair.substring(separator + 1));
+        }
+        return alphabets;
+    }
+
+    public String getAlgorithm() {
+        return isEmpty(algorithm) ? ALGORITHM_FF1 : algorithm;
+    }
+
+    public boolean isDetokenize() {
+        return MODE_DETOKENIZE.equals(mode);
+    }
+
+    @Nullable
+    public String getMode() {
+        return mode;
+    }
+
+    public String getKeyStorePath() {
+        return keyStorePath;
+    }
+
+    public String getKeyStoreType() {
+        return isEmpty(keyStoreType) ? KeyStoreKeyProvider.DEFAULT_TYPE : keyStoreType;
+    }
+
+    public String getKeyStorePassword() {
+        return keyStorePassword;
+    }
+
+    public String getKeyAlias() {
+        return keyAlias;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the tweak is not hex.
+     */
+    public byte[] getTweak() {
+        if (isEmpty(tweak)) {
+            return ALGORITHM_FF3_1.equals(getAlgorithm()) ? new byte[FF31Cipher.TWEAK_LENGTH] : new byte[0];
+        }
+        return FormatPreservingCipher.parseHex(tweak);
+    }
+
+    public int getCacheSize() {
+        return cacheSize == null ? 0 : cacheSize;
+    }
+
+    private static boolean isEmpty(@Nullable String value) {
+        return value == null || value.isEmpty();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.fpe;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class FormatPreservingCipherTest {
+    private static final String KEY_128 = "2B7E151628AED2A6ABF7158809CF4F3C";
+    private static final String KEY_192 = KEY_128 + "EF4359D8D580AA4F";
+    private static final String KEY_256 = KEY_192 + "7F036D6F04FC6A94";
+    private static final String DIGITS = "0123456789";
+    private static final String BASE36 = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    // the samples of NIST SP 800-38G
+    @Test
+    public void testFF1Samples() {
+        assertFF1(KEY_128, "", DIGITS, "0123456789", "2433477484");
+        assertFF1(KEY_128, "39383736353433323130", DIGITS, "0123456789", "6124200773");
+        assertFF1(KEY_128, "3737373770717273373737", BASE36, "0123456789abcdefghi", "a9tv40mll9kdu509eum");
+        assertFF1(KEY_192, "", DIGITS, "0123456789", "2830668132");
+        assertFF1(KEY_192, "39383736353433323130", DIGITS, "0123456789", "2496655549");
+        assertFF1(KEY_192, "3737373770717273373737", BASE36, "0123456789abcdefghi", "xbj3kv35jrawxv32ysr");
+        assertFF1(KEY_256, "", DIGITS, "0123456789", "6657667009");
+        assertFF1(KEY_256, "39383736353433323130", DIGITS, "0123456789", "1001623463");
+        assertFF1(KEY_256, "3737373770717273373737", BASE36, "0123456789abcdefghi", "xs8a0azh2avyalyzuwd");
+    }
+
+    // FF3-1 keeps the rounds of FF3 and only changes the tweak, so the FF3 samples check the rounds
+    @Test
+    public void testFF3Samples() {
+        String key = "EF4359D8D580AA4F7F036D6F04FC6A94";
+        assertFF3(key, "D8E7920AFA330A73", DIGITS, "890121234567890000", "750918814058654607");
+        assertFF3(key, "9A768A92F60E12D8", DIGITS, "890121234567890000", "018989839189395384");
+        assertFF3(key, "D8E7920AFA330A73", DIGITS, "89012123456789000000789000000",
+                  "48598367162252569629397416226");
+        assertFF3(key, "0000000000000000", DIGITS, "89012123456789000000789000000",
+                  "34695224821734535122613701434");
+        assertFF3(key, "9A768A92F60E12D8", BASE36.substring(0, 26), "0123456789abcdefghi", "g2pk40i992fn20cjakb");
+    }
+
+    @Test
+    public void testFF31Sample() {
+        FF31Cipher cipher = new FF31Cipher(hex("2DE79D232DF5585D68CE47882AE256D6"), 10, hex("CBD09280979564"));
+        assertCipher(cipher, DIGITS, "3992520240", "8901801106");
+    }
+
+    // halves too large for a long go through BigInteger, which must agree with itself across lengths
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        FormatPreservingCipher[] ciphers = {
+                new FF1Cipher(hex(KEY_256), 10, hex("0102")),
+                new FF1Cipher(hex(KEY_128), 62, new byte[0]),
+                new FF31Cipher(hex(KEY_128), 10, new byte[FF31Cipher.TWEAK_LENGTH]),
+                new FF31Cipher(hex(KEY_192), 36, hex("00112233445566"))
+        };
+        for (FormatPreservingCipher cipher : ciphers) {
+            int maxLength = Math.min(cipher.getMaxLength(), 100);
+            for (int length = cipher.getMinLength(); length <= maxLength; length++) {
+                int[] numerals = new int[length];
+                for (int i = 0; i < length; i++) {
+                    numerals[i] = random.nextInt(cipher.getRadix());
+                }
+                int[] encrypted = numerals.clone();
+                cipher.encrypt(encrypted, length);
+                int[] decrypted = encrypted.clone();
+                cipher.decrypt(decrypted, length);
+                Assert.assertArrayEquals(numerals, decrypted);
+            }
+        }
+    }
+
+    @Test
+    public void testLengthLimits() {
+        FF1Cipher ff1 = new FF1Cipher(hex(KEY_128), 10, new byte[0]);
+        Assert.assertEquals(6, ff1.getMinLength());
+        FF31Cipher ff31 = new FF31Cipher(hex(KEY_128), 10, new byte[FF31Cipher.TWEAK_LENGTH]);
+        Assert.assertEquals(56, ff31.getMaxLength());
+        try {
+            ff1.encrypt(new int[5], 5);
+            Assert.fail("Too short values must not be encrypted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParseHex() {
+        Assert.assertArrayEquals(new byte[] {0x00, 0x7f, (byte) 0x80, (byte) 0xff, (byte) 0xab},
+                                 FormatPreservingCipher.parseHex("007f80FFaB"));
+        Assert.assertArrayEquals(new byte[0], FormatPreservingCipher.parseHex(""));
+        for (String invalid : new String[] {"abc", "0g", "-1"}) {
+            try {
+                FormatPreservingCipher.parseHex(invalid);
+                Assert.fail(invalid + " must not parse");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static void assertFF1(String key, String tweak, String alphabet, String plaintext, String ciphertext) {
+        assertCipher(new FF1Cipher(hex(key), alphabet.length(), hex(tweak)), alphabet, plaintext, ciphertext);
+    }
+
+    private static void assertFF3(String key, String tweak, String alphabet, String plaintext, String ciphertext) {
+        assertCipher(FF31Cipher.withFF3Tweak(hex(key), alphabet.length(), hex(tweak)), alphabet, plaintext,
+                     ciphertext);
+    }
+
+    private static void assertCipher(FormatPreservingCipher cipher, String alphabet, String plaintext,
+                                     String ciphertext) {
+        int[] numerals = new int[plaintext.length()];
+        for (int i = 0; i < numerals.length; i++) {
+            numerals[i] = alphabet.indexOf(plaintext.charAt(i));
+        }
+        cipher.encrypt(numerals, numerals.length);
+        StringBuilder encrypted = new StringBuilder();
+        for (int numeral : numerals) {
+            encrypted.append(alphabet.charAt(numeral));
+        }
+        Assert.assertEquals(ciphertext, encrypted.toString());
+        cipher.decrypt(numerals, numerals.length);
+        for (int i = 0; i < numerals.length; i++) {
+            Assert.assertEquals(plaintext.charAt(i), alphabet.charAt(numerals[i]));
+        }
+    }
+
+    private static byte[] hex(String hex) {
+        return FormatPreservingCipher.parseHex(hex);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.anonymization.transform;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.anonymization.fpe.Alphabet;
+import io.cdap.plugin.anonymization.fpe.FormatPreservingCipher;
+import io.cdap.plugin.anonymization.fpe.Tokenizer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class RecordTokenizerTest {
+    private static final byte[] KEY = new byte[32];
+    private static final Schema SCHEMA = Schema.recordOf(
+            "customer",
+            Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+            Schema.Field.of("phone", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+    @Test
+    public void testRoundTrip() {
+        for (String algorithm : new String[]{TokenizeTransformConfig.ALGORITHM_FF1,
+                TokenizeTransformConfig.ALGORITHM_FF3_1}) {
+            StructuredRecord record = StructuredRecord.builder(SCHEMA).set("id", 7L).set("phone", "+1 (555) 010-4477")
+                    .build();
+            StructuredRecord token = tokenizer(algorithm, false, 0).tokenize(record);
+            String phone = token.get("phone");
+            Assert.assertEquals(7L, (long) token.get("id"));
+            Assert.assertNotEquals("+1 (555) 010-4477", phone);
+            Assert.assertTrue(phone, phone.matches("\\+\\d \\(\\d{3}\\) \\d{3}-\\d{4}"));
+
+            StructuredRecord value = tokenizer(algorithm, true, 0).tokenize(token);
+            Assert.assertEquals("+1 (555) 010-4477", value.get("phone"));
+        }
+    }
+
+    @Test
+    public void testNull() {
+        StructuredRecord record = StructuredRecord.builder(SCHEMA).set("id", 7L).build();
+        Assert.assertNull(tokenizer(TokenizeTransformConfig.ALGORITHM_FF1, false, 0).tokenize(record).get("phone"));
+    }
+
+    @Test
+    public void testCache() {
+        RecordTokenizer cached = tokenizer(TokenizeTransformConfig.ALGORITHM_FF1, false, 2);
+        RecordTokenizer uncached = tokenizer(TokenizeTransformConfig.ALGORITHM_FF1, false, 0);
+        for (String phone : new String[]{"5550104477", "5550104478", "5550104477", "5550104479", "5550104477"}) {
+            StructuredRecord record = StructuredRecord.builder(SCHEMA).set("id", 7L).set("phone", phone).build();
+            Assert.assertEquals(uncached.tokenize(record).<String>get("phone"),
+                                cached.tokenize(record).<String>get("phone"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooShort() {
+        StructuredRecord record = StructuredRecord.builder(SCHEMA).set("id", 7L).set("phone", "555-01").build();
+        tokenizer(TokenizeTransformConfig.ALGORITHM_FF1, false, 0).tokenize(record);
+    }
+
+    private static RecordTokenizer tokenizer(String algorithm, boolean decrypt, int cacheSize) {
+        Alphabet alphabet = Alphabet.of(Alphabet.NUMERIC);
+        byte[] tweak = TokenizeTransformConfig.ALGORITHM_FF3_1.equals(algorithm) ? new byte[7] : new byte[0];
+        FormatPreservingCipher cipher = TokenizeTransform.createCipher(algorithm, KEY, alphabet.getRadix(), tweak);
+        return new RecordTokenizer(Collections.singletonMap("phone",
+                                                            new Tokenizer(alphabet, cipher, decrypt, cacheSize)));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf;
+
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.ingest.utils.FileMetaData;
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the supported ciphers on encrypt-only copies. Random content is used since the cost of a
+ * cipher doesn't depend on what it encrypts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CipherBenchmark {
+
+    @Param({"CAST5", "AES_128", "AES_256"})
+    public String cipher;
+
+    @Param({"1048576", "67108864"})
+    public long fileSize;
+
+    @Param({"65536"})
+    public int bufferSize;
+
+    @Param({"true", "false"})
+    public boolean withIntegrityCheck;
+
+    private FileMetaData file;
+    private CompressEncryptOptions options;
+
+    @Setup
+    public void setUp() throws Exception {
+        File source = Corpus.get(Corpus.Kind.RANDOM, fileSize);
+        file = new FileMetaData(source.toURI().toString(), new Configuration());
+        options = CopyMode.ENCRYPT.getOptions(TestKeys.getPublicKey(), bufferSize)
+                .setCipher(CompressEncryptOptions.getCipher(cipher))
+                .setWithIntegrityCheck(withIntegrityCheck);
+    }
+
+    @Benchmark
+    public long encrypt(Throughput throughput) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        FileCompressEncrypt.encryptFile(out, file, options, new StageTimer());
+        throughput.record(fileSize, out.getCount());
+        return out.getCount();
+    }
+}
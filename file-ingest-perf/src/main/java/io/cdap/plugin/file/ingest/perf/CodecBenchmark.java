@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf;
+
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.ingest.utils.FileMetaData;
+import org.apache.hadoop.conf.Configuration;
+import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the OpenPGP compression codecs and levels on compress-and-encrypt copies. The ratio of
+ * megabytesOut to megabytesIn gives the compression ratio on each kind of content. The level only applies
+ * to ZIP and ZLIB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CodecBenchmark {
+
+    @Param({"ZIP", "ZLIB", "BZIP2", "UNCOMPRESSED"})
+    public String codec;
+
+    @Param({"1", "5", "9"})
+    public int level;
+
+    @Param({"TEXT", "CSV", "RANDOM", "COMPRESSED"})
+    public Corpus.Kind content;
+
+    @Param({"16777216"})
+    public long fileSize;
+
+    @Param({"65536"})
+    public int bufferSize;
+
+    private FileMetaData file;
+    private CompressEncryptOptions options;
+
+    @Setup
+    public void setUp() throws Exception {
+        File source = Corpus.get(content, fileSize);
+        file = new FileMetaData(source.toURI().toString(), new Configuration());
+        options = CopyMode.COMPRESS_ENCRYPT.getOptions(TestKeys.getPublicKey(), bufferSize)
+                .setCompressionAlgorithm(getCompressionAlgorithm(codec))
+                .setCompressionLevel(level);
+    }
+
+    @Benchmark
+    public long compressAndEncrypt(Throughput throughput) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        FileCompressEncrypt.encryptFile(out, file, options, new StageTimer());
+        throughput.record(fileSize, out.getCount());
+        return out.getCount();
+    }
+
+    private static int getCompressionAlgorithm(String codec) {
+        switch (codec) {
+            case "ZIP":
+                return CompressionAlgorithmTags.ZIP;
+            case "ZLIB":
+                return CompressionAlgorithmTags.ZLIB;
+            case "BZIP2":
+                return CompressionAlgorithmTags.BZIP2;
+            case "UNCOMPRESSED":
+                return CompressionAlgorithmTags.UNCOMPRESSED;
+            default:
+                throw new IllegalArgumentException("Unsupported codec " + codec);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf;
+
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import org.bouncycastle.openpgp.PGPPublicKey;
+
+/**
+ * The four branches of {@link io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt#encryptFile}.
+ */
+public enum CopyMode {
+    PLAIN(false, false),
+    COMPRESS(true, false),
+    ENCRYPT(false, true),
+    COMPRESS_ENCRYPT(true, true);
+
+    private final boolean compress;
+    private final boolean encrypt;
+
+    CopyMode(boolean compress, boolean encrypt) {
+        this.compress = compress;
+        this.encrypt = encrypt;
+    }
+
+    public CompressEncryptOptions getOptions(PGPPublicKey encKey, int bufferSize) {
+        return new CompressEncryptOptions(compress, encrypt, encrypt ? encKey : null, bufferSize);
+    }
+
+    /**
+     * @return The suffix that the sink appends to the names of files copied in this mode.
+     */
+    public String getSuffix() {
+        return (compress ? ".zip" : "") + (encrypt ? ".pgp" : "");
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.perf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Generates the input files for the benchmarks. Every file is derived from a fixed seed, so the same kind and
+ * size always produce the same bytes and results can be compared across machines and runs. Files are written
+ * once to the corpus directory and reused afterwards, which is set with the {@code perf.corpus.dir} system
+ * property and defaults to a directory under {@code java.io.tmpdir}.
+ */
+public final class Corpus {
+    private static final long SEED = 0x5EEDL;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final String[] WORDS = {
+            "the", "of", "and", "to", "in", "is", "file", "data", "record", "bucket", "storage", "pipeline",
+            "compress", "encrypt", "transfer", "partition", "schema", "cluster", "customer", "account", "order",
+            "region", "status", "payment", "invoice", "shipment", "warehouse", "product", "quantity", "total"
+    };
+    private static final String[] STATES = {"ACTIVE", "PENDING", "CLOSED", "SUSPENDED"};
+
+    /**
+     * The kinds of content in the corpus.
+     */
+    public enum Kind {
+        /** Prose made of a small vocabulary, compresses well. */
+        TEXT,
+        /** Delimited rows with ids, amounts and dates, typical of database exports. */
+        CSV,
+        /** Uniformly random bytes, incompressible. */
+        RANDOM,
+        /** Deflated text, i.e. an input that was already compressed before the sink saw it. */
+        COMPRESSED
+    }
+
+    private Corpus() {
+    }
+
+    /**
+     * @return A file of exactly the given size with content of the given kind, generating it if needed.
+     */
+    public static synchronized File get(Kind kind, long size) throws IOException {
+        File dir = new File(System.getProperty("perf.corpus.dir",
+                                               new File(System.getProperty("java.io.tmpdir"),
+                                                        "file-ingest-perf-corpus").getPath()));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create corpus directory " + dir);
+        }
+        File file = new File(dir, String.format("%s-%d.dat", kind.name().toLowerCase(), size));
+        if (file.isFile() && file.length() == size) {
+            return file;
+        }
+        File temp = new File(dir, file.getName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), CHUNK_SIZE)) {
+            generate(kind, size, out);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to move " + temp + " to " + file);
+        }
+        return file;
+    }
+
+    private static void generate(Kind kind, long size, OutputStream out) throws IOException {
+        Random random = new Random(SEED + kind.ordinal());
+        LimitedOutputStream limited = new LimitedOutputStream(out, size);
+        switch (kind) {
+            case TEXT:
+                while (!limited.isFull()) {
+                    writeTextLine(random, limited);
+                }
+                break;
+            case CSV:
+                limited.write("id,name,state,amount,quantity,updated\n".getBytes(StandardCharsets.UTF_8));
+                for (long id = 1; !limited.isFull(); id++) {
+                    writeCsvRow(random, id, limited);
+                }
+                break;
+            case RANDOM:
+                byte[] chunk = new byte[CHUNK_SIZE];
+                while (!limited.isFull()) {
+                    random.nextBytes(chunk);
+                    limited.write(chunk, 0, chunk.length);
+                }
+                break;
+            case COMPRESSED:
+                DeflaterOutputStream deflated = new DeflaterOutputStream(limited, new Deflater(Deflater.BEST_SPEED));
+                while (!limited.isFull()) {
+                    writeTextLine(random, deflated);
+                }
+                // the trailing block may be cut off, which doesn't matter to a sink that treats it as opaque
+                deflated.finish();
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported corpus kind " + kind);
+        }
+    }
+
+    private static void writeTextLine(Random random, OutputStream out) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int words = 6 + random.nextInt(12);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        line.append(".\n");
+        out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeCsvRow(Random random, long id, OutputStream out) throws IOException {
+        String row = String.format("%d,%s %s,%s,%d.%02d,%d,2019-%02d-%02dT%02d:%02d:%02dZ\n",
+                                   id, WORDS[random.nextInt(WORDS.length)], WORDS[random.nextInt(WORDS.length)],
+                                   STATES[random.nextInt(STATES.length)], random.nextInt(100000),
+                                   random.nextInt(100), random.nextInt(1000), 1 + random.nextInt(12),
+                                   1 + random.nextInt(28), random.nextInt(24), random.nextInt(60),
+                                   random.nextInt(60));
+        out.write(row.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Truncates everything written past a byte limit, so that generators can stop at an exact size.
+     */
+    private static class LimitedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long remaining;
+
+        LimitedOutputStream(OutputStream out, long limit) {
+            this.out = out;
+            this.remaining = limit;
+        }
+
+        boolean isFull() {
+            return remaining <= 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (remaining > 0) {
+                out.write(b);
+                remaining--;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int count = (int) Math.min(len, remaining);
+            if (count > 0) {
+                out.write(b, off, count);
+                remaining -= count;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf;
+
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.ingest.utils.FileMetaData;
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of a file that carries no data: opening the source, setting up the codec and cipher (including
+ * the session key wrap), and for {@link #piped} the writer thread and pipe the sink uses for every file.
+ * Multiply by the number of files in a run to see how much of it is spent on overhead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FixedOverheadBenchmark {
+
+    @Param({"PLAIN", "COMPRESS", "ENCRYPT", "COMPRESS_ENCRYPT"})
+    public CopyMode mode;
+
+    @Param({"0", "1"})
+    public long fileSize;
+
+    @Param({"65536"})
+    public int bufferSize;
+
+    private FileMetaData file;
+    private CompressEncryptOptions options;
+
+    @Setup
+    public void setUp() throws Exception {
+        File source = Corpus.get(Corpus.Kind.TEXT, fileSize);
+        file = new FileMetaData(source.toURI().toString(), new Configuration());
+        options = mode.getOptions(TestKeys.getPublicKey(), bufferSize);
+    }
+
+    @Benchmark
+    public long direct() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        FileCompressEncrypt.encryptFile(out, file, options, new StageTimer());
+        return out.getCount();
+    }
+
+    @Benchmark
+    public long piped() throws Exception {
+        long count = 0;
+        byte[] buffer = new byte[bufferSize];
+        try (InputStream in = FileCompressEncrypt.gcsWriter(file, options, new StageTimer())) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                count += read;
+            }
+        }
+        return count;
+    }
+}
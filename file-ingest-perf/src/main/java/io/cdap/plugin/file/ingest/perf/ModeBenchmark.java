@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf;
+
+import io.cdap.plugin.file.ingest.encryption.CompressEncryptOptions;
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.ingest.utils.FileMetaData;
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each copy mode across file sizes, buffer sizes and kinds of content. The output is discarded,
+ * so this measures reading, compressing and encrypting without the upload. Run 1 GB files with
+ * {@code -p fileSize=1073741824}, they are left out of the defaults to keep a full run under an hour.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ModeBenchmark {
+
+    @Param({"PLAIN", "COMPRESS", "ENCRYPT", "COMPRESS_ENCRYPT"})
+    public CopyMode mode;
+
+    @Param({"1024", "1048576", "67108864"})
+    public long fileSize;
+
+    @Param({"8192", "65536", "1048576"})
+    public int bufferSize;
+
+    @Param({"TEXT", "CSV", "RANDOM", "COMPRESSED"})
+    public Corpus.Kind content;
+
+    private FileMetaData file;
+    private CompressEncryptOptions options;
+
+    @Setup
+    public void setUp() throws Exception {
+        File source = Corpus.get(content, fileSize);
+        file = new FileMetaData(source.toURI().toString(), new Configuration());
+        options = mode.getOptions(TestKeys.getPublicKey(), bufferSize);
+    }
+
+    @Benchmark
+    public long copy(Throughput throughput) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        FileCompressEncrypt.encryptFile(out, file, options, new StageTimer());
+        throughput.record(fileSize, out.getCount());
+        return out.getCount();
+    }
+}
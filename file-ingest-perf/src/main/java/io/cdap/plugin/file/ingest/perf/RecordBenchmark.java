@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.perf;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.plugin.file.ingest.common.FileListData;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hop of a file from the FileList source to the sink: the source converts the listed file to a record and
+ * the sink reads it back, once per file of a run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RecordBenchmark {
+
+    @Param({"fields", "compact"})
+    public String format;
+
+    private io.cdap.plugin.file.ingest.FileListData listed;
+
+    @Setup
+    public void setUp() throws Exception {
+        FileStatus status = new FileStatus(123456, false, 3, 128 << 20, 1574000000000L, 0,
+                                           FsPermission.getFileDefault(), "owner", "group",
+                                           new Path("hdfs://namenode:8020/data/events/2019/11/14/part-00042.json"));
+        listed = new io.cdap.plugin.file.ingest.FileListData(status, "/data/events");
+    }
+
+    @Benchmark
+    public FileListData sourceToSink() {
+        StructuredRecord record = "compact".equals(format) ? listed.toCompactRecord() : listed.toRecord();
+        return new FileListData(record);
+    }
+}
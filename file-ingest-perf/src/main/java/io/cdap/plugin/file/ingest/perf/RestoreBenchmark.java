@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.perf;
+
+import io.cdap.plugin.file.ingest.encryption.FileCompressEncrypt;
+import io.cdap.plugin.file.ingest.metrics.StageTimer;
+import io.cdap.plugin.file.ingest.utils.FileMetaData;
+import io.cdap.plugin.file.restore.decode.ObjectDecoder;
+import io.cdap.plugin.file.restore.decode.PrivateKeyCache;
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of restoring files in each copy mode, the inverse of {@link ModeBenchmark} with the same
+ * parameters so the two can be read side by side. The objects are encoded once in memory, so this measures
+ * decrypting and decompressing without the download.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RestoreBenchmark {
+
+    @Param({"PLAIN", "COMPRESS", "ENCRYPT", "COMPRESS_ENCRYPT"})
+    public CopyMode mode;
+
+    @Param({"1024", "1048576", "67108864"})
+    public long fileSize;
+
+    @Param({"8192", "65536", "1048576"})
+    public int bufferSize;
+
+    @Param({"TEXT", "CSV", "RANDOM", "COMPRESSED"})
+    public Corpus.Kind content;
+
+    private byte[] object;
+    private String name;
+    private ObjectDecoder decoder;
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() throws Exception {
+        File source = Corpus.get(content, fileSize);
+        FileMetaData file = new FileMetaData(source.toURI().toString(), new Configuration());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileCompressEncrypt.encryptFile(out, file, mode.getOptions(TestKeys.getPublicKey(), bufferSize),
+                                        new StageTimer());
+        object = out.toByteArray();
+        name = source.getName() + mode.getSuffix();
+
+        PrivateKeyCache keys = new PrivateKeyCache(null, new char[0]);
+        keys.add(TestKeys.getKeyPair().getPrivateKey());
+        decoder = new ObjectDecoder(keys, null, bufferSize);
+        buffer = new byte[bufferSize];
+    }
+
+    @Benchmark
+    public long restore(Throughput throughput) throws Exception {
+        long count = 0;
+        try (InputStream in = decoder.decode(new ByteArrayInputStream(object), name, new StageTimer()).getStream()) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                count += read;
+            }
+        }
+        throughput.record(object.length, count);
+        return count;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest.perf;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+
+/**
+ * A throwaway RSA key pair for the benchmarks, generated once per JVM so no key material is checked in.
+ */
+public final class TestKeys {
+    private static final int KEY_SIZE = 2048;
+    private static PGPKeyPair keyPair;
+
+    private TestKeys() {
+    }
+
+    public static synchronized PGPKeyPair getKeyPair() {
+        if (keyPair == null) {
+            try {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(KEY_SIZE);
+                keyPair = new JcaPGPKeyPair(PGPPublicKey.RSA_GENERAL, generator.generateKeyPair(), new Date());
+            } catch (GeneralSecurityException | PGPException e) {
+                throw new IllegalStateException("Unable to generate a benchmark key pair", e);
+            }
+        }
+        return keyPair;
+    }
+
+    public static PGPPublicKey getPublicKey() {
+        return getKeyPair().getPublicKey();
+    }
+
+    /**
+     * Writes the public key to a file, for code that reads it from a path like the sink does.
+     */
+    public static void writePublicKey(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            getPublicKey().encode(out);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reports the bytes read and written by a benchmark as secondary results. JMH divides operation counters by
+ * the iteration time, so with a single benchmark thread they come out as MB/s per core.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    private static final double MEGABYTE = 1024 * 1024;
+
+    public double megabytesIn;
+    public double megabytesOut;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytesIn = 0;
+        megabytesOut = 0;
+    }
+
+    public void record(long bytesIn, long bytesOut) {
+        megabytesIn += bytesIn / MEGABYTE;
+        megabytesOut += bytesOut / MEGABYTE;
+    }
+}
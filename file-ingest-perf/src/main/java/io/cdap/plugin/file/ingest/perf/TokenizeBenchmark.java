@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.perf;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.anonymization.fpe.Alphabet;
+import io.cdap.plugin.anonymization.fpe.Tokenizer;
+import io.cdap.plugin.anonymization.transform.RecordTokenizer;
+import io.cdap.plugin.anonymization.transform.TokenizeTransform;
+import io.cdap.plugin.anonymization.transform.TokenizeTransformConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The format-preserving tokenization transform on customer records with a card number, a social security number
+ * and a name. Customers repeat across records, like the orders of a customer, which is what the cache is for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TokenizeBenchmark {
+    private static final int RECORDS = 8192;
+    private static final int CUSTOMERS = 2048;
+    private static final Schema SCHEMA = Schema.recordOf(
+            "order",
+            Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+            Schema.Field.of("card", Schema.of(Schema.Type.STRING)),
+            Schema.Field.of("ssn", Schema.of(Schema.Type.STRING)),
+            Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+            Schema.Field.of("amount", Schema.of(Schema.Type.DOUBLE)));
+
+    @Param({TokenizeTransformConfig.ALGORITHM_FF1, TokenizeTransformConfig.ALGORITHM_FF3_1})
+    public String algorithm;
+
+    @Param({"0", "1024"})
+    public int cacheSize;
+
+    private RecordTokenizer tokenizer;
+    private StructuredRecord[] records;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        byte[] key = new byte[32];
+        Random random = new Random(42);
+        random.nextBytes(key);
+        byte[] tweak = TokenizeTransformConfig.ALGORITHM_FF3_1.equals(algorithm) ? new byte[7] : new byte[0];
+        Map<String, Tokenizer> tokenizers = new HashMap<>();
+        tokenizers.put("card", tokenizer(Alphabet.NUMERIC, key, tweak));
+        tokenizers.put("ssn", tokenizer(Alphabet.NUMERIC, key, tweak));
+        tokenizers.put("name", tokenizer(Alphabet.ALPHA, key, tweak));
+        tokenizer = new RecordTokenizer(tokenizers);
+
+        records = new StructuredRecord[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            // the same customer always has the same values
+            Random customer = new Random(random.nextInt(CUSTOMERS));
+            records[i] = StructuredRecord.builder(SCHEMA)
+                    .set("id", (long) i)
+                    .set("card", String.format("%04d %04d %04d %04d", customer.nextInt(10000),
+                                               customer.nextInt(10000), customer.nextInt(10000),
+                                               customer.nextInt(10000)))
+                    .set("ssn", String.format("%03d-%02d-%04d", customer.nextInt(1000), customer.nextInt(100),
+                                              customer.nextInt(10000)))
+                    .set("name", name(customer) + " " + name(customer))
+                    .set("amount", random.nextDouble() * 1000)
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public StructuredRecord tokenize() {
+        StructuredRecord record = records[next];
+        next = (next + 1) % RECORDS;
+        return tokenizer.tokenize(record);
+    }
+
+    private Tokenizer tokenizer(String alphabetName, byte[] key, byte[] tweak) {
+        Alphabet alphabet = Alphabet.of(alphabetName);
+        return new Tokenizer(alphabet, TokenizeTransform.createCipher(algorithm, key, alphabet.getRadix(), tweak),
+                             false, cacheSize);
+    }
+
+    private static String name(Random random) {
+        char[] name = new char[5 + random.nextInt(6)];
+        name[0] = (char) ('A' + random.nextInt(26));
+        for (int i = 1; i < name.length; i++) {
+            name[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(name);
+    }
+}
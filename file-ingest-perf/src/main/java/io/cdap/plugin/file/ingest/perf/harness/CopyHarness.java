@@ -0,0 +1,322 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf.harness;
+
+import io.cdap.plugin.file.ingest.FileListInputFormat;
+import io.cdap.plugin.file.ingest.batchsink.FileCopyOutputFormat;
+import io.cdap.plugin.file.ingest.batchsink.FileCopyRecordWriter;
+import io.cdap.plugin.file.ingest.common.FileListData;
+import io.cdap.plugin.file.ingest.destination.GCSDestination;
+import io.cdap.plugin.file.ingest.destination.InMemoryDestination;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
+import io.cdap.plugin.file.ingest.metrics.LatencyHistogram;
+import io.cdap.plugin.file.ingest.metrics.Stage;
+import io.cdap.plugin.file.ingest.perf.TestKeys;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the file copy end to end on one machine: {@link FileListInputFormat} lists a generated {@link Dataset}
+ * on a {@link ThrottledFileSystem}, and every split is copied by a {@link FileCopyRecordWriter} into a
+ * {@link ThrottledDestination}, the way the source and sink plugins do it in a pipeline. Splits are handed
+ * to a fixed number of task threads, each with its own writer like a MapReduce or Spark task.
+ *
+ * Options are given as {@code --name=value}, see {@link #usage()}. The report has the files and bytes per
+ * second, the latency per file, where the time went and the peak memory and thread use.
+ */
+public class CopyHarness {
+    private static final double MEGABYTE = 1024 * 1024;
+    private static final double GIGABYTE = 1024 * MEGABYTE;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Options options;
+
+    CopyHarness(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (options == null) {
+            usage();
+            System.exit(1);
+        }
+        if (options.has("help")) {
+            usage();
+            return;
+        }
+        new CopyHarness(options).run();
+    }
+
+    private static void usage() {
+        System.out.println("Usage: CopyHarness [--name=value]...\n"
+                + "Dataset:\n"
+                + "  --dataset=quick|small|mixed|huge   preset to start from (quick)\n"
+                + "  --small-files, --small-min-size, --small-max-size, --large-files, --large-size\n"
+                + "  --root=<dir>                       where to generate it (under java.io.tmpdir)\n"
+                + "Copy:\n"
+                + "  --tasks=4                          concurrent tasks\n"
+                + "  --files-per-split=128              max files per split\n"
+                + "  --strategy=uniformsize|dynamic     how files are assigned to tasks\n"
+                + "  --compression=NONE|ZIP  --encryption=NONE|PGP  --cipher=CAST5|AES_128|AES_192|AES_256\n"
+                + "  --public-key-path=<file>           key to encrypt with, a generated one by default\n"
+                + "  --buffer-size=1024                 the sink's bufferSize\n"
+                + "  --bundle-threshold=0               bundle files smaller than this, 0 to copy every file\n"
+                + "Source filesystem:\n"
+                + "  --source-metadata-latency-ms=0  --source-open-latency-ms=0  --source-mbps=0\n"
+                + "Destination:\n"
+                + "  --dest-latency-ms=0  --dest-mbps=0  --dest-stream-mbps=0  --dest-chunk-size=16777216\n"
+                + "  --dest-single-request-size=8388608  objects up to this size are sent in one request\n"
+                + "Bandwidths are in MB/s shared by all tasks, except dest-stream-mbps which caps each upload.\n"
+                + "0 means no latency or no limit.");
+    }
+
+    void run() throws Exception {
+        Dataset dataset = getDataset();
+        File root = new File(options.get("root", new File(System.getProperty("java.io.tmpdir"),
+                                                          "file-ingest-perf-" + Integer.toHexString(dataset.toString().hashCode()))
+                .getPath()));
+        System.out.printf("Dataset: %s in %s%n", dataset, root);
+        long startNanos = System.nanoTime();
+        if (dataset.generate(root)) {
+            System.out.printf("Generated in %.1f s%n", seconds(System.nanoTime() - startNanos));
+        }
+
+        ThrottledFileSystem.configure(options.getDouble("source-metadata-latency-ms", 0),
+                                      options.getDouble("source-open-latency-ms", 0),
+                                      options.getDouble("source-mbps", 0));
+        Configuration sinkConf = getSinkConfiguration(options);
+
+        // list the source like the FileList source does in prepareRun
+        Configuration listConf = new Configuration();
+        List<String> sourcePaths = new ArrayList<>();
+        for (String dir : new String[]{"small", "large"}) {
+            if (new File(root, dir).isDirectory()) {
+                sourcePaths.add(new File(root, dir).getAbsolutePath());
+            }
+        }
+        FileListInputFormat.setSourcePaths(listConf, String.join(",", sourcePaths));
+        FileListInputFormat.setURI(listConf, ThrottledFileSystem.SCHEME + ":///");
+        FileListInputFormat.setMaxSplitSize(listConf, options.getInt("files-per-split", 128));
+        FileListInputFormat.setCopyStrategy(listConf, options.get("strategy", FileListInputFormat.UNIFORM_SIZE_STRATEGY));
+        File stagingDirectory = new File(root, "staging-" + UUID.randomUUID());
+        FileListInputFormat.setStagingDirectory(listConf, stagingDirectory.toURI().toString());
+        FileListInputFormat inputFormat = new FileListInputFormat();
+
+        startNanos = System.nanoTime();
+        @SuppressWarnings("unchecked")
+        List<InputSplit> splits = inputFormat.getSplits(new JobContextImpl(listConf, new JobID()));
+        long listNanos = System.nanoTime() - startNanos;
+        System.out.printf("Listed %d files into %d splits in %.1f s%n", dataset.getFiles(), splits.size(),
+                          seconds(listNanos));
+
+        // copy the splits like the tasks of the sink
+        int tasks = options.getInt("tasks", 4);
+        Queue<InputSplit> pending = new ConcurrentLinkedQueue<>(splits);
+        AtomicInteger taskIds = new AtomicInteger();
+        RateLimiter link = new RateLimiter(options.getDouble("dest-mbps", 0));
+        CopyMetrics total = new CopyMetrics();
+        MemorySampler memory = new MemorySampler();
+        ExecutorService executor = Executors.newFixedThreadPool(tasks);
+        List<Future<?>> futures = new ArrayList<>();
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            futures.add(executor.submit(() -> {
+                InputSplit split;
+                while ((split = pending.poll()) != null) {
+                    CopyMetrics metrics = copy(inputFormat, split, listConf, sinkConf, link,
+                                               new TaskAttemptID("harness", 0, TaskType.MAP, taskIds.getAndIncrement(), 0));
+                    synchronized (total) {
+                        total.add(metrics);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long copyNanos = System.nanoTime() - startNanos;
+        executor.shutdown();
+        memory.stop();
+        FileUtil.fullyDelete(stagingDirectory);
+
+        report(total, copyNanos, memory);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CopyMetrics copy(FileListInputFormat inputFormat, InputSplit split, Configuration listConf,
+                             Configuration sinkConf, RateLimiter link, TaskAttemptID taskAttemptID) throws Exception {
+        ThrottledDestination destination = new ThrottledDestination(
+                new InMemoryDestination(false), options.getDouble("dest-latency-ms", 0), link,
+                options.getDouble("dest-stream-mbps", 0),
+                options.getInt("dest-chunk-size", GCSDestination.DEFAULT_CHUNK_SIZE),
+                options.getLong("dest-single-request-size", GCSDestination.DEFAULT_SINGLE_REQUEST_SIZE));
+        FileCopyRecordWriter writer = new FileCopyRecordWriter(sinkConf, destination);
+        try (RecordReader<NullWritable, io.cdap.plugin.file.ingest.FileListData> reader =
+                     inputFormat.createRecordReader(split, new TaskAttemptContextImpl(listConf, taskAttemptID))) {
+            while (reader.nextKeyValue()) {
+                // in a pipeline the listing reaches the sink as a record
+                writer.write(NullWritable.get(), new FileListData(reader.getCurrentValue().toRecord()));
+            }
+        } finally {
+            writer.close(null);
+        }
+        return writer.getMetrics();
+    }
+
+    /**
+     * @return The configuration of the sink with the copy options, see {@link #usage()}.
+     */
+    static Configuration getSinkConfiguration(Options options) throws Exception {
+        Map<String, String> conf = new HashMap<>();
+        String encryption = options.get("encryption", "NONE");
+        FileCopyOutputFormat.setCompression(conf, options.get("compression", "NONE"));
+        FileCopyOutputFormat.setEncryption(conf, encryption);
+        FileCopyOutputFormat.setPGPCipher(conf, options.get("cipher", "CAST5"));
+        FileCopyOutputFormat.setBufferSize(conf, options.get("buffer-size", "1024"));
+        FileCopyOutputFormat.setBundleThreshold(conf, options.get("bundle-threshold", "0"));
+        FileCopyOutputFormat.setGCSDestPath(conf, "harness/");
+        FileCopyOutputFormat.setProxyType(conf, "NONE");
+        if (options.has("public-key-path")) {
+            FileCopyOutputFormat.setPGPPubKey(conf, options.get("public-key-path", null));
+        } else if (!"NONE".equals(encryption)) {
+            File keyFile = File.createTempFile("harness", ".pub");
+            keyFile.deleteOnExit();
+            TestKeys.writePublicKey(keyFile);
+            FileCopyOutputFormat.setPGPPubKey(conf, keyFile.getAbsolutePath());
+        }
+
+        Configuration configuration = new Configuration();
+        for (Map.Entry<String, String> entry : conf.entrySet()) {
+            configuration.set(entry.getKey(), entry.getValue());
+        }
+        return configuration;
+    }
+
+    private Dataset getDataset() {
+        Dataset preset = Dataset.preset(options.get("dataset", "quick"));
+        if (!options.names().stream().anyMatch(key -> key.startsWith("small-") || key.startsWith("large-"))) {
+            return preset;
+        }
+        return new Dataset(options.getInt("small-files", preset.getSmallFiles()),
+                           options.getInt("small-min-size", preset.getSmallMinSize()),
+                           options.getInt("small-max-size", preset.getSmallMaxSize()),
+                           options.getInt("large-files", preset.getLargeFiles()),
+                           options.getLong("large-size", preset.getLargeSize()));
+    }
+
+    private static void report(CopyMetrics total, long copyNanos, MemorySampler memory) {
+        double seconds = seconds(copyNanos);
+        System.out.printf("%nCopied %d files (%d failed) in %.1f s%n", total.getFiles(), total.getFailedFiles(), seconds);
+        System.out.printf("  %.1f files/s, %.3f GB/s in, %.3f GB/s out%n", total.getFiles() / seconds,
+                          total.getBytesIn() / GIGABYTE / seconds, total.getBytesOut() / GIGABYTE / seconds);
+
+        LatencyHistogram files = total.getFileHistogram();
+        StringBuilder latency = new StringBuilder("  latency per file:");
+        for (double percentile : PERCENTILES) {
+            latency.append(String.format(" p%s %.1f ms,", percentile == (int) percentile ? String.valueOf((int) percentile)
+                                                 : String.valueOf(percentile), files.getValueAtPercentile(percentile) / 1000.0));
+        }
+        latency.append(String.format(" max %.1f ms", files.getMax() / 1000.0));
+        System.out.println(latency);
+
+        long stageTotal = 0;
+        for (Stage stage : Stage.values()) {
+            stageTotal += total.getStageNanos(stage);
+        }
+        System.out.printf("  time by stage (bottleneck: %s):%n", total.getBottleneck().getMetricName());
+        for (Stage stage : Stage.values()) {
+            long nanos = total.getStageNanos(stage);
+            System.out.printf("    %-12s %10.1f s %6.1f%%   p99 %.1f ms%n", stage.getMetricName(), seconds(nanos),
+                              stageTotal == 0 ? 0.0 : 100.0 * nanos / stageTotal,
+                              total.getStageHistogram(stage).getValueAtPercentile(99) / 1000.0);
+        }
+        System.out.printf("  peak heap %.1f MB, peak threads %d%n", memory.getPeakHeapBytes() / MEGABYTE,
+                          memory.getPeakThreads());
+    }
+
+    static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Samples the used heap, which catches short peaks that a single reading at the end would miss.
+     */
+    private static class MemorySampler {
+        private static final long INTERVAL_MILLIS = 10;
+
+        private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        private final AtomicLong peakHeapBytes = new AtomicLong();
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memory-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        MemorySampler() {
+            threadBean.resetPeakThreadCount();
+            scheduler.scheduleAtFixedRate(this::sample, 0, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        private void sample() {
+            long used = memoryBean.getHeapMemoryUsage().getUsed();
+            peakHeapBytes.accumulateAndGet(used, Math::max);
+        }
+
+        void stop() {
+            scheduler.shutdownNow();
+            sample();
+        }
+
+        long getPeakHeapBytes() {
+            return peakHeapBytes.get();
+        }
+
+        int getPeakThreads() {
+            return threadBean.getPeakThreadCount();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf.harness;
+
+import io.cdap.plugin.file.ingest.perf.Corpus;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * A reproducible source tree of many small files and a few large ones, with the kinds of content of the
+ * {@link Corpus} taking turns. Small files go into directories of {@link #FILES_PER_DIRECTORY} files, like
+ * the date or id partitioned trees seen in practice. A generated tree is reused as long as it was generated
+ * with the same settings.
+ */
+public class Dataset {
+    public static final int FILES_PER_DIRECTORY = 1000;
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final String MARKER = ".dataset";
+    private static final long SEED = 0xDA7AL;
+
+    private final int smallFiles;
+    private final int smallMinSize;
+    private final int smallMaxSize;
+    private final int largeFiles;
+    private final long largeSize;
+
+    /**
+     * @param smallFiles   The number of small files.
+     * @param smallMinSize The smallest size of a small file in bytes.
+     * @param smallMaxSize The largest size of a small file in bytes, at most 1 MB.
+     * @param largeFiles   The number of large files.
+     * @param largeSize    The size of every large file in bytes.
+     */
+    public Dataset(int smallFiles, int smallMinSize, int smallMaxSize, int largeFiles, long largeSize) {
+        if (smallMinSize < 0 || smallMaxSize < smallMinSize || smallMaxSize > BLOCK_SIZE) {
+            throw new IllegalArgumentException(String.format("Small files must be between 0 and %d bytes.", BLOCK_SIZE));
+        }
+        this.smallFiles = smallFiles;
+        this.smallMinSize = smallMinSize;
+        this.smallMaxSize = smallMaxSize;
+        this.largeFiles = largeFiles;
+        this.largeSize = largeSize;
+    }
+
+    /**
+     * @param name One of small (a million files of up to 8 KB), huge (four 4 GB files), mixed or quick.
+     */
+    public static Dataset preset(String name) {
+        switch (name) {
+            case "small":
+                return new Dataset(1000000, 512, 8192, 0, 0);
+            case "huge":
+                return new Dataset(0, 0, 0, 4, 4L << 30);
+            case "mixed":
+                return new Dataset(200000, 0, 65536, 8, 1L << 30);
+            case "quick":
+                return new Dataset(10000, 0, 16384, 2, 64L << 20);
+            default:
+                throw new IllegalArgumentException("Unknown dataset " + name);
+        }
+    }
+
+    public int getFiles() {
+        return smallFiles + largeFiles;
+    }
+
+    public int getSmallFiles() {
+        return smallFiles;
+    }
+
+    public int getSmallMinSize() {
+        return smallMinSize;
+    }
+
+    public int getSmallMaxSize() {
+        return smallMaxSize;
+    }
+
+    public int getLargeFiles() {
+        return largeFiles;
+    }
+
+    public long getLargeSize() {
+        return largeSize;
+    }
+
+    /**
+     * Generates the tree under the given directory unless it is already there.
+     *
+     * @return Whether the tree was generated.
+     */
+    public boolean generate(File root) throws IOException {
+        File marker = new File(root, MARKER);
+        if (marker.isFile() && new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).equals(toString())) {
+            return false;
+        }
+        if (root.exists()) {
+            throw new IOException(String.format("%s holds a different dataset, remove it or pick another directory.", root));
+        }
+
+        byte[][] blocks = new byte[Corpus.Kind.values().length][];
+        for (Corpus.Kind kind : Corpus.Kind.values()) {
+            blocks[kind.ordinal()] = Files.readAllBytes(Corpus.get(kind, BLOCK_SIZE).toPath());
+        }
+        Random random = new Random(SEED);
+
+        for (int i = 0; i < smallFiles; i++) {
+            File dir = new File(root, String.format("small/d%05d", i / FILES_PER_DIRECTORY));
+            if (i % FILES_PER_DIRECTORY == 0 && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            byte[] block = blocks[i % blocks.length];
+            int size = smallMinSize + random.nextInt(smallMaxSize - smallMinSize + 1);
+            int offset = random.nextInt(BLOCK_SIZE - size + 1);
+            try (OutputStream out = new FileOutputStream(new File(dir, String.format("f%07d.dat", i)))) {
+                out.write(block, offset, size);
+            }
+        }
+
+        File largeDir = new File(root, "large");
+        if (largeFiles > 0 && !largeDir.mkdirs()) {
+            throw new IOException("Unable to create " + largeDir);
+        }
+        for (int i = 0; i < largeFiles; i++) {
+            byte[] block = blocks[i % blocks.length];
+            // start every file at a different point of the block so that the files differ
+            int offset = random.nextInt(BLOCK_SIZE);
+            try (OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(new File(largeDir, String.format("large%03d.dat", i))), BLOCK_SIZE)) {
+                for (long remaining = largeSize; remaining > 0; ) {
+                    int count = (int) Math.min(remaining, BLOCK_SIZE - offset);
+                    out.write(block, offset, count);
+                    remaining -= count;
+                    offset = 0;
+                }
+            }
+        }
+
+        Files.write(marker.toPath(), toString().getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d small files of %d-%d bytes, %d large files of %d bytes",
+                             smallFiles, smallMinSize, smallMaxSize, largeFiles, largeSize);
+    }
+}
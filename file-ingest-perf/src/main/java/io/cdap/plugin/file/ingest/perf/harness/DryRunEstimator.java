@@ -0,0 +1,462 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf.harness;
+
+import io.cdap.plugin.file.ingest.FileListInputFormat;
+import io.cdap.plugin.file.ingest.batchsink.FileCopyRecordWriter;
+import io.cdap.plugin.file.ingest.common.FileListData;
+import io.cdap.plugin.file.ingest.destination.InMemoryDestination;
+import io.cdap.plugin.file.ingest.metrics.CopyMetrics;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Predicts a copy before it runs: {@link FileListInputFormat} lists the real source tree into splits, and a sample
+ * of the files is copied by a {@link FileCopyRecordWriter} with the sink's settings into a destination that only
+ * counts the bytes. The files are sampled per size class, since small files cost more per byte and compress
+ * differently from large ones, and each class is projected to all of its files.
+ *
+ * The report has the output size, the CPU time, the split layout, and the number of executors whose cores keep
+ * the upload bandwidth busy. The CPU time is that of the whole process while a sample is copied, so it includes
+ * the sink's pipe and upload threads and the garbage collector, and it leaves out time spent waiting on the source.
+ *
+ * Options are given as {@code --name=value}, see {@link #usage()}.
+ */
+public class DryRunEstimator {
+    private static final double MEGABYTE = 1024 * 1024;
+    private static final double GIGABYTE = 1024 * MEGABYTE;
+    // files of 0 bytes, then one class per power of 4 up to the largest long
+    private static final int SIZE_CLASSES = 33;
+    // files up to this size warm up the copy before it is measured
+    private static final long WARM_UP_MAX_SIZE = 1 << 20;
+
+    private final Options options;
+
+    DryRunEstimator(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (options == null) {
+            usage();
+            System.exit(1);
+        }
+        if (options.has("help")) {
+            usage();
+            return;
+        }
+        if (!options.has("paths")) {
+            usage();
+            System.exit(1);
+        }
+        new DryRunEstimator(options).run();
+    }
+
+    private static void usage() {
+        System.out.println("Usage: DryRunEstimator --paths=<dir>[,<dir>...] [--name=value]...\n"
+                + "Source:\n"
+                + "  --uri=file:///                     filesystem of the paths, e.g. hdfs://<namenode>:8020\n"
+                + "  --recursive=true                   list subdirectories\n"
+                + "  --files-per-split=128              max files per split\n"
+                + "  --strategy=uniformsize|dynamic     how files are assigned to tasks\n"
+                + "Sink:\n"
+                + "  --compression=NONE|ZIP  --encryption=NONE|PGP  --cipher=CAST5|AES_128|AES_192|AES_256\n"
+                + "  --public-key-path=<file>           key to encrypt with, a generated one by default\n"
+                + "  --buffer-size=1024  --bundle-threshold=0\n"
+                + "Sampling:\n"
+                + "  --samples=16                       files sampled per size class\n"
+                + "  --sample-mb=1024                   max MB sampled per size class, at least one file\n"
+                + "  --warm-up-files=32                 small files copied before measuring\n"
+                + "  --seed=1\n"
+                + "Cluster:\n"
+                + "  --executor-cores=4                 tasks per executor\n"
+                + "  --bandwidth-mbps=0                 upload bandwidth to the destination in MB/s, 0 if unknown");
+    }
+
+    @SuppressWarnings("unchecked")
+    void run() throws Exception {
+        Configuration listConf = new Configuration();
+        FileListInputFormat.setSourcePaths(listConf, options.get("paths", null));
+        FileListInputFormat.setURI(listConf, options.get("uri", "file:///"));
+        FileListInputFormat.setRecursiveCopy(listConf, options.get("recursive", "true"));
+        FileListInputFormat.setMaxSplitSize(listConf, options.getInt("files-per-split", 128));
+        String strategy = options.get("strategy", FileListInputFormat.UNIFORM_SIZE_STRATEGY);
+        FileListInputFormat.setCopyStrategy(listConf, strategy);
+        File stagingDirectory = Files.createTempDirectory("dry-run-staging").toFile();
+        FileListInputFormat.setStagingDirectory(listConf, stagingDirectory.toURI().toString());
+        FileListInputFormat inputFormat = new FileListInputFormat();
+
+        // list the source like the FileList source does in prepareRun, and read back the splits like its tasks
+        long startNanos = System.nanoTime();
+        List<InputSplit> splits = inputFormat.getSplits(new JobContextImpl(listConf, new JobID()));
+        long listNanos = System.nanoTime() - startNanos;
+        SizeClass[] sizeClasses = new SizeClass[SIZE_CLASSES];
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            sizeClasses[i] = new SizeClass(i);
+        }
+        List<SplitLayout> layouts = new ArrayList<>();
+        Random random = new Random(options.getLong("seed", 1));
+        int samples = options.getInt("samples", 16);
+        try {
+            for (InputSplit split : splits) {
+                SplitLayout layout = new SplitLayout();
+                layouts.add(layout);
+                TaskAttemptID taskAttemptID = new TaskAttemptID("dryrun", 0, TaskType.MAP, layouts.size(), 0);
+                try (RecordReader<NullWritable, io.cdap.plugin.file.ingest.FileListData> reader =
+                             inputFormat.createRecordReader(split, new TaskAttemptContextImpl(listConf, taskAttemptID))) {
+                    while (reader.nextKeyValue()) {
+                        FileListData file = new FileListData(reader.getCurrentValue().toRecord());
+                        if (file.isDir()) {
+                            continue;
+                        }
+                        SizeClass sizeClass = sizeClasses[SizeClass.of(file.getFileSize())];
+                        sizeClass.add(file, samples, random);
+                        layout.add(sizeClass.index, file.getFileSize());
+                    }
+                }
+            }
+        } finally {
+            FileUtil.fullyDelete(stagingDirectory);
+        }
+        long files = 0;
+        long bytes = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            files += sizeClass.files;
+            bytes += sizeClass.bytes;
+        }
+        System.out.printf("Listed %d files, %.3f GB in %d splits in %.1f s%n", files, bytes / GIGABYTE, splits.size(),
+                          CopyHarness.seconds(listNanos));
+        if (files == 0) {
+            return;
+        }
+
+        Configuration sinkConf = CopyHarness.getSinkConfiguration(options);
+        warmUp(sinkConf, sizeClasses);
+        long sampleBytesLimit = (long) (options.getDouble("sample-mb", 1024) * MEGABYTE);
+        for (SizeClass sizeClass : sizeClasses) {
+            if (sizeClass.files > 0) {
+                sizeClass.measure(sinkConf, sampleBytesLimit);
+            }
+        }
+        report(sizeClasses, layouts, listNanos, FileListInputFormat.DYNAMIC_STRATEGY.equals(strategy));
+    }
+
+    /**
+     * Copies some of the small samples so that the code of the copy is compiled before it is measured.
+     */
+    private void warmUp(Configuration sinkConf, SizeClass[] sizeClasses) throws Exception {
+        List<FileListData> files = new ArrayList<>();
+        int limit = options.getInt("warm-up-files", 32);
+        for (SizeClass sizeClass : sizeClasses) {
+            for (FileListData file : sizeClass.samples) {
+                if (files.size() < limit && file.getFileSize() <= WARM_UP_MAX_SIZE) {
+                    files.add(file);
+                }
+            }
+        }
+        copy(new FileCopyRecordWriter(sinkConf, new InMemoryDestination(false)), files);
+    }
+
+    private static CopyMetrics copy(FileCopyRecordWriter writer, List<FileListData> files) throws Exception {
+        try {
+            for (FileListData file : files) {
+                writer.write(NullWritable.get(), file);
+            }
+        } finally {
+            writer.close(null);
+        }
+        return writer.getMetrics();
+    }
+
+    private void report(SizeClass[] sizeClasses, List<SplitLayout> layouts, long listNanos, boolean dynamic) {
+        long files = 0;
+        long bytes = 0;
+        long sampledFiles = 0;
+        long sampledBytes = 0;
+        double outputBytes = 0;
+        double cpuNanos = 0;
+        System.out.printf("%n  %-17s %10s %10s %8s %8s %10s%n", "size", "files", "GB", "sampled", "ratio", "MB/s/core");
+        for (SizeClass sizeClass : sizeClasses) {
+            if (sizeClass.files == 0) {
+                continue;
+            }
+            files += sizeClass.files;
+            bytes += sizeClass.bytes;
+            sampledFiles += sizeClass.sampledFiles;
+            sampledBytes += sizeClass.sampledBytes;
+            outputBytes += sizeClass.getOutputBytes();
+            cpuNanos += sizeClass.getCpuNanos();
+            double ratio = sizeClass.sampledBytes == 0 ? 0.0
+                    : (double) sizeClass.sampledOutputBytes / sizeClass.sampledBytes;
+            double perCore = sizeClass.sampledCpuNanos == 0 ? 0.0
+                    : sizeClass.sampledBytes / MEGABYTE / CopyHarness.seconds(sizeClass.sampledCpuNanos);
+            System.out.printf("  %-17s %10d %10.3f %8d %8.3f %10.1f%n", sizeClass.getLabel(), sizeClass.files,
+                              sizeClass.bytes / GIGABYTE, sizeClass.sampledFiles, ratio, perCore);
+        }
+        double cpuSeconds = cpuNanos / TimeUnit.SECONDS.toNanos(1);
+        System.out.printf("  sampled %d files, %.1f%% of the bytes%n", sampledFiles,
+                          bytes == 0 ? 100.0 : 100.0 * sampledBytes / bytes);
+
+        // the longest task bounds the run however many cores there are
+        double longestTaskSeconds = 0;
+        int minFiles = Integer.MAX_VALUE;
+        int maxFiles = 0;
+        long minBytes = Long.MAX_VALUE;
+        long maxBytes = 0;
+        for (SplitLayout layout : layouts) {
+            minFiles = Math.min(minFiles, layout.files);
+            maxFiles = Math.max(maxFiles, layout.files);
+            minBytes = Math.min(minBytes, layout.bytes);
+            maxBytes = Math.max(maxBytes, layout.bytes);
+            longestTaskSeconds = Math.max(longestTaskSeconds, layout.getCpuSeconds(sizeClasses));
+        }
+        if (dynamic) {
+            // tasks claim chunks of files, so only the largest file can hold one up
+            longestTaskSeconds = 0;
+            for (SizeClass sizeClass : sizeClasses) {
+                longestTaskSeconds = Math.max(longestTaskSeconds, sizeClass.getCpuSeconds(1, sizeClass.maxSize));
+            }
+            System.out.printf("%nSplits: %d tasks claim chunks of files, largest file %.1f s of CPU%n", layouts.size(),
+                              longestTaskSeconds);
+        } else {
+            System.out.printf("%nSplits: %d, %d to %d files, %.3f to %.3f GB, longest %.1f s of CPU%n", layouts.size(),
+                              minFiles, maxFiles, minBytes / GIGABYTE, maxBytes / GIGABYTE, longestTaskSeconds);
+        }
+
+        System.out.printf("Output: %.3f GB, %.3f of the input%n", outputBytes / GIGABYTE,
+                          bytes == 0 ? 0.0 : outputBytes / bytes);
+        System.out.printf("CPU: %.2f core hours (%.0f s), %.1f MB/s of input per core%n", cpuSeconds / 3600,
+                          cpuSeconds, cpuSeconds == 0 ? 0.0 : bytes / MEGABYTE / cpuSeconds);
+
+        int executorCores = options.getInt("executor-cores", 4);
+        double bandwidth = options.getDouble("bandwidth-mbps", 0) * MEGABYTE;
+        int maxExecutors = (layouts.size() + executorCores - 1) / executorCores;
+        int saturatingExecutors = 0;
+        if (bandwidth > 0 && outputBytes > 0) {
+            int cores = (int) Math.ceil(cpuSeconds * bandwidth / outputBytes);
+            saturatingExecutors = Math.max(1, (cores + executorCores - 1) / executorCores);
+            System.out.printf("Bandwidth: %.0f MB/s is kept busy by %d cores, %d executors of %d cores%n",
+                              bandwidth / MEGABYTE, cores, saturatingExecutors, executorCores);
+            if (cores > layouts.size()) {
+                System.out.printf("  only %d tasks run at once, --files-per-split=%d gives every core a split%n",
+                                  layouts.size(), Math.max(1, (int) (files / cores)));
+            }
+        }
+
+        // powers of 2 up to the executors that run every split at once
+        int largest = Math.max(maxExecutors, saturatingExecutors);
+        SortedSet<Integer> executorCounts = new TreeSet<>();
+        for (int executors = 1; executors < largest; executors *= 2) {
+            executorCounts.add(executors);
+        }
+        executorCounts.add(Math.max(1, largest));
+        if (saturatingExecutors > 0) {
+            executorCounts.add(saturatingExecutors);
+        }
+        System.out.printf("%n  %9s %10s  %s%n", "executors", "run time", "bound by");
+        for (int executors : executorCounts) {
+            printRunTime(executors, executorCores, layouts.size(), cpuSeconds, longestTaskSeconds, outputBytes,
+                         bandwidth, listNanos, executors == saturatingExecutors);
+        }
+    }
+
+    private static void printRunTime(int executors, int executorCores, int tasks, double cpuSeconds,
+                                     double longestTaskSeconds, double outputBytes, double bandwidth, long listNanos,
+                                     boolean saturating) {
+        int cores = Math.min(executors * executorCores, tasks);
+        double seconds = cpuSeconds / cores;
+        String bound = "cpu";
+        if (longestTaskSeconds > seconds) {
+            seconds = longestTaskSeconds;
+            bound = "longest task";
+        }
+        if (bandwidth > 0 && outputBytes / bandwidth > seconds) {
+            seconds = outputBytes / bandwidth;
+            bound = "bandwidth";
+        }
+        // the source lists the tree before any task starts
+        seconds += CopyHarness.seconds(listNanos);
+        System.out.printf("  %9d %10s  %s%s%n", executors, formatDuration(seconds), bound,
+                          saturating ? ", saturates the bandwidth" : "");
+    }
+
+    private static String formatDuration(double seconds) {
+        long total = (long) Math.ceil(seconds);
+        return String.format("%d:%02d:%02d", total / 3600, total / 60 % 60, total % 60);
+    }
+
+    private static long getProcessCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    /**
+     * The files of a range of sizes, with a random sample of them and what copying the sample took.
+     */
+    private static class SizeClass {
+        private final int index;
+        private final List<FileListData> samples = new ArrayList<>();
+        private long files;
+        private long bytes;
+        private long maxSize;
+        private long sampledFiles;
+        private long sampledBytes;
+        private long sampledOutputBytes;
+        private long sampledCpuNanos;
+
+        SizeClass(int index) {
+            this.index = index;
+        }
+
+        /**
+         * @return The class of files of the size: 0 for empty files, and i for sizes from 4^(i-1) to 4^i - 1.
+         */
+        static int of(long size) {
+            return size == 0 ? 0 : 1 + (63 - Long.numberOfLeadingZeros(size)) / 2;
+        }
+
+        /**
+         * Adds the file and keeps it in the sample with the same chance as every file before it.
+         */
+        void add(FileListData file, int sampleSize, Random random) {
+            files++;
+            bytes += file.getFileSize();
+            maxSize = Math.max(maxSize, file.getFileSize());
+            if (samples.size() < sampleSize) {
+                samples.add(file);
+            } else {
+                long slot = (long) (random.nextDouble() * files);
+                if (slot < sampleSize) {
+                    samples.set((int) slot, file);
+                }
+            }
+        }
+
+        void measure(Configuration sinkConf, long bytesLimit) throws Exception {
+            // the sample is in random order, so a prefix of it is a random sample as well
+            Collections.shuffle(samples, new Random(index));
+            List<FileListData> files = new ArrayList<>();
+            long bytes = 0;
+            for (FileListData file : samples) {
+                if (!files.isEmpty() && bytes + file.getFileSize() > bytesLimit) {
+                    break;
+                }
+                files.add(file);
+                bytes += file.getFileSize();
+            }
+            // reading the keys and the rest of the setup is once per task, not per file
+            FileCopyRecordWriter writer = new FileCopyRecordWriter(sinkConf, new InMemoryDestination(false));
+            long startNanos = getProcessCpuNanos();
+            CopyMetrics metrics = copy(writer, files);
+            sampledCpuNanos = getProcessCpuNanos() - startNanos;
+            if (metrics.getFailedFiles() > 0) {
+                System.out.printf("%d of the %d sampled files of %s failed to copy%n", metrics.getFailedFiles(),
+                                  files.size(), getLabel());
+            }
+            sampledFiles = metrics.getFiles() - metrics.getFailedFiles();
+            sampledBytes = metrics.getBytesIn();
+            sampledOutputBytes = metrics.getBytesOut();
+        }
+
+        /**
+         * @return The number of sampled bytes that a byte of this class stands for, or of sampled files that a file
+         * stands for if they are empty.
+         */
+        private double getScale(long files, long bytes) {
+            if (sampledBytes > 0) {
+                return (double) bytes / sampledBytes;
+            }
+            return sampledFiles == 0 ? 0.0 : (double) files / sampledFiles;
+        }
+
+        double getOutputBytes() {
+            return sampledOutputBytes * getScale(files, bytes);
+        }
+
+        double getCpuNanos() {
+            return sampledCpuNanos * getScale(files, bytes);
+        }
+
+        double getCpuSeconds(long files, long bytes) {
+            return sampledCpuNanos * getScale(files, bytes) / TimeUnit.SECONDS.toNanos(1);
+        }
+
+        String getLabel() {
+            if (index == 0) {
+                return "0 B";
+            }
+            String upper = index == SIZE_CLASSES - 1 ? "" : formatSize(1L << (2 * index));
+            return formatSize(1L << (2 * (index - 1))) + " - " + upper;
+        }
+
+        private static String formatSize(long size) {
+            String[] units = {"B", "KB", "MB", "GB", "TB", "PB", "EB"};
+            int unit = 0;
+            while (size >= 1024 && size % 1024 == 0) {
+                size /= 1024;
+                unit++;
+            }
+            return size + " " + units[unit];
+        }
+    }
+
+    /**
+     * The files and bytes of a split, by size class.
+     */
+    private static class SplitLayout {
+        private final long[] filesByClass = new long[SIZE_CLASSES];
+        private final long[] bytesByClass = new long[SIZE_CLASSES];
+        private int files;
+        private long bytes;
+
+        void add(int sizeClass, long size) {
+            filesByClass[sizeClass]++;
+            bytesByClass[sizeClass] += size;
+            files++;
+            bytes += size;
+        }
+
+        double getCpuSeconds(SizeClass[] sizeClasses) {
+            double seconds = 0;
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+                if (filesByClass[i] > 0) {
+                    seconds += sizeClasses[i].getCpuSeconds(filesByClass[i], bytesByClass[i]);
+                }
+            }
+            return seconds;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf.harness;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Caps the bandwidth of a simulated link. Callers that share a limiter share its bandwidth, transfers are
+ * served in the order they ask and a caller is blocked until its bytes would have gone through. Unused
+ * bandwidth is not saved up, so an idle link doesn't allow a burst afterwards.
+ */
+public class RateLimiter {
+    private static final RateLimiter UNLIMITED = new RateLimiter(0);
+
+    private final double nanosPerByte;
+    private long nextFreeNanos;
+
+    /**
+     * @param megabytesPerSecond The bandwidth of the link, or 0 for no limit.
+     */
+    public RateLimiter(double megabytesPerSecond) {
+        this.nanosPerByte = megabytesPerSecond <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / (megabytesPerSecond * 1024 * 1024);
+    }
+
+    public static RateLimiter unlimited() {
+        return UNLIMITED;
+    }
+
+    public boolean isUnlimited() {
+        return nanosPerByte == 0;
+    }
+
+    /**
+     * Blocks until the given number of bytes has been transferred.
+     */
+    public void acquire(long bytes) {
+        sleepUntil(reserve(bytes));
+    }
+
+    /**
+     * Books the link for the given number of bytes without waiting.
+     *
+     * @return The {@link System#nanoTime()} at which the transfer is done.
+     */
+    public long reserve(long bytes) {
+        long now = System.nanoTime();
+        if (nanosPerByte == 0 || bytes <= 0) {
+            return now;
+        }
+        synchronized (this) {
+            long start = Math.max(now, nextFreeNanos);
+            nextFreeNanos = start + (long) (bytes * nanosPerByte);
+            return nextFreeNanos;
+        }
+    }
+
+    /**
+     * Sleeps for a simulated round trip.
+     */
+    public static void delay(long nanos) {
+        if (nanos > 0) {
+            sleepUntil(System.nanoTime() + nanos);
+        }
+    }
+
+    public static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf.harness;
+
+import io.cdap.plugin.file.ingest.destination.Destination;
+import io.cdap.plugin.file.ingest.destination.DestinationWriter;
+import io.cdap.plugin.file.ingest.destination.ObjectStat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Makes a {@link Destination} behave like a remote object store over a slow link, modelled on GCS uploads. In a
+ * resumable upload, starting the upload, every full chunk and finalizing the object each take a round trip. An
+ * object that is expected to be small is sent in a single request when it is committed, like
+ * {@code GCSDestination} does. Uploads share the bandwidth of the link and each one is also capped on its own,
+ * which is what limits a single stream over a long fat network.
+ */
+public class ThrottledDestination implements Destination {
+    private final Destination delegate;
+    private final long requestLatencyNanos;
+    private final RateLimiter linkLimiter;
+    private final double streamMegabytesPerSecond;
+    private final int chunkSize;
+    private final long singleRequestSize;
+
+    /**
+     * @param delegate                 The destination that stores the objects.
+     * @param requestLatencyMillis     The round trip of a request.
+     * @param linkLimiter              The bandwidth shared with other uploads.
+     * @param streamMegabytesPerSecond The bandwidth of a single upload, or 0 for no limit.
+     * @param chunkSize                The bytes sent per request of a resumable upload.
+     * @param singleRequestSize        Objects expected to be up to this size are sent in a single request.
+     */
+    public ThrottledDestination(Destination delegate, double requestLatencyMillis, RateLimiter linkLimiter,
+                                double streamMegabytesPerSecond, int chunkSize, long singleRequestSize) {
+        this.delegate = delegate;
+        this.requestLatencyNanos = ThrottledFileSystem.toNanos(requestLatencyMillis);
+        this.linkLimiter = linkLimiter;
+        this.streamMegabytesPerSecond = streamMegabytesPerSecond;
+        this.chunkSize = chunkSize;
+        this.singleRequestSize = singleRequestSize;
+    }
+
+    @Override
+    public DestinationWriter open(String name, String contentType, Map<String, String> metadata) throws IOException {
+        return open(name, contentType, metadata, -1);
+    }
+
+    @Override
+    public DestinationWriter open(String name, String contentType, Map<String, String> metadata,
+                                  long expectedSize) throws IOException {
+        boolean singleRequest = expectedSize >= 0 && expectedSize <= singleRequestSize;
+        if (!singleRequest) {
+            RateLimiter.delay(requestLatencyNanos);
+        }
+        return new ThrottledWriter(delegate.open(name, contentType, metadata, expectedSize), singleRequest);
+    }
+
+    @Nullable
+    @Override
+    public ObjectStat stat(String name) throws IOException {
+        RateLimiter.delay(requestLatencyNanos);
+        return delegate.stat(name);
+    }
+
+    @Override
+    public Iterator<ObjectStat> list(String prefix) throws IOException {
+        RateLimiter.delay(requestLatencyNanos);
+        return delegate.list(prefix);
+    }
+
+    @Nullable
+    @Override
+    public InputStream read(String name) throws IOException {
+        RateLimiter.delay(requestLatencyNanos);
+        return delegate.read(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private class ThrottledWriter implements DestinationWriter {
+        private final DestinationWriter writer;
+        private final RateLimiter streamLimiter = new RateLimiter(streamMegabytesPerSecond);
+        private boolean singleRequest;
+        private long unsentBytes;
+
+        ThrottledWriter(DestinationWriter writer, boolean singleRequest) {
+            this.writer = writer;
+            this.singleRequest = singleRequest;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int count = writer.write(src);
+            unsentBytes += count;
+            if (singleRequest) {
+                if (unsentBytes <= singleRequestSize) {
+                    return count;
+                }
+                // an object larger than expected continues as a resumable upload
+                singleRequest = false;
+                RateLimiter.delay(requestLatencyNanos);
+            }
+            // like the GCS client, a request is only made once a whole chunk is buffered
+            while (unsentBytes >= chunkSize) {
+                send(chunkSize);
+                unsentBytes -= chunkSize;
+            }
+            return count;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            send(unsentBytes);
+            unsentBytes = 0;
+            writer.commit();
+        }
+
+        @Override
+        public void abort() {
+            writer.abort();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return writer.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        private void send(long bytes) {
+            RateLimiter.delay(requestLatencyNanos);
+            // the chunk is done once both the stream and the shared link have carried it
+            RateLimiter.sleepUntil(Math.max(streamLimiter.reserve(bytes), linkLimiter.reserve(bytes)));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.file.ingest.perf.harness;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The local filesystem behind a simulated remote one, e.g. a NameNode and DataNodes on another network.
+ * Every metadata call and every open pays a round trip, and reads share a bandwidth cap. Paths are the
+ * local paths under the {@code throttled} scheme, e.g. {@code throttled:///tmp/data}.
+ *
+ * It is registered for the scheme through the {@link java.util.ServiceLoader}, so it is found by any
+ * {@link Configuration}, including the one the sink keeps for the source filesystems. For the same reason
+ * it is configured statically with {@link #configure}.
+ */
+public class ThrottledFileSystem extends FileSystem {
+    public static final String SCHEME = "throttled";
+    private static final URI NAME = URI.create(SCHEME + ":///");
+
+    private static volatile long metadataLatencyNanos;
+    private static volatile long openLatencyNanos;
+    private static volatile RateLimiter readLimiter = RateLimiter.unlimited();
+
+    private final RawLocalFileSystem local = new RawLocalFileSystem();
+
+    /**
+     * @param metadataLatencyMillis  The round trip of a status or listing call.
+     * @param openLatencyMillis      The round trip of opening a file.
+     * @param readMegabytesPerSecond The bandwidth shared by all reads, or 0 for no limit.
+     */
+    public static void configure(double metadataLatencyMillis, double openLatencyMillis,
+                                 double readMegabytesPerSecond) {
+        metadataLatencyNanos = toNanos(metadataLatencyMillis);
+        openLatencyNanos = toNanos(openLatencyMillis);
+        readLimiter = new RateLimiter(readMegabytesPerSecond);
+    }
+
+    static long toNanos(double millis) {
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Override
+    public void initialize(URI name, Configuration conf) throws IOException {
+        super.initialize(name, conf);
+        local.initialize(URI.create("file:///"), conf);
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public URI getUri() {
+        return NAME;
+    }
+
+    @Override
+    public FSDataInputStream open(Path f, int bufferSize) throws IOException {
+        RateLimiter.delay(openLatencyNanos);
+        FSDataInputStream in = local.open(toLocal(f), bufferSize);
+        RateLimiter limiter = readLimiter;
+        return limiter.isUnlimited() ? in : new FSDataInputStream(new ThrottledInputStream(in, limiter));
+    }
+
+    @Override
+    public FSDataOutputStream create(Path f, FsPermission permission, boolean overwrite, int bufferSize,
+                                     short replication, long blockSize, Progressable progress) throws IOException {
+        return local.create(toLocal(f), permission, overwrite, bufferSize, replication, blockSize, progress);
+    }
+
+    @Override
+    public FSDataOutputStream append(Path f, int bufferSize, Progressable progress) throws IOException {
+        return local.append(toLocal(f), bufferSize, progress);
+    }
+
+    @Override
+    public boolean rename(Path src, Path dst) throws IOException {
+        RateLimiter.delay(metadataLatencyNanos);
+        return local.rename(toLocal(src), toLocal(dst));
+    }
+
+    @Override
+    public boolean delete(Path f, boolean recursive) throws IOException {
+        RateLimiter.delay(metadataLatencyNanos);
+        return local.delete(toLocal(f), recursive);
+    }
+
+    @Override
+    public FileStatus[] listStatus(Path f) throws IOException {
+        RateLimiter.delay(metadataLatencyNanos);
+        FileStatus[] statuses = local.listStatus(toLocal(f));
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = toThrottled(statuses[i]);
+        }
+        return statuses;
+    }
+
+    @Override
+    public void setWorkingDirectory(Path dir) {
+        local.setWorkingDirectory(toLocal(dir));
+    }
+
+    @Override
+    public Path getWorkingDirectory() {
+        return toThrottled(local.getWorkingDirectory());
+    }
+
+    @Override
+    public boolean mkdirs(Path f, FsPermission permission) throws IOException {
+        RateLimiter.delay(metadataLatencyNanos);
+        return local.mkdirs(toLocal(f), permission);
+    }
+
+    @Override
+    public FileStatus getFileStatus(Path f) throws IOException {
+        RateLimiter.delay(metadataLatencyNanos);
+        return toThrottled(local.getFileStatus(toLocal(f)));
+    }
+
+    private static Path toLocal(Path path) {
+        return new Path("file", null, path.toUri().getPath());
+    }
+
+    private static Path toThrottled(Path path) {
+        return new Path(SCHEME, null, path.toUri().getPath());
+    }
+
+    private static FileStatus toThrottled(FileStatus status) throws IOException {
+        // copying reads the permissions while the path is still local
+        FileStatus copy = new FileStatus(status);
+        copy.setPath(toThrottled(status.getPath()));
+        return copy;
+    }
+}
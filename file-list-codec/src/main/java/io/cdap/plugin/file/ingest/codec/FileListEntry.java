@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.codec;
+
+/**
+ * A file of the listing, as the FileList source emits it and the sinks read it.
+ */
+public interface FileListEntry {
+
+    String getFileName();
+
+    String getFullPath();
+
+    String getRelativePath();
+
+    String getHostURI();
+
+    /**
+     * @return The size of the file when it was listed, or {@link FileListRecordCodec#UNKNOWN}.
+     */
+    long getFileSize();
+
+    boolean isDir();
+
+    /**
+     * @return The modification time of the file when it was listed, or {@link FileListRecordCodec#UNKNOWN}.
+     */
+    long getModificationTime();
+
+    /**
+     * @return The block size of the file in the source filesystem, or {@link FileListRecordCodec#UNKNOWN}.
+     */
+    long getBlockSize();
+
+    /**
+     * @return The permission of the file in symbolic notation, e.g. rw-r--r--, or null if the listing didn't
+     * have it.
+     */
+    String getPermission();
+}
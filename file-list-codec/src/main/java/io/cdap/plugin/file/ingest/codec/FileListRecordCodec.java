@@ -0,0 +1,386 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.codec;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts files of the listing to and from the records that go from the FileList source to the sinks, and to and
+ * from their serialized form in splits.
+ *
+ * The schemas are built once, so a conversion only allocates the record and its values. A listing can also be
+ * sent in the compact form, a record with a single field that holds the serialized file, which is smaller to
+ * shuffle and cheaper to convert than a record with a field per value. {@link #fromRecord(StructuredRecord)} reads
+ * either form.
+ */
+public final class FileListRecordCodec {
+
+    public static final String FILE_NAME = "fileName";
+    public static final String FULL_PATH = "fullPath";
+    public static final String RELATIVE_PATH = "relativePath";
+    public static final String HOST_URI = "hostURI";
+    public static final String FILE_SIZE = "fileSize";
+    public static final String IS_DIR = "isDir";
+    public static final String MODIFICATION_TIME = "modificationTime";
+    public static final String BLOCK_SIZE = "blockSize";
+    public static final String PERMISSION = "permission";
+    public static final String LISTING = "listing";
+
+    /**
+     * The value of the status fields when the listing didn't provide them.
+     */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * The schema with a field per value. The status fields are nullable since older listings don't have them.
+     */
+    public static final Schema SCHEMA = Schema.recordOf(
+            "metadata",
+            Schema.Field.of(FILE_NAME, Schema.of(Schema.Type.STRING)),
+            Schema.Field.of(FULL_PATH, Schema.of(Schema.Type.STRING)),
+            Schema.Field.of(RELATIVE_PATH, Schema.of(Schema.Type.STRING)),
+            Schema.Field.of(HOST_URI, Schema.of(Schema.Type.STRING)),
+            Schema.Field.of(FILE_SIZE, Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+            Schema.Field.of(IS_DIR, Schema.nullableOf(Schema.of(Schema.Type.BOOLEAN))),
+            Schema.Field.of(MODIFICATION_TIME, Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+            Schema.Field.of(BLOCK_SIZE, Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+            Schema.Field.of(PERMISSION, Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+    /**
+     * The schema of the compact form, see {@link #encode(FileListEntry)}.
+     */
+    public static final Schema COMPACT_SCHEMA = Schema.recordOf(
+            "compactMetadata",
+            Schema.Field.of(LISTING, Schema.of(Schema.Type.BYTES)));
+
+    // the characters of a decoded string before it is copied into the string, reused by the records of a thread
+    private static final ThreadLocal<char[]> CHARS = ThreadLocal.withInitial(() -> new char[256]);
+
+    private FileListRecordCodec() {
+    }
+
+    /**
+     * @return A record of {@link #SCHEMA} with the values of the file.
+     */
+    public static StructuredRecord toRecord(FileListEntry entry) {
+        return StructuredRecord.builder(SCHEMA)
+                .set(FILE_NAME, entry.getFileName())
+                .set(FULL_PATH, entry.getFullPath())
+                .set(RELATIVE_PATH, entry.getRelativePath())
+                .set(HOST_URI, entry.getHostURI())
+                .set(FILE_SIZE, toNullable(entry.getFileSize()))
+                .set(IS_DIR, entry.isDir())
+                .set(MODIFICATION_TIME, toNullable(entry.getModificationTime()))
+                .set(BLOCK_SIZE, toNullable(entry.getBlockSize()))
+                .set(PERMISSION, entry.getPermission())
+                .build();
+    }
+
+    /**
+     * @return A record of {@link #COMPACT_SCHEMA} that holds the serialized file.
+     */
+    public static StructuredRecord toCompactRecord(FileListEntry entry) {
+        return StructuredRecord.builder(COMPACT_SCHEMA)
+                .set(LISTING, encode(entry))
+                .build();
+    }
+
+    /**
+     * @param record A record of {@link #SCHEMA}, of {@link #COMPACT_SCHEMA}, or of a schema with more fields that
+     *               contains either of them.
+     * @return The file of the record.
+     */
+    public static FileListEntry fromRecord(StructuredRecord record) {
+        Object listing = record.getSchema().getField(LISTING) == null ? null : record.get(LISTING);
+        if (listing != null) {
+            // records that were shuffled may come back with a ByteBuffer
+            if (listing instanceof ByteBuffer) {
+                ByteBuffer buffer = (ByteBuffer) listing;
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.duplicate().get(bytes);
+                return decode(bytes);
+            }
+            return decode((byte[]) listing);
+        }
+        Boolean isDir = record.get(IS_DIR);
+        return new Entry(record.get(FILE_NAME), record.get(FULL_PATH), record.get(RELATIVE_PATH),
+                         record.get(HOST_URI), getLong(record, FILE_SIZE), isDir != null && isDir,
+                         getLong(record, MODIFICATION_TIME), getLong(record, BLOCK_SIZE), record.get(PERMISSION));
+    }
+
+    /**
+     * Serializes the file in the form that splits and compact records carry. This is the same as
+     * {@link #encode(FileListEntry)}, which doesn't need a stream.
+     */
+    public static void write(FileListEntry entry, DataOutput dataOutput) throws IOException {
+        dataOutput.writeUTF(entry.getFileName());
+        dataOutput.writeUTF(entry.getFullPath());
+        dataOutput.writeLong(entry.getFileSize());
+        dataOutput.writeBoolean(entry.isDir());
+        dataOutput.writeUTF(entry.getRelativePath());
+        dataOutput.writeUTF(entry.getHostURI());
+        dataOutput.writeLong(entry.getModificationTime());
+        dataOutput.writeLong(entry.getBlockSize());
+        // an empty permission stands for none, symbolic permissions are never empty
+        dataOutput.writeUTF(entry.getPermission() == null ? "" : entry.getPermission());
+    }
+
+    /**
+     * Deserializes a file written by {@link #write(FileListEntry, DataOutput)}.
+     */
+    public static FileListEntry read(DataInput dataInput) throws IOException {
+        String fileName = dataInput.readUTF();
+        String fullPath = dataInput.readUTF();
+        long fileSize = dataInput.readLong();
+        boolean isDir = dataInput.readBoolean();
+        String relativePath = dataInput.readUTF();
+        String hostURI = dataInput.readUTF();
+        long modificationTime = dataInput.readLong();
+        long blockSize = dataInput.readLong();
+        String permission = dataInput.readUTF();
+        return new Entry(fileName, fullPath, relativePath, hostURI, fileSize, isDir, modificationTime, blockSize,
+                         permission.isEmpty() ? null : permission);
+    }
+
+    /**
+     * @return The file serialized by {@link #write(FileListEntry, DataOutput)}.
+     */
+    public static byte[] encode(FileListEntry entry) {
+        // the exact size is computed first, so that the array is the only allocation
+        String permission = entry.getPermission() == null ? "" : entry.getPermission();
+        int size = getUTFLength(entry.getFileName()) + getUTFLength(entry.getFullPath())
+                + getUTFLength(entry.getRelativePath()) + getUTFLength(entry.getHostURI()) + getUTFLength(permission)
+                + 3 * Long.BYTES + 1;
+        byte[] bytes = new byte[size];
+        int position = putUTF(bytes, 0, entry.getFileName());
+        position = putUTF(bytes, position, entry.getFullPath());
+        position = putLong(bytes, position, entry.getFileSize());
+        bytes[position++] = (byte) (entry.isDir() ? 1 : 0);
+        position = putUTF(bytes, position, entry.getRelativePath());
+        position = putUTF(bytes, position, entry.getHostURI());
+        position = putLong(bytes, position, entry.getModificationTime());
+        position = putLong(bytes, position, entry.getBlockSize());
+        putUTF(bytes, position, permission);
+        return bytes;
+    }
+
+    /**
+     * @return The file of bytes returned by {@link #encode(FileListEntry)}.
+     */
+    public static FileListEntry decode(byte[] bytes) {
+        try {
+            Decoder decoder = new Decoder(bytes);
+            String fileName = decoder.getUTF();
+            String fullPath = decoder.getUTF();
+            long fileSize = decoder.getLong();
+            boolean isDir = decoder.getBoolean();
+            String relativePath = decoder.getUTF();
+            String hostURI = decoder.getUTF();
+            long modificationTime = decoder.getLong();
+            long blockSize = decoder.getLong();
+            String permission = decoder.getUTF();
+            return new Entry(fileName, fullPath, relativePath, hostURI, fileSize, isDir, modificationTime, blockSize,
+                             permission.isEmpty() ? null : permission);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid file listing of " + bytes.length + " bytes", e);
+        }
+    }
+
+    /**
+     * @return The length of the string in the modified UTF-8 of {@link DataOutput#writeUTF(String)}, with the two
+     * bytes of its length.
+     */
+    private static int getUTFLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("Can't encode a string of " + length + " bytes: " + value);
+        }
+        return length + 2;
+    }
+
+    private static int putUTF(byte[] bytes, int position, String value) {
+        int length = getUTFLength(value) - 2;
+        bytes[position++] = (byte) (length >>> 8);
+        bytes[position++] = (byte) length;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                bytes[position++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+
+    private static int putLong(byte[] bytes, int position, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[position++] = (byte) (value >>> shift);
+        }
+        return position;
+    }
+
+    private static Long toNullable(long value) {
+        return value == UNKNOWN ? null : value;
+    }
+
+    private static long getLong(StructuredRecord record, String fieldName) {
+        if (record.getSchema().getField(fieldName) == null) {
+            return UNKNOWN;
+        }
+        Long value = record.get(fieldName);
+        return value == null ? UNKNOWN : value;
+    }
+
+    /**
+     * Reads the values of {@link #encode(FileListEntry)} in order, the way {@link DataInput} would without the
+     * buffers of a stream.
+     */
+    private static final class Decoder {
+        private final byte[] bytes;
+        private int position;
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long getLong() {
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        boolean getBoolean() {
+            return bytes[position++] != 0;
+        }
+
+        String getUTF() {
+            int length = ((bytes[position] & 0xFF) << 8) | (bytes[position + 1] & 0xFF);
+            position += 2;
+            int end = position + length;
+            if (end > bytes.length) {
+                throw new ArrayIndexOutOfBoundsException(end);
+            }
+            char[] chars = CHARS.get();
+            if (chars.length < length) {
+                chars = new char[length];
+                CHARS.set(chars);
+            }
+            int count = 0;
+            while (position < end) {
+                int b = bytes[position++] & 0xFF;
+                if (b < 0x80) {
+                    chars[count++] = (char) b;
+                } else if (b < 0xE0) {
+                    chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[position++] & 0x3F));
+                } else {
+                    chars[count++] = (char) (((b & 0x0F) << 12) | ((bytes[position++] & 0x3F) << 6)
+                            | (bytes[position++] & 0x3F));
+                }
+            }
+            return new String(chars, 0, count);
+        }
+    }
+
+    private static final class Entry implements FileListEntry {
+        private final String fileName;
+        private final String fullPath;
+        private final String relativePath;
+        private final String hostURI;
+        private final long fileSize;
+        private final boolean isDir;
+        private final long modificationTime;
+        private final long blockSize;
+        private final String permission;
+
+        Entry(String fileName, String fullPath, String relativePath, String hostURI, long fileSize, boolean isDir,
+              long modificationTime, long blockSize, String permission) {
+            this.fileName = fileName;
+            this.fullPath = fullPath;
+            this.relativePath = relativePath;
+            this.hostURI = hostURI;
+            this.fileSize = fileSize;
+            this.isDir = isDir;
+            this.modificationTime = modificationTime;
+            this.blockSize = blockSize;
+            this.permission = permission;
+        }
+
+        @Override
+        public String getFileName() {
+            return fileName;
+        }
+
+        @Override
+        public String getFullPath() {
+            return fullPath;
+        }
+
+        @Override
+        public String getRelativePath() {
+            return relativePath;
+        }
+
+        @Override
+        public String getHostURI() {
+            return hostURI;
+        }
+
+        @Override
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        @Override
+        public boolean isDir() {
+            return isDir;
+        }
+
+        @Override
+        public long getModificationTime() {
+            return modificationTime;
+        }
+
+        @Override
+        public long getBlockSize() {
+            return blockSize;
+        }
+
+        @Override
+        public String getPermission() {
+            return permission;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest.codec;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class FileListRecordCodecTest {
+
+    private static final FileListEntry ENTRY = FileListRecordCodec.fromRecord(
+            StructuredRecord.builder(FileListRecordCodec.SCHEMA)
+                    .set(FileListRecordCodec.FILE_NAME, "fileA")
+                    .set(FileListRecordCodec.FULL_PATH, "/abc/fileA")
+                    .set(FileListRecordCodec.RELATIVE_PATH, "abc/fileA")
+                    .set(FileListRecordCodec.HOST_URI, "hdfs://hello.com/")
+                    .set(FileListRecordCodec.FILE_SIZE, 1234L)
+                    .set(FileListRecordCodec.IS_DIR, false)
+                    .set(FileListRecordCodec.MODIFICATION_TIME, 1574000000000L)
+                    .set(FileListRecordCodec.BLOCK_SIZE, 128L << 20)
+                    .set(FileListRecordCodec.PERMISSION, "rw-r-----")
+                    .build());
+
+    @Test
+    public void testRecordRoundTrip() {
+        StructuredRecord record = FileListRecordCodec.toRecord(ENTRY);
+        Assert.assertSame(FileListRecordCodec.SCHEMA, record.getSchema());
+        assertEntry(FileListRecordCodec.fromRecord(record));
+    }
+
+    @Test
+    public void testCompactRecordRoundTrip() {
+        StructuredRecord record = FileListRecordCodec.toCompactRecord(ENTRY);
+        Assert.assertSame(FileListRecordCodec.COMPACT_SCHEMA, record.getSchema());
+        assertEntry(FileListRecordCodec.fromRecord(record));
+
+        // records that were shuffled may hold a ByteBuffer instead of an array
+        byte[] bytes = record.get(FileListRecordCodec.LISTING);
+        StructuredRecord shuffled = StructuredRecord.builder(FileListRecordCodec.COMPACT_SCHEMA)
+                .set(FileListRecordCodec.LISTING, ByteBuffer.wrap(bytes))
+                .build();
+        assertEntry(FileListRecordCodec.fromRecord(shuffled));
+    }
+
+    @Test
+    public void testEncodeMatchesWrite() throws IOException {
+        // non ASCII names, a NUL and a surrogate pair take every branch of the modified UTF-8
+        String name = "donn\u00e9es-\u30d5\u30a1\u30a4\u30eb-\u0000-\ud83d\ude00";
+        FileListEntry entry = FileListRecordCodec.fromRecord(
+                StructuredRecord.builder(FileListRecordCodec.SCHEMA)
+                        .set(FileListRecordCodec.FILE_NAME, name)
+                        .set(FileListRecordCodec.FULL_PATH, "/abc/" + name)
+                        .set(FileListRecordCodec.RELATIVE_PATH, "abc/" + name)
+                        .set(FileListRecordCodec.HOST_URI, "hdfs://hello.com/")
+                        .build());
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        FileListRecordCodec.write(entry, new DataOutputStream(written));
+        byte[] encoded = FileListRecordCodec.encode(entry);
+        Assert.assertTrue(Arrays.equals(written.toByteArray(), encoded));
+
+        FileListEntry decoded = FileListRecordCodec.decode(encoded);
+        Assert.assertEquals(name, decoded.getFileName());
+        Assert.assertEquals("/abc/" + name, decoded.getFullPath());
+        FileListEntry read = FileListRecordCodec.read(new DataInputStream(new ByteArrayInputStream(encoded)));
+        Assert.assertEquals(name, read.getFileName());
+    }
+
+    @Test
+    public void testRecordWithoutStatus() {
+        Schema schema = Schema.recordOf(
+                "metadata",
+                Schema.Field.of(FileListRecordCodec.FILE_NAME, Schema.of(Schema.Type.STRING)),
+                Schema.Field.of(FileListRecordCodec.FULL_PATH, Schema.of(Schema.Type.STRING)),
+                Schema.Field.of(FileListRecordCodec.RELATIVE_PATH, Schema.of(Schema.Type.STRING)),
+                Schema.Field.of(FileListRecordCodec.HOST_URI, Schema.of(Schema.Type.STRING)));
+        StructuredRecord record = StructuredRecord.builder(schema)
+                .set(FileListRecordCodec.FILE_NAME, "fileA")
+                .set(FileListRecordCodec.FULL_PATH, "/abc/fileA")
+                .set(FileListRecordCodec.RELATIVE_PATH, "abc/fileA")
+                .set(FileListRecordCodec.HOST_URI, "hdfs://hello.com/")
+                .build();
+
+        FileListEntry entry = FileListRecordCodec.fromRecord(record);
+        Assert.assertEquals("/abc/fileA", entry.getFullPath());
+        Assert.assertEquals(FileListRecordCodec.UNKNOWN, entry.getFileSize());
+        Assert.assertFalse(entry.isDir());
+        Assert.assertEquals(FileListRecordCodec.UNKNOWN, entry.getModificationTime());
+        Assert.assertEquals(FileListRecordCodec.UNKNOWN, entry.getBlockSize());
+        Assert.assertNull(entry.getPermission());
+
+        // unknown values stay unknown through the other forms
+        StructuredRecord converted = FileListRecordCodec.toRecord(FileListRecordCodec.decode(
+                FileListRecordCodec.encode(entry)));
+        Assert.assertNull(converted.get(FileListRecordCodec.FILE_SIZE));
+        Assert.assertNull(converted.get(FileListRecordCodec.PERMISSION));
+    }
+
+    private static void assertEntry(FileListEntry entry) {
+        Assert.assertEquals("fileA", entry.getFileName());
+        Assert.assertEquals("/abc/fileA", entry.getFullPath());
+        Assert.assertEquals("abc/fileA", entry.getRelativePath());
+        Assert.assertEquals("hdfs://hello.com/", entry.getHostURI());
+        Assert.assertEquals(1234, entry.getFileSize());
+        Assert.assertFalse(entry.isDir());
+        Assert.assertEquals(1574000000000L, entry.getModificationTime());
+        Assert.assertEquals(128 << 20, entry.getBlockSize());
+        Assert.assertEquals("rw-r-----", entry.getPermission());
+    }
+}
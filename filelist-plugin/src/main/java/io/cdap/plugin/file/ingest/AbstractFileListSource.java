@@ -27,7 +27,14 @@ import io.cdap.cdap.etl.api.batch.BatchSourceContext;
 import io.cdap.plugin.common.ReferenceBatchSource;
 import io.cdap.plugin.common.ReferencePluginConfig;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.UUID;
+import javax.annotation.Nullable;
 
 /**
  * Abstract class for FileCopySource plugin. Extracts metadata of desired files
@@ -38,7 +45,10 @@ import org.apache.hadoop.io.NullWritable;
 public abstract class AbstractFileListSource<K extends FileListData>
         extends ReferenceBatchSource<NullWritable, K, StructuredRecord> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractFileListSource.class);
+    private static final String DEFAULT_STAGING_DIRECTORY = "/tmp/filelist-staging";
     private final AbstractFileMetadataSourceConfig config;
+    private Path stagingPath;
 
     protected AbstractFileListSource(AbstractFileMetadataSourceConfig config) {
         super(config);
@@ -70,6 +80,23 @@ public abstract class AbstractFileListSource<K extends FileListData>
         config.validate();
     }
 
+    /**
+     * Deletes the chunks of the dynamic copy strategy, the ones the tasks claimed and the ones they didn't get to,
+     * e.g. when the run failed.
+     */
+    @Override
+    public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+        super.onRunFinish(succeeded, context);
+        if (stagingPath == null) {
+            return;
+        }
+        try {
+            stagingPath.getFileSystem(new Configuration()).delete(stagingPath, true);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete staging directory {}", stagingPath, e);
+        }
+    }
+
     /**
      * Convert file metadata to StructuredRecord and emit.
      */
@@ -84,6 +111,19 @@ public abstract class AbstractFileListSource<K extends FileListData>
         FileListInputFormat.setSourcePaths(conf, config.sourcePaths);
         FileListInputFormat.setMaxSplitSize(conf, config.maxSplitSize);
         FileListInputFormat.setRecursiveCopy(conf, config.recursiveCopy.toString());
+        String copyStrategy = config.getCopyStrategy();
+        FileListInputFormat.setCopyStrategy(conf, copyStrategy);
+        if (FileListInputFormat.DYNAMIC_STRATEGY.equals(copyStrategy)) {
+            // a directory of its own for every run, so that runs of the same pipeline don't claim each other's chunks
+            Path stagingPath = new Path(config.stagingDirectory == null ? DEFAULT_STAGING_DIRECTORY
+                                                : config.stagingDirectory, UUID.randomUUID().toString());
+            try {
+                this.stagingPath = stagingPath.getFileSystem(conf).makeQualified(stagingPath);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(String.format("Invalid staging directory %s.", stagingPath), e);
+            }
+            FileListInputFormat.setStagingDirectory(conf, this.stagingPath.toString());
+        }
     }
 
     /**
@@ -102,6 +142,26 @@ public abstract class AbstractFileListSource<K extends FileListData>
         @Description("Whether or not to copy recursively")
         public Boolean recursiveCopy;
 
+        @Macro
+        @Nullable
+        @Description("How files are assigned to tasks. \"uniformsize\" assigns every split roughly the same number of "
+                + "bytes at planning time. \"dynamic\" writes the files as small chunks to the staging directory, "
+                + "from which tasks claim chunks until none are left, so fast tasks take over work from slow ones.")
+        public String copyStrategy;
+
+        @Macro
+        @Nullable
+        @Description("Directory on the default filesystem of the cluster to write the chunks of the dynamic copy "
+                + "strategy to. Every run uses a new subdirectory that is deleted when it finishes. "
+                + "Defaults to /tmp/filelist-staging.")
+        public String stagingDirectory;
+
+        @Nullable
+        @Description("The form of the records. \"fields\" emits a field per value of the file. \"compact\" emits "
+                + "a single field with the serialized file, which is smaller to shuffle and cheaper to convert. "
+                + "The sinks of this repository read either form.")
+        public String recordFormat;
+
         public AbstractFileMetadataSourceConfig(String name, String sourcePaths,
                                                 Integer maxSplitSize) {
             super(name);
@@ -115,6 +175,29 @@ public abstract class AbstractFileListSource<K extends FileListData>
                     throw new IllegalArgumentException("Max split size must be a positive integer.");
                 }
             }
+            if (!this.containsMacro("copyStrategy")) {
+                String copyStrategy = getCopyStrategy();
+                if (!FileListInputFormat.UNIFORM_SIZE_STRATEGY.equals(copyStrategy)
+                        && !FileListInputFormat.DYNAMIC_STRATEGY.equals(copyStrategy)) {
+                    throw new IllegalArgumentException("Copy strategy must be either uniformsize or dynamic.");
+                }
+            }
+            if (recordFormat != null && !recordFormat.isEmpty() && !"fields".equals(recordFormat)
+                    && !isCompactRecords()) {
+                throw new IllegalArgumentException("Record format must be either fields or compact.");
+            }
+        }
+
+        /**
+         * @return Whether the records are emitted in the compact form of {@link FileListData#toCompactRecord()}.
+         */
+        public boolean isCompactRecords() {
+            return "compact".equals(recordFormat);
+        }
+
+        public String getCopyStrategy() {
+            return copyStrategy == null || copyStrategy.isEmpty() ? FileListInputFormat.UNIFORM_SIZE_STRATEGY
+                    : copyStrategy;
         }
     }
 }
\ No newline at end of file
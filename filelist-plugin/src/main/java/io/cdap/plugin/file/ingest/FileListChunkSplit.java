@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * InputSplit of the dynamic copy strategy. It doesn't carry any files itself, instead it points to the staging
+ * directory where the chunks of files were written at planning time. The record reader claims chunks from there
+ * until none are left, so the number of files each split reads depends on how fast its task is.
+ */
+public class FileListChunkSplit extends InputSplit implements Writable {
+    private String stagingDirectory;
+    private int chunks;
+
+    public FileListChunkSplit() {
+        // for deserialization
+    }
+
+    public FileListChunkSplit(String stagingDirectory, int chunks) {
+        this.stagingDirectory = stagingDirectory;
+        this.chunks = chunks;
+    }
+
+    /**
+     * @return the directory that contains the chunks shared by all splits of the job
+     */
+    public String getStagingDirectory() {
+        return stagingDirectory;
+    }
+
+    /**
+     * @return the number of chunks written at planning time
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        dataOutput.writeUTF(stagingDirectory);
+        dataOutput.writeInt(chunks);
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        stagingDirectory = dataInput.readUTF();
+        chunks = dataInput.readInt();
+    }
+
+    /**
+     * The files of a chunk split are only known while it is read, so every split reports the same length.
+     */
+    @Override
+    public long getLength() throws IOException, InterruptedException {
+        return chunks;
+    }
+
+    @Override
+    public String[] getLocations() throws IOException, InterruptedException {
+        return new String[0];
+    }
+}
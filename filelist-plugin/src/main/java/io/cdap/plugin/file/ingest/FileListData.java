@@ -18,6 +18,8 @@ package io.cdap.plugin.file.ingest;
 
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.file.ingest.codec.FileListEntry;
+import io.cdap.plugin.file.ingest.codec.FileListRecordCodec;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 
@@ -26,30 +28,25 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Abstract class that contains file metadata fields. Extend from this class to add credentials
  * specific to different filesystems.
  */
-public class FileListData implements Comparable<FileListData> {
-
-    public static final String FILE_NAME = "fileName";
-    public static final String FILE_SIZE = "fileSize";
-    public static final String FULL_PATH = "fullPath";
-    public static final String IS_DIR = "isDir";
-    public static final String RELATIVE_PATH = "relativePath";
-    public static final String HOST_URI = "hostURI";
+public class FileListData implements FileListEntry, Comparable<FileListData> {
+
+    public static final String FILE_NAME = FileListRecordCodec.FILE_NAME;
+    public static final String FILE_SIZE = FileListRecordCodec.FILE_SIZE;
+    public static final String FULL_PATH = FileListRecordCodec.FULL_PATH;
+    public static final String IS_DIR = FileListRecordCodec.IS_DIR;
+    public static final String RELATIVE_PATH = FileListRecordCodec.RELATIVE_PATH;
+    public static final String HOST_URI = FileListRecordCodec.HOST_URI;
+    public static final String MODIFICATION_TIME = FileListRecordCodec.MODIFICATION_TIME;
+    public static final String BLOCK_SIZE = FileListRecordCodec.BLOCK_SIZE;
+    public static final String PERMISSION = FileListRecordCodec.PERMISSION;
 
     // The default schema that will be used to convert this object to a StructuredRecord.
-    public static final Schema DEFAULT_SCHEMA =
-            Schema.recordOf(
-                    "metadata",
-                    Schema.Field.of(FILE_NAME, Schema.of(Schema.Type.STRING)),
-                    Schema.Field.of(FULL_PATH, Schema.of(Schema.Type.STRING)),
-                    Schema.Field.of(RELATIVE_PATH, Schema.of(Schema.Type.STRING)),
-                    Schema.Field.of(HOST_URI, Schema.of(Schema.Type.STRING)));
+    public static final Schema DEFAULT_SCHEMA = FileListRecordCodec.SCHEMA;
 
     // contains only the name of the file
     private final String fileName;
@@ -63,6 +60,15 @@ public class FileListData implements Comparable<FileListData> {
     // whether or not the file is a directory
     private final boolean isDir;
 
+    // last modification time in milliseconds since the epoch
+    private final long modificationTime;
+
+    // block size of the file in the source filesystem
+    private final long blockSize;
+
+    // permission of the file in symbolic notation, e.g. rw-r--r--
+    private final String permission;
+
     /*
      * The relavite path is constructed by deleting the portion of the source
      * path that comes before the last path separator ("/") from the full path.
@@ -94,6 +100,9 @@ public class FileListData implements Comparable<FileListData> {
         fullPath = fileStatus.getPath().toUri().getPath();
         isDir = fileStatus.isDirectory();
         fileSize = fileStatus.getLen();
+        modificationTime = fileStatus.getModificationTime();
+        blockSize = fileStatus.getBlockSize();
+        permission = fileStatus.getPermission().toString();
         // check if sourcePath is a valid prefix of fullPath
         if (fullPath.startsWith(sourcePath)) {
             relativePath = fullPath.substring(sourcePath.lastIndexOf(Path.SEPARATOR) + 1);
@@ -122,12 +131,7 @@ public class FileListData implements Comparable<FileListData> {
      * @param record The StructuredRecord instance to convert from.
      */
     public FileListData(StructuredRecord record) {
-        this.fileName = record.get(FILE_NAME);
-        this.fullPath = record.get(FULL_PATH);
-        this.fileSize = record.get(FILE_SIZE);
-        this.isDir = record.get(IS_DIR);
-        this.relativePath = record.get(RELATIVE_PATH);
-        this.hostURI = record.get(HOST_URI);
+        this(FileListRecordCodec.fromRecord(record));
     }
 
     /**
@@ -136,56 +140,83 @@ public class FileListData implements Comparable<FileListData> {
      * @param dataInput The input stream to deserialize from.
      */
     public FileListData(DataInput dataInput) throws IOException {
-        this.fileName = dataInput.readUTF();
-        this.fullPath = dataInput.readUTF();
-        this.fileSize = dataInput.readLong();
-        this.isDir = dataInput.readBoolean();
-        this.relativePath = dataInput.readUTF();
-        this.hostURI = dataInput.readUTF();
+        this(FileListRecordCodec.read(dataInput));
     }
 
+    /**
+     * Copies the values of a file read by {@link FileListRecordCodec}.
+     *
+     * @param entry The file to copy.
+     */
+    protected FileListData(FileListEntry entry) {
+        this.fileName = entry.getFileName();
+        this.fullPath = entry.getFullPath();
+        this.fileSize = entry.getFileSize();
+        this.isDir = entry.isDir();
+        this.relativePath = entry.getRelativePath();
+        this.hostURI = entry.getHostURI();
+        this.modificationTime = entry.getModificationTime();
+        this.blockSize = entry.getBlockSize();
+        this.permission = entry.getPermission();
+    }
+
+    @Override
     public String getRelativePath() {
         return relativePath;
     }
 
+    @Override
     public String getHostURI() {
         return hostURI;
     }
 
+    @Override
     public String getFullPath() {
         return fullPath;
     }
 
+    @Override
     public String getFileName() {
         return fileName;
     }
 
+    @Override
     public long getFileSize() {
         return fileSize;
     }
 
+    @Override
     public boolean isDir() {
         return isDir;
     }
 
+    @Override
+    public long getModificationTime() {
+        return modificationTime;
+    }
+
+    @Override
+    public long getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public String getPermission() {
+        return permission;
+    }
+
     /**
      * Converts to a StructuredRecord
      */
     public StructuredRecord toRecord() {
+        return FileListRecordCodec.toRecord(this);
+    }
 
-        // merge default schema and credential schema to create output schema
-        Schema outputSchema;
-        List<Schema.Field> fieldList = new ArrayList<>(DEFAULT_SCHEMA.getFields());
-        outputSchema = Schema.recordOf("metadata", fieldList);
-
-        StructuredRecord.Builder outputBuilder =
-                StructuredRecord.builder(outputSchema)
-                        .set(FILE_NAME, fileName)
-                        .set(FULL_PATH, fullPath)
-                        .set(RELATIVE_PATH, relativePath)
-                        .set(HOST_URI, hostURI);
-
-        return outputBuilder.build();
+    /**
+     * Converts to a StructuredRecord of {@link FileListRecordCodec#COMPACT_SCHEMA}, which holds the serialized file.
+     */
+    public StructuredRecord toCompactRecord() {
+        return FileListRecordCodec.toCompactRecord(this);
     }
 
     /**
@@ -201,12 +232,7 @@ public class FileListData implements Comparable<FileListData> {
     }
 
     public void write(DataOutput dataOutput) throws IOException {
-        dataOutput.writeUTF(getFileName());
-        dataOutput.writeUTF(getFullPath());
-        dataOutput.writeLong(getFileSize());
-        dataOutput.writeBoolean(isDir());
-        dataOutput.writeUTF(getRelativePath());
-        dataOutput.writeUTF(getHostURI());
+        FileListRecordCodec.write(this, dataOutput);
     }
 
     /**
@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+/**
+ * Record reader of the dynamic copy strategy. It claims a chunk by renaming it from the staging directory to a
+ * path of its own attempt, reads the files of the chunk and then claims the next one. Renames are atomic, so every
+ * chunk is claimed by exactly one attempt, and fast tasks keep claiming chunks while slow ones are still busy with
+ * theirs.
+ *
+ * Claimed chunks are named after the attempt and the order they were claimed in, under a directory of the task, so
+ * that a claim never replaces a chunk held by another attempt. They are kept until the staging directory is
+ * deleted at the end of the run, since the sink may hold on to the files of a chunk until the task is done, e.g. in
+ * a bundle. A later attempt of the task first adopts every chunk the earlier attempts claimed and reads them again.
+ * A speculative attempt adopts the chunks of the attempt that is still running, which copies their files twice
+ * rather than losing any.
+ *
+ * All chunks are written before the job starts and only ever leave the staging directory, so a reader lists them
+ * once and moves on past every chunk it failed to claim, which keeps the claims of a task linear in the chunks.
+ */
+public class FileListDynamicRecordReader extends RecordReader<NullWritable, FileListData> {
+    private static final Logger LOG = LoggerFactory.getLogger(FileListDynamicRecordReader.class);
+
+    private final Supplier<FileListInputSplit> splitFactory;
+    private FileSystem fileSystem;
+    private Path chunkDirectory;
+    private Path claimedDirectory;
+    private String attemptPrefix;
+    private int claimedChunks;
+    // the chunks taken over from earlier attempts of the task, null until they are looked for
+    private Deque<Path> adoptedChunks;
+    private int totalChunks;
+    private int remainingChunks;
+    private FileStatus[] chunks;
+    // the chunks before it were claimed by this or another task
+    private int nextChunk;
+    private FileListInputSplit chunk;
+    private int currentIndex;
+
+    /**
+     * @param splitFactory Creates the empty FileListInputSplit the chunks are read into, so that sources with their
+     *                     own FileListData read chunks the same way as their regular splits.
+     */
+    public FileListDynamicRecordReader(Supplier<FileListInputSplit> splitFactory) {
+        this.splitFactory = splitFactory;
+    }
+
+    @Override
+    public void initialize(InputSplit inputSplit, TaskAttemptContext taskAttemptContext)
+            throws IOException, InterruptedException {
+        FileListChunkSplit split = (FileListChunkSplit) inputSplit;
+        Path stagingDirectory = new Path(split.getStagingDirectory());
+        this.fileSystem = stagingDirectory.getFileSystem(taskAttemptContext.getConfiguration());
+        this.chunkDirectory = new Path(stagingDirectory, FileListInputFormat.CHUNK_DIRECTORY);
+        TaskAttemptID attemptID = taskAttemptContext.getTaskAttemptID();
+        this.claimedDirectory = new Path(new Path(stagingDirectory, FileListInputFormat.CLAIMED_DIRECTORY),
+                                         attemptID.getTaskID().toString());
+        this.attemptPrefix = attemptID.getId() + "-";
+        this.claimedChunks = 0;
+        this.adoptedChunks = null;
+        this.totalChunks = split.getChunks();
+        this.remainingChunks = totalChunks;
+        this.chunks = null;
+        this.nextChunk = 0;
+        this.chunk = null;
+        this.currentIndex = -1;
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+        while (chunk == null || currentIndex + 1 >= chunk.getLength()) {
+            chunk = claimChunk();
+            currentIndex = -1;
+            if (chunk == null) {
+                return false;
+            }
+        }
+        currentIndex++;
+        return true;
+    }
+
+    @Override
+    public NullWritable getCurrentKey() throws IOException, InterruptedException {
+        return null;
+    }
+
+    @Override
+    public FileListData getCurrentValue() throws IOException, InterruptedException {
+        return chunk.getFileMetaDataList().get(currentIndex);
+    }
+
+    /**
+     * @return The share of chunks that were claimed by any task when this reader last claimed one.
+     */
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+        return totalChunks == 0 ? 1 : 1 - (float) remainingChunks / totalChunks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the file system is the cached instance shared by the task, and each chunk is closed once it is read. The
+        // claimed chunks stay, the sink may not have written their files yet
+    }
+
+    /**
+     * @return The next chunk of this task, or null if all chunks were claimed.
+     */
+    private FileListInputSplit claimChunk() throws IOException {
+        if (adoptedChunks == null) {
+            adoptedChunks = adoptChunks();
+        }
+        if (!adoptedChunks.isEmpty()) {
+            return readChunk(adoptedChunks.remove());
+        }
+        if (chunks == null) {
+            try {
+                chunks = fileSystem.listStatus(chunkDirectory);
+            } catch (FileNotFoundException e) {
+                chunks = new FileStatus[0];
+            }
+            // the planner names chunks so that the biggest files come first
+            Arrays.sort(chunks);
+        }
+        while (nextChunk < chunks.length) {
+            Path path = chunks[nextChunk].getPath();
+            remainingChunks = chunks.length - nextChunk;
+            nextChunk++;
+            Path claimedPath = getClaimedPath();
+            if (rename(path, claimedPath)) {
+                LOG.debug("Claimed {} as {}", path, claimedPath);
+                return readChunk(claimedPath);
+            }
+            // another attempt claimed it first, the target is only ever used by this attempt
+        }
+        remainingChunks = 0;
+        return null;
+    }
+
+    /**
+     * Takes over the chunks that earlier attempts of this task claimed. Their files may not have been copied, since
+     * the sink may have held on to them when the attempt failed, so all of them are read again.
+     */
+    private Deque<Path> adoptChunks() throws IOException {
+        Deque<Path> adopted = new ArrayDeque<>();
+        fileSystem.mkdirs(claimedDirectory);
+        FileStatus[] leftovers = fileSystem.listStatus(claimedDirectory);
+        Arrays.sort(leftovers);
+        for (FileStatus leftover : leftovers) {
+            if (leftover.getPath().getName().startsWith(attemptPrefix)) {
+                continue;
+            }
+            Path claimedPath = getClaimedPath();
+            if (rename(leftover.getPath(), claimedPath)) {
+                LOG.info("Adopted {} of an earlier attempt as {}", leftover.getPath(), claimedPath);
+                adopted.add(claimedPath);
+            }
+        }
+        return adopted;
+    }
+
+    /**
+     * @return The path of the next chunk this attempt claims.
+     */
+    private Path getClaimedPath() {
+        return new Path(claimedDirectory, String.format("%s%06d", attemptPrefix, claimedChunks));
+    }
+
+    /**
+     * Renames a chunk to the path of the next chunk of this attempt.
+     *
+     * @return Whether the chunk was claimed, false if another attempt claimed it first.
+     */
+    private boolean rename(Path path, Path claimedPath) throws IOException {
+        try {
+            if (fileSystem.rename(path, claimedPath)) {
+                claimedChunks++;
+                return true;
+            }
+        } catch (FileNotFoundException e) {
+            // some file systems throw rather than return false when the source is gone
+        }
+        return false;
+    }
+
+    private FileListInputSplit readChunk(Path claimedPath) throws IOException {
+        FileListInputSplit split = splitFactory.get();
+        try (FSDataInputStream inputStream = fileSystem.open(claimedPath)) {
+            split.readFields(inputStream);
+        }
+        return split;
+    }
+}
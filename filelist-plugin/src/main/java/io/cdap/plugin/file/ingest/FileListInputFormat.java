@@ -42,7 +42,15 @@ public class FileListInputFormat extends InputFormat {
     protected static final String MAX_SPLIT_SIZE = "max.split.size";
     protected static final String FS_URI = "filesystem.uri";
     protected static final String RECURSIVE_COPY = "recursive.copy";
+    protected static final String COPY_STRATEGY = "copy.strategy";
+    protected static final String STAGING_DIRECTORY = "staging.directory";
     protected static final int DEFAULT_MAX_SPLIT_SIZE = 128;
+    public static final String UNIFORM_SIZE_STRATEGY = "uniformsize";
+    public static final String DYNAMIC_STRATEGY = "dynamic";
+    static final String CHUNK_DIRECTORY = "chunks";
+    static final String CLAIMED_DIRECTORY = "claimed";
+    // with about 10 chunks per task, a task that falls behind only holds back the last of its chunks
+    private static final int CHUNKS_PER_SPLIT = 10;
     private static final Logger LOG = LoggerFactory.getLogger(FileListInputFormat.class);
 
     public FileListInputFormat() {
@@ -65,10 +73,23 @@ public class FileListInputFormat extends InputFormat {
         conf.set(RECURSIVE_COPY, value);
     }
 
+    public static void setCopyStrategy(Configuration conf, String value) {
+        conf.set(COPY_STRATEGY, value);
+    }
+
+    public static void setStagingDirectory(Configuration conf, String value) {
+        conf.set(STAGING_DIRECTORY, value);
+    }
+
     @Override
     public RecordReader createRecordReader(
             InputSplit inputSplit, TaskAttemptContext taskAttemptContext)
             throws IOException, InterruptedException {
+        if (inputSplit instanceof FileListChunkSplit) {
+            FileListDynamicRecordReader recordReader = new FileListDynamicRecordReader(this::getInputSplit);
+            recordReader.initialize(inputSplit, taskAttemptContext);
+            return recordReader;
+        }
         FileListRecordReader recordReader = new FileListRecordReader();
         recordReader.initialize(inputSplit, taskAttemptContext);
         return recordReader;
@@ -78,6 +99,9 @@ public class FileListInputFormat extends InputFormat {
      * This method scans the files under the directories specified by the user. Splits are created
      * given the total number of files and the number of files each split can contain. The files are
      * then assigned to splits such that each split gets roughly the same number of bytes.
+     * <p>
+     * With the dynamic copy strategy the files are written as chunks to the staging directory instead, and the
+     * same number of splits is returned, each of which claims chunks until none are left.
      *
      * @param jobContext Contains the configurations specified by the user.
      * @return The list of splits.
@@ -120,6 +144,9 @@ public class FileListInputFormat extends InputFormat {
         // compute number of splits and instantiate the splits
         // We use a priority queue to keep track of the smallest split (fewest bytes assigned to it)
         int numSplits = (fileMetaDataList.size() - 1) / maxSplitSize + 1;
+        if (DYNAMIC_STRATEGY.equals(conf.get(COPY_STRATEGY, UNIFORM_SIZE_STRATEGY))) {
+            return writeChunks(fileMetaDataList, numSplits, maxSplitSize, conf);
+        }
         PriorityQueue<FileListInputSplit> abstractInputSplits = new PriorityQueue<>(numSplits);
         for (int i = 0; i < numSplits; i++) {
             abstractInputSplits.add(getInputSplit());
@@ -143,10 +170,78 @@ public class FileListInputFormat extends InputFormat {
 
         // add the rest of the splits still on the PriorityQueue into the return list
         inputSplits.addAll(abstractInputSplits);
+        for (InputSplit inputSplit : inputSplits) {
+            FileListInputSplit split = (FileListInputSplit) inputSplit;
+            ListingEvents.splitPlanned(conf.get(SOURCE_PATHS), split.getTotalBytes(),
+                                       split.getFileMetaDataList().size());
+        }
 
         return inputSplits;
     }
 
+    /**
+     * Writes the files to chunks in the staging directory for the dynamic copy strategy. The files are sorted by
+     * size in descending order, so big files end up alone in the first chunks and small files are grouped in the
+     * last ones. Tasks claim chunks in that order, which leaves the small files for the end of the job.
+     *
+     * @param fileMetaDataList The files to copy, sorted by size in descending order.
+     * @param numSplits        The number of splits to return.
+     * @param maxSplitSize     The maximum number of files in a split.
+     * @param conf             The configuration that contains the staging directory.
+     * @return The splits that read the chunks.
+     * @throws IOException
+     */
+    private List<InputSplit> writeChunks(List<FileListData> fileMetaDataList, int numSplits, int maxSplitSize,
+                                         Configuration conf) throws IOException {
+        String stagingDirectory = conf.get(STAGING_DIRECTORY);
+        if (stagingDirectory == null || stagingDirectory.isEmpty()) {
+            throw new IllegalArgumentException("A staging directory is required for the dynamic copy strategy.");
+        }
+        Path stagingPath = new Path(stagingDirectory);
+        FileSystem fileSystem = stagingPath.getFileSystem(conf);
+        stagingPath = fileSystem.makeQualified(stagingPath);
+        if (fileSystem.exists(stagingPath)) {
+            throw new IOException(String.format("Staging directory %s already exists.", stagingPath));
+        }
+        Path chunkDirectory = new Path(stagingPath, CHUNK_DIRECTORY);
+        fileSystem.mkdirs(chunkDirectory);
+        fileSystem.mkdirs(new Path(stagingPath, CLAIMED_DIRECTORY));
+
+        long totalBytes = 0;
+        for (FileListData fileMetadata : fileMetaDataList) {
+            totalBytes += fileMetadata.getFileSize();
+        }
+        long maxChunkBytes = Math.max(1, totalBytes / ((long) numSplits * CHUNKS_PER_SPLIT));
+        int maxChunkFiles = Math.max(1, maxSplitSize / CHUNKS_PER_SPLIT);
+
+        int chunks = 0;
+        FileListInputSplit chunk = getInputSplit();
+        for (FileListData fileMetadata : fileMetaDataList) {
+            chunk.addFileMetadata(fileMetadata);
+            if (chunk.getTotalBytes() >= maxChunkBytes || chunk.getFileMetaDataList().size() >= maxChunkFiles) {
+                writeChunk(fileSystem, new Path(chunkDirectory, String.format("chunk-%06d", chunks++)), chunk);
+                chunk = getInputSplit();
+            }
+        }
+        if (!chunk.getFileMetaDataList().isEmpty()) {
+            writeChunk(fileSystem, new Path(chunkDirectory, String.format("chunk-%06d", chunks++)), chunk);
+        }
+        LOG.info("Wrote {} files in {} chunks to {}", fileMetaDataList.size(), chunks, stagingPath);
+
+        List<InputSplit> inputSplits = new ArrayList<>();
+        for (int i = 0; i < numSplits; i++) {
+            inputSplits.add(new FileListChunkSplit(stagingPath.toString(), chunks));
+        }
+        return inputSplits;
+    }
+
+    private void writeChunk(FileSystem fileSystem, Path path, FileListInputSplit chunk) throws IOException {
+        try (FSDataOutputStream outputStream = fileSystem.create(path, false)) {
+            chunk.write(outputStream);
+        }
+        ListingEvents.splitPlanned(path.toString(), chunk.getTotalBytes(), chunk.getFileMetaDataList().size());
+    }
+
     /**
      * Because the existing Filesystem.listFiles(Path, Boolean) doesn't list empty directories, we
      * added our own method to recursively traverse the file directories. If the path doesn't exist in
@@ -172,8 +267,11 @@ public class FileListInputFormat extends InputFormat {
         try {
             RemoteIterator<LocatedFileStatus> iter = filesystem.listLocatedStatus(path);
             while (iter.hasNext()) {
+                // the iterator fetches the listing in batches, the event of the file that fetched one shows it
+                Object event = ListingEvents.beginListed();
                 LocatedFileStatus fileStatus = iter.next();
                 fileMetadataList.add(getFileMetadata(fileStatus, prefix, conf));
+                ListingEvents.commitListed(event, fileStatus.getPath().toString(), fileStatus.getLen());
                 if (fileStatus.isDirectory() && recursive) {
                     recursivelyAddFileStatus(
                             fileMetadataList, prefix, fileStatus.getPath(), recursive, filesystem, conf);
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.file.ingest;
+
+import javax.annotation.Nullable;
+
+/**
+ * Emits the flight recorder events of the listing: every file that is listed and every split that is planned,
+ * with a path, the bytes and the stage like the events of the copy.
+ *
+ * Flight recorder is only part of Java 8 since update 262, so its classes are only touched once they are known
+ * to exist, and events are handed around as plain objects. When no recording enables an event, beginning it
+ * returns null and costs a check of a flag.
+ */
+final class ListingEvents {
+    private static final boolean AVAILABLE = isAvailable();
+
+    private ListingEvents() {
+    }
+
+    /**
+     * @return The event for listing the next file, already begun, or null if it is not recorded.
+     */
+    @Nullable
+    static Object beginListed() {
+        return AVAILABLE ? Recorder.beginListed() : null;
+    }
+
+    /**
+     * @param event An event returned by {@link #beginListed}, or null.
+     */
+    static void commitListed(@Nullable Object event, String path, long bytes) {
+        if (event != null) {
+            Recorder.commitListed(event, path, bytes);
+        }
+    }
+
+    /**
+     * @param path The chunk that holds the split, or the source paths if the split is not stored.
+     */
+    static void splitPlanned(String path, long bytes, int files) {
+        if (AVAILABLE) {
+            Recorder.splitPlanned(path, bytes, files);
+        }
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return jdk.jfr.FlightRecorder.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Holds everything that refers to the event classes, it is only loaded when flight recorder is available.
+     */
+    private static class Recorder {
+        static FileListedEvent beginListed() {
+            FileListedEvent event = new FileListedEvent();
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.stage = "list";
+            event.begin();
+            return event;
+        }
+
+        static void commitListed(Object event, String path, long bytes) {
+            FileListedEvent listed = (FileListedEvent) event;
+            listed.path = path;
+            listed.bytes = bytes;
+            listed.commit();
+        }
+
+        static void splitPlanned(String path, long bytes, int files) {
+            SplitPlannedEvent event = new SplitPlannedEvent();
+            if (!event.isEnabled()) {
+                return;
+            }
+            event.path = path;
+            event.bytes = bytes;
+            event.files = files;
+            event.stage = "plan";
+            event.commit();
+        }
+    }
+}
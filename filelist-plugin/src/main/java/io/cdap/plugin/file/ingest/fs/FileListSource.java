@@ -21,7 +21,6 @@ import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.api.annotation.Plugin;
 import io.cdap.cdap.api.data.batch.Input;
 import io.cdap.cdap.api.data.format.StructuredRecord;
-import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
 import io.cdap.cdap.etl.api.Emitter;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
@@ -32,14 +31,13 @@ import io.cdap.plugin.common.batch.JobUtils;
 import io.cdap.plugin.file.ingest.AbstractFileListSource;
 import io.cdap.plugin.file.ingest.FileListData;
 import io.cdap.plugin.file.ingest.FileListInputFormat;
+import io.cdap.plugin.file.ingest.codec.FileListRecordCodec;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.Job;
 
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * FileCopySource plugin that pulls filemetadata from local filesystem or local HDFS.
@@ -58,8 +56,8 @@ public class FileListSource extends AbstractFileListSource<FileListData> {
     @Override
     public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
         super.configurePipeline(pipelineConfigurer);
-        List<Schema.Field> fieldList = new ArrayList<>(FileListData.DEFAULT_SCHEMA.getFields());
-        pipelineConfigurer.getStageConfigurer().setOutputSchema(Schema.recordOf("fileSchema", fieldList));
+        pipelineConfigurer.getStageConfigurer().setOutputSchema(
+                config.isCompactRecords() ? FileListRecordCodec.COMPACT_SCHEMA : FileListData.DEFAULT_SCHEMA);
     }
 
     @Override
@@ -91,7 +89,7 @@ public class FileListSource extends AbstractFileListSource<FileListData> {
      */
     @Override
     public void transform(KeyValue<NullWritable, FileListData> input, Emitter<StructuredRecord> emitter) {
-        emitter.emit(input.getValue().toRecord());
+        emitter.emit(config.isCompactRecords() ? input.getValue().toCompactRecord() : input.getValue().toRecord());
     }
 
     /**
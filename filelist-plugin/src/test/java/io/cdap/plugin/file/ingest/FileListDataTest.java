@@ -18,6 +18,9 @@ package io.cdap.plugin.file.ingest;
 
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -68,4 +71,31 @@ public class FileListDataTest {
         Assert.assertEquals(0, file3.compareTo(file2));
         Assert.assertEquals(1, file3.compareTo(file1));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStatusRoundTrip() throws IOException {
+        FileStatus fileStatus = new FileStatus(1234, false, 3, 128 << 20, 1574000000000L, 0,
+                new FsPermission((short) 0640), "owner", "group", new Path("hdfs://hello.com/abc/fileA"));
+        FileListData metadata = new FileListData(fileStatus, "/abc");
+
+        // the sink gets the file as a record
+        FileListData fromRecord = new FileListData(metadata.toRecord());
+        assertStatus(fromRecord);
+
+        // splits are serialized to the tasks
+        DataOutputBuffer outputBuffer = new DataOutputBuffer();
+        metadata.write(outputBuffer);
+        DataInputBuffer inputBuffer = new DataInputBuffer();
+        inputBuffer.reset(outputBuffer.getData(), outputBuffer.getLength());
+        assertStatus(new FileListData(inputBuffer));
+    }
+
+    private static void assertStatus(FileListData metadata) {
+        Assert.assertEquals("/abc/fileA", metadata.getFullPath());
+        Assert.assertEquals(1234, metadata.getFileSize());
+        Assert.assertFalse(metadata.isDir());
+        Assert.assertEquals(1574000000000L, metadata.getModificationTime());
+        Assert.assertEquals(128 << 20, metadata.getBlockSize());
+        Assert.assertEquals("rw-r-----", metadata.getPermission());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.file.ingest;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class FileListDynamicRecordReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testEveryFileIsReadOnce() throws Exception {
+        Configuration conf = getConfiguration(100);
+        FileListInputFormat inputFormat = new FileListInputFormat();
+        List<InputSplit> splits = inputFormat.getSplits(new JobContextImpl(conf, new JobID()));
+        Assert.assertEquals(4, splits.size());
+
+        // the first reader takes a chunk, then the others take turns with it
+        List<RecordReader<?, FileListData>> readers = new ArrayList<>();
+        for (int i = 0; i < splits.size(); i++) {
+            readers.add(createRecordReader(inputFormat, splits.get(i), conf, i, 0));
+        }
+        Set<String> files = new HashSet<>();
+        boolean reading = true;
+        while (reading) {
+            reading = false;
+            for (RecordReader<?, FileListData> reader : readers) {
+                if (reader.nextKeyValue()) {
+                    reading = true;
+                    Assert.assertTrue(files.add(reader.getCurrentValue().getFullPath()));
+                }
+            }
+        }
+        Assert.assertEquals(100, files.size());
+    }
+
+    @Test
+    public void testRetryRereadsClaimedChunks() throws Exception {
+        Configuration conf = getConfiguration(20);
+        FileListInputFormat inputFormat = new FileListInputFormat();
+        List<InputSplit> splits = inputFormat.getSplits(new JobContextImpl(conf, new JobID()));
+
+        // the first attempt fails after it moved past a few chunks, whose files the sink may still have held
+        RecordReader<?, FileListData> failed = createRecordReader(inputFormat, splits.get(0), conf, 0, 0);
+        Set<String> failedFiles = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(failed.nextKeyValue());
+            failedFiles.add(failed.getCurrentValue().getFullPath());
+        }
+
+        // another task takes the remaining chunks before the retry starts
+        Set<String> files = new HashSet<>();
+        RecordReader<?, FileListData> other = createRecordReader(inputFormat, splits.get(0), conf, 1, 0);
+        while (other.nextKeyValue()) {
+            Assert.assertTrue(files.add(other.getCurrentValue().getFullPath()));
+        }
+        RecordReader<?, FileListData> retry = createRecordReader(inputFormat, splits.get(0), conf, 0, 1);
+        Set<String> retryFiles = new HashSet<>();
+        while (retry.nextKeyValue()) {
+            Assert.assertTrue(retryFiles.add(retry.getCurrentValue().getFullPath()));
+            Assert.assertTrue(files.add(retry.getCurrentValue().getFullPath()));
+        }
+        Assert.assertTrue(retryFiles.containsAll(failedFiles));
+        Assert.assertEquals(20, files.size());
+    }
+
+    @Test
+    public void testFailedClaimsKeepOtherChunks() throws Exception {
+        Configuration conf = getConfiguration(20);
+        FileListInputFormat inputFormat = new FileListInputFormat();
+        List<InputSplit> splits = inputFormat.getSplits(new JobContextImpl(conf, new JobID()));
+        File chunkDirectory = new File(temporaryFolder.getRoot(), "staging/chunks");
+        int chunks = countChunks(chunkDirectory);
+
+        // two attempts of the same task run at once, as with speculation, and keep failing to claim the chunks the
+        // other one took first
+        List<RecordReader<?, FileListData>> readers = new ArrayList<>();
+        readers.add(createRecordReader(inputFormat, splits.get(0), conf, 0, 0));
+        readers.add(createRecordReader(inputFormat, splits.get(0), conf, 0, 1));
+        Set<String> files = new HashSet<>();
+        boolean reading = true;
+        while (reading) {
+            reading = false;
+            for (RecordReader<?, FileListData> reader : readers) {
+                if (reader.nextKeyValue()) {
+                    reading = true;
+                    files.add(reader.getCurrentValue().getFullPath());
+                }
+            }
+        }
+        Assert.assertEquals(20, files.size());
+        // every chunk is still held by one of the attempts
+        Assert.assertEquals(0, countChunks(chunkDirectory));
+        Assert.assertEquals(chunks, countChunks(new File(temporaryFolder.getRoot(), "staging/claimed/" +
+                new TaskAttemptID("test", 0, TaskType.MAP, 0, 0).getTaskID())));
+    }
+
+    // the local file system writes a checksum file next to each chunk
+    private static int countChunks(File directory) {
+        int chunks = 0;
+        for (String name : directory.list()) {
+            if (!name.endsWith(".crc")) {
+                chunks++;
+            }
+        }
+        return chunks;
+    }
+
+    private Configuration getConfiguration(int numFiles) throws Exception {
+        File source = temporaryFolder.newFolder("source");
+        for (int i = 0; i < numFiles; i++) {
+            Files.write(new File(source, "file" + i).toPath(), new byte[i]);
+        }
+        Configuration conf = new Configuration();
+        FileListInputFormat.setSourcePaths(conf, source.getAbsolutePath());
+        FileListInputFormat.setURI(conf, "file:///");
+        FileListInputFormat.setMaxSplitSize(conf, 25);
+        FileListInputFormat.setCopyStrategy(conf, FileListInputFormat.DYNAMIC_STRATEGY);
+        FileListInputFormat.setStagingDirectory(conf, new File(temporaryFolder.getRoot(), "staging").toURI().toString());
+        return conf;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RecordReader<?, FileListData> createRecordReader(FileListInputFormat inputFormat, InputSplit split,
+                                                             Configuration conf, int task, int attempt)
+            throws Exception {
+        TaskAttemptID taskAttemptID = new TaskAttemptID("test", 0, TaskType.MAP, task, attempt);
+        return inputFormat.createRecordReader(split, new TaskAttemptContextImpl(conf, taskAttemptID));
+    }
+}